@@ -0,0 +1,81 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.autoconfigure;
+
+import io.github.lincoco.zhinao.api.ZhinaoMessageEncodingCache;
+import io.github.lincoco.zhinao.capture.ZhinaoExchangeCapture;
+import io.github.lincoco.zhinao.metrics.ZhinaoMetrics;
+import io.github.lincoco.zhinao.token.ZhinaoTokenBudget;
+import io.github.lincoco.zhinao.tool.ZhinaoToolCallingManager;
+import io.github.lincoco.zhinao.tool.ZhinaoToolResultCache;
+import io.github.lincoco.zhinao.usage.ZhinaoUsageAccountant;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.actuate.autoconfigure.endpoint.condition.ConditionalOnAvailableEndpoint;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Actuator endpoints and health indicator of the Zhinao chat model, only active when Spring
+ * Boot Actuator is on the classpath.
+ *
+ * @author xueyeshang
+ */
+@AutoConfiguration(after = ZhinaoChatAutoConfiguration.class)
+@ConditionalOnClass({Endpoint.class, ZhinaoExchangeCapture.class})
+public class ZhinaoActuatorAutoConfiguration {
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnAvailableEndpoint
+    public ZhinaoEndpoint zhinaoEndpoint(ObjectProvider<ZhinaoMetrics> metricsProvider,
+                                         ObjectProvider<ZhinaoTokenBudget> tokenBudgetProvider,
+                                         @Qualifier("zhinaoToolExecutor") ObjectProvider<ExecutorService> toolExecutorProvider,
+                                         ObjectProvider<ZhinaoToolResultCache> toolResultCacheProvider,
+                                         ObjectProvider<ZhinaoMessageEncodingCache> messageEncodingCacheProvider,
+                                         ObjectProvider<ZhinaoUsageAccountant> usageAccountantProvider,
+                                         ObjectProvider<ZhinaoExchangeCapture> exchangeCaptureProvider,
+                                         ObjectProvider<ZhinaoToolCallingManager> toolCallingManagerProvider) {
+        return new ZhinaoEndpoint(metricsProvider.getIfUnique(), tokenBudgetProvider.getIfUnique(),
+                toolExecutorProvider.getIfAvailable(), toolResultCacheProvider.getIfUnique(),
+                messageEncodingCacheProvider.getIfUnique(), usageAccountantProvider.getIfUnique(),
+                exchangeCaptureProvider.getIfUnique(), toolCallingManagerProvider.getIfUnique());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(name = "zhinaoHealthIndicator")
+    @ConditionalOnBean(ZhinaoMetrics.class)
+    // 默认不注册，避免上游故障拖垮应用自身的健康状态
+    @ConditionalOnProperty(prefix = "management.health.zhinao", name = "enabled", havingValue = "true")
+    public ZhinaoHealthIndicator zhinaoHealthIndicator(ZhinaoMetrics metrics, ObjectProvider<ZhinaoTokenBudget> tokenBudgetProvider) {
+        return new ZhinaoHealthIndicator(metrics, tokenBudgetProvider.getIfUnique());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnBean(ZhinaoExchangeCapture.class)
+    @ConditionalOnAvailableEndpoint
+    public ZhinaoCaptureEndpoint zhinaoCaptureEndpoint(ZhinaoExchangeCapture exchangeCapture) {
+        return new ZhinaoCaptureEndpoint(exchangeCapture);
+    }
+}
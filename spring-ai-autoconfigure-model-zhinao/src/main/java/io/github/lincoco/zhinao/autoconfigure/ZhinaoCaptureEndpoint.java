@@ -0,0 +1,57 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.autoconfigure;
+
+import io.github.lincoco.zhinao.capture.ZhinaoExchangeCapture;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.util.Assert;
+
+import java.util.List;
+
+/**
+ * Actuator endpoint exposing the exchanges held by the {@link ZhinaoExchangeCapture}, newest
+ * first, at {@code /actuator/zhinaocaptures}.
+ *
+ * @author xueyeshang
+ */
+@Endpoint(id = "zhinaocaptures")
+public class ZhinaoCaptureEndpoint {
+
+    private final ZhinaoExchangeCapture exchangeCapture;
+
+    public ZhinaoCaptureEndpoint(ZhinaoExchangeCapture exchangeCapture) {
+        Assert.notNull(exchangeCapture, "exchangeCapture cannot be null");
+        this.exchangeCapture = exchangeCapture;
+    }
+
+    @ReadOperation
+    public List<ZhinaoExchangeCapture.Capture> captures() {
+        return this.exchangeCapture.captures();
+    }
+
+    @ReadOperation
+    public List<ZhinaoExchangeCapture.Capture> capturesByReason(@Selector ZhinaoExchangeCapture.Reason reason) {
+        return this.exchangeCapture.captures().stream().filter(capture -> capture.reason() == reason).toList();
+    }
+
+    @DeleteOperation
+    public void clear() {
+        this.exchangeCapture.clear();
+    }
+}
@@ -15,9 +15,32 @@ limitations under the License.
  */
 package io.github.lincoco.zhinao.autoconfigure;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.github.lincoco.zhinao.ZhinaoChatModel;
+import io.github.lincoco.zhinao.ZhinaoChatOptions;
 import io.github.lincoco.zhinao.api.ZhinaoApi;
+import io.github.lincoco.zhinao.api.ZhinaoMessageEncodingCache;
+import io.github.lincoco.zhinao.capture.ZhinaoCaptureRedaction;
+import io.github.lincoco.zhinao.capture.ZhinaoExchangeCapture;
+import io.github.lincoco.zhinao.metrics.ZhinaoMetrics;
+import io.github.lincoco.zhinao.metrics.ZhinaoRetryMetrics;
+import io.github.lincoco.zhinao.token.ZhinaoContextWindowManager;
+import io.github.lincoco.zhinao.token.ZhinaoTokenBudget;
+import io.github.lincoco.zhinao.token.ZhinaoTokenEstimator;
+import io.github.lincoco.zhinao.token.ZhinaoTokenRateLimiter;
+import io.github.lincoco.zhinao.tool.ZhinaoBm25ToolSelector;
+import io.github.lincoco.zhinao.tool.ZhinaoToolCallingManager;
+import io.github.lincoco.zhinao.tool.ZhinaoToolExecutors;
+import io.github.lincoco.zhinao.tool.ZhinaoToolResponseCompaction;
+import io.github.lincoco.zhinao.tool.ZhinaoToolResponseCompactor;
+import io.github.lincoco.zhinao.tool.ZhinaoToolResultCache;
+import io.github.lincoco.zhinao.tool.ZhinaoToolSchemaMinifier;
+import io.github.lincoco.zhinao.tool.ZhinaoToolSelector;
+import io.github.lincoco.zhinao.usage.ZhinaoUsageAccountant;
+import io.github.lincoco.zhinao.usage.ZhinaoUsageExporter;
 import io.micrometer.observation.ObservationRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.observation.ChatModelObservationConvention;
 import org.springframework.ai.model.SimpleApiKey;
 import org.springframework.ai.model.SpringAIModelProperties;
@@ -25,7 +48,9 @@ import org.springframework.ai.model.tool.DefaultToolExecutionEligibilityPredicat
 import org.springframework.ai.model.tool.ToolCallingManager;
 import org.springframework.ai.model.tool.ToolExecutionEligibilityPredicate;
 import org.springframework.ai.model.tool.autoconfigure.ToolCallingAutoConfiguration;
+import org.springframework.ai.retry.TransientAiException;
 import org.springframework.ai.retry.autoconfigure.SpringAiRetryAutoConfiguration;
+import org.springframework.ai.retry.autoconfigure.SpringAiRetryProperties;
 import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
 import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
@@ -42,6 +67,12 @@ import org.springframework.util.StringUtils;
 import org.springframework.web.client.ResponseErrorHandler;
 import org.springframework.web.client.RestClient;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.util.retry.Retry;
+import reactor.util.retry.RetryBackoffSpec;
+
+import java.util.concurrent.ExecutorService;
 
 import static io.github.lincoco.zhinao.api.ZhinaoConstants.ZHINAO_PROVIDER_NAME;
 
@@ -52,19 +83,23 @@ import static io.github.lincoco.zhinao.api.ZhinaoConstants.ZHINAO_PROVIDER_NAME;
         RestClientAutoConfiguration.class,
         WebClientAutoConfiguration.class,
         SpringAiRetryAutoConfiguration.class,
-        ToolCallingAutoConfiguration.class
+        ToolCallingAutoConfiguration.class,
+        ZhinaoToolCallingAutoConfiguration.class
 })
 @ImportAutoConfiguration(classes = {
         RestClientAutoConfiguration.class,
         WebClientAutoConfiguration.class,
         SpringAiRetryAutoConfiguration.class,
-        ToolCallingAutoConfiguration.class
+        ToolCallingAutoConfiguration.class,
+        ZhinaoToolCallingAutoConfiguration.class
 })
 @EnableConfigurationProperties({ZhinaoCommonProperties.class, ZhinaoChatProperties.class})
 @ConditionalOnClass(ZhinaoApi.class)
 @ConditionalOnProperty(name = SpringAIModelProperties.CHAT_MODEL, havingValue = ZHINAO_PROVIDER_NAME, matchIfMissing = true)
 public class ZhinaoChatAutoConfiguration {
 
+    private static final Logger logger = LoggerFactory.getLogger(ZhinaoChatAutoConfiguration.class);
+
     @Bean
     @ConditionalOnMissingBean
     public ZhinaoChatModel zhinaoChatModel(ZhinaoCommonProperties commonProperties,
@@ -76,11 +111,35 @@ public class ZhinaoChatAutoConfiguration {
                                            ResponseErrorHandler responseErrorHandler,
                                            ObjectProvider<ObservationRegistry> observationRegistryProvider,
                                            ObjectProvider<ChatModelObservationConvention> observationConventions,
-                                           ObjectProvider<ToolExecutionEligibilityPredicate> toolExecutionEligibilityPredicateProvider) {
+                                           ObjectProvider<ToolExecutionEligibilityPredicate> toolExecutionEligibilityPredicateProvider,
+                                           ObjectProvider<ZhinaoToolResultCache> toolResultCacheProvider,
+                                           ObjectProvider<ZhinaoToolSelector> toolSelectorProvider,
+                                           ObjectProvider<ZhinaoToolSchemaMinifier> schemaMinifierProvider,
+                                           ObjectProvider<ZhinaoToolResponseCompaction> toolResponseCompactionProvider,
+                                           ObjectProvider<ZhinaoMessageEncodingCache> messageEncodingCacheProvider,
+                                           ObjectProvider<ZhinaoTokenBudget> tokenBudgetProvider,
+                                           ObjectProvider<ZhinaoContextWindowManager> contextWindowManagerProvider,
+                                           ObjectProvider<ZhinaoMetrics> metricsProvider,
+                                           ObjectProvider<ZhinaoUsageAccountant> usageAccountantProvider,
+                                           ObjectProvider<ZhinaoExchangeCapture> exchangeCaptureProvider,
+                                           ObjectProvider<ZhinaoRetryMetrics> retryMetricsProvider,
+                                           ObjectProvider<SpringAiRetryProperties> retryPropertiesProvider) {
 
         ZhinaoApi zhinaoApi = zhinaoApi(commonProperties, chatProperties,
                 restClientBuilderProvider.getIfAvailable(RestClient::builder),
-                webClientBuilderProvider.getIfAvailable(WebClient::builder), responseErrorHandler);
+                webClientBuilderProvider.getIfAvailable(WebClient::builder), responseErrorHandler,
+                messageEncodingCacheProvider.getIfUnique());
+
+        ObservationRegistry observationRegistry = observationRegistryProvider.getIfUnique(() -> ObservationRegistry.NOOP);
+        ZhinaoContextWindowManager contextWindowManager = contextWindowManagerProvider.getIfUnique();
+        ZhinaoChatProperties.ToolExecution toolExecution = chatProperties.getToolExecution();
+        if (!(toolCallingManager instanceof ZhinaoToolCallingManager)
+                && (toolExecution.isConcurrent() || toolExecution.isAsync() || toolExecution.isValidateArguments()
+                || toolResultCacheProvider.getIfAvailable() != null)) {
+            // 应用自定义了 ToolCallingManager，智脑的工具执行配置不会生效
+            logger.warn("ToolCallingManager bean {} is not a ZhinaoToolCallingManager, the {}.tool-execution settings are ignored",
+                    toolCallingManager.getClass().getName(), ZhinaoChatProperties.CONFIG_PREFIX);
+        }
 
         ZhinaoChatModel chatModel = ZhinaoChatModel.builder()
                 .zhinaoApi(zhinaoApi)
@@ -89,9 +148,28 @@ public class ZhinaoChatAutoConfiguration {
                 .toolExecutionEligibilityPredicate(
                         toolExecutionEligibilityPredicateProvider.getIfUnique(DefaultToolExecutionEligibilityPredicate::new))
                 .retryTemplate(retryTemplate)
-                .observationRegistry(observationRegistryProvider.getIfUnique(() -> ObservationRegistry.NOOP))
+                .observationRegistry(observationRegistry)
+                .earlyToolExecution(toolExecution.isConcurrent() && toolExecution.isEarly())
+                .toolSelector(toolSelectorProvider.getIfUnique())
+                .schemaMinifier(schemaMinifierProvider.getIfUnique())
+                .toolResponseCompaction(toolResponseCompactionProvider.getIfUnique())
+                .tokenBudget(tokenBudgetProvider.getIfUnique())
+                .contextWindowManager(contextWindowManager)
+                .metrics(metricsProvider.getIfUnique())
+                .usageAccountant(usageAccountantProvider.getIfUnique())
+                .exchangeCapture(exchangeCaptureProvider.getIfUnique())
+                .retryMetrics(retryMetricsProvider.getIfUnique())
+                .streamRetry(chatProperties.getRetry().isStream() ? streamRetry(retryPropertiesProvider.getIfAvailable(SpringAiRetryProperties::new)) : null)
+                .phaseTimeline(chatProperties.getTimeline().isEnabled(), chatProperties.getTimeline().isMetadata())
                 .build();
         observationConventions.ifAvailable(chatModel::setObservationConvention);
+        String summaryModel = chatProperties.getContextWindow().getSummaryModel();
+        if (contextWindowManager != null && StringUtils.hasText(summaryModel)) {
+            contextWindowManager.setSummarizer(chatModel, ZhinaoChatOptions.builder()
+                    .model(summaryModel)
+                    .internalToolExecutionEnabled(false)
+                    .build());
+        }
         return chatModel;
     }
 
@@ -101,11 +179,158 @@ public class ZhinaoChatAutoConfiguration {
         return new RetryTemplate();
     }
 
+    @Bean(name = "zhinaoToolExecutor", destroyMethod = "shutdownNow")
+    @ConditionalOnMissingBean(name = "zhinaoToolExecutor")
+    @ConditionalOnProperty(prefix = ZhinaoChatProperties.CONFIG_PREFIX + ".tool-execution", name = "concurrent", havingValue = "true")
+    public ExecutorService zhinaoToolExecutor(ZhinaoChatProperties chatProperties) {
+        ZhinaoChatProperties.ToolExecution toolExecution = chatProperties.getToolExecution();
+        return toolExecution.isVirtualThreads()
+                ? ZhinaoToolExecutors.virtualThreads(toolExecution.getMaxConcurrency())
+                : ZhinaoToolExecutors.boundedPool(toolExecution.getMaxConcurrency());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = ZhinaoChatProperties.CONFIG_PREFIX + ".tool-execution.cache", name = "enabled", havingValue = "true")
+    public ZhinaoToolResultCache zhinaoToolResultCache(ZhinaoChatProperties chatProperties) {
+        ZhinaoChatProperties.Cache cache = chatProperties.getToolExecution().getCache();
+        return new ZhinaoToolResultCache(cache.getMaxSize(), cache.getTtls());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = ZhinaoChatProperties.CONFIG_PREFIX + ".tool-selection", name = "enabled", havingValue = "true")
+    public ZhinaoToolSelector zhinaoToolSelector(ZhinaoChatProperties chatProperties) {
+        ZhinaoChatProperties.ToolSelection toolSelection = chatProperties.getToolSelection();
+        return new ZhinaoBm25ToolSelector(toolSelection.getTopK(), toolSelection.getAlwaysOn());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = ZhinaoChatProperties.CONFIG_PREFIX + ".tool-schema", name = "minify", havingValue = "true")
+    public ZhinaoToolSchemaMinifier zhinaoToolSchemaMinifier(ZhinaoChatProperties chatProperties) {
+        return new ZhinaoToolSchemaMinifier(chatProperties.getToolSchema().getMaxDescriptionLength());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = ZhinaoChatProperties.CONFIG_PREFIX + ".tool-response-compaction", name = "enabled", havingValue = "true")
+    public ZhinaoToolResponseCompaction zhinaoToolResponseCompaction(ZhinaoChatProperties chatProperties) {
+        ZhinaoChatProperties.ToolResponseCompaction compaction = chatProperties.getToolResponseCompaction();
+        ZhinaoToolResponseCompactor compactor = ZhinaoToolResponseCompactor.project(compaction.getProjections());
+        if (compaction.getMaxLength() > 0) {
+            compactor = compactor.andThen(ZhinaoToolResponseCompactor.truncate(compaction.getMaxLength()));
+        }
+        return new ZhinaoToolResponseCompaction(compactor);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = ZhinaoChatProperties.CONFIG_PREFIX + ".request-encoding", name = "cache-messages", havingValue = "true")
+    public ZhinaoMessageEncodingCache zhinaoMessageEncodingCache(ZhinaoChatProperties chatProperties,
+                                                                 ObjectProvider<ObjectMapper> objectMapperProvider) {
+        return new ZhinaoMessageEncodingCache(objectMapperProvider.getIfUnique(ObjectMapper::new),
+                chatProperties.getRequestEncoding().getMaxMessages());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = ZhinaoChatProperties.CONFIG_PREFIX + ".token-budget", name = "enabled", havingValue = "true")
+    public ZhinaoTokenEstimator zhinaoTokenEstimator(ZhinaoChatProperties chatProperties) {
+        return new ZhinaoTokenEstimator(chatProperties.getTokenBudget().isCalibrate());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = ZhinaoChatProperties.CONFIG_PREFIX + ".token-budget", name = "enabled", havingValue = "true")
+    public ZhinaoTokenBudget zhinaoTokenBudget(ZhinaoChatProperties chatProperties, ZhinaoTokenEstimator tokenEstimator,
+                                               ObjectProvider<ZhinaoTokenRateLimiter> tokenRateLimiterProvider) {
+        ZhinaoChatProperties.TokenBudget tokenBudget = chatProperties.getTokenBudget();
+        ZhinaoTokenRateLimiter rateLimiter = tokenRateLimiterProvider.getIfUnique();
+        if (rateLimiter == null && tokenBudget.getTokensPerMinute() > 0) {
+            rateLimiter = new ZhinaoTokenRateLimiter(tokenBudget.getTokensPerMinute());
+        }
+        return ZhinaoTokenBudget.builder()
+                .estimator(tokenEstimator)
+                .rateLimiter(rateLimiter)
+                .contextWindows(tokenBudget.getContextWindows())
+                .defaultContextWindow(tokenBudget.getDefaultContextWindow())
+                .maxCompletionTokens(tokenBudget.getMaxCompletionTokens())
+                .minCompletionTokens(tokenBudget.getMinCompletionTokens())
+                .build();
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = ZhinaoChatProperties.CONFIG_PREFIX + ".context-window", name = "enabled", havingValue = "true")
+    public ZhinaoContextWindowManager zhinaoContextWindowManager(ZhinaoChatProperties chatProperties,
+                                                                 ObjectProvider<ZhinaoTokenEstimator> tokenEstimatorProvider) {
+        ZhinaoChatProperties.TokenBudget tokenBudget = chatProperties.getTokenBudget();
+        return ZhinaoContextWindowManager.builder()
+                .estimator(tokenEstimatorProvider.getIfUnique(ZhinaoTokenEstimator::new))
+                .contextWindows(tokenBudget.getContextWindows())
+                .defaultContextWindow(tokenBudget.getDefaultContextWindow())
+                .reservedCompletionTokens(tokenBudget.getMaxCompletionTokens())
+                .summaryTokens(chatProperties.getContextWindow().getSummaryTokens())
+                .build();
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = ZhinaoChatProperties.CONFIG_PREFIX + ".metrics", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public ZhinaoMetrics zhinaoMetrics() {
+        return new ZhinaoMetrics();
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = ZhinaoChatProperties.CONFIG_PREFIX + ".retry", name = "observed", havingValue = "true", matchIfMissing = true)
+    public ZhinaoRetryMetrics zhinaoRetryMetrics() {
+        return new ZhinaoRetryMetrics();
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = ZhinaoChatProperties.CONFIG_PREFIX + ".usage", name = "enabled", havingValue = "true")
+    public ZhinaoUsageAccountant zhinaoUsageAccountant(ZhinaoChatProperties chatProperties,
+                                                       ObjectProvider<ZhinaoUsageExporter> usageExporterProvider) {
+        ZhinaoChatProperties.Usage usage = chatProperties.getUsage();
+        ZhinaoUsageAccountant.Builder builder = ZhinaoUsageAccountant.builder()
+                .defaultQuota(usage.getDefaultQuota())
+                .quotas(usage.getQuotas())
+                .quotaPeriod(usage.getQuotaPeriod())
+                .exporter(usageExporterProvider.getIfUnique())
+                .exportInterval(usage.getExportInterval())
+                .maxAccounts(usage.getMaxAccounts());
+        if (StringUtils.hasLength(usage.getTenantDelimiter())) {
+            builder.keyResolver(ZhinaoUsageAccountant.tenantKey(usage.getTenantDelimiter()));
+        }
+        return builder.build();
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = ZhinaoChatProperties.CONFIG_PREFIX + ".capture", name = "enabled", havingValue = "true")
+    public ZhinaoExchangeCapture zhinaoExchangeCapture(ZhinaoChatProperties chatProperties) {
+        ZhinaoChatProperties.Capture capture = chatProperties.getCapture();
+        return ZhinaoExchangeCapture.builder()
+                .capacity(capture.getCapacity())
+                .sampleRate(capture.getSampleRate())
+                .slowThreshold(capture.getSlowThreshold())
+                .redaction(ZhinaoCaptureRedaction.builder()
+                        .fields(capture.getRedactFields())
+                        .patterns(capture.getRedactPatterns())
+                        .mask(capture.getMask())
+                        .build())
+                .build();
+    }
+
     private ZhinaoApi zhinaoApi(ZhinaoCommonProperties commonProperties,
                                 ZhinaoChatProperties chatProperties,
                                 RestClient.Builder restClientBuilder,
                                 WebClient.Builder webClientBuilder,
-                                ResponseErrorHandler responseErrorHandler) {
+                                ResponseErrorHandler responseErrorHandler,
+                                ZhinaoMessageEncodingCache messageEncodingCache) {
 
         String resolvedBaseUrl = StringUtils.hasText(chatProperties.getBaseUrl()) ? chatProperties.getBaseUrl() : commonProperties.getBaseUrl();
         Assert.hasText(resolvedBaseUrl, "Zhinao base url must be set");
@@ -119,6 +344,28 @@ public class ZhinaoChatAutoConfiguration {
                 .restClientBuilder(restClientBuilder)
                 .webClientBuilder(webClientBuilder)
                 .responseErrorHandler(responseErrorHandler)
+                .messageEncodingCache(messageEncodingCache)
                 .build();
     }
+
+    /**
+     * 流式请求沿用 spring.ai.retry 的次数与退避，只重试连接失败与服务端错误
+     */
+    private static RetryBackoffSpec streamRetry(SpringAiRetryProperties retryProperties) {
+        SpringAiRetryProperties.Backoff backoff = retryProperties.getBackoff();
+        return Retry.backoff(Math.max(retryProperties.getMaxAttempts() - 1, 0), backoff.getInitialInterval())
+                .maxBackoff(backoff.getMaxInterval())
+                .filter(ex -> {
+                    if (ex instanceof WebClientResponseException responseException) {
+                        int status = responseException.getStatusCode().value();
+                        if (retryProperties.getExcludeOnHttpCodes().contains(status)) {
+                            return false;
+                        }
+                        return responseException.getStatusCode().is5xxServerError()
+                                || retryProperties.getOnHttpCodes().contains(status);
+                    }
+                    return ex instanceof WebClientRequestException || ex instanceof TransientAiException;
+                })
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure());
+    }
 }
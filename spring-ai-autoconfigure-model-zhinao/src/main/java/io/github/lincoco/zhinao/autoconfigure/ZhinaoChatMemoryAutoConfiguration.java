@@ -0,0 +1,62 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.autoconfigure;
+
+import io.github.lincoco.zhinao.memory.ZhinaoMappedChatMemoryRepository;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.memory.MessageWindowChatMemory;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+
+/**
+ * Registers the off-heap {@link ZhinaoMappedChatMemoryRepository} before the Spring AI chat
+ * memory auto-configuration, so that it replaces the default in-memory repository.
+ *
+ * @author xueyeshang
+ */
+@AutoConfiguration(beforeName = "org.springframework.ai.model.chat.memory.autoconfigure.ChatMemoryAutoConfiguration")
+@EnableConfigurationProperties(ZhinaoChatProperties.class)
+@ConditionalOnClass({ZhinaoMappedChatMemoryRepository.class, ChatMemoryRepository.class})
+@ConditionalOnProperty(prefix = ZhinaoChatProperties.CONFIG_PREFIX + ".memory", name = "enabled", havingValue = "true")
+public class ZhinaoChatMemoryAutoConfiguration {
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnMissingBean
+    public ZhinaoMappedChatMemoryRepository zhinaoChatMemoryRepository(ZhinaoChatProperties chatProperties) {
+        ZhinaoChatProperties.Memory memory = chatProperties.getMemory();
+        return ZhinaoMappedChatMemoryRepository.builder()
+                .directory(memory.getDirectory())
+                .segmentSize(memory.getSegmentSize())
+                .maxResidentConversations(memory.getMaxResidentConversations())
+                .compactionThreshold(memory.getCompactionThreshold())
+                .compactionInterval(memory.getCompactionInterval())
+                .build();
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public ChatMemory chatMemory(ChatMemoryRepository chatMemoryRepository, ZhinaoChatProperties chatProperties) {
+        return MessageWindowChatMemory.builder()
+                .chatMemoryRepository(chatMemoryRepository)
+                .maxMessages(chatProperties.getMemory().getMaxMessages())
+                .build();
+    }
+}
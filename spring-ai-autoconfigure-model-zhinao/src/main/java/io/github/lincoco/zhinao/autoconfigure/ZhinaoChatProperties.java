@@ -17,9 +17,27 @@ package io.github.lincoco.zhinao.autoconfigure;
 
 import io.github.lincoco.zhinao.ZhinaoChatOptions;
 import io.github.lincoco.zhinao.api.ZhinaoApi;
+import io.github.lincoco.zhinao.api.ZhinaoMessageEncodingCache;
+import io.github.lincoco.zhinao.capture.ZhinaoCaptureRedaction;
+import io.github.lincoco.zhinao.capture.ZhinaoExchangeCapture;
+import io.github.lincoco.zhinao.memory.ZhinaoMappedChatMemoryRepository;
+import io.github.lincoco.zhinao.token.ZhinaoContextWindowManager;
+import io.github.lincoco.zhinao.token.ZhinaoTokenBudget;
+import io.github.lincoco.zhinao.tool.ZhinaoBm25ToolSelector;
+import io.github.lincoco.zhinao.tool.ZhinaoToolResultCache;
+import io.github.lincoco.zhinao.usage.ZhinaoUsageAccountant;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.NestedConfigurationProperty;
 
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import static io.github.lincoco.zhinao.api.ZhinaoConstants.DEFAULT_COMPLETIONS_PATH;
 
 /**
@@ -42,6 +60,32 @@ public class ZhinaoChatProperties extends ZhinaoParentProperties {
             .temperature(DEFAULT_TEMPERATURE)
             .build();
 
+    private final ToolExecution toolExecution = new ToolExecution();
+
+    private final ToolSelection toolSelection = new ToolSelection();
+
+    private final ToolSchema toolSchema = new ToolSchema();
+
+    private final ToolResponseCompaction toolResponseCompaction = new ToolResponseCompaction();
+
+    private final RequestEncoding requestEncoding = new RequestEncoding();
+
+    private final TokenBudget tokenBudget = new TokenBudget();
+
+    private final ContextWindow contextWindow = new ContextWindow();
+
+    private final Memory memory = new Memory();
+
+    private final Metrics metrics = new Metrics();
+
+    private final Usage usage = new Usage();
+
+    private final Capture capture = new Capture();
+
+    private final Timeline timeline = new Timeline();
+
+    private final Retry retry = new Retry();
+
     public String getCompletionsPath() {
         return completionsPath;
     }
@@ -57,4 +101,872 @@ public class ZhinaoChatProperties extends ZhinaoParentProperties {
     public void setOptions(ZhinaoChatOptions options) {
         this.options = options;
     }
+
+    public ToolExecution getToolExecution() {
+        return toolExecution;
+    }
+
+    public ToolSelection getToolSelection() {
+        return toolSelection;
+    }
+
+    public ToolSchema getToolSchema() {
+        return toolSchema;
+    }
+
+    public ToolResponseCompaction getToolResponseCompaction() {
+        return toolResponseCompaction;
+    }
+
+    public RequestEncoding getRequestEncoding() {
+        return requestEncoding;
+    }
+
+    public TokenBudget getTokenBudget() {
+        return tokenBudget;
+    }
+
+    public ContextWindow getContextWindow() {
+        return contextWindow;
+    }
+
+    public Memory getMemory() {
+        return memory;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public Usage getUsage() {
+        return usage;
+    }
+
+    public Capture getCapture() {
+        return capture;
+    }
+
+    public Timeline getTimeline() {
+        return timeline;
+    }
+
+    public Retry getRetry() {
+        return retry;
+    }
+
+    public static class ToolExecution {
+
+        /**
+         * Whether the tool calls of one assistant turn are executed concurrently.
+         */
+        private boolean concurrent = false;
+
+        /**
+         * Whether streamed tool calls are started as soon as their arguments are complete,
+         * before the stream finishes. Requires concurrent tool execution.
+         */
+        private boolean early = false;
+
+        /**
+         * Whether tool calls of streamed responses targeting asynchronous tools are executed in
+         * the reactive chain instead of on a blocking thread.
+         */
+        private boolean async = false;
+
+        /**
+         * Whether tool call arguments are validated against the tool input schema, and trivially
+         * broken JSON repaired, before the tool is executed.
+         */
+        private boolean validateArguments = false;
+
+        /**
+         * Maximum number of tool calls executed at the same time.
+         */
+        private int maxConcurrency = 8;
+
+        /**
+         * Whether to run tool calls on virtual threads (Java 21+) instead of a bounded pool.
+         */
+        private boolean virtualThreads = false;
+
+        /**
+         * Default timeout of a single tool call.
+         */
+        private Duration timeout = Duration.ofSeconds(60);
+
+        /**
+         * Per-tool timeouts keyed by tool name, overriding the default timeout.
+         */
+        private Map<String, Duration> timeouts = new HashMap<>();
+
+        /**
+         * Whether tool calls executed one after another, without concurrent execution, are
+         * bounded by their timeouts. They then run on a separate thread instead of the caller's,
+         * so tools no longer see thread-local state such as the security context.
+         */
+        private boolean sequentialTimeouts = false;
+
+        private final Cache cache = new Cache();
+
+        public boolean isConcurrent() {
+            return concurrent;
+        }
+
+        public void setConcurrent(boolean concurrent) {
+            this.concurrent = concurrent;
+        }
+
+        public boolean isEarly() {
+            return early;
+        }
+
+        public void setEarly(boolean early) {
+            this.early = early;
+        }
+
+        public boolean isAsync() {
+            return async;
+        }
+
+        public void setAsync(boolean async) {
+            this.async = async;
+        }
+
+        public boolean isValidateArguments() {
+            return validateArguments;
+        }
+
+        public void setValidateArguments(boolean validateArguments) {
+            this.validateArguments = validateArguments;
+        }
+
+        public int getMaxConcurrency() {
+            return maxConcurrency;
+        }
+
+        public void setMaxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+        }
+
+        public boolean isVirtualThreads() {
+            return virtualThreads;
+        }
+
+        public void setVirtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+        }
+
+        public Duration getTimeout() {
+            return timeout;
+        }
+
+        public void setTimeout(Duration timeout) {
+            this.timeout = timeout;
+        }
+
+        public boolean isSequentialTimeouts() {
+            return sequentialTimeouts;
+        }
+
+        public void setSequentialTimeouts(boolean sequentialTimeouts) {
+            this.sequentialTimeouts = sequentialTimeouts;
+        }
+
+        public Map<String, Duration> getTimeouts() {
+            return timeouts;
+        }
+
+        public void setTimeouts(Map<String, Duration> timeouts) {
+            this.timeouts = timeouts;
+        }
+
+        public Cache getCache() {
+            return cache;
+        }
+    }
+
+    public static class Cache {
+
+        /**
+         * Whether results of cacheable tools are cached by tool name and canonical arguments.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Maximum number of cached tool results.
+         */
+        private int maxSize = ZhinaoToolResultCache.DEFAULT_MAX_SIZE;
+
+        /**
+         * Cache TTLs keyed by tool name, for tools that do not declare their own TTL.
+         */
+        private Map<String, Duration> ttls = new HashMap<>();
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public Map<String, Duration> getTtls() {
+            return ttls;
+        }
+
+        public void setTtls(Map<String, Duration> ttls) {
+            this.ttls = ttls;
+        }
+    }
+
+    public static class ToolSelection {
+
+        /**
+         * Whether only the tools most relevant to the latest user message are sent with a request.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Maximum number of relevant tools sent with a request, besides the always-on tools.
+         */
+        private int topK = ZhinaoBm25ToolSelector.DEFAULT_TOP_K;
+
+        /**
+         * Names of the tools that are always sent.
+         */
+        private Set<String> alwaysOn = new HashSet<>();
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getTopK() {
+            return topK;
+        }
+
+        public void setTopK(int topK) {
+            this.topK = topK;
+        }
+
+        public Set<String> getAlwaysOn() {
+            return alwaysOn;
+        }
+
+        public void setAlwaysOn(Set<String> alwaysOn) {
+            this.alwaysOn = alwaysOn;
+        }
+    }
+
+    public static class ToolSchema {
+
+        /**
+         * Whether tool parameter schemas are minified before they are sent.
+         */
+        private boolean minify = false;
+
+        /**
+         * Maximum length of property descriptions in minified schemas, 0 to keep them intact.
+         */
+        private int maxDescriptionLength = 0;
+
+        public boolean isMinify() {
+            return minify;
+        }
+
+        public void setMinify(boolean minify) {
+            this.minify = minify;
+        }
+
+        public int getMaxDescriptionLength() {
+            return maxDescriptionLength;
+        }
+
+        public void setMaxDescriptionLength(int maxDescriptionLength) {
+            this.maxDescriptionLength = maxDescriptionLength;
+        }
+    }
+
+    public static class ToolResponseCompaction {
+
+        /**
+         * Whether tool responses are compacted before they are sent back to the model.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Maximum length of a tool response, longer responses are truncated. 0 disables truncation.
+         */
+        private int maxLength = 8000;
+
+        /**
+         * JSON pointers of the fields kept from the JSON responses of a tool, keyed by tool name.
+         */
+        private Map<String, List<String>> projections = new HashMap<>();
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxLength() {
+            return maxLength;
+        }
+
+        public void setMaxLength(int maxLength) {
+            this.maxLength = maxLength;
+        }
+
+        public Map<String, List<String>> getProjections() {
+            return projections;
+        }
+
+        public void setProjections(Map<String, List<String>> projections) {
+            this.projections = projections;
+        }
+    }
+
+    public static class RequestEncoding {
+
+        /**
+         * Whether the JSON of already sent messages is cached and reused, so that only new
+         * messages of a conversation are serialized.
+         */
+        private boolean cacheMessages = false;
+
+        /**
+         * Maximum number of cached messages, the least recently used ones are evicted first.
+         */
+        private int maxMessages = ZhinaoMessageEncodingCache.DEFAULT_MAX_SIZE;
+
+        public boolean isCacheMessages() {
+            return cacheMessages;
+        }
+
+        public void setCacheMessages(boolean cacheMessages) {
+            this.cacheMessages = cacheMessages;
+        }
+
+        public int getMaxMessages() {
+            return maxMessages;
+        }
+
+        public void setMaxMessages(int maxMessages) {
+            this.maxMessages = maxMessages;
+        }
+    }
+
+    public static class TokenBudget {
+
+        /**
+         * Whether the prompt tokens of each request are estimated locally before it is sent, to
+         * reject oversize prompts and lower max tokens to the remaining context window.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Whether the local estimator is calibrated from the usage reported by the responses.
+         */
+        private boolean calibrate = true;
+
+        /**
+         * Context window sizes in tokens keyed by model name.
+         */
+        private Map<String, Integer> contextWindows = new HashMap<>();
+
+        /**
+         * Context window size in tokens of models without a configured size.
+         */
+        private int defaultContextWindow = ZhinaoTokenBudget.DEFAULT_CONTEXT_WINDOW;
+
+        /**
+         * Max tokens assumed for requests that do not set it.
+         */
+        private int maxCompletionTokens = ZhinaoTokenBudget.DEFAULT_MAX_COMPLETION_TOKENS;
+
+        /**
+         * Prompts leaving fewer completion tokens in the context window are rejected.
+         */
+        private int minCompletionTokens = ZhinaoTokenBudget.DEFAULT_MIN_COMPLETION_TOKENS;
+
+        /**
+         * Tokens-per-minute limit shared by all requests, 0 for no limit.
+         */
+        private long tokensPerMinute = 0;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public boolean isCalibrate() {
+            return calibrate;
+        }
+
+        public void setCalibrate(boolean calibrate) {
+            this.calibrate = calibrate;
+        }
+
+        public Map<String, Integer> getContextWindows() {
+            return contextWindows;
+        }
+
+        public void setContextWindows(Map<String, Integer> contextWindows) {
+            this.contextWindows = contextWindows;
+        }
+
+        public int getDefaultContextWindow() {
+            return defaultContextWindow;
+        }
+
+        public void setDefaultContextWindow(int defaultContextWindow) {
+            this.defaultContextWindow = defaultContextWindow;
+        }
+
+        public int getMaxCompletionTokens() {
+            return maxCompletionTokens;
+        }
+
+        public void setMaxCompletionTokens(int maxCompletionTokens) {
+            this.maxCompletionTokens = maxCompletionTokens;
+        }
+
+        public int getMinCompletionTokens() {
+            return minCompletionTokens;
+        }
+
+        public void setMinCompletionTokens(int minCompletionTokens) {
+            this.minCompletionTokens = minCompletionTokens;
+        }
+
+        public long getTokensPerMinute() {
+            return tokensPerMinute;
+        }
+
+        public void setTokensPerMinute(long tokensPerMinute) {
+            this.tokensPerMinute = tokensPerMinute;
+        }
+    }
+
+    public static class ContextWindow {
+
+        /**
+         * Whether older turns of the conversation history are dropped to fit the context window
+         * sizes configured under token-budget.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Model used to summarize dropped turns in the background, empty to drop them without summary.
+         */
+        private String summaryModel;
+
+        /**
+         * Tokens left free for the summary when choosing the turns it covers.
+         */
+        private int summaryTokens = ZhinaoContextWindowManager.DEFAULT_SUMMARY_TOKENS;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getSummaryModel() {
+            return summaryModel;
+        }
+
+        public void setSummaryModel(String summaryModel) {
+            this.summaryModel = summaryModel;
+        }
+
+        public int getSummaryTokens() {
+            return summaryTokens;
+        }
+
+        public void setSummaryTokens(int summaryTokens) {
+            this.summaryTokens = summaryTokens;
+        }
+    }
+
+    public static class Memory {
+
+        /**
+         * Whether chat memory is stored off-heap in memory-mapped segment files instead of the
+         * default in-memory repository.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Directory of the segment files.
+         */
+        private Path directory = Path.of("zhinao-chat-memory");
+
+        /**
+         * Size in bytes of each segment file.
+         */
+        private int segmentSize = ZhinaoMappedChatMemoryRepository.DEFAULT_SEGMENT_SIZE;
+
+        /**
+         * Maximum number of conversations whose decoded messages are cached on the heap.
+         */
+        private int maxResidentConversations = ZhinaoMappedChatMemoryRepository.DEFAULT_MAX_RESIDENT_CONVERSATIONS;
+
+        /**
+         * The oldest segment is compacted once the share of its live bytes is at most this ratio.
+         */
+        private double compactionThreshold = ZhinaoMappedChatMemoryRepository.DEFAULT_COMPACTION_THRESHOLD;
+
+        /**
+         * Delay between background compactions, 0 to disable them.
+         */
+        private Duration compactionInterval = ZhinaoMappedChatMemoryRepository.DEFAULT_COMPACTION_INTERVAL;
+
+        /**
+         * Maximum number of messages kept per conversation by the chat memory window.
+         */
+        private int maxMessages = 20;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Path getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(Path directory) {
+            this.directory = directory;
+        }
+
+        public int getSegmentSize() {
+            return segmentSize;
+        }
+
+        public void setSegmentSize(int segmentSize) {
+            this.segmentSize = segmentSize;
+        }
+
+        public int getMaxResidentConversations() {
+            return maxResidentConversations;
+        }
+
+        public void setMaxResidentConversations(int maxResidentConversations) {
+            this.maxResidentConversations = maxResidentConversations;
+        }
+
+        public double getCompactionThreshold() {
+            return compactionThreshold;
+        }
+
+        public void setCompactionThreshold(double compactionThreshold) {
+            this.compactionThreshold = compactionThreshold;
+        }
+
+        public Duration getCompactionInterval() {
+            return compactionInterval;
+        }
+
+        public void setCompactionInterval(Duration compactionInterval) {
+            this.compactionInterval = compactionInterval;
+        }
+
+        public int getMaxMessages() {
+            return maxMessages;
+        }
+
+        public void setMaxMessages(int maxMessages) {
+            this.maxMessages = maxMessages;
+        }
+    }
+
+    public static class Metrics {
+
+        /**
+         * Whether latency, token, finish reason and error meters are recorded for each request.
+         */
+        private boolean enabled = true;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+    }
+
+    public static class Usage {
+
+        /**
+         * Whether the token usage of each request is accounted to its user or tenant.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Delimiter between tenant and user in the user option, to account usage per tenant.
+         * Usage is accounted per user when not set.
+         */
+        private String tenantDelimiter;
+
+        /**
+         * Token quota per period of users or tenants without their own quota, 0 for unlimited.
+         */
+        private long defaultQuota = 0;
+
+        /**
+         * Token quota per period by user or tenant.
+         */
+        private Map<String, Long> quotas = new HashMap<>();
+
+        /**
+         * Length of a quota period.
+         */
+        private Duration quotaPeriod = ZhinaoUsageAccountant.DEFAULT_QUOTA_PERIOD;
+
+        /**
+         * Delay between exports of the usage totals to the ZhinaoUsageExporter bean, 0 to disable them.
+         */
+        private Duration exportInterval = ZhinaoUsageAccountant.DEFAULT_EXPORT_INTERVAL;
+
+        /**
+         * Number of users or tenants above which those without requests in the current quota
+         * period are evicted together with their totals.
+         */
+        private int maxAccounts = ZhinaoUsageAccountant.DEFAULT_MAX_ACCOUNTS;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getTenantDelimiter() {
+            return tenantDelimiter;
+        }
+
+        public void setTenantDelimiter(String tenantDelimiter) {
+            this.tenantDelimiter = tenantDelimiter;
+        }
+
+        public long getDefaultQuota() {
+            return defaultQuota;
+        }
+
+        public void setDefaultQuota(long defaultQuota) {
+            this.defaultQuota = defaultQuota;
+        }
+
+        public Map<String, Long> getQuotas() {
+            return quotas;
+        }
+
+        public void setQuotas(Map<String, Long> quotas) {
+            this.quotas = quotas;
+        }
+
+        public Duration getQuotaPeriod() {
+            return quotaPeriod;
+        }
+
+        public void setQuotaPeriod(Duration quotaPeriod) {
+            this.quotaPeriod = quotaPeriod;
+        }
+
+        public Duration getExportInterval() {
+            return exportInterval;
+        }
+
+        public void setExportInterval(Duration exportInterval) {
+            this.exportInterval = exportInterval;
+        }
+
+        public int getMaxAccounts() {
+            return maxAccounts;
+        }
+
+        public void setMaxAccounts(int maxAccounts) {
+            this.maxAccounts = maxAccounts;
+        }
+    }
+
+    public static class Capture {
+
+        /**
+         * Whether sampled, slow and failed request and response pairs are kept in a ring buffer.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Number of exchanges kept, older ones are overwritten.
+         */
+        private int capacity = ZhinaoExchangeCapture.DEFAULT_CAPACITY;
+
+        /**
+         * Share of all requests captured regardless of latency, between 0 and 1.
+         */
+        private double sampleRate = ZhinaoExchangeCapture.DEFAULT_SAMPLE_RATE;
+
+        /**
+         * Requests taking at least this long are always captured.
+         */
+        private Duration slowThreshold = ZhinaoExchangeCapture.DEFAULT_SLOW_THRESHOLD;
+
+        /**
+         * Names of JSON fields whose values are masked in captured payloads.
+         */
+        private Set<String> redactFields = new HashSet<>(Set.of("user"));
+
+        /**
+         * Regular expressions whose matches are masked in all text values of captured payloads.
+         */
+        private List<String> redactPatterns = new ArrayList<>();
+
+        /**
+         * Replacement of redacted values.
+         */
+        private String mask = ZhinaoCaptureRedaction.DEFAULT_MASK;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public void setCapacity(int capacity) {
+            this.capacity = capacity;
+        }
+
+        public double getSampleRate() {
+            return sampleRate;
+        }
+
+        public void setSampleRate(double sampleRate) {
+            this.sampleRate = sampleRate;
+        }
+
+        public Duration getSlowThreshold() {
+            return slowThreshold;
+        }
+
+        public void setSlowThreshold(Duration slowThreshold) {
+            this.slowThreshold = slowThreshold;
+        }
+
+        public Set<String> getRedactFields() {
+            return redactFields;
+        }
+
+        public void setRedactFields(Set<String> redactFields) {
+            this.redactFields = redactFields;
+        }
+
+        public List<String> getRedactPatterns() {
+            return redactPatterns;
+        }
+
+        public void setRedactPatterns(List<String> redactPatterns) {
+            this.redactPatterns = redactPatterns;
+        }
+
+        public String getMask() {
+            return mask;
+        }
+
+        public void setMask(String mask) {
+            this.mask = mask;
+        }
+    }
+
+    public static class Timeline {
+
+        /**
+         * Whether the phases of each call and stream are timed and added as events to the chat
+         * model observations.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Whether the phase durations of a call are also added to its response metadata.
+         */
+        private boolean metadata = false;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public boolean isMetadata() {
+            return metadata;
+        }
+
+        public void setMetadata(boolean metadata) {
+            this.metadata = metadata;
+        }
+    }
+
+    public static class Retry {
+
+        /**
+         * Whether failed attempts and the retry overhead of calls and streams are recorded as
+         * meters and observation events.
+         */
+        private boolean observed = true;
+
+        /**
+         * Whether streams that fail before their first chunk are retried with the attempts and
+         * backoff of spring.ai.retry. Streams are not retried once a chunk was emitted.
+         */
+        private boolean stream = false;
+
+        public boolean isObserved() {
+            return observed;
+        }
+
+        public void setObserved(boolean observed) {
+            this.observed = observed;
+        }
+
+        public boolean isStream() {
+            return stream;
+        }
+
+        public void setStream(boolean stream) {
+            this.stream = stream;
+        }
+    }
 }
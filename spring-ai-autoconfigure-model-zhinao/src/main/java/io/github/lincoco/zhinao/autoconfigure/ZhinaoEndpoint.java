@@ -0,0 +1,246 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.autoconfigure;
+
+import io.github.lincoco.zhinao.api.ZhinaoMessageEncodingCache;
+import io.github.lincoco.zhinao.capture.ZhinaoExchangeCapture;
+import io.github.lincoco.zhinao.metrics.ZhinaoLatencyHistogram;
+import io.github.lincoco.zhinao.metrics.ZhinaoMetrics;
+import io.github.lincoco.zhinao.token.ZhinaoTokenBudget;
+import io.github.lincoco.zhinao.token.ZhinaoTokenRateLimiter;
+import io.github.lincoco.zhinao.tool.ZhinaoToolCallingManager;
+import io.github.lincoco.zhinao.tool.ZhinaoToolExecutors;
+import io.github.lincoco.zhinao.tool.ZhinaoToolResultCache;
+import io.github.lincoco.zhinao.usage.ZhinaoUsageAccountant;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Predicate;
+
+/**
+ * Actuator endpoint reporting the live state of the Zhinao client at {@code /actuator/zhinao}:
+ * in-flight requests, recent latency percentiles and error ratio, retries, the tool executor
+ * pool, the token rate limiter, the caches, usage accounting and captured exchanges.
+ * <p>
+ * Every value is read from counters the client maintains anyway, nothing is probed or
+ * recomputed from history when the endpoint is called. Sections of components that are not
+ * configured are left out.
+ * </p>
+ * <p>
+ * The write operation changes the limits of the running client without a restart. All given
+ * values are validated before any is applied; each component then switches with a single
+ * volatile write, so requests and streams already in flight finish with the limits they
+ * started with.
+ * </p>
+ *
+ * @author xueyeshang
+ */
+@Endpoint(id = "zhinao")
+public class ZhinaoEndpoint {
+
+    private final ZhinaoMetrics metrics;
+
+    private final ZhinaoTokenBudget tokenBudget;
+
+    private final ExecutorService toolExecutor;
+
+    private final ZhinaoToolResultCache toolResultCache;
+
+    private final ZhinaoMessageEncodingCache messageEncodingCache;
+
+    private final ZhinaoUsageAccountant usageAccountant;
+
+    private final ZhinaoExchangeCapture exchangeCapture;
+
+    private final ZhinaoToolCallingManager toolCallingManager;
+
+    public ZhinaoEndpoint(ZhinaoMetrics metrics, ZhinaoTokenBudget tokenBudget, ExecutorService toolExecutor,
+                          ZhinaoToolResultCache toolResultCache, ZhinaoMessageEncodingCache messageEncodingCache,
+                          ZhinaoUsageAccountant usageAccountant, ZhinaoExchangeCapture exchangeCapture,
+                          ZhinaoToolCallingManager toolCallingManager) {
+        this.metrics = metrics;
+        this.tokenBudget = tokenBudget;
+        this.toolExecutor = toolExecutor;
+        this.toolResultCache = toolResultCache;
+        this.messageEncodingCache = messageEncodingCache;
+        this.usageAccountant = usageAccountant;
+        this.exchangeCapture = exchangeCapture;
+        this.toolCallingManager = toolCallingManager;
+    }
+
+    @ReadOperation
+    public Map<String, Object> state() {
+        Map<String, Object> state = new LinkedHashMap<>();
+        if (this.metrics != null) {
+            Map<String, Object> requests = new LinkedHashMap<>();
+            for (ZhinaoMetrics.Mode mode : ZhinaoMetrics.Mode.values()) {
+                requests.put(mode.name().toLowerCase(Locale.ROOT), requests(mode));
+            }
+            state.put("requests", requests);
+            state.put("retries", this.metrics.retryCount());
+        }
+        if (this.toolExecutor instanceof ThreadPoolExecutor pool) {
+            state.put("toolExecutor", Map.of(
+                    "active", pool.getActiveCount(),
+                    "poolSize", pool.getPoolSize(),
+                    "maxPoolSize", pool.getMaximumPoolSize(),
+                    "queued", pool.getQueue().size()));
+        }
+        ZhinaoTokenRateLimiter rateLimiter = this.tokenBudget != null ? this.tokenBudget.getRateLimiter() : null;
+        if (rateLimiter != null) {
+            state.put("rateLimiter", Map.of(
+                    "tokensPerMinute", rateLimiter.getTokensPerMinute(),
+                    "availableTokens", rateLimiter.availableTokens()));
+        }
+        Map<String, Object> caches = new LinkedHashMap<>();
+        if (this.toolResultCache != null) {
+            caches.put("toolResult", Map.of(
+                    "size", this.toolResultCache.size(),
+                    "hits", this.toolResultCache.hitCount(),
+                    "misses", this.toolResultCache.missCount(),
+                    "evictions", this.toolResultCache.evictionCount(),
+                    "hitRatio", this.toolResultCache.hitRatio()));
+        }
+        if (this.messageEncodingCache != null) {
+            caches.put("messageEncoding", Map.of(
+                    "size", this.messageEncodingCache.size(),
+                    "hits", this.messageEncodingCache.hitCount(),
+                    "misses", this.messageEncodingCache.missCount()));
+        }
+        if (!caches.isEmpty()) {
+            state.put("caches", caches);
+        }
+        if (this.usageAccountant != null) {
+            state.put("usage", Map.of("accounts", this.usageAccountant.accountCount(),
+                    "quotaRejections", this.usageAccountant.getRejections()));
+        }
+        if (this.exchangeCapture != null) {
+            state.put("captures", Map.of("size", this.exchangeCapture.captureCount(),
+                    "capacity", this.exchangeCapture.capacity()));
+        }
+        state.put("limits", limits());
+        return state;
+    }
+
+    /**
+     * 先校验全部参数再逐个应用，任一参数无效时不修改任何限制
+     *
+     * @return the limits after the change.
+     */
+    @WriteOperation
+    public Map<String, Object> tune(@Nullable Long tokensPerMinute, @Nullable Integer toolMaxConcurrency,
+                                    @Nullable Duration toolTimeout, @Nullable Integer toolResultCacheSize,
+                                    @Nullable Double captureSampleRate, @Nullable Duration captureSlowThreshold,
+                                    @Nullable Long defaultQuota) {
+        ZhinaoTokenRateLimiter rateLimiter = this.tokenBudget != null ? this.tokenBudget.getRateLimiter() : null;
+        ThreadPoolExecutor pool = this.toolExecutor instanceof ThreadPoolExecutor executor ? executor : null;
+        require(tokensPerMinute, rateLimiter, "tokensPerMinute", "no token rate limiter is configured",
+                value -> value > 0);
+        require(toolMaxConcurrency, pool, "toolMaxConcurrency", "no bounded tool executor is configured",
+                value -> value > 0);
+        require(toolTimeout, this.toolCallingManager, "toolTimeout", "tool calls are not executed by ZhinaoToolCallingManager",
+                value -> !value.isNegative() && !value.isZero());
+        require(toolResultCacheSize, this.toolResultCache, "toolResultCacheSize", "no tool result cache is configured",
+                value -> value > 0);
+        require(captureSampleRate, this.exchangeCapture, "captureSampleRate", "exchange capture is not enabled",
+                value -> value >= 0 && value <= 1);
+        require(captureSlowThreshold, this.exchangeCapture, "captureSlowThreshold", "exchange capture is not enabled",
+                value -> !value.isNegative());
+        require(defaultQuota, this.usageAccountant, "defaultQuota", "usage accounting is not enabled",
+                value -> value >= 0);
+
+        if (tokensPerMinute != null) {
+            rateLimiter.setTokensPerMinute(tokensPerMinute);
+        }
+        if (toolMaxConcurrency != null) {
+            ZhinaoToolExecutors.resize(pool, toolMaxConcurrency);
+        }
+        if (toolTimeout != null) {
+            this.toolCallingManager.setDefaultTimeout(toolTimeout);
+        }
+        if (toolResultCacheSize != null) {
+            this.toolResultCache.setMaxSize(toolResultCacheSize);
+        }
+        if (captureSampleRate != null) {
+            this.exchangeCapture.setSampleRate(captureSampleRate);
+        }
+        if (captureSlowThreshold != null) {
+            this.exchangeCapture.setSlowThreshold(captureSlowThreshold);
+        }
+        if (defaultQuota != null) {
+            this.usageAccountant.setDefaultQuota(defaultQuota);
+        }
+        return limits();
+    }
+
+    private Map<String, Object> limits() {
+        Map<String, Object> limits = new LinkedHashMap<>();
+        ZhinaoTokenRateLimiter rateLimiter = this.tokenBudget != null ? this.tokenBudget.getRateLimiter() : null;
+        if (rateLimiter != null) {
+            limits.put("tokensPerMinute", rateLimiter.getTokensPerMinute());
+        }
+        if (this.toolExecutor instanceof ThreadPoolExecutor pool) {
+            limits.put("toolMaxConcurrency", pool.getMaximumPoolSize());
+        }
+        if (this.toolCallingManager != null) {
+            limits.put("toolTimeout", this.toolCallingManager.getDefaultTimeout());
+        }
+        if (this.toolResultCache != null) {
+            limits.put("toolResultCacheSize", this.toolResultCache.getMaxSize());
+        }
+        if (this.exchangeCapture != null) {
+            limits.put("captureSampleRate", this.exchangeCapture.getSampleRate());
+            limits.put("captureSlowThreshold", this.exchangeCapture.getSlowThreshold());
+        }
+        if (this.usageAccountant != null) {
+            limits.put("defaultQuota", this.usageAccountant.getDefaultQuota());
+        }
+        return limits;
+    }
+
+    private static <T> void require(T value, Object target, String name, String missing, Predicate<T> valid) {
+        if (value == null) {
+            return;
+        }
+        if (target == null) {
+            throw new InvalidEndpointRequestException("Cannot change " + name + ": " + missing, name + " not tunable");
+        }
+        if (!valid.test(value)) {
+            throw new InvalidEndpointRequestException("Invalid " + name + ": " + value, "Invalid " + name);
+        }
+    }
+
+    private Map<String, Object> requests(ZhinaoMetrics.Mode mode) {
+        ZhinaoLatencyHistogram latency = this.metrics.recentLatency(mode);
+        Map<String, Object> requests = new LinkedHashMap<>();
+        requests.put("inFlight", this.metrics.inFlight(mode));
+        requests.put("recent", latency.count());
+        requests.put("errorRatio", latency.errorRatio());
+        requests.put("p50", latency.percentile(0.5));
+        requests.put("p90", latency.percentile(0.9));
+        requests.put("p99", latency.percentile(0.99));
+        return requests;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.autoconfigure;
+
+import io.github.lincoco.zhinao.metrics.ZhinaoLatencyHistogram;
+import io.github.lincoco.zhinao.metrics.ZhinaoMetrics;
+import io.github.lincoco.zhinao.token.ZhinaoTokenBudget;
+import io.github.lincoco.zhinao.token.ZhinaoTokenRateLimiter;
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.util.Assert;
+
+import java.util.Locale;
+
+/**
+ * Health of the Zhinao client, derived from the requests it sent recently rather than from a
+ * probe request to the API.
+ * <p>
+ * The client is down once at least {@code minRequests} recent calls or streams were sent and
+ * the share of those the API could not serve, answered with a 5xx status or not answered at
+ * all, reached {@code maxErrorRatio}. Rejected requests such as a 4xx do not count, they say
+ * nothing about the API being reachable. In-flight requests, the recent error and unavailable
+ * ratios and the tokens left on the rate limiter are reported as details.
+ * </p>
+ * <p>
+ * The indicator is only registered with {@code management.health.zhinao.enabled=true}, so an
+ * upstream outage does not take the application's own health down unless asked for.
+ * </p>
+ *
+ * @author xueyeshang
+ */
+public class ZhinaoHealthIndicator extends AbstractHealthIndicator {
+
+    public static final int DEFAULT_MIN_REQUESTS = 10;
+
+    public static final double DEFAULT_MAX_ERROR_RATIO = 0.5;
+
+    private final ZhinaoMetrics metrics;
+
+    private final ZhinaoTokenBudget tokenBudget;
+
+    private final int minRequests;
+
+    private final double maxErrorRatio;
+
+    public ZhinaoHealthIndicator(ZhinaoMetrics metrics, ZhinaoTokenBudget tokenBudget, int minRequests, double maxErrorRatio) {
+        super("Zhinao health check failed");
+        Assert.notNull(metrics, "metrics cannot be null");
+        Assert.isTrue(minRequests > 0, "minRequests must be greater than 0");
+        Assert.isTrue(maxErrorRatio > 0 && maxErrorRatio <= 1, "maxErrorRatio must be between 0 and 1");
+        this.metrics = metrics;
+        this.tokenBudget = tokenBudget;
+        this.minRequests = minRequests;
+        this.maxErrorRatio = maxErrorRatio;
+    }
+
+    public ZhinaoHealthIndicator(ZhinaoMetrics metrics, ZhinaoTokenBudget tokenBudget) {
+        this(metrics, tokenBudget, DEFAULT_MIN_REQUESTS, DEFAULT_MAX_ERROR_RATIO);
+    }
+
+    @Override
+    protected void doHealthCheck(Health.Builder builder) {
+        long requests = 0;
+        long errors = 0;
+        long unavailable = 0;
+        for (ZhinaoMetrics.Mode mode : ZhinaoMetrics.Mode.values()) {
+            ZhinaoLatencyHistogram latency = this.metrics.recentLatency(mode);
+            requests += latency.count();
+            errors += latency.errorCount();
+            unavailable += latency.unavailableCount();
+            builder.withDetail(mode.name().toLowerCase(Locale.ROOT) + "InFlight", this.metrics.inFlight(mode));
+        }
+        double errorRatio = requests > 0 ? (double) errors / requests : 0;
+        double unavailableRatio = requests > 0 ? (double) unavailable / requests : 0;
+        builder.withDetail("recentRequests", requests)
+                .withDetail("recentErrorRatio", errorRatio)
+                .withDetail("recentUnavailableRatio", unavailableRatio);
+        ZhinaoTokenRateLimiter rateLimiter = this.tokenBudget != null ? this.tokenBudget.getRateLimiter() : null;
+        if (rateLimiter != null) {
+            builder.withDetail("rateLimiterAvailableTokens", rateLimiter.availableTokens());
+        }
+        if (requests >= this.minRequests && unavailableRatio >= this.maxErrorRatio) {
+            builder.down();
+        } else {
+            builder.up();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.autoconfigure;
+
+import io.github.lincoco.zhinao.api.ZhinaoApi;
+import io.github.lincoco.zhinao.tool.ZhinaoToolArgumentValidator;
+import io.github.lincoco.zhinao.tool.ZhinaoToolCallingManager;
+import io.github.lincoco.zhinao.tool.ZhinaoToolResultCache;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.ai.model.SpringAIModelProperties;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.model.tool.autoconfigure.ToolCallingAutoConfiguration;
+import org.springframework.ai.tool.execution.ToolExecutionExceptionProcessor;
+import org.springframework.ai.tool.resolution.ToolCallbackResolver;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.AnyNestedCondition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Conditional;
+
+import java.util.concurrent.ExecutorService;
+
+import static io.github.lincoco.zhinao.api.ZhinaoConstants.ZHINAO_PROVIDER_NAME;
+
+/**
+ * Publishes a {@link ZhinaoToolCallingManager} as the application's {@link ToolCallingManager}
+ * when concurrent, async or validated tool execution or the tool result cache is configured.
+ * Runs before {@link ToolCallingAutoConfiguration} so its default manager backs off; a
+ * manager defined by the application always wins.
+ *
+ * @author xueyeshang
+ */
+@AutoConfiguration(before = ToolCallingAutoConfiguration.class)
+@EnableConfigurationProperties(ZhinaoChatProperties.class)
+@ConditionalOnClass(ZhinaoApi.class)
+@ConditionalOnProperty(name = SpringAIModelProperties.CHAT_MODEL, havingValue = ZHINAO_PROVIDER_NAME, matchIfMissing = true)
+@Conditional(ZhinaoToolCallingAutoConfiguration.ZhinaoToolExecutionCondition.class)
+public class ZhinaoToolCallingAutoConfiguration {
+
+    @Bean
+    @ConditionalOnMissingBean(ToolCallingManager.class)
+    public ZhinaoToolCallingManager zhinaoToolCallingManager(ZhinaoChatProperties chatProperties,
+                                                             ObjectProvider<ObservationRegistry> observationRegistryProvider,
+                                                             ObjectProvider<ToolCallbackResolver> toolCallbackResolverProvider,
+                                                             ObjectProvider<ToolExecutionExceptionProcessor> toolExecutionExceptionProcessorProvider,
+                                                             @Qualifier("zhinaoToolExecutor") ObjectProvider<ExecutorService> zhinaoToolExecutorProvider,
+                                                             ObjectProvider<ZhinaoToolResultCache> toolResultCacheProvider) {
+        ZhinaoChatProperties.ToolExecution toolExecution = chatProperties.getToolExecution();
+        ZhinaoToolCallingManager.Builder builder = ZhinaoToolCallingManager.builder()
+                .observationRegistry(observationRegistryProvider.getIfUnique(() -> ObservationRegistry.NOOP))
+                .executorService(zhinaoToolExecutorProvider.getIfAvailable())
+                .defaultTimeout(toolExecution.getTimeout())
+                .toolTimeouts(toolExecution.getTimeouts())
+                .toolResultCache(toolResultCacheProvider.getIfAvailable())
+                .argumentValidator(toolExecution.isValidateArguments() ? new ZhinaoToolArgumentValidator() : null)
+                .asyncExecution(toolExecution.isAsync())
+                .sequentialTimeouts(toolExecution.isSequentialTimeouts());
+        toolCallbackResolverProvider.ifAvailable(builder::toolCallbackResolver);
+        toolExecutionExceptionProcessorProvider.ifAvailable(builder::toolExecutionExceptionProcessor);
+        return builder.build();
+    }
+
+    /**
+     * 任一智脑工具执行特性开启时生效
+     */
+    static class ZhinaoToolExecutionCondition extends AnyNestedCondition {
+
+        ZhinaoToolExecutionCondition() {
+            super(ConfigurationPhase.REGISTER_BEAN);
+        }
+
+        @ConditionalOnProperty(prefix = ZhinaoChatProperties.CONFIG_PREFIX + ".tool-execution", name = "concurrent", havingValue = "true")
+        static class Concurrent {
+        }
+
+        @ConditionalOnProperty(prefix = ZhinaoChatProperties.CONFIG_PREFIX + ".tool-execution", name = "async", havingValue = "true")
+        static class Async {
+        }
+
+        @ConditionalOnProperty(prefix = ZhinaoChatProperties.CONFIG_PREFIX + ".tool-execution", name = "validate-arguments", havingValue = "true")
+        static class ValidateArguments {
+        }
+
+        @ConditionalOnProperty(prefix = ZhinaoChatProperties.CONFIG_PREFIX + ".tool-execution.cache", name = "enabled", havingValue = "true")
+        static class ResultCache {
+        }
+    }
+}
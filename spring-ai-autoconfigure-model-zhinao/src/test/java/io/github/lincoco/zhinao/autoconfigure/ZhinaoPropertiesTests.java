@@ -17,13 +17,29 @@ limitations under the License.
 package io.github.lincoco.zhinao.autoconfigure;
 
 import io.github.lincoco.zhinao.ZhinaoChatModel;
+import io.github.lincoco.zhinao.capture.ZhinaoExchangeCapture;
+import io.github.lincoco.zhinao.memory.ZhinaoMappedChatMemoryRepository;
+import io.github.lincoco.zhinao.metrics.ZhinaoRetryMetrics;
+import io.github.lincoco.zhinao.token.ZhinaoTokenBudget;
+import io.github.lincoco.zhinao.tool.ZhinaoToolCallingManager;
+import io.github.lincoco.zhinao.tool.ZhinaoToolResultCache;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.model.tool.ToolCallingManager;
 import org.springframework.ai.retry.autoconfigure.SpringAiRetryAutoConfiguration;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.health.Status;
 import org.springframework.boot.autoconfigure.AutoConfigurations;
 import org.springframework.boot.autoconfigure.web.client.RestClientAutoConfiguration;
 import org.springframework.boot.test.context.runner.ApplicationContextRunner;
 
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class ZhinaoPropertiesTests {
 
@@ -118,6 +134,205 @@ public class ZhinaoPropertiesTests {
 			});
 	}
 
+	@Test
+	public void toolExecutionProperties() {
+
+		new ApplicationContextRunner().withPropertyValues(
+				"spring.ai.zhinao.api-key=API_KEY",
+						"spring.ai.zhinao.chat.tool-execution.concurrent=true",
+						"spring.ai.zhinao.chat.tool-execution.max-concurrency=3",
+						"spring.ai.zhinao.chat.tool-execution.timeout=5s",
+						"spring.ai.zhinao.chat.tool-execution.timeouts.getWeather=2s")
+			.withConfiguration(AutoConfigurations.of(SpringAiRetryAutoConfiguration.class,
+					RestClientAutoConfiguration.class, ZhinaoChatAutoConfiguration.class))
+			.run(context -> {
+				var toolExecution = context.getBean(ZhinaoChatProperties.class).getToolExecution();
+
+				assertThat(toolExecution.isConcurrent()).isTrue();
+				assertThat(toolExecution.getMaxConcurrency()).isEqualTo(3);
+				assertThat(toolExecution.getTimeout()).isEqualTo(Duration.ofSeconds(5));
+				assertThat(toolExecution.getTimeouts()).containsEntry("getWeather", Duration.ofSeconds(2));
+				assertThat(context).hasBean("zhinaoToolExecutor");
+				assertThat(context).hasSingleBean(ToolCallingManager.class);
+				assertThat(context.getBean(ToolCallingManager.class)).isInstanceOf(ZhinaoToolCallingManager.class);
+			});
+	}
+
+	@Test
+	public void toolResultCacheAloneInstallsTheManager() {
+
+		new ApplicationContextRunner().withPropertyValues(
+				"spring.ai.zhinao.api-key=API_KEY",
+						"spring.ai.zhinao.chat.tool-execution.cache.enabled=true")
+			.withConfiguration(AutoConfigurations.of(SpringAiRetryAutoConfiguration.class,
+					RestClientAutoConfiguration.class, ZhinaoChatAutoConfiguration.class))
+			.run(context -> {
+				assertThat(context).hasSingleBean(ZhinaoToolResultCache.class);
+				assertThat(context.getBean(ToolCallingManager.class)).isInstanceOf(ZhinaoToolCallingManager.class);
+			});
+	}
+
+	@Test
+	public void applicationToolCallingManagerIsKept() {
+		ToolCallingManager toolCallingManager = ToolCallingManager.builder().build();
+
+		new ApplicationContextRunner().withPropertyValues(
+				"spring.ai.zhinao.api-key=API_KEY",
+						"spring.ai.zhinao.chat.tool-execution.validate-arguments=true")
+			.withBean(ToolCallingManager.class, () -> toolCallingManager)
+			.withConfiguration(AutoConfigurations.of(SpringAiRetryAutoConfiguration.class,
+					RestClientAutoConfiguration.class, ZhinaoChatAutoConfiguration.class))
+			.run(context -> {
+				assertThat(context).doesNotHaveBean(ZhinaoToolCallingManager.class);
+				assertThat(context.getBean(ToolCallingManager.class)).isSameAs(toolCallingManager);
+			});
+	}
+
+	@Test
+	public void chatMemoryProperties(@TempDir Path directory) {
+
+		new ApplicationContextRunner().withPropertyValues(
+				"spring.ai.zhinao.chat.memory.enabled=true",
+						"spring.ai.zhinao.chat.memory.directory=" + directory,
+						"spring.ai.zhinao.chat.memory.segment-size=1048576",
+						"spring.ai.zhinao.chat.memory.compaction-interval=0",
+						"spring.ai.zhinao.chat.memory.max-messages=6")
+			.withConfiguration(AutoConfigurations.of(ZhinaoChatMemoryAutoConfiguration.class))
+			.run(context -> {
+				var memory = context.getBean(ZhinaoChatProperties.class).getMemory();
+
+				assertThat(memory.getDirectory()).isEqualTo(directory);
+				assertThat(memory.getSegmentSize()).isEqualTo(1048576);
+				assertThat(memory.getCompactionInterval()).isZero();
+				assertThat(context).hasSingleBean(ZhinaoMappedChatMemoryRepository.class);
+				assertThat(context).hasSingleBean(ChatMemory.class);
+			});
+
+		new ApplicationContextRunner()
+			.withConfiguration(AutoConfigurations.of(ZhinaoChatMemoryAutoConfiguration.class))
+			.run(context -> assertThat(context).doesNotHaveBean(ZhinaoMappedChatMemoryRepository.class));
+	}
+
+	@Test
+	public void captureProperties() {
+
+		new ApplicationContextRunner().withPropertyValues(
+				"spring.ai.zhinao.api-key=API_KEY",
+						"spring.ai.zhinao.chat.capture.enabled=true",
+						"spring.ai.zhinao.chat.capture.sample-rate=0.5",
+						"spring.ai.zhinao.chat.capture.slow-threshold=2s",
+						"spring.ai.zhinao.chat.capture.redact-patterns=sk-\\w+",
+						"management.endpoints.web.exposure.include=zhinaocaptures")
+			.withConfiguration(AutoConfigurations.of(SpringAiRetryAutoConfiguration.class,
+					RestClientAutoConfiguration.class, ZhinaoChatAutoConfiguration.class,
+					ZhinaoActuatorAutoConfiguration.class))
+			.run(context -> {
+				var capture = context.getBean(ZhinaoChatProperties.class).getCapture();
+
+				assertThat(capture.getSampleRate()).isEqualTo(0.5);
+				assertThat(capture.getSlowThreshold()).isEqualTo(Duration.ofSeconds(2));
+				assertThat(capture.getRedactFields()).containsExactly("user");
+				assertThat(capture.getRedactPatterns()).containsExactly("sk-\\w+");
+				assertThat(context).hasSingleBean(ZhinaoExchangeCapture.class);
+				assertThat(context).hasSingleBean(ZhinaoCaptureEndpoint.class);
+			});
+
+		new ApplicationContextRunner().withPropertyValues("spring.ai.zhinao.api-key=API_KEY")
+			.withConfiguration(AutoConfigurations.of(SpringAiRetryAutoConfiguration.class,
+					RestClientAutoConfiguration.class, ZhinaoChatAutoConfiguration.class,
+					ZhinaoActuatorAutoConfiguration.class))
+			.run(context -> assertThat(context).doesNotHaveBean(ZhinaoCaptureEndpoint.class));
+	}
+
+	@Test
+	public void retryProperties() {
+
+		new ApplicationContextRunner().withPropertyValues(
+				"spring.ai.zhinao.api-key=API_KEY",
+						"spring.ai.zhinao.chat.retry.stream=true")
+			.withConfiguration(AutoConfigurations.of(SpringAiRetryAutoConfiguration.class,
+					RestClientAutoConfiguration.class, ZhinaoChatAutoConfiguration.class))
+			.run(context -> {
+				var retry = context.getBean(ZhinaoChatProperties.class).getRetry();
+
+				assertThat(retry.isObserved()).isTrue();
+				assertThat(retry.isStream()).isTrue();
+				assertThat(context).hasSingleBean(ZhinaoRetryMetrics.class);
+				assertThat(context).hasSingleBean(ZhinaoChatModel.class);
+			});
+
+		new ApplicationContextRunner().withPropertyValues(
+				"spring.ai.zhinao.api-key=API_KEY",
+						"spring.ai.zhinao.chat.retry.observed=false")
+			.withConfiguration(AutoConfigurations.of(SpringAiRetryAutoConfiguration.class,
+					RestClientAutoConfiguration.class, ZhinaoChatAutoConfiguration.class))
+			.run(context -> assertThat(context).doesNotHaveBean(ZhinaoRetryMetrics.class));
+	}
+
+	@Test
+	public void actuatorEndpointAndHealth() {
+
+		new ApplicationContextRunner().withPropertyValues(
+				"spring.ai.zhinao.api-key=API_KEY",
+						"spring.ai.zhinao.chat.token-budget.enabled=true",
+						"spring.ai.zhinao.chat.token-budget.tokens-per-minute=60000",
+						"management.endpoints.web.exposure.include=zhinao",
+						"management.health.zhinao.enabled=true")
+			.withConfiguration(AutoConfigurations.of(SpringAiRetryAutoConfiguration.class,
+					RestClientAutoConfiguration.class, ZhinaoChatAutoConfiguration.class,
+					ZhinaoActuatorAutoConfiguration.class))
+			.run(context -> {
+				Map<String, Object> state = context.getBean(ZhinaoEndpoint.class).state();
+
+				assertThat(state).containsKeys("requests", "retries", "rateLimiter");
+				assertThat(state).doesNotContainKeys("caches", "usage", "captures");
+				assertThat(context.getBean(ZhinaoHealthIndicator.class).health().getStatus()).isEqualTo(Status.UP);
+			});
+	}
+
+	@Test
+	public void healthIndicatorIsOptIn() {
+
+		new ApplicationContextRunner().withPropertyValues("spring.ai.zhinao.api-key=API_KEY")
+			.withConfiguration(AutoConfigurations.of(SpringAiRetryAutoConfiguration.class,
+					RestClientAutoConfiguration.class, ZhinaoChatAutoConfiguration.class,
+					ZhinaoActuatorAutoConfiguration.class))
+			.run(context -> assertThat(context).doesNotHaveBean(ZhinaoHealthIndicator.class));
+	}
+
+	@Test
+	public void actuatorTunesLimitsAtRuntime() {
+
+		new ApplicationContextRunner().withPropertyValues(
+				"spring.ai.zhinao.api-key=API_KEY",
+						"spring.ai.zhinao.chat.token-budget.enabled=true",
+						"spring.ai.zhinao.chat.token-budget.tokens-per-minute=60000",
+						"spring.ai.zhinao.chat.tool-execution.concurrent=true",
+						"spring.ai.zhinao.chat.tool-execution.max-concurrency=4",
+						"management.endpoints.web.exposure.include=zhinao")
+			.withConfiguration(AutoConfigurations.of(SpringAiRetryAutoConfiguration.class,
+					RestClientAutoConfiguration.class, ZhinaoChatAutoConfiguration.class,
+					ZhinaoActuatorAutoConfiguration.class))
+			.run(context -> {
+				ZhinaoEndpoint endpoint = context.getBean(ZhinaoEndpoint.class);
+
+				// 任一参数无效时不修改任何限制
+				assertThatThrownBy(() -> endpoint.tune(120000L, 8, null, null, 0.5, null, null))
+					.isInstanceOf(InvalidEndpointRequestException.class)
+					.hasMessageContaining("captureSampleRate");
+				assertThat(endpoint.tune(null, null, null, null, null, null, null))
+					.containsEntry("tokensPerMinute", 60000L)
+					.containsEntry("toolMaxConcurrency", 4);
+
+				Map<String, Object> limits = endpoint.tune(120000L, 8, Duration.ofSeconds(5), null, null, null, null);
+
+				assertThat(limits).containsEntry("tokensPerMinute", 120000L)
+					.containsEntry("toolMaxConcurrency", 8)
+					.containsEntry("toolTimeout", Duration.ofSeconds(5));
+				assertThat(context.getBean(ZhinaoTokenBudget.class).getRateLimiter().getTokensPerMinute()).isEqualTo(120000L);
+			});
+	}
+
 	@Test
 	void chatActivation() {
 		new ApplicationContextRunner()
@@ -0,0 +1,135 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao;
+
+import io.github.lincoco.zhinao.api.ZhinaoApi;
+import io.github.lincoco.zhinao.api.ZhinaoConstants;
+import org.springframework.ai.model.ModelOptionsUtils;
+import org.springframework.ai.model.SimpleApiKey;
+import org.springframework.ai.retry.RetryUtils;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Recorded SSE payloads of the chat completions endpoint under {@code fixtures/}, so the
+ * benchmarks run offline:
+ * <ul>
+ *     <li>{@code text-stream}: a plain answer streamed a few characters per chunk, ending with the usage.</li>
+ *     <li>{@code tool-call-stream}: a single tool call whose arguments are streamed in fragments.</li>
+ * </ul>
+ *
+ * @author xueyeshang
+ */
+final class BenchmarkFixtures {
+
+    static final String TEXT_STREAM = "text-stream";
+
+    static final String TOOL_CALL_STREAM = "tool-call-stream";
+
+    private static final String DATA_PREFIX = "data: ";
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * @param name the fixture name.
+     * @return the raw SSE body as sent by the endpoint.
+     */
+    static byte[] sse(String name) {
+        try (InputStream inputStream = new ClassPathResource("fixtures/" + name + ".sse").getInputStream()) {
+            return inputStream.readAllBytes();
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Failed to read fixture " + name, ex);
+        }
+    }
+
+    /**
+     * @param name the fixture name.
+     * @return the JSON of every event, without the closing {@code [DONE]}.
+     */
+    static List<String> events(String name) {
+        return new String(sse(name), StandardCharsets.UTF_8).lines()
+                .filter(line -> line.startsWith(DATA_PREFIX))
+                .map(line -> line.substring(DATA_PREFIX.length()))
+                .filter(data -> !"[DONE]".equals(data))
+                .toList();
+    }
+
+    /**
+     * @param name the fixture name.
+     * @return the decoded chunks, before tool call chunks are merged.
+     */
+    static List<ZhinaoApi.ChatCompletionChunk> chunks(String name) {
+        return events(name).stream()
+                .map(json -> ModelOptionsUtils.jsonToObject(json, ZhinaoApi.ChatCompletionChunk.class))
+                .toList();
+    }
+
+    /**
+     * 通过自定义 ExchangeFunction 回放录制的响应，完整经过 WebClient 的 SSE 解码，但不发起网络请求
+     *
+     * @param name the fixture name.
+     * @return an api answering every stream request with the fixture.
+     */
+    static ZhinaoApi offlineApi(String name) {
+        byte[] body = sse(name);
+        WebClient.Builder webClientBuilder = WebClient.builder()
+                .exchangeFunction(request -> Mono.just(ClientResponse.create(HttpStatus.OK)
+                        .header(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_EVENT_STREAM_VALUE)
+                        .body(Flux.defer(() -> Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(body))))
+                        .build()));
+        return ZhinaoApi.builder()
+                .apiKey(new SimpleApiKey("benchmark"))
+                .webClientBuilder(webClientBuilder)
+                .build();
+    }
+
+    /**
+     * @param chunks the chunks every stream request answers with.
+     * @return an api that skips the http exchange and the decoding.
+     */
+    static ZhinaoApi replayApi(List<ZhinaoApi.ChatCompletionChunk> chunks) {
+        return new ZhinaoApi(ZhinaoConstants.DEFAULT_BASE_URL, new SimpleApiKey("benchmark"), new LinkedMultiValueMap<>(),
+                ZhinaoConstants.DEFAULT_COMPLETIONS_PATH, RestClient.builder(), WebClient.builder(),
+                RetryUtils.DEFAULT_RESPONSE_ERROR_HANDLER) {
+
+            @Override
+            public Flux<ChatCompletionChunk> chatCompletionStream(ChatCompletionRequest chatRequest) {
+                return Flux.fromIterable(chunks);
+            }
+        };
+    }
+
+    static ZhinaoApi.ChatCompletionRequest streamRequest() {
+        return new ZhinaoApi.ChatCompletionRequest(List.of(new ZhinaoApi.ChatCompletionMessage("明天北京的天气怎么样？",
+                ZhinaoApi.ChatCompletionMessage.Role.USER)), ZhinaoApi.DEFAULT_CHAT_MODEL, (Double) null, true);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao;
+
+import io.github.lincoco.zhinao.api.ZhinaoApi;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ZhinaoChatModel#buildRequestPrompt(Prompt)}, the merge of the runtime options
+ * of a prompt into the default options, for short and long conversations.
+ *
+ * @author xueyeshang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BuildRequestPromptBenchmark {
+
+    @Param({"1", "20", "200"})
+    public int messageCount;
+
+    private ZhinaoChatModel chatModel;
+
+    private Prompt prompt;
+
+    @Setup
+    public void setup() {
+        this.chatModel = ZhinaoChatModel.builder()
+                .zhinaoApi(ZhinaoApi.builder().apiKey("benchmark").build())
+                .defaultOptions(ZhinaoChatOptions.builder()
+                        .model(ZhinaoApi.DEFAULT_CHAT_MODEL)
+                        .temperature(0.7)
+                        .maxTokens(1024)
+                        .toolCallbacks(CreateRequestBenchmark.weatherTool())
+                        .build())
+                .build();
+        this.prompt = new Prompt(CreateRequestBenchmark.conversation(this.messageCount), ZhinaoChatOptions.builder()
+                .temperature(0.2)
+                .user("benchmark")
+                .build());
+    }
+
+    @Benchmark
+    public Prompt buildRequestPrompt() {
+        return this.chatModel.buildRequestPrompt(this.prompt);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao;
+
+import io.github.lincoco.zhinao.api.ZhinaoApi;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ZhinaoChatModel#createRequest(Prompt, boolean)} for short and long
+ * conversations. {@link ZhinaoBenchmarks} adds the GC profiler to track the allocations per
+ * request ({@code gc.alloc.rate.norm}):
+ * <pre>
+ * mvn -Pbenchmarks -pl zhinao-core,zhinao-benchmarks package
+ * java -jar zhinao-benchmarks/target/benchmarks.jar CreateRequestBenchmark
+ * </pre>
+ *
+ * @author xueyeshang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CreateRequestBenchmark {
+
+    @Param({"1", "20", "200"})
+    public int messageCount;
+
+    private ZhinaoChatModel chatModel;
+
+    private Prompt prompt;
+
+    @Setup
+    public void setup() {
+        this.chatModel = ZhinaoChatModel.builder()
+                .zhinaoApi(ZhinaoApi.builder().apiKey("benchmark").build())
+                .defaultOptions(ZhinaoChatOptions.builder()
+                        .model(ZhinaoApi.DEFAULT_CHAT_MODEL)
+                        .temperature(0.7)
+                        .maxTokens(1024)
+                        .toolCallbacks(weatherTool())
+                        .build())
+                .build();
+        this.prompt = this.chatModel.buildRequestPrompt(new Prompt(conversation(this.messageCount)));
+    }
+
+    @Benchmark
+    public ZhinaoApi.ChatCompletionRequest createRequest() {
+        return this.chatModel.createRequest(this.prompt, false);
+    }
+
+    /**
+     * 构造指定条数的对话：系统消息开头，之后用户、助手消息交替，每 10 条插入一次工具调用
+     */
+    static List<Message> conversation(int messageCount) {
+        List<Message> messages = new ArrayList<>(messageCount);
+        if (messageCount > 1) {
+            messages.add(new SystemMessage("You are a helpful assistant. Answer in the language of the question."));
+        }
+        for (int i = messages.size(); messages.size() < messageCount; i++) {
+            if (i % 10 == 8 && messages.size() + 2 <= messageCount) {
+                String id = "call_" + i;
+                messages.add(new AssistantMessage("", Map.of(),
+                        List.of(new AssistantMessage.ToolCall(id, "function", "getWeather", "{\"city\":\"北京\"}"))));
+                messages.add(new ToolResponseMessage(List.of(
+                        new ToolResponseMessage.ToolResponse(id, "getWeather", "{\"city\":\"北京\",\"weather\":\"晴\",\"temperature\":21}"))));
+            } else if (messages.size() % 2 == (messageCount > 1 ? 1 : 0)) {
+                messages.add(new UserMessage("第 " + i + " 个问题：明天北京的天气怎么样？需要带伞吗？"));
+            } else {
+                messages.add(new AssistantMessage("明天北京晴，最高气温 21 度，不需要带伞。这是第 " + i + " 个回答。"));
+            }
+        }
+        return messages;
+    }
+
+    static ToolCallback weatherTool() {
+        ToolDefinition toolDefinition = ToolDefinition.builder()
+                .name("getWeather")
+                .description("Get the weather forecast of a city")
+                .inputSchema("{\"type\":\"object\",\"properties\":{\"city\":{\"type\":\"string\",\"description\":\"City name\"}},\"required\":[\"city\"]}")
+                .build();
+        return new ToolCallback() {
+            @Override
+            public ToolDefinition getToolDefinition() {
+                return toolDefinition;
+            }
+
+            @Override
+            public String call(String toolInput) {
+                return "{\"weather\":\"晴\"}";
+            }
+        };
+    }
+}
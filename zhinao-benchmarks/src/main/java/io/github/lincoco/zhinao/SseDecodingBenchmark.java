@@ -0,0 +1,78 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao;
+
+import io.github.lincoco.zhinao.api.ZhinaoApi;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.ai.model.ModelOptionsUtils;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the decoding of a recorded stream: {@code decodeStream} replays the SSE body through
+ * {@link ZhinaoApi#chatCompletionStream(ZhinaoApi.ChatCompletionRequest)}, from the WebClient
+ * SSE reader to the merged chunks, and {@code parseChunks} only the JSON parsing of the events.
+ *
+ * @author xueyeshang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SseDecodingBenchmark {
+
+    @Param({BenchmarkFixtures.TEXT_STREAM, BenchmarkFixtures.TOOL_CALL_STREAM})
+    public String fixture;
+
+    private ZhinaoApi zhinaoApi;
+
+    private ZhinaoApi.ChatCompletionRequest request;
+
+    private List<String> events;
+
+    @Setup
+    public void setup() {
+        this.zhinaoApi = BenchmarkFixtures.offlineApi(this.fixture);
+        this.request = BenchmarkFixtures.streamRequest();
+        this.events = BenchmarkFixtures.events(this.fixture);
+    }
+
+    @Benchmark
+    public List<ZhinaoApi.ChatCompletionChunk> decodeStream() {
+        return this.zhinaoApi.chatCompletionStream(this.request).collectList().block();
+    }
+
+    @Benchmark
+    public void parseChunks(Blackhole blackhole) {
+        for (String event : this.events) {
+            blackhole.consume(ModelOptionsUtils.jsonToObject(event, ZhinaoApi.ChatCompletionChunk.class));
+        }
+    }
+}
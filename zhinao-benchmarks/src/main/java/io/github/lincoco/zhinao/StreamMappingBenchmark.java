@@ -0,0 +1,80 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao;
+
+import io.github.lincoco.zhinao.api.ZhinaoApi;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-chunk {@link ChatResponse} mapping of {@link ZhinaoChatModel#stream(Prompt)}
+ * for a recorded stream. The chunks are decoded once up front and replayed without the http
+ * exchange, so only the model side of the stream is measured. Tool calls are returned to the
+ * caller instead of executed.
+ *
+ * @author xueyeshang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamMappingBenchmark {
+
+    @Param({BenchmarkFixtures.TEXT_STREAM, BenchmarkFixtures.TOOL_CALL_STREAM})
+    public String fixture;
+
+    private ZhinaoChatModel chatModel;
+
+    private Prompt prompt;
+
+    @Setup
+    public void setup() {
+        List<ZhinaoApi.ChatCompletionChunk> chunks = BenchmarkFixtures.offlineApi(this.fixture)
+                .chatCompletionStream(BenchmarkFixtures.streamRequest())
+                .collectList()
+                .block();
+        this.chatModel = ZhinaoChatModel.builder()
+                .zhinaoApi(BenchmarkFixtures.replayApi(chunks))
+                .defaultOptions(ZhinaoChatOptions.builder()
+                        .model(ZhinaoApi.DEFAULT_CHAT_MODEL)
+                        .toolCallbacks(CreateRequestBenchmark.weatherTool())
+                        .internalToolExecutionEnabled(false)
+                        .build())
+                .build();
+        this.prompt = new Prompt("明天北京的天气怎么样？");
+    }
+
+    @Benchmark
+    public List<ChatResponse> stream() {
+        return this.chatModel.stream(this.prompt).collectList().block();
+    }
+}
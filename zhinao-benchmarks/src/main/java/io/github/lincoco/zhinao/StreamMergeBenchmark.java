@@ -0,0 +1,65 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao;
+
+import io.github.lincoco.zhinao.api.ZhinaoApi;
+import io.github.lincoco.zhinao.api.ZhinaoStreamFunctionCallingHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ZhinaoStreamFunctionCallingHelper#merge} folding the fragments of a recorded
+ * tool call stream into one chunk, the same way the stream of the api reduces a tool call window.
+ *
+ * @author xueyeshang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamMergeBenchmark {
+
+    private final ZhinaoStreamFunctionCallingHelper chunkMerge = new ZhinaoStreamFunctionCallingHelper();
+
+    private List<ZhinaoApi.ChatCompletionChunk> chunks;
+
+    @Setup
+    public void setup() {
+        this.chunks = BenchmarkFixtures.chunks(BenchmarkFixtures.TOOL_CALL_STREAM);
+    }
+
+    @Benchmark
+    public ZhinaoApi.ChatCompletionChunk merge() {
+        ZhinaoApi.ChatCompletionChunk merged = new ZhinaoApi.ChatCompletionChunk(null, null, null, null, null, null);
+        for (ZhinaoApi.ChatCompletionChunk chunk : this.chunks) {
+            merged = this.chunkMerge.merge(merged, chunk);
+        }
+        return merged;
+    }
+}
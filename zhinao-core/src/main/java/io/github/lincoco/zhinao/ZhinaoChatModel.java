@@ -17,12 +17,27 @@ package io.github.lincoco.zhinao;
 
 import io.github.lincoco.zhinao.api.ZhinaoApi;
 import io.github.lincoco.zhinao.api.ZhinaoConstants;
+import io.github.lincoco.zhinao.api.ZhinaoMessageEncodingCache;
+import io.github.lincoco.zhinao.capture.ZhinaoExchangeCapture;
+import io.github.lincoco.zhinao.jfr.ZhinaoRetryEvent;
+import io.github.lincoco.zhinao.metrics.ZhinaoMetrics;
+import io.github.lincoco.zhinao.metrics.ZhinaoPhaseTimeline;
+import io.github.lincoco.zhinao.metrics.ZhinaoRetryMetrics;
+import io.github.lincoco.zhinao.token.ZhinaoContextWindowManager;
+import io.github.lincoco.zhinao.token.ZhinaoTokenBudget;
+import io.github.lincoco.zhinao.tool.ZhinaoToolCallingManager;
+import io.github.lincoco.zhinao.tool.ZhinaoToolResponseCompaction;
+import io.github.lincoco.zhinao.tool.ZhinaoToolSchemaMinifier;
+import io.github.lincoco.zhinao.tool.ZhinaoToolSelector;
+import io.github.lincoco.zhinao.usage.ZhinaoQuotaExceededException;
+import io.github.lincoco.zhinao.usage.ZhinaoUsageAccountant;
 import io.micrometer.observation.Observation;
 import io.micrometer.observation.ObservationRegistry;
 import io.micrometer.observation.contextpropagation.ObservationThreadLocalAccessor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.MessageType;
 import org.springframework.ai.chat.messages.ToolResponseMessage;
 import org.springframework.ai.chat.metadata.*;
@@ -42,14 +57,25 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.retry.support.RetryTemplate;
 import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
+import org.springframework.util.ConcurrentReferenceHashMap;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
 import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.RetryBackoffSpec;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * ZhinaoChatModel is a {@link ChatModel} implementation that uses the Zhinao
@@ -71,6 +97,39 @@ public class ZhinaoChatModel implements ChatModel, StreamingChatModel {
 
     private ChatModelObservationConvention observationConvention = DEFAULT_OBSERVATION_CONVENTION;
 
+    private boolean earlyToolExecution = false;
+
+    private ZhinaoToolSelector toolSelector;
+
+    private ZhinaoToolSchemaMinifier schemaMinifier;
+
+    private ZhinaoToolResponseCompaction toolResponseCompaction;
+
+    private ZhinaoTokenBudget tokenBudget;
+
+    private ZhinaoContextWindowManager contextWindowManager;
+
+    private ZhinaoMetrics metrics;
+
+    private ZhinaoUsageAccountant usageAccountant;
+
+    private ZhinaoExchangeCapture exchangeCapture;
+
+    private ZhinaoRetryMetrics retryMetrics;
+
+    private RetryBackoffSpec streamRetry;
+
+    private boolean phaseTimeline = false;
+
+    private boolean phaseTimelineMetadata = false;
+
+    private final ZhinaoChatOptionsMerger optionsMerger = new ZhinaoChatOptionsMerger();
+
+    /**
+     * 按 ToolDefinition 缓存转换后的 FunctionTool，内存紧张时可被回收
+     */
+    private final Map<ToolDefinition, CachedFunctionTool> functionToolCache = new ConcurrentReferenceHashMap<>();
+
 
     public ZhinaoChatModel(ZhinaoApi zhinaoApi, ZhinaoChatOptions defaultOptions,
                            ToolCallingManager toolCallingManager,RetryTemplate retryTemplate,
@@ -97,12 +156,21 @@ public class ZhinaoChatModel implements ChatModel, StreamingChatModel {
 
     @Override
     public ChatResponse call(Prompt prompt) {
-        Prompt requestPrompt = buildRequestPrompt(prompt);
-        return this.internalCall(requestPrompt, null);
+        ZhinaoPhaseTimeline timeline = newTimeline();
+        Prompt requestPrompt = applyContextWindow(buildRequestPrompt(prompt, timeline), timeline);
+        ChatResponse response = this.internalCall(requestPrompt, null, timeline);
+        if (this.phaseTimelineMetadata && timeline.isEnabled()) {
+            return ChatResponse.builder().from(response).metadata(ZhinaoPhaseTimeline.METADATA_KEY, timeline.toMap()).build();
+        }
+        return response;
     }
 
-    private ChatResponse internalCall(Prompt prompt, ChatResponse previousChatResponse) {
-        ZhinaoApi.ChatCompletionRequest request = createRequest(prompt, false);
+    private ChatResponse internalCall(Prompt prompt, ChatResponse previousChatResponse, ZhinaoPhaseTimeline timeline) {
+        ZhinaoTokenBudget.Reservation reservation = reserveTokens(createRequest(prompt, false, timeline), timeline);
+        ZhinaoUsageAccountant.Reservation quota = reserveQuota(reservation);
+        ZhinaoApi.ChatCompletionRequest request = reservation.request();
+        awaitRateLimit(reservation.delay(), timeline);
+        ZhinaoMetrics.Sample sample = metricsSample(request, ZhinaoMetrics.Mode.CALL);
         ChatModelObservationContext observationContext = ChatModelObservationContext.builder()
                 .prompt(prompt)
                 .provider(ZhinaoConstants.ZHINAO_PROVIDER_NAME)
@@ -110,16 +178,53 @@ public class ZhinaoChatModel implements ChatModel, StreamingChatModel {
         ChatResponse response = ChatModelObservationDocumentation.CHAT_MODEL_OPERATION
                 .observation(this.observationConvention, DEFAULT_OBSERVATION_CONVENTION, () -> observationContext, this.observationRegistry)
                 .observe(() -> {
-                    ResponseEntity<ZhinaoApi.ChatCompletion> completionEntity = this.retryTemplate.execute(ctx -> this.zhinaoApi.chatCompletionEntity(request));
+                    sample.start();
+                    ZhinaoExchangeCapture.Exchange exchange = beginCapture(request);
+                    ResponseEntity<ZhinaoApi.ChatCompletion> completionEntity;
+                    ZhinaoRetryMetrics.Attempts attempts = retryAttempts(request, ZhinaoMetrics.Mode.CALL,
+                            this.observationRegistry.getCurrentObservation());
+                    long exchangeBegin = timeline.begin();
+                    try {
+                        completionEntity = this.retryTemplate.execute(ctx -> {
+                            attempts.started();
+                            if (ctx.getRetryCount() > 0) {
+                                ZhinaoRetryEvent.record(request.model(), ctx.getRetryCount(), ctx.getLastThrowable());
+                                if (this.metrics != null) {
+                                    this.metrics.recordRetry(request.model());
+                                }
+                            }
+                            try {
+                                return this.zhinaoApi.chatCompletionEntity(request);
+                            } catch (RuntimeException ex) {
+                                attempts.failed(ex);
+                                throw ex;
+                            }
+                        });
+                        attempts.closed(SignalType.ON_COMPLETE);
+                    } catch (RuntimeException ex) {
+                        attempts.closed(SignalType.ON_ERROR);
+                        exchange.fail(ex);
+                        recordTokenUsage(reservation, quota, null);
+                        sample.error(ex);
+                        throw ex;
+                    } finally {
+                        timeline.end(ZhinaoPhaseTimeline.Phase.EXCHANGE, exchangeBegin);
+                    }
+                    exchange.complete(completionEntity.getBody());
+                    long mappingBegin = timeline.begin();
 
                     ZhinaoApi.ChatCompletion chatCompletion = completionEntity.getBody();
                     if (chatCompletion == null) {
                         logger.warn("No chat completion returned for prompt: {}", prompt);
+                        recordTokenUsage(reservation, quota, null);
+                        sample.success(null, List.of());
                         return new ChatResponse(List.of());
                     }
                     List<ZhinaoApi.Choice> choices = chatCompletion.choices();
                     if (choices == null) {
                         logger.warn("No choices returned for prompt: {}", prompt);
+                        recordTokenUsage(reservation, quota, chatCompletion.usage());
+                        sample.success(chatCompletion.usage(), List.of());
                         return new ChatResponse(List.of());
                     }
                     List<Generation> generations = choices.stream().map(choice -> {
@@ -133,14 +238,22 @@ public class ZhinaoChatModel implements ChatModel, StreamingChatModel {
                     }).toList();
                     // 当前的token消耗量
                     ZhinaoApi.Usage usage = chatCompletion.usage();
+                    recordTokenUsage(reservation, quota, usage);
+                    sample.success(usage, choices.stream()
+                            .map(choice -> choice.finishReason() != null ? choice.finishReason().name() : "none")
+                            .toList());
                     Usage currentChatResponseUsage = usage != null ? getDefaultUsage(usage) : new EmptyUsage();
                     Usage accumulatedUsage = UsageCalculator.getCumulativeUsage(currentChatResponseUsage, previousChatResponse);
                     ChatResponse chatResponse = new ChatResponse(generations, from(chatCompletion, accumulatedUsage));
                     observationContext.setResponse(chatResponse);
+                    timeline.end(ZhinaoPhaseTimeline.Phase.RESPONSE_MAPPING, mappingBegin);
+                    timeline.emitEvents(this.observationRegistry.getCurrentObservation());
                     return chatResponse;
                 });
         if (this.toolExecutionEligibilityPredicate.isToolExecutionRequired(prompt.getOptions(), response)) {
+            long toolBegin = timeline.begin();
             ToolExecutionResult toolExecutionResult = this.toolCallingManager.executeToolCalls(prompt, response);
+            timeline.end(ZhinaoPhaseTimeline.Phase.TOOL_EXECUTION, toolBegin);
             if (toolExecutionResult.returnDirect()) {
                 // Return tool execution result directly to the client.
                 return ChatResponse.builder()
@@ -149,7 +262,8 @@ public class ZhinaoChatModel implements ChatModel, StreamingChatModel {
                         .build();
             } else {
                 // Send the tool execution result back to the model.
-                return this.internalCall(new Prompt(toolExecutionResult.conversationHistory(), prompt.getOptions()), response);
+                recordToolRound(request, ZhinaoMetrics.Mode.CALL);
+                return this.internalCall(nextRoundPrompt(prompt, toolExecutionResult, timeline), response, timeline);
             }
         }
         return response;
@@ -166,17 +280,27 @@ public class ZhinaoChatModel implements ChatModel, StreamingChatModel {
 
     @Override
     public Flux<ChatResponse> stream(Prompt prompt) {
-        Prompt requestPrompt = buildRequestPrompt(prompt);
-        return internalStream(requestPrompt, null);
+        ZhinaoPhaseTimeline timeline = newTimeline();
+        Prompt requestPrompt = applyContextWindow(buildRequestPrompt(prompt, timeline), timeline);
+        return internalStream(requestPrompt, null, timeline);
     }
 
     public Flux<ChatResponse> internalStream(Prompt prompt, ChatResponse previousChatResponse) {
-        return Flux.deferContextual(contextView -> {
-            ZhinaoApi.ChatCompletionRequest request = createRequest(prompt, true);
-            Flux<ZhinaoApi.ChatCompletionChunk> completionChunks = this.zhinaoApi.chatCompletionStream(request);
-
-            ConcurrentHashMap<String, String> roleMap = new ConcurrentHashMap<>();
+        return internalStream(prompt, previousChatResponse, newTimeline());
+    }
 
+    private Flux<ChatResponse> internalStream(Prompt prompt, ChatResponse previousChatResponse, ZhinaoPhaseTimeline timeline) {
+        return Flux.deferContextual(contextView -> {
+            ZhinaoTokenBudget.Reservation reservation = reserveTokens(createRequest(prompt, true, timeline), timeline);
+            ZhinaoUsageAccountant.Reservation quota = reserveQuota(reservation);
+            ZhinaoApi.ChatCompletionRequest request = reservation.request();
+            ZhinaoToolCallingManager.StartedToolCalls startedToolCalls = isEarlyToolExecution(prompt)
+                    ? new ZhinaoToolCallingManager.StartedToolCalls() : null;
+            Flux<ZhinaoApi.ChatCompletionChunk> completionChunks = startedToolCalls == null
+                    ? this.zhinaoApi.chatCompletionStream(request)
+                    : this.zhinaoApi.chatCompletionStream(request, toolCall -> ((ZhinaoToolCallingManager) this.toolCallingManager)
+                            .startToolCall(prompt, new AssistantMessage.ToolCall(toolCall.id(), toolCall.type(),
+                                    toolCall.function().name(), toolCall.function().arguments()), startedToolCalls));
             ChatModelObservationContext observationContext = ChatModelObservationContext.builder()
                     .prompt(prompt)
                     .provider(ZhinaoConstants.ZHINAO_PROVIDER_NAME)
@@ -187,14 +311,43 @@ public class ZhinaoChatModel implements ChatModel, StreamingChatModel {
             );
             observation.parentObservation(contextView.getOrDefault(ObservationThreadLocalAccessor.KEY, null)).start();
 
+            completionChunks = retryStream(completionChunks, request, observation);
+            ZhinaoMetrics.Sample sample = metricsSample(request, ZhinaoMetrics.Mode.STREAM);
+            ZhinaoExchangeCapture.Exchange exchange = beginCapture(request);
+            completionChunks = completionChunks.doOnSubscribe(subscription -> {
+                        sample.start();
+                        exchange.start();
+                        timeline.begin(ZhinaoPhaseTimeline.Phase.EXCHANGE);
+                    })
+                    .doOnNext(chunk -> {
+                        exchange.chunk(chunk);
+                        // 仅携带 usage 的结尾分块不计入
+                        if (!CollectionUtils.isEmpty(chunk.choices())) {
+                            sample.chunk();
+                        }
+                    });
+            if (!reservation.delay().isZero()) {
+                timeline.add(ZhinaoPhaseTimeline.Phase.RATE_LIMIT, reservation.delay().toNanos());
+                // 等待限流额度，不阻塞线程
+                completionChunks = Mono.delay(reservation.delay()).thenMany(completionChunks);
+            }
+            AtomicReference<ZhinaoApi.Usage> streamUsage = new AtomicReference<>();
+            Set<String> finishReasons = ConcurrentHashMap.newKeySet();
+
+            ConcurrentHashMap<String, String> roleMap = new ConcurrentHashMap<>();
+
             Flux<ChatResponse> chatResponse = completionChunks.map(this::chunkToChatCompletion)
                     .switchMap(chatCompletion -> Mono.just(chatCompletion).map(chatCompletion2 -> {
+                        long mappingBegin = timeline.begin();
                         try {
                             String id = chatCompletion2.id();
                             List<Generation> generations = chatCompletion2.choices().stream().map(choice -> {
                                 if (choice.message().role() != null) {
                                     roleMap.putIfAbsent(id, choice.message().role().name());
                                 }
+                                if (choice.finishReason() != null) {
+                                    finishReasons.add(choice.finishReason().name());
+                                }
                                 Map<String, Object> metadata = Map.of(
                                         "id", chatCompletion2.id(),
                                         "role", roleMap.getOrDefault(id, ""),
@@ -203,35 +356,261 @@ public class ZhinaoChatModel implements ChatModel, StreamingChatModel {
                                 return buildGeneration(choice, metadata);
                             }).toList();
                             ZhinaoApi.Usage usage = chatCompletion2.usage();
+                            if (usage != null) {
+                                streamUsage.set(usage);
+                            }
                             Usage currentUsage = (usage != null) ? getDefaultUsage(usage) : new EmptyUsage();
                             Usage cumulativeUsage = UsageCalculator.getCumulativeUsage(currentUsage, previousChatResponse);
                             return new ChatResponse(generations, from(chatCompletion2, cumulativeUsage));
                         } catch (Exception e) {
                             logger.error("Error processing chat completion: ", e);
                             return new ChatResponse(List.of());
+                        } finally {
+                            timeline.end(ZhinaoPhaseTimeline.Phase.RESPONSE_MAPPING, mappingBegin);
                         }
-                    }));
+                    })).doOnError(ex -> {
+                        sample.error(ex);
+                        exchange.fail(ex);
+                    }).doFinally(signal -> {
+                        exchange.complete(null);
+                        timeline.end(ZhinaoPhaseTimeline.Phase.EXCHANGE);
+                        timeline.emitEvents(observation);
+                        recordTokenUsage(reservation, quota, streamUsage.get());
+                        if (signal == SignalType.CANCEL) {
+                            sample.cancel();
+                        } else {
+                            sample.success(streamUsage.get(), finishReasons);
+                        }
+                    });
 
             Flux<ChatResponse> flux = chatResponse.flatMap(response -> {
                 if (this.toolExecutionEligibilityPredicate.isToolExecutionRequired(prompt.getOptions(), response)) {
-                    return Flux.defer(() -> {
-                        ToolExecutionResult toolExecutionResult = this.toolCallingManager.executeToolCalls(prompt, response);
-                        if (toolExecutionResult.returnDirect()) {
-                            return Flux.just(ChatResponse.builder().from(response)
-                                    .generations(ToolExecutionResult.buildGenerations(toolExecutionResult)).build());
-                        } else {
-                            return this.internalStream(new Prompt(toolExecutionResult.conversationHistory(), prompt.getOptions()), response);
+                    if (this.toolCallingManager instanceof ZhinaoToolCallingManager zhinaoToolCallingManager
+                            && zhinaoToolCallingManager.supportsAsyncExecution(prompt, response)) {
+                        // 异步工具直接在响应式链路中执行，不占用线程
+                        Mono<ToolExecutionResult> toolExecution = zhinaoToolCallingManager.executeToolCallsAsync(prompt, response)
+                                .doOnSubscribe(subscription -> timeline.begin(ZhinaoPhaseTimeline.Phase.TOOL_EXECUTION))
+                                .doFinally(signal -> timeline.end(ZhinaoPhaseTimeline.Phase.TOOL_EXECUTION));
+                        if (this.toolResponseCompaction != null) {
+                            // 压缩策略可能阻塞（例如调用模型总结），不能在异步工具完成的线程上执行
+                            toolExecution = toolExecution.publishOn(Schedulers.boundedElastic());
                         }
+                        return toolExecution.flatMapMany(toolExecutionResult -> toolExecutionResponse(prompt, request, response, toolExecutionResult, timeline));
+                    }
+                    return Flux.defer(() -> {
+                        long toolBegin = timeline.begin();
+                        ToolExecutionResult toolExecutionResult = startedToolCalls != null
+                                ? ((ZhinaoToolCallingManager) this.toolCallingManager).executeToolCalls(prompt, response, startedToolCalls)
+                                : this.toolCallingManager.executeToolCalls(prompt, response);
+                        timeline.end(ZhinaoPhaseTimeline.Phase.TOOL_EXECUTION, toolBegin);
+                        return toolExecutionResponse(prompt, request, response, toolExecutionResult, timeline);
                     }).subscribeOn(Schedulers.boundedElastic());
                 } else {
                     return Flux.just(response);
                 }
-            }).doOnError(observation::error).doFinally(s -> observation.stop())
+            }).doOnError(observation::error)
+                    // 在完成信号到达订阅者之前添加，避免订阅者读取观测时属性尚未写入
+                    .doOnTerminate(() -> addStreamTiming(observation, sample, streamUsage.get()))
+                    .doOnCancel(() -> addStreamTiming(observation, sample, streamUsage.get()))
+                    .doFinally(s -> {
+                        if (startedToolCalls != null) {
+                            startedToolCalls.cancel();
+                        }
+                        observation.stop();
+                    })
                     .contextWrite(ctx -> ctx.put(ObservationThreadLocalAccessor.KEY, observation));
             return new MessageAggregator().aggregate(flux, observationContext::setResponse);
         });
     }
 
+    private Flux<ChatResponse> toolExecutionResponse(Prompt prompt, ZhinaoApi.ChatCompletionRequest request, ChatResponse response,
+                                                     ToolExecutionResult toolExecutionResult, ZhinaoPhaseTimeline timeline) {
+        if (toolExecutionResult.returnDirect()) {
+            // Return tool execution result directly to the client.
+            return Flux.just(ChatResponse.builder().from(response)
+                    .generations(ToolExecutionResult.buildGenerations(toolExecutionResult)).build());
+        }
+        // Send the tool execution result back to the model.
+        recordToolRound(request, ZhinaoMetrics.Mode.STREAM);
+        return this.internalStream(nextRoundPrompt(prompt, toolExecutionResult, timeline), response, timeline);
+    }
+
+    /**
+     * 配置了 token 预算时预估请求的 prompt token 数，拒绝超出上下文窗口的请求并调整 maxTokens
+     */
+    private ZhinaoTokenBudget.Reservation reserveTokens(ZhinaoApi.ChatCompletionRequest request, ZhinaoPhaseTimeline timeline) {
+        if (this.tokenBudget == null) {
+            return new ZhinaoTokenBudget.Reservation(request, 0, Duration.ZERO);
+        }
+        long begin = timeline.begin();
+        ZhinaoTokenBudget.Reservation reservation = this.tokenBudget.reserve(request);
+        timeline.end(ZhinaoPhaseTimeline.Phase.TOKEN_BUDGET, begin);
+        return reservation;
+    }
+
+    /**
+     * 配置了用量统计时校验用户或租户的配额，超出配额时释放已预留的限流额度
+     */
+    private ZhinaoUsageAccountant.Reservation reserveQuota(ZhinaoTokenBudget.Reservation reservation) {
+        if (this.usageAccountant == null) {
+            return null;
+        }
+        try {
+            return this.usageAccountant.reserve(reservation.request(), reservation.promptTokens());
+        } catch (ZhinaoQuotaExceededException ex) {
+            if (this.tokenBudget != null) {
+                this.tokenBudget.release(reservation);
+            }
+            throw ex;
+        }
+    }
+
+    private void recordTokenUsage(ZhinaoTokenBudget.Reservation reservation, ZhinaoUsageAccountant.Reservation quota,
+                                  ZhinaoApi.Usage usage) {
+        if (this.tokenBudget != null) {
+            this.tokenBudget.record(reservation, usage);
+        }
+        if (this.usageAccountant != null) {
+            this.usageAccountant.record(quota, usage);
+        }
+    }
+
+    /**
+     * 每次订阅即一次尝试，重试只发生在第一个分块之前
+     */
+    private Flux<ZhinaoApi.ChatCompletionChunk> retryStream(Flux<ZhinaoApi.ChatCompletionChunk> completionChunks,
+                                                            ZhinaoApi.ChatCompletionRequest request, Observation observation) {
+        RetryBackoffSpec streamRetry = this.streamRetry;
+        if (streamRetry == null && this.retryMetrics == null) {
+            return completionChunks;
+        }
+        ZhinaoRetryMetrics.Attempts attempts = retryAttempts(request, ZhinaoMetrics.Mode.STREAM, observation);
+        AtomicBoolean emitted = new AtomicBoolean();
+        Flux<ZhinaoApi.ChatCompletionChunk> attempt = completionChunks
+                .doOnSubscribe(subscription -> attempts.started())
+                .doOnNext(chunk -> emitted.set(true))
+                .doOnError(attempts::failed);
+        if (streamRetry != null) {
+            attempt = attempt.retryWhen(streamRetry
+                    .modifyErrorFilter(filter -> filter.and(ex -> !emitted.get()))
+                    .doBeforeRetry(signal -> {
+                        ZhinaoRetryEvent.record(request.model(), (int) signal.totalRetries() + 1, signal.failure());
+                        if (this.metrics != null) {
+                            this.metrics.recordRetry(request.model());
+                        }
+                    }));
+        }
+        // 在终止信号到达订阅者之前记录，与流式耗时的记录方式一致
+        return attempt.doOnComplete(() -> attempts.closed(SignalType.ON_COMPLETE))
+                .doOnError(ex -> attempts.closed(SignalType.ON_ERROR))
+                .doOnCancel(() -> attempts.closed(SignalType.CANCEL));
+    }
+
+    private ZhinaoRetryMetrics.Attempts retryAttempts(ZhinaoApi.ChatCompletionRequest request, ZhinaoMetrics.Mode mode,
+                                                       Observation observation) {
+        ZhinaoRetryMetrics retryMetrics = this.retryMetrics;
+        return retryMetrics != null ? retryMetrics.attempts(request.model(), mode, observation) : ZhinaoRetryMetrics.Attempts.NONE;
+    }
+
+    private ZhinaoExchangeCapture.Exchange beginCapture(ZhinaoApi.ChatCompletionRequest request) {
+        return this.exchangeCapture != null ? this.exchangeCapture.begin(request) : ZhinaoExchangeCapture.Exchange.NONE;
+    }
+
+    private ZhinaoMetrics.Sample metricsSample(ZhinaoApi.ChatCompletionRequest request, ZhinaoMetrics.Mode mode) {
+        return this.metrics != null ? this.metrics.sample(request.model(), mode) : ZhinaoMetrics.Sample.unrecorded(request.model(), mode);
+    }
+
+    /**
+     * 将首 token 延迟、分块间隔和生成速度作为高基数属性添加到观测上下文
+     */
+    private static void addStreamTiming(Observation observation, ZhinaoMetrics.Sample sample, ZhinaoApi.Usage usage) {
+        Duration timeToFirstToken = sample.timeToFirstToken();
+        if (timeToFirstToken == null) {
+            return;
+        }
+        observation.highCardinalityKeyValue("zhinao.stream.time_to_first_token", String.valueOf(timeToFirstToken.toMillis()));
+        observation.highCardinalityKeyValue("zhinao.stream.chunks", String.valueOf(sample.chunkCount()));
+        if (sample.chunkCount() > 1) {
+            observation.highCardinalityKeyValue("zhinao.stream.chunk_gap.mean", String.valueOf(sample.meanChunkGap().toMillis()));
+            observation.highCardinalityKeyValue("zhinao.stream.chunk_gap.max", String.valueOf(sample.maxChunkGap().toMillis()));
+        }
+        double tokensPerSecond = sample.tokensPerSecond(usage != null ? usage.completionTokens() : null);
+        if (!Double.isNaN(tokensPerSecond)) {
+            observation.highCardinalityKeyValue("zhinao.stream.tokens_per_second", String.format(Locale.ROOT, "%.1f", tokensPerSecond));
+        }
+    }
+
+    private void recordToolRound(ZhinaoApi.ChatCompletionRequest request, ZhinaoMetrics.Mode mode) {
+        if (this.metrics != null) {
+            this.metrics.recordToolRound(request.model(), mode);
+        }
+    }
+
+    private static void awaitRateLimit(Duration delay, ZhinaoPhaseTimeline timeline) {
+        if (delay.isZero()) {
+            return;
+        }
+        long begin = timeline.begin();
+        try {
+            TimeUnit.NANOSECONDS.sleep(delay.toNanos());
+            timeline.end(ZhinaoPhaseTimeline.Phase.RATE_LIMIT, begin);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the token rate limit", ex);
+        }
+    }
+
+    /**
+     * 下一轮请求使用的 prompt，配置了压缩策略时先压缩本轮的工具结果，再按上下文窗口裁剪历史
+     */
+    private Prompt nextRoundPrompt(Prompt prompt, ToolExecutionResult toolExecutionResult, ZhinaoPhaseTimeline timeline) {
+        List<Message> conversationHistory = toolExecutionResult.conversationHistory();
+        if (this.toolResponseCompaction != null) {
+            long begin = timeline.begin();
+            conversationHistory = this.toolResponseCompaction.compact(conversationHistory);
+            timeline.end(ZhinaoPhaseTimeline.Phase.TOOL_RESPONSE_COMPACTION, begin);
+        }
+        return applyContextWindow(new Prompt(conversationHistory, prompt.getOptions()), timeline);
+    }
+
+    private Prompt applyContextWindow(Prompt prompt, ZhinaoPhaseTimeline timeline) {
+        if (this.contextWindowManager == null) {
+            return prompt;
+        }
+        long begin = timeline.begin();
+        Prompt windowedPrompt = this.contextWindowManager.apply(prompt);
+        timeline.end(ZhinaoPhaseTimeline.Phase.CONTEXT_WINDOW, begin);
+        return windowedPrompt;
+    }
+
+    private ZhinaoPhaseTimeline newTimeline() {
+        return this.phaseTimeline ? ZhinaoPhaseTimeline.start() : ZhinaoPhaseTimeline.DISABLED;
+    }
+
+    private Prompt buildRequestPrompt(Prompt prompt, ZhinaoPhaseTimeline timeline) {
+        long begin = timeline.begin();
+        Prompt requestPrompt = buildRequestPrompt(prompt);
+        timeline.end(ZhinaoPhaseTimeline.Phase.OPTIONS_MERGE, begin);
+        return requestPrompt;
+    }
+
+    private ZhinaoApi.ChatCompletionRequest createRequest(Prompt prompt, boolean stream, ZhinaoPhaseTimeline timeline) {
+        long begin = timeline.begin();
+        ZhinaoApi.ChatCompletionRequest request = createRequest(prompt, stream);
+        timeline.end(ZhinaoPhaseTimeline.Phase.CREATE_REQUEST, begin);
+        return request;
+    }
+
+    /**
+     * 流式输出时，工具调用的参数一旦完整即可提前执行，与剩余内容的生成并行
+     */
+    private boolean isEarlyToolExecution(Prompt prompt) {
+        return this.earlyToolExecution
+                && this.toolCallingManager instanceof ZhinaoToolCallingManager zhinaoToolCallingManager
+                && ToolCallingChatOptions.isInternalToolExecutionEnabled(prompt.getOptions())
+                && zhinaoToolCallingManager.supportsEarlyExecution(prompt);
+    }
+
     private ChatResponseMetadata from(ZhinaoApi.ChatCompletion result, Usage usage) {
         Assert.notNull(result, "Zhinao ChatCompletion must not be null");
         return ChatResponseMetadata.builder()
@@ -260,91 +639,91 @@ public class ZhinaoChatModel implements ChatModel, StreamingChatModel {
      * @return 合并了默认选项和运行时选项的新Prompt对象
      */
     protected Prompt buildRequestPrompt(Prompt prompt) {
-        ZhinaoChatOptions runtimeOptions = null;
-        if (prompt.getOptions() != null) {
-            // 根据选项类型进行转换，优先处理ToolCallingChatOptions类型
-            if (prompt.getOptions() instanceof ToolCallingChatOptions toolCallingChatOptions) {
-                runtimeOptions = ModelOptionsUtils.copyToTarget(toolCallingChatOptions, ToolCallingChatOptions.class, ZhinaoChatOptions.class);
-            } else {
-                runtimeOptions = ModelOptionsUtils.copyToTarget(prompt.getOptions(), ChatOptions.class, ZhinaoChatOptions.class);
-            }
-        }
-
-        // 合并运行时选项和默认选项
-        ZhinaoChatOptions requestOptions = ModelOptionsUtils.merge(runtimeOptions, this.defaultOptions, ZhinaoChatOptions.class);
-
-        if (runtimeOptions != null) {
-            // 当存在运行时选项时，合并各个工具相关配置项
-            requestOptions.setInternalToolExecutionEnabled(
-                    ModelOptionsUtils.mergeOption(runtimeOptions.getInternalToolExecutionEnabled(),
-                            this.defaultOptions.getInternalToolExecutionEnabled()));
-            requestOptions.setToolNames(ToolCallingChatOptions.mergeToolNames(runtimeOptions.getToolNames(),
-                    this.defaultOptions.getToolNames()));
-            requestOptions.setToolCallbacks(ToolCallingChatOptions.mergeToolCallbacks(runtimeOptions.getToolCallbacks(),
-                    this.defaultOptions.getToolCallbacks()));
-            requestOptions.setToolContext(ToolCallingChatOptions.mergeToolContext(runtimeOptions.getToolContext(),
-                    this.defaultOptions.getToolContext()));
-        } else {
-            // 当不存在运行时选项时，直接使用默认配置项
-            requestOptions.setInternalToolExecutionEnabled(this.defaultOptions.getInternalToolExecutionEnabled());
-            requestOptions.setToolNames(this.defaultOptions.getToolNames());
-            requestOptions.setToolCallbacks(this.defaultOptions.getToolCallbacks());
-            requestOptions.setToolContext(this.defaultOptions.getToolContext());
-        }
-
-        // 验证工具回调配置的有效性
-        ToolCallingChatOptions.validateToolCallbacks(requestOptions.getToolCallbacks());
-
+        // 逐字段合并运行时选项和默认选项，不经过 JSON 往返
+        ZhinaoChatOptions requestOptions = this.optionsMerger.merge(prompt.getOptions(), this.defaultOptions);
         return new Prompt(prompt.getInstructions(), requestOptions);
     }
 
 
     protected ZhinaoApi.ChatCompletionRequest createRequest(Prompt prompt, boolean stream) {
-        List<ZhinaoApi.ChatCompletionMessage> chatCompletionMessages = prompt.getInstructions().stream().map(message -> {
-            if (message.getMessageType() == MessageType.USER || message.getMessageType() == MessageType.SYSTEM) {
-                return List.of(new ZhinaoApi.ChatCompletionMessage(message.getText(), ZhinaoApi.ChatCompletionMessage.Role.valueOf(message.getMessageType().name())));
-            } else if (message.getMessageType() == MessageType.ASSISTANT) {
-                AssistantMessage assistantMessage = (AssistantMessage) message;
-                List<ZhinaoApi.ChatCompletionMessage.ToolCall> toolCalls = null;
-                if (!CollectionUtils.isEmpty(assistantMessage.getToolCalls())) {
-                    toolCalls = assistantMessage.getToolCalls().stream().map(toolCall -> {
-                        ZhinaoApi.ChatCompletionMessage.ChatCompletionFunction function = new ZhinaoApi.ChatCompletionMessage.ChatCompletionFunction(toolCall.name(), toolCall.arguments());
-                        return new ZhinaoApi.ChatCompletionMessage.ToolCall(toolCall.id(), toolCall.type(), function);
-                    }).toList();
-                }
-                return List.of(new ZhinaoApi.ChatCompletionMessage(ZhinaoApi.ChatCompletionMessage.Role.ASSISTANT, message.getText(), null,null, toolCalls));
-            } else if (message.getMessageType() == MessageType.TOOL){
-                ToolResponseMessage toolMessage = (ToolResponseMessage) message;
-                toolMessage.getResponses()
-                        .forEach(response -> Assert.isTrue(response.id() != null, "ToolResponseMessage must have an id"));
-                return toolMessage.getResponses().stream()
-                        .map(tr -> new ZhinaoApi.ChatCompletionMessage(ZhinaoApi.ChatCompletionMessage.Role.TOOL, tr.responseData(), tr.name(), tr.id(), null))
-                        .toList();
-            } else {
-                throw new IllegalArgumentException("Unsupported message type: " + message.getMessageType());
-            }
-        }).flatMap(List::stream).toList();
-
-        ZhinaoApi.ChatCompletionRequest request = new ZhinaoApi.ChatCompletionRequest(chatCompletionMessages, stream);
+        List<Message> instructions = prompt.getInstructions();
+        List<ZhinaoApi.ChatCompletionMessage> chatCompletionMessages = new ArrayList<>(instructions.size());
+        // 启用消息编码缓存时，同一会话中已发送过的消息只转换一次
+        ZhinaoMessageEncodingCache messageEncodingCache = this.zhinaoApi.getMessageEncodingCache();
+        for (Message message : instructions) {
+            chatCompletionMessages.addAll(messageEncodingCache != null
+                    ? messageEncodingCache.convert(message, this::toChatCompletionMessages)
+                    : toChatCompletionMessages(message));
+        }
 
         ZhinaoChatOptions requestOptions = (ZhinaoChatOptions) prompt.getOptions();
-        request = ModelOptionsUtils.merge(requestOptions, request, ZhinaoApi.ChatCompletionRequest.class);
 
         List<ToolDefinition> toolDefinitions = this.toolCallingManager.resolveToolDefinitions(requestOptions);
-        if (!CollectionUtils.isEmpty(toolDefinitions)) {
-            request = ModelOptionsUtils.merge(ZhinaoChatOptions.builder().tools(this.getFunctionTools(toolDefinitions)).build(),
-                    request, ZhinaoApi.ChatCompletionRequest.class);
+        if (this.toolSelector != null && !CollectionUtils.isEmpty(toolDefinitions)) {
+            toolDefinitions = this.toolSelector.select(prompt, toolDefinitions);
+        }
+        List<ZhinaoApi.FunctionTool> tools = !CollectionUtils.isEmpty(toolDefinitions)
+                ? this.getFunctionTools(toolDefinitions) : requestOptions.getTools();
+
+        // 直接由选项字段构造请求，不再经过 ModelOptionsUtils.merge 的 JSON 往返
+        return new ZhinaoApi.ChatCompletionRequest(
+                requestOptions.getModel() != null ? requestOptions.getModel() : ZhinaoApi.DEFAULT_CHAT_MODEL,
+                Collections.unmodifiableList(chatCompletionMessages), stream,
+                requestOptions.getTemperature(), requestOptions.getMaxTokens(), requestOptions.getTopP(),
+                requestOptions.getTopK(), requestOptions.getRepetitionPenalty(), requestOptions.getNumBeams(),
+                tools, requestOptions.getToolChoice(), requestOptions.getUser());
+    }
+
+    private List<ZhinaoApi.ChatCompletionMessage> toChatCompletionMessages(Message message) {
+        if (message.getMessageType() == MessageType.USER || message.getMessageType() == MessageType.SYSTEM) {
+            return List.of(new ZhinaoApi.ChatCompletionMessage(message.getText(), ZhinaoApi.ChatCompletionMessage.Role.valueOf(message.getMessageType().name())));
+        } else if (message.getMessageType() == MessageType.ASSISTANT) {
+            AssistantMessage assistantMessage = (AssistantMessage) message;
+            List<ZhinaoApi.ChatCompletionMessage.ToolCall> toolCalls = null;
+            if (!CollectionUtils.isEmpty(assistantMessage.getToolCalls())) {
+                toolCalls = assistantMessage.getToolCalls().stream().map(toolCall -> {
+                    ZhinaoApi.ChatCompletionMessage.ChatCompletionFunction function = new ZhinaoApi.ChatCompletionMessage.ChatCompletionFunction(toolCall.name(), toolCall.arguments());
+                    return new ZhinaoApi.ChatCompletionMessage.ToolCall(toolCall.id(), toolCall.type(), function);
+                }).toList();
+            }
+            return List.of(new ZhinaoApi.ChatCompletionMessage(ZhinaoApi.ChatCompletionMessage.Role.ASSISTANT, message.getText(), null, null, toolCalls));
+        } else if (message.getMessageType() == MessageType.TOOL) {
+            ToolResponseMessage toolMessage = (ToolResponseMessage) message;
+            List<ZhinaoApi.ChatCompletionMessage> toolResponses = new ArrayList<>(toolMessage.getResponses().size());
+            for (ToolResponseMessage.ToolResponse tr : toolMessage.getResponses()) {
+                Assert.isTrue(tr.id() != null, "ToolResponseMessage must have an id");
+                toolResponses.add(new ZhinaoApi.ChatCompletionMessage(ZhinaoApi.ChatCompletionMessage.Role.TOOL, tr.responseData(), tr.name(), tr.id(), null));
+            }
+            return toolResponses;
+        } else {
+            throw new IllegalArgumentException("Unsupported message type: " + message.getMessageType());
         }
-        return request;
     }
 
     private List<ZhinaoApi.FunctionTool> getFunctionTools(List<ToolDefinition> toolDefinitions) {
+        // 工具的 inputSchema 解析（及精简）结果按 ToolDefinition 缓存，避免每次请求重复解析
+        ZhinaoToolSchemaMinifier minifier = this.schemaMinifier;
         return toolDefinitions.stream().map(toolDefinition -> {
-            ZhinaoApi.FunctionTool.Function function = new ZhinaoApi.FunctionTool.Function(toolDefinition.description(), toolDefinition.name(), toolDefinition.inputSchema());
-            return new ZhinaoApi.FunctionTool(function);
+            CachedFunctionTool cachedFunctionTool = this.functionToolCache.computeIfAbsent(toolDefinition, this::toFunctionTool);
+            if (minifier != null && cachedFunctionTool.minifiedSchema() != null) {
+                minifier.recordSent(cachedFunctionTool.minifiedSchema());
+            }
+            return cachedFunctionTool.functionTool();
         }).toList();
     }
 
+    private CachedFunctionTool toFunctionTool(ToolDefinition toolDefinition) {
+        Map<String, Object> parameters = ModelOptionsUtils.jsonToMap(toolDefinition.inputSchema());
+        ZhinaoToolSchemaMinifier.MinifiedSchema minifiedSchema = null;
+        if (this.schemaMinifier != null) {
+            minifiedSchema = this.schemaMinifier.minify(parameters);
+            parameters = minifiedSchema.parameters();
+        }
+        ZhinaoApi.FunctionTool functionTool = new ZhinaoApi.FunctionTool(new ZhinaoApi.FunctionTool.Function(
+                toolDefinition.description(), toolDefinition.name(), Collections.unmodifiableMap(parameters)));
+        return new CachedFunctionTool(functionTool, minifiedSchema);
+    }
+
     private static Generation buildGeneration(ZhinaoApi.Choice choice, Map<String, Object> metadata) {
         List<AssistantMessage.ToolCall> toolCalls = choice.message().toolCalls() == null ? List.of() : choice.message().toolCalls().stream()
                 .map(toolCall -> new AssistantMessage.ToolCall(toolCall.id(), toolCall.type(),
@@ -359,6 +738,117 @@ public class ZhinaoChatModel implements ChatModel, StreamingChatModel {
         this.observationConvention = chatModelObservationConvention;
     }
 
+    /**
+     * Whether streamed tool calls are started as soon as their arguments are complete. Only
+     * effective with a {@link ZhinaoToolCallingManager} that has an executor.
+     * @param earlyToolExecution true to start tool calls before the stream completes.
+     */
+    public void setEarlyToolExecution(boolean earlyToolExecution) {
+        this.earlyToolExecution = earlyToolExecution;
+    }
+
+    /**
+     * Selects the tool definitions sent with each request. Tool calls are still resolved
+     * against all tools of the prompt.
+     * @param toolSelector the tool selector, null to send all tools.
+     */
+    public void setToolSelector(ZhinaoToolSelector toolSelector) {
+        this.toolSelector = toolSelector;
+    }
+
+    /**
+     * Minifies the parameters schema of the tools sent with each request.
+     * @param schemaMinifier the schema minifier, null to send schemas verbatim.
+     */
+    public void setSchemaMinifier(ZhinaoToolSchemaMinifier schemaMinifier) {
+        this.schemaMinifier = schemaMinifier;
+        this.functionToolCache.clear();
+    }
+
+    /**
+     * Compacts the tool responses of each round before they are sent back to the model.
+     * @param toolResponseCompaction the compaction, null to send tool responses verbatim.
+     */
+    public void setToolResponseCompaction(ZhinaoToolResponseCompaction toolResponseCompaction) {
+        this.toolResponseCompaction = toolResponseCompaction;
+    }
+
+    /**
+     * Estimates the prompt tokens of each request before it is sent, to reject prompts that do
+     * not fit the context window, lower {@code maxTokens} and wait for the tokens-per-minute limit.
+     * @param tokenBudget the token budget, null to send requests unchecked.
+     */
+    public void setTokenBudget(ZhinaoTokenBudget tokenBudget) {
+        this.tokenBudget = tokenBudget;
+    }
+
+    /**
+     * Trims the conversation history of each request to the token budget of its model.
+     * @param contextWindowManager the context window manager, null to send the history unchanged.
+     */
+    public void setContextWindowManager(ZhinaoContextWindowManager contextWindowManager) {
+        this.contextWindowManager = contextWindowManager;
+    }
+
+    /**
+     * Records latency, token, finish reason and error meters of each request, including the
+     * requests of tool rounds.
+     * @param metrics the metrics, null to record nothing.
+     */
+    public void setMetrics(ZhinaoMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Accounts the token usage of each request to its user or tenant and rejects requests
+     * whose quota is used up before they are sent.
+     * @param usageAccountant the usage accountant, null to account nothing.
+     */
+    public void setUsageAccountant(ZhinaoUsageAccountant usageAccountant) {
+        this.usageAccountant = usageAccountant;
+    }
+
+    /**
+     * Keeps sampled, slow and failed request and response pairs in a ring buffer.
+     * @param exchangeCapture the exchange capture, null to capture nothing.
+     */
+    public void setExchangeCapture(ZhinaoExchangeCapture exchangeCapture) {
+        this.exchangeCapture = exchangeCapture;
+    }
+
+    /**
+     * Records the failed attempts and the retry overhead of calls and streams. Attempts are
+     * followed by this model, the retry template is left unchanged.
+     * @param retryMetrics the retry metrics, null to record nothing.
+     */
+    public void setRetryMetrics(ZhinaoRetryMetrics retryMetrics) {
+        this.retryMetrics = retryMetrics;
+    }
+
+    /**
+     * Retries streams that fail before their first chunk. Once a chunk was emitted the stream
+     * is not retried, the subscriber would otherwise see the content twice.
+     * @param streamRetry the retry of streams, null to not retry streams.
+     */
+    public void setStreamRetry(RetryBackoffSpec streamRetry) {
+        this.streamRetry = streamRetry;
+    }
+
+    /**
+     * Times the phases of each call and stream, from options merging to tool execution, and
+     * adds them as events to the chat model observations.
+     * @param phaseTimeline whether the phases are timed.
+     * @param metadata whether the phase durations of a call are also added to its response
+     * metadata under {@link ZhinaoPhaseTimeline#METADATA_KEY}.
+     */
+    public void setPhaseTimeline(boolean phaseTimeline, boolean metadata) {
+        this.phaseTimeline = phaseTimeline;
+        this.phaseTimelineMetadata = phaseTimeline && metadata;
+    }
+
+    private record CachedFunctionTool(ZhinaoApi.FunctionTool functionTool, ZhinaoToolSchemaMinifier.MinifiedSchema minifiedSchema) {
+    }
+
     public static Builder builder() {
         return new Builder();
     }
@@ -379,6 +869,32 @@ public class ZhinaoChatModel implements ChatModel, StreamingChatModel {
 
         private ObservationRegistry observationRegistry = ObservationRegistry.NOOP;
 
+        private boolean earlyToolExecution = false;
+
+        private ZhinaoToolSelector toolSelector;
+
+        private ZhinaoToolSchemaMinifier schemaMinifier;
+
+        private ZhinaoToolResponseCompaction toolResponseCompaction;
+
+        private ZhinaoTokenBudget tokenBudget;
+
+        private ZhinaoContextWindowManager contextWindowManager;
+
+        private ZhinaoMetrics metrics;
+
+        private ZhinaoUsageAccountant usageAccountant;
+
+        private ZhinaoExchangeCapture exchangeCapture;
+
+        private ZhinaoRetryMetrics retryMetrics;
+
+        private RetryBackoffSpec streamRetry;
+
+        private boolean phaseTimeline = false;
+
+        private boolean phaseTimelineMetadata = false;
+
         private Builder() {
         }
 
@@ -412,9 +928,83 @@ public class ZhinaoChatModel implements ChatModel, StreamingChatModel {
             return this;
         }
 
+        public Builder earlyToolExecution(boolean earlyToolExecution) {
+            this.earlyToolExecution = earlyToolExecution;
+            return this;
+        }
+
+        public Builder toolSelector(ZhinaoToolSelector toolSelector) {
+            this.toolSelector = toolSelector;
+            return this;
+        }
+
+        public Builder schemaMinifier(ZhinaoToolSchemaMinifier schemaMinifier) {
+            this.schemaMinifier = schemaMinifier;
+            return this;
+        }
+
+        public Builder toolResponseCompaction(ZhinaoToolResponseCompaction toolResponseCompaction) {
+            this.toolResponseCompaction = toolResponseCompaction;
+            return this;
+        }
+
+        public Builder tokenBudget(ZhinaoTokenBudget tokenBudget) {
+            this.tokenBudget = tokenBudget;
+            return this;
+        }
+
+        public Builder contextWindowManager(ZhinaoContextWindowManager contextWindowManager) {
+            this.contextWindowManager = contextWindowManager;
+            return this;
+        }
+
+        public Builder metrics(ZhinaoMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        public Builder usageAccountant(ZhinaoUsageAccountant usageAccountant) {
+            this.usageAccountant = usageAccountant;
+            return this;
+        }
+
+        public Builder exchangeCapture(ZhinaoExchangeCapture exchangeCapture) {
+            this.exchangeCapture = exchangeCapture;
+            return this;
+        }
+
+        public Builder retryMetrics(ZhinaoRetryMetrics retryMetrics) {
+            this.retryMetrics = retryMetrics;
+            return this;
+        }
+
+        public Builder streamRetry(RetryBackoffSpec streamRetry) {
+            this.streamRetry = streamRetry;
+            return this;
+        }
+
+        public Builder phaseTimeline(boolean phaseTimeline, boolean metadata) {
+            this.phaseTimeline = phaseTimeline;
+            this.phaseTimelineMetadata = metadata;
+            return this;
+        }
+
         public ZhinaoChatModel build() {
-            return new ZhinaoChatModel(this.zhinaoApi, this.defaultOptions, Objects.requireNonNullElse(this.toolCallingManager, DEFAULT_TOOL_CALLING_MANAGER),
+            ZhinaoChatModel chatModel = new ZhinaoChatModel(this.zhinaoApi, this.defaultOptions, Objects.requireNonNullElse(this.toolCallingManager, DEFAULT_TOOL_CALLING_MANAGER),
                     this.retryTemplate, this.observationRegistry, this.toolExecutionEligibilityPredicate);
+            chatModel.setEarlyToolExecution(this.earlyToolExecution);
+            chatModel.setToolSelector(this.toolSelector);
+            chatModel.setSchemaMinifier(this.schemaMinifier);
+            chatModel.setToolResponseCompaction(this.toolResponseCompaction);
+            chatModel.setTokenBudget(this.tokenBudget);
+            chatModel.setContextWindowManager(this.contextWindowManager);
+            chatModel.setMetrics(this.metrics);
+            chatModel.setUsageAccountant(this.usageAccountant);
+            chatModel.setExchangeCapture(this.exchangeCapture);
+            chatModel.setRetryMetrics(this.retryMetrics);
+            chatModel.setStreamRetry(this.streamRetry);
+            chatModel.setPhaseTimeline(this.phaseTimeline, this.phaseTimelineMetadata);
+            return chatModel;
         }
     }
 }
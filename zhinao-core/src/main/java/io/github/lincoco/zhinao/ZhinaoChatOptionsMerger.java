@@ -0,0 +1,126 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao;
+
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.model.ModelOptionsUtils;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Merges runtime {@link ChatOptions} into the default {@link ZhinaoChatOptions} field by field,
+ * with the same semantics as {@code ModelOptionsUtils.copyToTarget} followed by
+ * {@code ModelOptionsUtils.merge}, but without converting the options through JSON maps.
+ * <p>
+ * Results are not cached: most prompts, for example those built by {@code ChatClient}, carry
+ * fresh options objects, and copying and comparing them to validate a cached merge costs more
+ * than the field-by-field merge itself.
+ * </p>
+ *
+ * @author xueyeshang
+ */
+class ZhinaoChatOptionsMerger {
+
+    /**
+     * @param chatOptions the runtime options of the prompt, may be null.
+     * @param defaultOptions the default options of the chat model.
+     * @return the merged options.
+     */
+    ZhinaoChatOptions merge(ChatOptions chatOptions, ZhinaoChatOptions defaultOptions) {
+        return merge(chatOptions != null ? toZhinaoChatOptions(chatOptions) : null, defaultOptions);
+    }
+
+    private static ZhinaoChatOptions merge(ZhinaoChatOptions runtimeOptions, ZhinaoChatOptions defaultOptions) {
+        ZhinaoChatOptions merged = new ZhinaoChatOptions();
+        if (runtimeOptions == null) {
+            // 当不存在运行时选项时，直接使用默认配置项
+            copyRequestFields(defaultOptions, merged);
+            merged.setInternalToolExecutionEnabled(defaultOptions.getInternalToolExecutionEnabled());
+            merged.setToolNames(defaultOptions.getToolNames());
+            merged.setToolCallbacks(defaultOptions.getToolCallbacks());
+            merged.setToolContext(defaultOptions.getToolContext());
+        } else {
+            merged.setModel(ModelOptionsUtils.mergeOption(runtimeOptions.getModel(), defaultOptions.getModel()));
+            merged.setTemperature(ModelOptionsUtils.mergeOption(runtimeOptions.getTemperature(), defaultOptions.getTemperature()));
+            merged.setMaxTokens(ModelOptionsUtils.mergeOption(runtimeOptions.getMaxTokens(), defaultOptions.getMaxTokens()));
+            merged.setTopP(ModelOptionsUtils.mergeOption(runtimeOptions.getTopP(), defaultOptions.getTopP()));
+            merged.setTopK(ModelOptionsUtils.mergeOption(runtimeOptions.getTopK(), defaultOptions.getTopK()));
+            merged.setRepetitionPenalty(ModelOptionsUtils.mergeOption(runtimeOptions.getRepetitionPenalty(), defaultOptions.getRepetitionPenalty()));
+            merged.setNumBeams(ModelOptionsUtils.mergeOption(runtimeOptions.getNumBeams(), defaultOptions.getNumBeams()));
+            merged.setTools(copyOf(ModelOptionsUtils.mergeOption(runtimeOptions.getTools(), defaultOptions.getTools())));
+            merged.setToolChoice(ModelOptionsUtils.mergeOption(runtimeOptions.getToolChoice(), defaultOptions.getToolChoice()));
+            merged.setUser(ModelOptionsUtils.mergeOption(runtimeOptions.getUser(), defaultOptions.getUser()));
+            // 当存在运行时选项时，合并各个工具相关配置项
+            merged.setInternalToolExecutionEnabled(ModelOptionsUtils.mergeOption(runtimeOptions.getInternalToolExecutionEnabled(),
+                    defaultOptions.getInternalToolExecutionEnabled()));
+            merged.setToolNames(ToolCallingChatOptions.mergeToolNames(runtimeOptions.getToolNames(), defaultOptions.getToolNames()));
+            merged.setToolCallbacks(ToolCallingChatOptions.mergeToolCallbacks(runtimeOptions.getToolCallbacks(),
+                    defaultOptions.getToolCallbacks()));
+            merged.setToolContext(ToolCallingChatOptions.mergeToolContext(runtimeOptions.getToolContext(), defaultOptions.getToolContext()));
+        }
+        // 验证工具回调配置的有效性
+        ToolCallingChatOptions.validateToolCallbacks(merged.getToolCallbacks());
+        return merged;
+    }
+
+    /**
+     * 将任意 ChatOptions 转换为 ZhinaoChatOptions，只复制非空属性
+     */
+    private static ZhinaoChatOptions toZhinaoChatOptions(ChatOptions chatOptions) {
+        if (chatOptions instanceof ZhinaoChatOptions zhinaoChatOptions) {
+            return zhinaoChatOptions;
+        }
+        ZhinaoChatOptions options = new ZhinaoChatOptions();
+        options.setModel(chatOptions.getModel());
+        options.setTemperature(chatOptions.getTemperature());
+        options.setMaxTokens(chatOptions.getMaxTokens());
+        options.setTopP(chatOptions.getTopP());
+        options.setTopK(chatOptions.getTopK());
+        options.setFrequencyPenalty(chatOptions.getFrequencyPenalty());
+        if (chatOptions instanceof ToolCallingChatOptions toolCallingChatOptions) {
+            options.setInternalToolExecutionEnabled(toolCallingChatOptions.getInternalToolExecutionEnabled());
+            if (toolCallingChatOptions.getToolCallbacks() != null) {
+                options.setToolCallbacks(toolCallingChatOptions.getToolCallbacks());
+            }
+            if (toolCallingChatOptions.getToolNames() != null) {
+                options.setToolNames(toolCallingChatOptions.getToolNames());
+            }
+            if (toolCallingChatOptions.getToolContext() != null) {
+                options.setToolContext(toolCallingChatOptions.getToolContext());
+            }
+        }
+        return options;
+    }
+
+    private static void copyRequestFields(ZhinaoChatOptions source, ZhinaoChatOptions target) {
+        target.setModel(source.getModel());
+        target.setTemperature(source.getTemperature());
+        target.setMaxTokens(source.getMaxTokens());
+        target.setTopP(source.getTopP());
+        target.setTopK(source.getTopK());
+        target.setRepetitionPenalty(source.getRepetitionPenalty());
+        target.setNumBeams(source.getNumBeams());
+        target.setTools(copyOf(source.getTools()));
+        target.setToolChoice(source.getToolChoice());
+        target.setUser(source.getUser());
+    }
+
+    private static <T> List<T> copyOf(List<T> list) {
+        return list != null ? new ArrayList<>(list) : null;
+    }
+}
@@ -27,6 +27,7 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.Assert;
+import org.springframework.util.CollectionUtils;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.client.ResponseErrorHandler;
@@ -37,6 +38,8 @@ import reactor.core.publisher.Mono;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
@@ -64,6 +67,8 @@ public class ZhinaoApi {
 
     private final ZhinaoStreamFunctionCallingHelper chunkMerge = new ZhinaoStreamFunctionCallingHelper();
 
+    private final ZhinaoMessageEncodingCache messageEncodingCache;
+
     /**
      * Create a new chat completion api.
      * @param baseUrl api base URL.
@@ -77,10 +82,29 @@ public class ZhinaoApi {
     public ZhinaoApi(String baseUrl, ApiKey apiKey, MultiValueMap<String, String> headers, String completionsPath,
                      RestClient.Builder restClientBuilder, WebClient.Builder webClientBuilder,
                      ResponseErrorHandler responseErrorHandler) {
+        this(baseUrl, apiKey, headers, completionsPath, restClientBuilder, webClientBuilder, responseErrorHandler, null);
+    }
+
+    /**
+     * Create a new chat completion api.
+     * @param baseUrl api base URL.
+     * @param apiKey Zhinao API key.
+     * @param headers the http headers to be added to the request.
+     * @param completionsPath the path to the completions endpoint.
+     * @param restClientBuilder the rest client builder.
+     * @param webClientBuilder the web client builder.
+     * @param responseErrorHandler the response error handler.
+     * @param messageEncodingCache encodes request bodies reusing the JSON of already sent messages,
+     * null to let the http clients serialize every request from scratch.
+     */
+    public ZhinaoApi(String baseUrl, ApiKey apiKey, MultiValueMap<String, String> headers, String completionsPath,
+                     RestClient.Builder restClientBuilder, WebClient.Builder webClientBuilder,
+                     ResponseErrorHandler responseErrorHandler, ZhinaoMessageEncodingCache messageEncodingCache) {
         Assert.hasText(completionsPath, "Completions Path must not be null");
         Assert.notNull(headers, "Headers must not be null");
 
         this.completionsPath = completionsPath;
+        this.messageEncodingCache = messageEncodingCache;
 
         // @formatter:off
         Consumer<HttpHeaders> finalHeaders = h -> {
@@ -99,6 +123,13 @@ public class ZhinaoApi {
                 .build();
     }
 
+    /**
+     * @return the cache the request bodies are encoded with, null if every request is serialized from scratch.
+     */
+    public ZhinaoMessageEncodingCache getMessageEncodingCache() {
+        return this.messageEncodingCache;
+    }
+
     /**
      * Creates a model response for the given chat conversation.
      * @param chatRequest the chat request.
@@ -109,18 +140,33 @@ public class ZhinaoApi {
         Assert.isTrue(!chatRequest.stream(), "Request must set the stream property to false.");
         return this.restClient.post()
                 .uri(completionsPath)
-                .body(chatRequest)
+                .body(this.messageEncodingCache != null ? this.messageEncodingCache.encode(chatRequest) : chatRequest)
                 .retrieve().toEntity(ChatCompletion.class);
     }
 
     public Flux<ChatCompletionChunk> chatCompletionStream(ChatCompletionRequest chatRequest) {
+        return chatCompletionStream(chatRequest, null);
+    }
+
+    /**
+     * Creates a streaming chat response for the given chat conversation.
+     * @param chatRequest the chat request.
+     * @param toolCallListener notified, while the stream is still running, with every tool call
+     * whose arguments are syntactically complete. May be null.
+     * @return the chat completion chunks, tool call chunks are merged into a single chunk.
+     */
+    public Flux<ChatCompletionChunk> chatCompletionStream(ChatCompletionRequest chatRequest,
+                                                          Consumer<ChatCompletionMessage.ToolCall> toolCallListener) {
         Assert.notNull(chatRequest, "The request body can not be null.");
         Assert.isTrue(chatRequest.stream(), "Request must set the stream property to true.");
         AtomicBoolean isInsideTool = new AtomicBoolean(false);
+        Set<String> completedToolCallIds = ConcurrentHashMap.newKeySet();
 
-        return this.webClient.post()
-                .uri(completionsPath)
-                .body(Mono.just(chatRequest), ChatCompletionRequest.class)
+        WebClient.RequestBodySpec requestSpec = this.webClient.post().uri(completionsPath);
+        WebClient.RequestHeadersSpec<?> bodySpec = this.messageEncodingCache != null
+                ? requestSpec.body(Mono.fromSupplier(() -> this.messageEncodingCache.encode(chatRequest)), byte[].class)
+                : requestSpec.body(Mono.just(chatRequest), ChatCompletionRequest.class);
+        return bodySpec
                 .retrieve()
                 .bodyToFlux(String.class)
                 .takeUntil(SSE_DOME_PREDICATE)
@@ -142,12 +188,36 @@ public class ZhinaoApi {
                 .concatMapIterable(window -> {
                     Mono<ChatCompletionChunk> monoChunk = window.reduce(
                             new ChatCompletionChunk(null, null, null, null, null, null),
-                            this.chunkMerge::merge);
+                            (previous, current) -> {
+                                ChatCompletionChunk merged = this.chunkMerge.merge(previous, current);
+                                if (toolCallListener != null) {
+                                    notifyCompletedToolCalls(merged, completedToolCallIds, toolCallListener);
+                                }
+                                return merged;
+                            });
                     return List.of(monoChunk);
                 })
                 .flatMap(mono -> mono);
     }
 
+    private void notifyCompletedToolCalls(ChatCompletionChunk chunk, Set<String> completedToolCallIds,
+                                          Consumer<ChatCompletionMessage.ToolCall> toolCallListener) {
+        if (CollectionUtils.isEmpty(chunk.choices()) || chunk.choices().get(0).delta() == null
+                || CollectionUtils.isEmpty(chunk.choices().get(0).delta().toolCalls())) {
+            return;
+        }
+        for (ChatCompletionMessage.ToolCall toolCall : chunk.choices().get(0).delta().toolCalls()) {
+            if (toolCall.id() == null || toolCall.function() == null || toolCall.function().name() == null
+                    || completedToolCallIds.contains(toolCall.id())) {
+                continue;
+            }
+            if (this.chunkMerge.isToolCallArgumentsComplete(toolCall.function().arguments())
+                    && completedToolCallIds.add(toolCall.id())) {
+                toolCallListener.accept(toolCall);
+            }
+        }
+    }
+
     public enum ChatModel implements ChatModelDescription {
         /**
          * 360gpt-pro
@@ -215,6 +285,14 @@ public class ZhinaoApi {
             this(model, messages, false, null, null, null, null, null, null, tools, toolChoice, null);
         }
 
+        /**
+         * 返回替换了最大输出 token 数的新请求
+         */
+        public ChatCompletionRequest withMaxTokens(Integer maxTokens) {
+            return new ChatCompletionRequest(this.model, this.messages, this.stream, this.temperature, maxTokens, this.topP,
+                    this.topK, this.repetitionPenalty, this.numBeams, this.tools, this.toolChoice, this.user);
+        }
+
     }
 
     /**
@@ -406,6 +484,7 @@ public class ZhinaoApi {
         private RestClient.Builder restClientBuilder = RestClient.builder();
         private WebClient.Builder webClientBuilder = WebClient.builder();
         private ResponseErrorHandler responseErrorHandler = RetryUtils.DEFAULT_RESPONSE_ERROR_HANDLER;
+        private ZhinaoMessageEncodingCache messageEncodingCache;
 
         public Builder baseUrl(String baseUrl) {
             Assert.hasText(baseUrl, "baseUrl cannot be null or empty");
@@ -455,10 +534,15 @@ public class ZhinaoApi {
             return this;
         }
 
+        public Builder messageEncodingCache(ZhinaoMessageEncodingCache messageEncodingCache) {
+            this.messageEncodingCache = messageEncodingCache;
+            return this;
+        }
+
         public ZhinaoApi build() {
             Assert.notNull(apiKey, "apiKey cannot be null");
             return new ZhinaoApi(this.baseUrl, this.apiKey, this.headers, this.completionsPath,
-                    this.restClientBuilder, this.webClientBuilder, this.responseErrorHandler);
+                    this.restClientBuilder, this.webClientBuilder, this.responseErrorHandler, this.messageEncodingCache);
         }
     }
 
@@ -0,0 +1,329 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.api;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.lincoco.zhinao.jfr.ZhinaoCacheEvent;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.util.Assert;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Converts Spring AI messages to {@link ZhinaoApi.ChatCompletionMessage}s and encodes
+ * {@link ZhinaoApi.ChatCompletionRequest}s to JSON, reusing the conversion and the encoded
+ * JSON fragment of every message seen before.
+ * <p>
+ * In a long conversation or tool loop every request repeats the whole history, so converting
+ * and serializing it from scratch on every turn costs O(n²) over the conversation. With this
+ * cache only new messages are converted and serialized, the request body is assembled by
+ * concatenating the cached fragments.
+ * </p>
+ * <p>
+ * Entries are keyed by the identity of the message and hold it weakly, so a lookup never
+ * compares message content and entries go away with the conversation. Both the conversions
+ * and the fragments are bounded and evict the least recently used entry first. Large caches
+ * are split into segments by identity hash, each with its own lock and LRU order, so
+ * concurrent requests rarely contend and eviction is least recently used per segment. Messages
+ * read again from a persistent chat memory are new instances and are encoded again.
+ * </p>
+ *
+ * @author xueyeshang
+ */
+public class ZhinaoMessageEncodingCache implements MeterBinder {
+
+    public static final int DEFAULT_MAX_SIZE = 10_000;
+
+    private static final byte[] MESSAGES_PREFIX = "{\"messages\":[".getBytes(StandardCharsets.UTF_8);
+
+    private final ObjectMapper objectMapper;
+
+    private final IdentityLru<List<ZhinaoApi.ChatCompletionMessage>> conversions;
+
+    private final IdentityLru<byte[]> fragments;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param objectMapper the mapper the fragments are serialized with.
+     * @param maxSize the maximum number of cached conversions and of cached fragments.
+     */
+    public ZhinaoMessageEncodingCache(ObjectMapper objectMapper, int maxSize) {
+        Assert.notNull(objectMapper, "objectMapper cannot be null");
+        Assert.isTrue(maxSize > 0, "maxSize must be greater than 0");
+        this.objectMapper = objectMapper;
+        this.conversions = new IdentityLru<>(maxSize);
+        this.fragments = new IdentityLru<>(maxSize);
+    }
+
+    public ZhinaoMessageEncodingCache(ObjectMapper objectMapper) {
+        this(objectMapper, DEFAULT_MAX_SIZE);
+    }
+
+    public ZhinaoMessageEncodingCache() {
+        this(new ObjectMapper());
+    }
+
+    /**
+     * Converts a message once, later requests of the same conversation reuse the converted
+     * messages and with them their encoded fragments.
+     * @param message the Spring AI message.
+     * @param converter converts the message when it was not seen before.
+     * @return the chat completion messages of the message.
+     */
+    public List<ZhinaoApi.ChatCompletionMessage> convert(Message message,
+                                                         Function<Message, List<ZhinaoApi.ChatCompletionMessage>> converter) {
+        Assert.notNull(message, "message cannot be null");
+        List<ZhinaoApi.ChatCompletionMessage> converted = this.conversions.get(message);
+        if (converted == null) {
+            converted = List.copyOf(converter.apply(message));
+            this.conversions.put(message, converted);
+        }
+        return converted;
+    }
+
+    /**
+     * @param request the request to encode.
+     * @return the UTF-8 encoded JSON request body.
+     */
+    public byte[] encode(ZhinaoApi.ChatCompletionRequest request) {
+        Assert.notNull(request, "request cannot be null");
+        // 除消息外的字段体积小，每次直接序列化；消息为空时 NON_NULL 会省略 messages 字段
+        byte[] rest = write(new ZhinaoApi.ChatCompletionRequest(request.model(), null, request.stream(),
+                request.temperature(), request.maxTokens(), request.topP(), request.topK(), request.repetitionPenalty(),
+                request.numBeams(), request.tools(), request.toolChoice(), request.user()));
+        List<ZhinaoApi.ChatCompletionMessage> messages = request.messages();
+        if (messages == null) {
+            return rest;
+        }
+
+        byte[][] messageFragments = new byte[messages.size()][];
+        int length = MESSAGES_PREFIX.length + Math.max(messages.size() - 1, 0) + 1 + (rest.length > 2 ? rest.length : 1);
+        int misses = 0;
+        for (int i = 0; i < messageFragments.length; i++) {
+            ZhinaoApi.ChatCompletionMessage message = messages.get(i);
+            byte[] fragment = this.fragments.get(message);
+            if (fragment == null) {
+                fragment = write(message);
+                this.fragments.put(message, fragment);
+                misses++;
+            }
+            messageFragments[i] = fragment;
+            length += fragment.length;
+        }
+        this.hits.add(messages.size() - misses);
+        this.misses.add(misses);
+        ZhinaoCacheEvent.record(ZhinaoCacheEvent.MESSAGE_ENCODING, request.model(), messages.size() - misses, misses);
+
+        // {"messages":[m1,m2,...],<其余字段>}
+        byte[] body = new byte[length];
+        int position = append(body, 0, MESSAGES_PREFIX, 0, MESSAGES_PREFIX.length);
+        for (int i = 0; i < messageFragments.length; i++) {
+            if (i > 0) {
+                body[position++] = ',';
+            }
+            position = append(body, position, messageFragments[i], 0, messageFragments[i].length);
+        }
+        body[position++] = ']';
+        if (rest.length > 2) {
+            body[position++] = ',';
+            append(body, position, rest, 1, rest.length - 1);
+        } else {
+            body[position] = '}';
+        }
+        return body;
+    }
+
+    public int size() {
+        return this.fragments.size();
+    }
+
+    public long hitCount() {
+        return this.hits.sum();
+    }
+
+    public long missCount() {
+        return this.misses.sum();
+    }
+
+    public void clear() {
+        this.conversions.clear();
+        this.fragments.clear();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("zhinao.chat.message.encoding.size", this, ZhinaoMessageEncodingCache::size)
+                .description("Number of cached message JSON fragments")
+                .register(registry);
+        FunctionCounter.builder("zhinao.chat.message.encoding.requests", this.hits, LongAdder::sum)
+                .description("Message encodings answered from the cache or serialized")
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("zhinao.chat.message.encoding.requests", this.misses, LongAdder::sum)
+                .description("Message encodings answered from the cache or serialized")
+                .tag("result", "miss")
+                .register(registry);
+    }
+
+    private byte[] write(Object value) {
+        try {
+            return this.objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("Failed to encode chat completion request", ex);
+        }
+    }
+
+    private static int append(byte[] target, int position, byte[] source, int offset, int length) {
+        System.arraycopy(source, offset, target, position, length);
+        return position + length;
+    }
+
+    /**
+     * 以对象身份为键并弱引用键的 LRU，按身份哈希分段加锁，避免所有请求竞争同一把锁
+     */
+    private static final class IdentityLru<V> {
+
+        private static final int MAX_SEGMENTS = 16;
+
+        /**
+         * 每段至少容纳的条目数，容量小时只用一段以保持精确的 LRU 顺序
+         */
+        private static final int MIN_SEGMENT_SIZE = 256;
+
+        private final Segment<V>[] segments;
+
+        @SuppressWarnings("unchecked")
+        IdentityLru(int maxSize) {
+            int segmentCount = Math.max(1, Math.min(MAX_SEGMENTS, Integer.highestOneBit(maxSize / MIN_SEGMENT_SIZE)));
+            int segmentSize = (maxSize + segmentCount - 1) / segmentCount;
+            this.segments = new Segment[segmentCount];
+            for (int i = 0; i < segmentCount; i++) {
+                this.segments[i] = new Segment<>(segmentSize);
+            }
+        }
+
+        V get(Object key) {
+            return segment(key).get(key);
+        }
+
+        void put(Object key, V value) {
+            segment(key).put(key, value);
+        }
+
+        int size() {
+            int size = 0;
+            for (Segment<V> segment : this.segments) {
+                size += segment.size();
+            }
+            return size;
+        }
+
+        void clear() {
+            for (Segment<V> segment : this.segments) {
+                segment.clear();
+            }
+        }
+
+        private Segment<V> segment(Object key) {
+            int hash = System.identityHashCode(key);
+            return this.segments[(hash ^ (hash >>> 16)) & (this.segments.length - 1)];
+        }
+    }
+
+    /**
+     * 分段内的 LRU，键被回收的条目在下次写入时清理
+     */
+    private static final class Segment<V> {
+
+        private final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+
+        private final LinkedHashMap<IdentityKey, V> entries;
+
+        Segment(int maxSize) {
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<IdentityKey, V> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        synchronized V get(Object key) {
+            return this.entries.get(new IdentityKey(key, null));
+        }
+
+        synchronized void put(Object key, V value) {
+            expunge();
+            this.entries.put(new IdentityKey(key, this.queue), value);
+        }
+
+        synchronized int size() {
+            expunge();
+            return this.entries.size();
+        }
+
+        synchronized void clear() {
+            expunge();
+            this.entries.clear();
+        }
+
+        private void expunge() {
+            for (Reference<?> reference = this.queue.poll(); reference != null; reference = this.queue.poll()) {
+                this.entries.remove(reference);
+            }
+        }
+    }
+
+    private static final class IdentityKey extends WeakReference<Object> {
+
+        private final int hash;
+
+        IdentityKey(Object referent, ReferenceQueue<Object> queue) {
+            super(referent, queue);
+            this.hash = System.identityHashCode(referent);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            Object referent = get();
+            return referent != null && other instanceof IdentityKey key && referent == key.get();
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+}
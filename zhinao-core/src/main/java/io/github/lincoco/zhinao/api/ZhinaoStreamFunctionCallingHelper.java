@@ -156,4 +156,66 @@ public class ZhinaoStreamFunctionCallingHelper {
         }
         return choice.finishReason() == ZhinaoApi.Choice.ChatCompletionFinishReason.TOOL_CALLS;
     }
+
+    /**
+     * 判断流式输出中工具调用的参数是否已经是语法完整的 JSON 对象或数组，
+     * 完整后参数不会再追加内容，可以提前执行该工具
+     *
+     * @param arguments the arguments of a tool call merged so far
+     * @return true if the arguments form a syntactically complete JSON object or array.
+     */
+    public boolean isToolCallArgumentsComplete(String arguments) {
+        if (arguments == null) {
+            return false;
+        }
+        int end = arguments.length() - 1;
+        while (end >= 0 && Character.isWhitespace(arguments.charAt(end))) {
+            end--;
+        }
+        // cheap check first, the arguments are re-checked for every streamed chunk
+        if (end < 0 || (arguments.charAt(end) != '}' && arguments.charAt(end) != ']')) {
+            return false;
+        }
+        int depth = 0;
+        boolean started = false;
+        boolean inString = false;
+        boolean escaped = false;
+        for (int i = 0; i <= end; i++) {
+            char c = arguments.charAt(i);
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                }
+                continue;
+            }
+            switch (c) {
+                case '"' -> {
+                    if (!started) {
+                        return false;
+                    }
+                    inString = true;
+                }
+                case '{', '[' -> {
+                    depth++;
+                    started = true;
+                }
+                case '}', ']' -> {
+                    depth--;
+                    if (depth < 0 || (depth == 0 && i != end)) {
+                        return false;
+                    }
+                }
+                default -> {
+                    if (!started && !Character.isWhitespace(c)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return started && depth == 0 && !inString;
+    }
 }
@@ -0,0 +1,149 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.capture;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Redacts captured payloads before they are stored: the values of the configured JSON fields
+ * are replaced by a mask, and every match of the configured patterns in the remaining text
+ * values is masked.
+ *
+ * @author xueyeshang
+ */
+public class ZhinaoCaptureRedaction {
+
+    public static final String DEFAULT_MASK = "******";
+
+    /**
+     * Masks nothing.
+     */
+    public static final ZhinaoCaptureRedaction NONE = builder().build();
+
+    private final Set<String> fields;
+
+    private final List<Pattern> patterns;
+
+    private final String mask;
+
+    private ZhinaoCaptureRedaction(Set<String> fields, List<Pattern> patterns, String mask) {
+        this.fields = Set.copyOf(fields);
+        this.patterns = List.copyOf(patterns);
+        this.mask = mask;
+    }
+
+    /**
+     * 原地脱敏 JSON 树
+     *
+     * @param node the payload, modified in place.
+     * @return the same node.
+     */
+    public JsonNode redact(JsonNode node) {
+        if (node instanceof ObjectNode objectNode) {
+            Iterator<Map.Entry<String, JsonNode>> iterator = objectNode.fields();
+            while (iterator.hasNext()) {
+                Map.Entry<String, JsonNode> field = iterator.next();
+                if (this.fields.contains(field.getKey())) {
+                    if (!field.getValue().isNull()) {
+                        field.setValue(TextNode.valueOf(this.mask));
+                    }
+                } else {
+                    field.setValue(redact(field.getValue()));
+                }
+            }
+        } else if (node instanceof ArrayNode arrayNode) {
+            for (int i = 0; i < arrayNode.size(); i++) {
+                arrayNode.set(i, redact(arrayNode.get(i)));
+            }
+        } else if (node != null && node.isTextual() && !this.patterns.isEmpty()) {
+            String text = node.textValue();
+            for (Pattern pattern : this.patterns) {
+                text = pattern.matcher(text).replaceAll(this.mask);
+            }
+            return TextNode.valueOf(text);
+        }
+        return node;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+
+        private final Set<String> fields = new HashSet<>();
+
+        private final List<Pattern> patterns = new ArrayList<>();
+
+        private String mask = DEFAULT_MASK;
+
+        /**
+         * @param fields the names of the JSON fields whose values are masked wherever they occur,
+         * for example {@code user} or {@code arguments}.
+         * @return this builder.
+         */
+        public Builder fields(Set<String> fields) {
+            Assert.notNull(fields, "fields cannot be null");
+            this.fields.addAll(fields);
+            return this;
+        }
+
+        public Builder field(String field) {
+            Assert.hasText(field, "field cannot be null or empty");
+            this.fields.add(field);
+            return this;
+        }
+
+        /**
+         * @param patterns regular expressions whose matches are masked in all text values, for
+         * example phone numbers or API keys.
+         * @return this builder.
+         */
+        public Builder patterns(List<String> patterns) {
+            Assert.notNull(patterns, "patterns cannot be null");
+            patterns.forEach(this::pattern);
+            return this;
+        }
+
+        public Builder pattern(String pattern) {
+            Assert.hasText(pattern, "pattern cannot be null or empty");
+            this.patterns.add(Pattern.compile(pattern));
+            return this;
+        }
+
+        public Builder mask(String mask) {
+            Assert.notNull(mask, "mask cannot be null");
+            this.mask = mask;
+            return this;
+        }
+
+        public ZhinaoCaptureRedaction build() {
+            return new ZhinaoCaptureRedaction(this.fields, this.patterns, this.mask);
+        }
+    }
+}
@@ -0,0 +1,321 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.capture;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import io.github.lincoco.zhinao.api.ZhinaoApi;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-size ring buffer of sampled request and response pairs, to look at example payloads
+ * when latency spikes without logging every payload.
+ * <p>
+ * A share of all requests is sampled when they start, and every request that turns out slow or
+ * failed is captured as well. Only captured exchanges are serialized and redacted; for the
+ * others the cost is one random number and a few field writes. Writers claim a slot with an
+ * atomic sequence and overwrite the oldest capture, so capturing never takes a lock. The
+ * response chunks of a stream are only kept when the stream was sampled up front, slow or
+ * failed streams are captured with their request only.
+ * </p>
+ *
+ * @author xueyeshang
+ */
+public class ZhinaoExchangeCapture {
+
+    public static final int DEFAULT_CAPACITY = 256;
+
+    public static final double DEFAULT_SAMPLE_RATE = 0.01;
+
+    public static final Duration DEFAULT_SLOW_THRESHOLD = Duration.ofSeconds(10);
+
+    private final AtomicReferenceArray<Capture> slots;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    // 最近一次清空时的序号，之后的捕获才计入数量
+    private volatile long clearedSequence;
+
+    private volatile double sampleRate;
+
+    private volatile long slowThresholdNanos;
+
+    private final ZhinaoCaptureRedaction redaction;
+
+    private final ObjectMapper objectMapper;
+
+    private ZhinaoExchangeCapture(Builder builder) {
+        this.slots = new AtomicReferenceArray<>(builder.capacity);
+        this.sampleRate = builder.sampleRate;
+        this.slowThresholdNanos = builder.slowThreshold.toNanos();
+        this.redaction = builder.redaction;
+        this.objectMapper = builder.objectMapper;
+    }
+
+    /**
+     * Starts timing a request and decides whether it is sampled.
+     * @param request the request about to be sent.
+     * @return the exchange to complete once the response or error arrives.
+     */
+    public Exchange begin(ZhinaoApi.ChatCompletionRequest request) {
+        Assert.notNull(request, "request cannot be null");
+        boolean sampled = this.sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < this.sampleRate;
+        return new Exchange(this, request, sampled);
+    }
+
+    /**
+     * @return the captured exchanges, newest first.
+     */
+    public List<Capture> captures() {
+        List<Capture> captures = new ArrayList<>(this.slots.length());
+        for (int i = 0; i < this.slots.length(); i++) {
+            Capture capture = this.slots.get(i);
+            if (capture != null) {
+                captures.add(capture);
+            }
+        }
+        captures.sort(Comparator.comparingLong(Capture::sequence).reversed());
+        return captures;
+    }
+
+    public void clear() {
+        this.clearedSequence = this.sequence.get();
+        for (int i = 0; i < this.slots.length(); i++) {
+            this.slots.set(i, null);
+        }
+    }
+
+    /**
+     * @return the number of captured exchanges held, without copying or sorting them.
+     */
+    public int captureCount() {
+        return (int) Math.min(this.sequence.get() - this.clearedSequence, this.slots.length());
+    }
+
+    public int capacity() {
+        return this.slots.length();
+    }
+
+    public double getSampleRate() {
+        return this.sampleRate;
+    }
+
+    /**
+     * Changes the share of sampled requests at runtime, for requests that start afterwards.
+     * @param sampleRate the new share between 0 and 1.
+     */
+    public void setSampleRate(double sampleRate) {
+        Assert.isTrue(sampleRate >= 0 && sampleRate <= 1, "sampleRate must be between 0 and 1");
+        this.sampleRate = sampleRate;
+    }
+
+    public Duration getSlowThreshold() {
+        return Duration.ofNanos(this.slowThresholdNanos);
+    }
+
+    public void setSlowThreshold(Duration slowThreshold) {
+        Assert.notNull(slowThreshold, "slowThreshold cannot be null");
+        Assert.isTrue(!slowThreshold.isNegative(), "slowThreshold must not be negative");
+        this.slowThresholdNanos = slowThreshold.toNanos();
+    }
+
+    private void capture(Exchange exchange, Reason reason, long latencyNanos, Object response, Throwable error) {
+        JsonNode request = this.redaction.redact(this.objectMapper.valueToTree(exchange.request));
+        JsonNode body = response != null ? this.redaction.redact(this.objectMapper.valueToTree(response)) : null;
+        long sequence = this.sequence.getAndIncrement();
+        Capture capture = new Capture(sequence, Instant.now(), exchange.request.model(),
+                Boolean.TRUE.equals(exchange.request.stream()), reason, Duration.ofNanos(latencyNanos), request, body,
+                error != null ? error.getClass().getName() + ": " + error.getMessage() : null);
+        this.slots.set((int) (sequence % this.slots.length()), capture);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public enum Reason {
+
+        SAMPLED, SLOW, FAILED
+    }
+
+    /**
+     * @param sequence the capture sequence, increasing with every capture.
+     * @param timestamp when the exchange completed.
+     * @param model the requested model.
+     * @param stream whether the request was streamed.
+     * @param reason why the exchange was captured.
+     * @param latency the time from sending the request to its completion.
+     * @param request the redacted request.
+     * @param response the redacted response, the chunks of a stream, null when not available.
+     * @param error the error of a failed exchange.
+     */
+    public record Capture(long sequence, Instant timestamp, String model, boolean stream, Reason reason,
+                          Duration latency, JsonNode request, JsonNode response, String error) {
+    }
+
+    /**
+     * 单次请求的采样状态，仅在被采样或完成时确认需要捕获后才序列化
+     */
+    public static final class Exchange {
+
+        /**
+         * Captures nothing, for models without capture.
+         */
+        public static final Exchange NONE = new Exchange(null, null, false);
+
+        private final ZhinaoExchangeCapture capture;
+
+        private final ZhinaoApi.ChatCompletionRequest request;
+
+        private final boolean sampled;
+
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        private List<ZhinaoApi.ChatCompletionChunk> chunks;
+
+        private volatile long startNanos;
+
+        private Exchange(ZhinaoExchangeCapture capture, ZhinaoApi.ChatCompletionRequest request, boolean sampled) {
+            this.capture = capture;
+            this.request = request;
+            this.sampled = sampled;
+            this.chunks = sampled && request != null && Boolean.TRUE.equals(request.stream()) ? new ArrayList<>() : null;
+            this.startNanos = System.nanoTime();
+        }
+
+        /**
+         * Restarts the latency clock, for streams that are subscribed later than created.
+         */
+        public void start() {
+            this.startNanos = System.nanoTime();
+        }
+
+        public boolean isSampled() {
+            return this.sampled;
+        }
+
+        /**
+         * Keeps a response chunk of a sampled stream.
+         * @param chunk the chunk.
+         */
+        public void chunk(ZhinaoApi.ChatCompletionChunk chunk) {
+            List<ZhinaoApi.ChatCompletionChunk> chunks = this.chunks;
+            if (chunks != null) {
+                chunks.add(chunk);
+            }
+        }
+
+        /**
+         * @param response the response of a call, null for streams.
+         */
+        public void complete(Object response) {
+            finish(response, null);
+        }
+
+        public void fail(Throwable error) {
+            finish(null, error);
+        }
+
+        private void finish(Object response, Throwable error) {
+            if (this.capture == null || !this.done.compareAndSet(false, true)) {
+                return;
+            }
+            long latencyNanos = System.nanoTime() - this.startNanos;
+            Reason reason = error != null ? Reason.FAILED
+                    : latencyNanos >= this.capture.slowThresholdNanos ? Reason.SLOW
+                    : this.sampled ? Reason.SAMPLED : null;
+            if (reason == null) {
+                this.chunks = null;
+                return;
+            }
+            Object body = response;
+            if (body == null && this.chunks != null) {
+                ArrayNode chunks = this.capture.objectMapper.createArrayNode();
+                this.chunks.forEach(chunk -> chunks.add(this.capture.objectMapper.valueToTree(chunk)));
+                body = chunks;
+            }
+            this.chunks = null;
+            this.capture.capture(this, reason, latencyNanos, body, error);
+        }
+    }
+
+    public static class Builder {
+
+        private int capacity = DEFAULT_CAPACITY;
+
+        private double sampleRate = DEFAULT_SAMPLE_RATE;
+
+        private Duration slowThreshold = DEFAULT_SLOW_THRESHOLD;
+
+        private ZhinaoCaptureRedaction redaction = ZhinaoCaptureRedaction.NONE;
+
+        private ObjectMapper objectMapper = new ObjectMapper();
+
+        public Builder capacity(int capacity) {
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * @param sampleRate the share of requests captured regardless of latency, between 0 and 1.
+         * @return this builder.
+         */
+        public Builder sampleRate(double sampleRate) {
+            this.sampleRate = sampleRate;
+            return this;
+        }
+
+        /**
+         * @param slowThreshold requests taking at least this long are always captured.
+         * @return this builder.
+         */
+        public Builder slowThreshold(Duration slowThreshold) {
+            this.slowThreshold = slowThreshold;
+            return this;
+        }
+
+        public Builder redaction(ZhinaoCaptureRedaction redaction) {
+            this.redaction = redaction;
+            return this;
+        }
+
+        public Builder objectMapper(ObjectMapper objectMapper) {
+            this.objectMapper = objectMapper;
+            return this;
+        }
+
+        public ZhinaoExchangeCapture build() {
+            Assert.isTrue(this.capacity > 0, "capacity must be greater than 0");
+            Assert.isTrue(this.sampleRate >= 0 && this.sampleRate <= 1, "sampleRate must be between 0 and 1");
+            Assert.notNull(this.slowThreshold, "slowThreshold cannot be null");
+            Assert.isTrue(!this.slowThreshold.isNegative(), "slowThreshold must not be negative");
+            Assert.notNull(this.redaction, "redaction cannot be null");
+            Assert.notNull(this.objectMapper, "objectMapper cannot be null");
+            return new ZhinaoExchangeCapture(this);
+        }
+    }
+}
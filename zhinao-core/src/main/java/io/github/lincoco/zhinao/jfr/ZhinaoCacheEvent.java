@@ -0,0 +1,63 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event emitted for lookups of the tool result cache and the message encoding
+ * cache.
+ *
+ * @author xueyeshang
+ */
+@Name("io.github.lincoco.zhinao.Cache")
+@Label("Zhinao Cache Lookup")
+@Category({"Zhinao", "Cache"})
+@Description("Lookups of a Zhinao cache")
+public final class ZhinaoCacheEvent extends Event {
+
+    public static final String TOOL_RESULT = "tool-result";
+
+    public static final String MESSAGE_ENCODING = "message-encoding";
+
+    @Label("Cache")
+    public String cache;
+
+    @Label("Key")
+    @Description("Tool name for the tool result cache")
+    public String key;
+
+    @Label("Hits")
+    public int hits;
+
+    @Label("Misses")
+    public int misses;
+
+    public static void record(String cache, String key, int hits, int misses) {
+        ZhinaoCacheEvent event = new ZhinaoCacheEvent();
+        if (event.shouldCommit()) {
+            event.cache = cache;
+            event.key = key;
+            event.hits = hits;
+            event.misses = misses;
+            event.commit();
+        }
+    }
+}
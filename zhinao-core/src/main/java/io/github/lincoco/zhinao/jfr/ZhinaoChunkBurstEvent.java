@@ -0,0 +1,49 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event spanning consecutive chunks of a stream that arrived without a stall,
+ * a gap of more than {@link #STALL_THRESHOLD_NANOS} between two chunks starts a new burst.
+ *
+ * @author xueyeshang
+ */
+@Name("io.github.lincoco.zhinao.ChunkBurst")
+@Label("Zhinao Stream Chunk Burst")
+@Category({"Zhinao", "Chat"})
+@Description("Chunks of a stream received without a stall")
+public final class ZhinaoChunkBurstEvent extends Event {
+
+    public static final long STALL_THRESHOLD_NANOS = 100_000_000L;
+
+    @Label("Model")
+    public String model;
+
+    @Label("Chunks")
+    public int chunks;
+
+    @Label("Stall Before")
+    @Description("Gap before the first chunk of the burst, or time to first chunk for the first burst")
+    @Timespan
+    public long stallBefore;
+}
@@ -0,0 +1,58 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event spanning one request sent to the model, from sending it to the end of
+ * its response or stream.
+ *
+ * @author xueyeshang
+ */
+@Name("io.github.lincoco.zhinao.Request")
+@Label("Zhinao Request")
+@Category({"Zhinao", "Chat"})
+@Description("Request sent to the Zhinao chat completions API")
+public final class ZhinaoRequestEvent extends Event {
+
+    @Label("Model")
+    public String model;
+
+    @Label("Mode")
+    @Description("call or stream")
+    public String mode;
+
+    @Label("Outcome")
+    @Description("success, error or cancelled")
+    public String outcome;
+
+    @Label("Prompt Tokens")
+    public int promptTokens;
+
+    @Label("Completion Tokens")
+    public int completionTokens;
+
+    @Label("Chunks")
+    public int chunks;
+
+    @Label("Exception")
+    public String exception;
+}
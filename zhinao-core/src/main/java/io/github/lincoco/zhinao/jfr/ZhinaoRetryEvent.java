@@ -0,0 +1,61 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event emitted when a request is retried.
+ *
+ * @author xueyeshang
+ */
+@Name("io.github.lincoco.zhinao.Retry")
+@Label("Zhinao Retry")
+@Category({"Zhinao", "Chat"})
+@Description("Retry of a request after a failed attempt")
+public final class ZhinaoRetryEvent extends Event {
+
+    @Label("Model")
+    public String model;
+
+    @Label("Attempt")
+    @Description("Number of the retry, starting at 1")
+    public int attempt;
+
+    @Label("Exception")
+    @Description("Exception of the failed attempt")
+    public String exception;
+
+    @Label("Message")
+    public String message;
+
+    public static void record(String model, int attempt, Throwable lastThrowable) {
+        ZhinaoRetryEvent event = new ZhinaoRetryEvent();
+        if (event.shouldCommit()) {
+            event.model = model;
+            event.attempt = attempt;
+            if (lastThrowable != null) {
+                event.exception = lastThrowable.getClass().getName();
+                event.message = lastThrowable.getMessage();
+            }
+            event.commit();
+        }
+    }
+}
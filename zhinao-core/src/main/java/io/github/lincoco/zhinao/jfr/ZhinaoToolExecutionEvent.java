@@ -0,0 +1,44 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event spanning the execution of one tool call.
+ *
+ * @author xueyeshang
+ */
+@Name("io.github.lincoco.zhinao.ToolExecution")
+@Label("Zhinao Tool Execution")
+@Category({"Zhinao", "Tool"})
+@Description("Execution of a tool call requested by the model")
+public final class ZhinaoToolExecutionEvent extends Event {
+
+    @Label("Tool")
+    public String tool;
+
+    @Label("Asynchronous")
+    public boolean async;
+
+    @Label("Failed")
+    @Description("Whether the tool failed or timed out")
+    public boolean failed;
+}
@@ -0,0 +1,669 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.memory;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.util.Assert;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * {@link ChatMemoryRepository} that keeps messages outside the Java heap, in memory-mapped
+ * append-only segment files.
+ * <p>
+ * Every change is written as a log record: appended messages, a trim of the oldest messages
+ * when the memory window slides, or a clear. Each conversation only keeps a small index of
+ * record locations on the heap, and the decoded messages of the most recently used
+ * conversations are kept in an LRU cache. On startup the segments are replayed to rebuild
+ * the indexes.
+ * </p>
+ * <p>
+ * A background task compacts the segment with the lowest share of live records once at most
+ * the threshold of it is live, by rewriting the conversations it references into the active
+ * segment and deleting its file. Rewritten conversations start with a clear and deleted ones
+ * keep their clear while older segments still hold their records, so replaying the remaining
+ * segments in order yields the same state whichever segment was removed. Media attached to
+ * user messages is not stored.
+ * </p>
+ *
+ * @author xueyeshang
+ */
+public class ZhinaoMappedChatMemoryRepository implements ChatMemoryRepository, MeterBinder, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ZhinaoMappedChatMemoryRepository.class);
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    public static final int DEFAULT_MAX_RESIDENT_CONVERSATIONS = 10_000;
+
+    public static final double DEFAULT_COMPACTION_THRESHOLD = 0.5;
+
+    public static final Duration DEFAULT_COMPACTION_INTERVAL = Duration.ofSeconds(30);
+
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final byte APPEND = 1;
+
+    private static final byte TRIM = 2;
+
+    private static final byte CLEAR = 3;
+
+    /**
+     * 记录头：int 记录长度 + byte 类型 + short 会话 ID 长度
+     */
+    private static final int HEADER_SIZE = 7;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final double compactionThreshold;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private final Map<String, ConversationIndex> indexes = new HashMap<>();
+    private final Map<String, List<Message>> resident;
+    private final ScheduledExecutorService compactor;
+
+    private Segment active;
+
+    private ZhinaoMappedChatMemoryRepository(Builder builder) {
+        this.directory = builder.directory;
+        this.segmentSize = builder.segmentSize;
+        this.compactionThreshold = builder.compactionThreshold;
+        int maxResidentConversations = builder.maxResidentConversations;
+        this.resident = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<Message>> eldest) {
+                return size() > maxResidentConversations;
+            }
+        };
+        try {
+            Files.createDirectories(this.directory);
+            replay();
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Failed to open chat memory segments in " + this.directory, ex);
+        }
+        if (builder.compactionInterval.isZero()) {
+            this.compactor = null;
+        } else {
+            this.compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "zhinao-memory-compaction");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = builder.compactionInterval.toMillis();
+            this.compactor.scheduleWithFixedDelay(this::compactQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public List<String> findConversationIds() {
+        this.lock.readLock().lock();
+        try {
+            List<String> conversationIds = new ArrayList<>();
+            this.indexes.forEach((conversationId, index) -> {
+                if (index.size > 0) {
+                    conversationIds.add(conversationId);
+                }
+            });
+            return conversationIds;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Message> findByConversationId(String conversationId) {
+        Assert.hasText(conversationId, "conversationId cannot be null or empty");
+        this.lock.readLock().lock();
+        try {
+            return new ArrayList<>(load(conversationId));
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void saveAll(String conversationId, List<Message> messages) {
+        Assert.hasText(conversationId, "conversationId cannot be null or empty");
+        Assert.notNull(messages, "messages cannot be null");
+        Assert.noNullElements(messages, "messages cannot contain null elements");
+        if (messages.isEmpty()) {
+            deleteByConversationId(conversationId);
+            return;
+        }
+        this.lock.writeLock().lock();
+        try {
+            List<Message> stored = load(conversationId);
+            int dropped = overlap(stored, messages);
+            if (dropped == stored.size() && !stored.isEmpty()) {
+                writeClear(conversationId);
+            } else if (dropped > 0) {
+                writeTrim(conversationId, dropped);
+            }
+            for (Message message : messages.subList(stored.size() - dropped, messages.size())) {
+                writeAppend(conversationId, ZhinaoMessageCodec.encode(message));
+            }
+            synchronized (this.resident) {
+                this.resident.put(conversationId, List.copyOf(messages));
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void deleteByConversationId(String conversationId) {
+        Assert.hasText(conversationId, "conversationId cannot be null or empty");
+        this.lock.writeLock().lock();
+        try {
+            ConversationIndex index = this.indexes.get(conversationId);
+            if (index != null && index.size > 0) {
+                writeClear(conversationId);
+            }
+            synchronized (this.resident) {
+                this.resident.remove(conversationId);
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Compacts the segment with the lowest share of live bytes, if that share is at most the
+     * compaction threshold. The active segment is never compacted.
+     * @return whether a segment was compacted.
+     */
+    public boolean compact() {
+        this.lock.writeLock().lock();
+        try {
+            Segment candidate = null;
+            for (Segment segment : this.segments.values()) {
+                if (segment != this.active && (candidate == null || liveRatio(segment) < liveRatio(candidate))) {
+                    candidate = segment;
+                }
+            }
+            if (candidate == null || liveRatio(candidate) > this.compactionThreshold) {
+                return false;
+            }
+            for (String conversationId : candidate.conversations) {
+                ConversationIndex index = this.indexes.get(conversationId);
+                if (index == null) {
+                    continue;
+                }
+                if (index.size == 0) {
+                    // 删除记录在本段时，更早的段若仍有该会话的记录则需保留删除记录，否则重放会恢复该会话
+                    if (index.lastSegment == candidate.id) {
+                        if (referencedBefore(conversationId, candidate.id)) {
+                            writeClear(conversationId);
+                        } else {
+                            this.indexes.remove(conversationId);
+                        }
+                    }
+                    continue;
+                }
+                // 后续段中的 TRIM 记录依赖本段的消息，因此整体重写该会话
+                List<byte[]> payloads = new ArrayList<>(index.size);
+                for (int i = 0; i < index.size; i++) {
+                    payloads.add(payload(index.locations[i]));
+                }
+                writeClear(conversationId);
+                for (byte[] payload : payloads) {
+                    writeAppend(conversationId, payload);
+                }
+            }
+            this.segments.remove(candidate.id);
+            Files.deleteIfExists(candidate.path);
+            return true;
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Failed to delete compacted segment", ex);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    public int conversationCount() {
+        this.lock.readLock().lock();
+        try {
+            return (int) this.indexes.values().stream().filter(index -> index.size > 0).count();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public int residentCount() {
+        synchronized (this.resident) {
+            return this.resident.size();
+        }
+    }
+
+    public int segmentCount() {
+        this.lock.readLock().lock();
+        try {
+            return this.segments.size();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the bytes written to all segments, including obsolete records.
+     */
+    public long segmentBytes() {
+        this.lock.readLock().lock();
+        try {
+            return this.segments.values().stream().mapToLong(segment -> segment.position).sum();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the bytes of the records holding current messages.
+     */
+    public long liveBytes() {
+        this.lock.readLock().lock();
+        try {
+            return this.segments.values().stream().mapToLong(segment -> segment.liveBytes).sum();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("zhinao.chat.memory.conversations", this, ZhinaoMappedChatMemoryRepository::conversationCount)
+                .description("Number of stored conversations")
+                .register(registry);
+        Gauge.builder("zhinao.chat.memory.resident", this, ZhinaoMappedChatMemoryRepository::residentCount)
+                .description("Number of conversations whose messages are cached on the heap")
+                .register(registry);
+        Gauge.builder("zhinao.chat.memory.segment.bytes", this, ZhinaoMappedChatMemoryRepository::segmentBytes)
+                .description("Bytes written to the memory segments")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("zhinao.chat.memory.live.bytes", this, ZhinaoMappedChatMemoryRepository::liveBytes)
+                .description("Bytes of the memory segments holding current messages")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    /**
+     * Stops the background compaction and flushes the active segment to disk.
+     */
+    @Override
+    public void close() {
+        if (this.compactor != null) {
+            this.compactor.shutdownNow();
+        }
+        this.lock.writeLock().lock();
+        try {
+            this.active.buffer.force();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (RuntimeException ex) {
+            // 压缩失败不影响读写，下次调度时重试
+            logger.warn("Failed to compact chat memory segments in {}, retrying with the next compaction", this.directory, ex);
+        }
+    }
+
+    private static double liveRatio(Segment segment) {
+        return segment.position == 0 ? 0 : (double) segment.liveBytes / segment.position;
+    }
+
+    /**
+     * 调用方需持有写锁
+     */
+    private boolean referencedBefore(String conversationId, int segmentId) {
+        for (Segment segment : this.segments.headMap(segmentId, false).values()) {
+            if (segment.conversations.contains(conversationId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 调用方需持有读锁或写锁
+     */
+    private List<Message> load(String conversationId) {
+        synchronized (this.resident) {
+            List<Message> messages = this.resident.get(conversationId);
+            if (messages != null) {
+                return messages;
+            }
+        }
+        ConversationIndex index = this.indexes.get(conversationId);
+        if (index == null || index.size == 0) {
+            return List.of();
+        }
+        List<Message> messages = new ArrayList<>(index.size);
+        for (int i = 0; i < index.size; i++) {
+            messages.add(ZhinaoMessageCodec.decode(payload(index.locations[i])));
+        }
+        messages = List.copyOf(messages);
+        synchronized (this.resident) {
+            this.resident.put(conversationId, messages);
+        }
+        return messages;
+    }
+
+    /**
+     * 返回已存储消息中需要丢弃的前缀长度，使其余部分与新消息列表的开头一致
+     */
+    private static int overlap(List<Message> stored, List<Message> messages) {
+        for (int dropped = Math.max(0, stored.size() - messages.size()); dropped < stored.size(); dropped++) {
+            boolean matches = true;
+            for (int i = dropped; i < stored.size() && matches; i++) {
+                Message storedMessage = stored.get(i);
+                Message message = messages.get(i - dropped);
+                matches = storedMessage == message || Objects.equals(storedMessage, message);
+            }
+            if (matches) {
+                return dropped;
+            }
+        }
+        return stored.size();
+    }
+
+    private void writeAppend(String conversationId, byte[] payload) {
+        long location = write(APPEND, conversationId, payload);
+        applyAppend(conversationId, location);
+    }
+
+    private void writeTrim(String conversationId, int count) {
+        write(TRIM, conversationId, new byte[] {(byte) (count >>> 24), (byte) (count >>> 16), (byte) (count >>> 8), (byte) count});
+        applyTrim(conversationId, count, this.active.id);
+    }
+
+    private void writeClear(String conversationId) {
+        write(CLEAR, conversationId, new byte[0]);
+        applyClear(conversationId, this.active.id);
+    }
+
+    private long write(byte kind, String conversationId, byte[] payload) {
+        byte[] id = conversationId.getBytes(StandardCharsets.UTF_8);
+        Assert.isTrue(id.length <= 0xFFFF, "conversationId is too long");
+        int length = HEADER_SIZE + id.length + payload.length;
+        Assert.isTrue(length <= this.segmentSize, () -> "Message of " + payload.length + " bytes does not fit in a segment");
+        if (this.active.position + length > this.active.buffer.capacity()) {
+            try {
+                this.active.buffer.force();
+                this.active = openSegment(this.active.id + 1, true);
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Failed to create chat memory segment", ex);
+            }
+            this.segments.put(this.active.id, this.active);
+        }
+        Segment segment = this.active;
+        int offset = segment.position;
+        segment.buffer.put(offset + 4, kind);
+        segment.buffer.putShort(offset + 5, (short) id.length);
+        segment.buffer.put(offset + HEADER_SIZE, id);
+        segment.buffer.put(offset + HEADER_SIZE + id.length, payload);
+        // 最后写入长度，写到一半时重放会在此处停止
+        segment.buffer.putInt(offset, length);
+        segment.position += length;
+        segment.conversations.add(conversationId);
+        return location(segment.id, offset);
+    }
+
+    private void applyAppend(String conversationId, long location) {
+        ConversationIndex index = this.indexes.computeIfAbsent(conversationId, id -> new ConversationIndex());
+        if (index.size == index.locations.length) {
+            index.locations = Arrays.copyOf(index.locations, index.size * 2);
+        }
+        index.locations[index.size++] = location;
+        index.lastSegment = segmentId(location);
+        Segment segment = this.segments.get(index.lastSegment);
+        segment.liveBytes += recordLength(location);
+    }
+
+    private void applyTrim(String conversationId, int count, int segmentId) {
+        ConversationIndex index = this.indexes.computeIfAbsent(conversationId, id -> new ConversationIndex());
+        int trimmed = Math.min(count, index.size);
+        release(index, 0, trimmed);
+        System.arraycopy(index.locations, trimmed, index.locations, 0, index.size - trimmed);
+        index.size -= trimmed;
+        index.lastSegment = segmentId;
+    }
+
+    private void applyClear(String conversationId, int segmentId) {
+        ConversationIndex index = this.indexes.computeIfAbsent(conversationId, id -> new ConversationIndex());
+        release(index, 0, index.size);
+        index.size = 0;
+        if (index.locations.length > ConversationIndex.INITIAL_CAPACITY) {
+            index.locations = new long[ConversationIndex.INITIAL_CAPACITY];
+        }
+        index.lastSegment = segmentId;
+    }
+
+    private void release(ConversationIndex index, int from, int to) {
+        for (int i = from; i < to; i++) {
+            long location = index.locations[i];
+            this.segments.get(segmentId(location)).liveBytes -= recordLength(location);
+        }
+    }
+
+    private int recordLength(long location) {
+        return this.segments.get(segmentId(location)).buffer.getInt(offset(location));
+    }
+
+    private byte[] payload(long location) {
+        MappedByteBuffer buffer = this.segments.get(segmentId(location)).buffer;
+        int offset = offset(location);
+        int length = buffer.getInt(offset);
+        int idLength = Short.toUnsignedInt(buffer.getShort(offset + 5));
+        byte[] payload = new byte[length - HEADER_SIZE - idLength];
+        buffer.get(offset + HEADER_SIZE + idLength, payload);
+        return payload;
+    }
+
+    private void replay() throws IOException {
+        List<Integer> segmentIds;
+        try (Stream<Path> files = Files.list(this.directory)) {
+            segmentIds = files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+        for (int segmentId : segmentIds) {
+            Segment segment = openSegment(segmentId, false);
+            this.segments.put(segmentId, segment);
+            replay(segment);
+            this.active = segment;
+        }
+        if (this.active == null) {
+            this.active = openSegment(0, true);
+            this.segments.put(0, this.active);
+        }
+    }
+
+    private void replay(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int offset = 0;
+        while (offset + HEADER_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(offset);
+            if (length < HEADER_SIZE || offset + length > buffer.capacity()) {
+                break;
+            }
+            byte kind = buffer.get(offset + 4);
+            byte[] id = new byte[Short.toUnsignedInt(buffer.getShort(offset + 5))];
+            buffer.get(offset + HEADER_SIZE, id);
+            String conversationId = new String(id, StandardCharsets.UTF_8);
+            segment.conversations.add(conversationId);
+            switch (kind) {
+                case APPEND -> applyAppend(conversationId, location(segment.id, offset));
+                case TRIM -> applyTrim(conversationId, buffer.getInt(offset + HEADER_SIZE + id.length), segment.id);
+                case CLEAR -> applyClear(conversationId, segment.id);
+                default -> throw new IllegalStateException("Corrupted chat memory segment " + segment.path + " at offset " + offset);
+            }
+            offset += length;
+        }
+        segment.position = offset;
+    }
+
+    private Segment openSegment(int segmentId, boolean create) throws IOException {
+        Path path = this.directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, segmentId, SEGMENT_SUFFIX));
+        StandardOpenOption[] options = create
+                ? new StandardOpenOption[] {StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE}
+                : new StandardOpenOption[] {StandardOpenOption.READ, StandardOpenOption.WRITE};
+        try (FileChannel channel = FileChannel.open(path, options)) {
+            long size = create ? this.segmentSize : channel.size();
+            return new Segment(segmentId, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+    }
+
+    private static long location(int segmentId, int offset) {
+        return ((long) segmentId << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    private static int segmentId(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int offset(long location) {
+        return (int) location;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private static final class Segment {
+
+        private final int id;
+
+        private final Path path;
+
+        private final MappedByteBuffer buffer;
+
+        private final Set<String> conversations = new HashSet<>();
+
+        private int position;
+
+        private long liveBytes;
+
+        private Segment(int id, Path path, MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * 会话当前消息所在记录的位置，高 32 位为段编号，低 32 位为段内偏移
+     */
+    private static final class ConversationIndex {
+
+        private static final int INITIAL_CAPACITY = 8;
+
+        private long[] locations = new long[INITIAL_CAPACITY];
+
+        private int size;
+
+        private int lastSegment;
+    }
+
+    public static final class Builder {
+
+        private Path directory;
+        private int segmentSize = DEFAULT_SEGMENT_SIZE;
+        private int maxResidentConversations = DEFAULT_MAX_RESIDENT_CONVERSATIONS;
+        private double compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+        private Duration compactionInterval = DEFAULT_COMPACTION_INTERVAL;
+
+        private Builder() {
+        }
+
+        public Builder directory(Path directory) {
+            this.directory = directory;
+            return this;
+        }
+
+        public Builder segmentSize(int segmentSize) {
+            this.segmentSize = segmentSize;
+            return this;
+        }
+
+        public Builder maxResidentConversations(int maxResidentConversations) {
+            this.maxResidentConversations = maxResidentConversations;
+            return this;
+        }
+
+        public Builder compactionThreshold(double compactionThreshold) {
+            this.compactionThreshold = compactionThreshold;
+            return this;
+        }
+
+        /**
+         * @param compactionInterval the delay between background compactions, {@link Duration#ZERO} disables them.
+         * @return this builder.
+         */
+        public Builder compactionInterval(Duration compactionInterval) {
+            this.compactionInterval = compactionInterval;
+            return this;
+        }
+
+        public ZhinaoMappedChatMemoryRepository build() {
+            Assert.notNull(this.directory, "directory cannot be null");
+            Assert.isTrue(this.segmentSize > HEADER_SIZE, "segmentSize is too small");
+            Assert.isTrue(this.maxResidentConversations >= 0, "maxResidentConversations cannot be negative");
+            Assert.isTrue(this.compactionThreshold >= 0 && this.compactionThreshold <= 1, "compactionThreshold must be between 0 and 1");
+            Assert.notNull(this.compactionInterval, "compactionInterval cannot be null");
+            Assert.isTrue(!this.compactionInterval.isNegative(), "compactionInterval cannot be negative");
+            return new ZhinaoMappedChatMemoryRepository(this);
+        }
+    }
+}
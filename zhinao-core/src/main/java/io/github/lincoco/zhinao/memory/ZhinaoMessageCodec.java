@@ -0,0 +1,148 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.memory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.util.CollectionUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of chat messages: type, text, metadata as JSON, and the tool calls
+ * or tool responses. Media of user messages is not stored.
+ *
+ * @author xueyeshang
+ */
+final class ZhinaoMessageCodec {
+
+    private static final byte USER = 0;
+    private static final byte ASSISTANT = 1;
+    private static final byte SYSTEM = 2;
+    private static final byte TOOL = 3;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() {
+    };
+
+    private ZhinaoMessageCodec() {
+    }
+
+    static byte[] encode(Message message) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + (message.getText() != null ? message.getText().length() * 3 : 0));
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            switch (message.getMessageType()) {
+                case USER -> out.writeByte(USER);
+                case ASSISTANT -> out.writeByte(ASSISTANT);
+                case SYSTEM -> out.writeByte(SYSTEM);
+                case TOOL -> out.writeByte(TOOL);
+            }
+            writeString(out, message.getText());
+            writeString(out, CollectionUtils.isEmpty(message.getMetadata()) ? null : OBJECT_MAPPER.writeValueAsString(message.getMetadata()));
+            if (message instanceof AssistantMessage assistantMessage) {
+                List<AssistantMessage.ToolCall> toolCalls = assistantMessage.getToolCalls();
+                out.writeInt(toolCalls.size());
+                for (AssistantMessage.ToolCall toolCall : toolCalls) {
+                    writeString(out, toolCall.id());
+                    writeString(out, toolCall.type());
+                    writeString(out, toolCall.name());
+                    writeString(out, toolCall.arguments());
+                }
+            } else if (message instanceof ToolResponseMessage toolResponseMessage) {
+                List<ToolResponseMessage.ToolResponse> responses = toolResponseMessage.getResponses();
+                out.writeInt(responses.size());
+                for (ToolResponseMessage.ToolResponse response : responses) {
+                    writeString(out, response.id());
+                    writeString(out, response.name());
+                    writeString(out, response.responseData());
+                }
+            }
+        } catch (JsonProcessingException ex) {
+            throw new IllegalArgumentException("Message metadata must be serializable to JSON", ex);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    static Message decode(byte[] bytes) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            byte type = in.readByte();
+            String text = readString(in);
+            String metadataJson = readString(in);
+            Map<String, Object> metadata = metadataJson != null ? OBJECT_MAPPER.readValue(metadataJson, METADATA_TYPE) : Map.of();
+            return switch (type) {
+                case USER -> UserMessage.builder().text(text != null ? text : "").metadata(metadata).build();
+                case SYSTEM -> SystemMessage.builder().text(text != null ? text : "").metadata(metadata).build();
+                case ASSISTANT -> {
+                    int size = in.readInt();
+                    List<AssistantMessage.ToolCall> toolCalls = new ArrayList<>(size);
+                    for (int i = 0; i < size; i++) {
+                        toolCalls.add(new AssistantMessage.ToolCall(readString(in), readString(in), readString(in), readString(in)));
+                    }
+                    yield new AssistantMessage(text, metadata, toolCalls);
+                }
+                case TOOL -> {
+                    int size = in.readInt();
+                    List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>(size);
+                    for (int i = 0; i < size; i++) {
+                        responses.add(new ToolResponseMessage.ToolResponse(readString(in), readString(in), readString(in)));
+                    }
+                    yield new ToolResponseMessage(responses, metadata);
+                }
+                default -> throw new IllegalStateException("Unknown message type " + type);
+            };
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
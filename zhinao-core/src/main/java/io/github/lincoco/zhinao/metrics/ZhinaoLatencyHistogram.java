@@ -0,0 +1,198 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.metrics;
+
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of recent request latencies and failures, for live percentiles that do
+ * not depend on the meter registry.
+ * <p>
+ * Latencies are counted in exponential buckets, four per power of two from 1ms to about 9
+ * minutes, so a percentile is accurate to about 19%. Counts are kept for the current and the
+ * previous window; once a window has passed, the first recording thread swaps in a new one, so
+ * reads always cover between one and two windows of traffic.
+ * </p>
+ *
+ * @author xueyeshang
+ */
+public class ZhinaoLatencyHistogram {
+
+    public static final Duration DEFAULT_WINDOW = Duration.ofMinutes(1);
+
+    private static final long MIN_NANOS = 1_000_000;
+
+    private static final int SUB_BUCKETS = 4;
+
+    private static final int BUCKETS = 20 * SUB_BUCKETS + 1;
+
+    private static final double LOG_BASE = Math.log(2) / SUB_BUCKETS;
+
+    private final long windowNanos;
+
+    private final AtomicReference<Window> current;
+
+    private volatile Window previous;
+
+    public ZhinaoLatencyHistogram(Duration window) {
+        Assert.notNull(window, "window cannot be null");
+        Assert.isTrue(!window.isNegative() && !window.isZero(), "window must be positive");
+        this.windowNanos = window.toNanos();
+        this.current = new AtomicReference<>(new Window(System.nanoTime()));
+    }
+
+    public ZhinaoLatencyHistogram() {
+        this(DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param nanos the latency of a request.
+     * @param failed whether the request failed.
+     */
+    public void record(long nanos, boolean failed) {
+        record(nanos, failed, false);
+    }
+
+    /**
+     * @param nanos the latency of a request.
+     * @param failed whether the request failed.
+     * @param unavailable whether it failed because the API could not serve it, with a 5xx
+     * status or without a response at all.
+     */
+    public void record(long nanos, boolean failed, boolean unavailable) {
+        Window window = window(System.nanoTime());
+        window.counts.incrementAndGet(bucket(nanos));
+        window.count.increment();
+        if (failed) {
+            window.errors.increment();
+        }
+        if (unavailable) {
+            window.unavailable.increment();
+        }
+    }
+
+    /**
+     * @param percentile the percentile between 0 and 1, for example 0.99.
+     * @return the upper bound of the bucket holding the percentile, ZERO without recent requests.
+     */
+    public Duration percentile(double percentile) {
+        Assert.isTrue(percentile >= 0 && percentile <= 1, "percentile must be between 0 and 1");
+        long now = System.nanoTime();
+        Window current = window(now);
+        Window previous = recentPrevious(now);
+        long count = current.count.sum() + (previous != null ? previous.count.sum() : 0);
+        if (count == 0) {
+            return Duration.ZERO;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += current.counts.get(i) + (previous != null ? previous.counts.get(i) : 0);
+            if (seen >= rank) {
+                return Duration.ofNanos(upperBound(i));
+            }
+        }
+        return Duration.ofNanos(upperBound(BUCKETS - 1));
+    }
+
+    /**
+     * @return the requests recorded in the current and the previous window.
+     */
+    public long count() {
+        long now = System.nanoTime();
+        Window previous = recentPrevious(now);
+        return window(now).count.sum() + (previous != null ? previous.count.sum() : 0);
+    }
+
+    /**
+     * @return the failed requests recorded in the current and the previous window.
+     */
+    public long errorCount() {
+        long now = System.nanoTime();
+        Window previous = recentPrevious(now);
+        return window(now).errors.sum() + (previous != null ? previous.errors.sum() : 0);
+    }
+
+    /**
+     * @return the requests recorded in the current and the previous window that failed because the API was unavailable.
+     */
+    public long unavailableCount() {
+        long now = System.nanoTime();
+        Window previous = recentPrevious(now);
+        return window(now).unavailable.sum() + (previous != null ? previous.unavailable.sum() : 0);
+    }
+
+    /**
+     * @return the share of failed requests in the current and the previous window, 0 without requests.
+     */
+    public double errorRatio() {
+        long count = count();
+        return count > 0 ? (double) errorCount() / count : 0;
+    }
+
+    private Window window(long now) {
+        Window window = this.current.get();
+        while (now - window.start >= this.windowNanos) {
+            Window next = new Window(now);
+            if (this.current.compareAndSet(window, next)) {
+                // 超过两个窗口没有请求时，上一个窗口已过期
+                this.previous = now - window.start >= 2 * this.windowNanos ? null : window;
+                return next;
+            }
+            window = this.current.get();
+        }
+        return window;
+    }
+
+    private Window recentPrevious(long now) {
+        Window previous = this.previous;
+        return previous != null && now - previous.start < 2 * this.windowNanos ? previous : null;
+    }
+
+    private static int bucket(long nanos) {
+        if (nanos <= MIN_NANOS) {
+            return 0;
+        }
+        int bucket = (int) Math.ceil(Math.log((double) nanos / MIN_NANOS) / LOG_BASE);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    private static long upperBound(int bucket) {
+        return (long) (MIN_NANOS * Math.exp(bucket * LOG_BASE));
+    }
+
+    private static final class Window {
+
+        private final long start;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+        private final LongAdder count = new LongAdder();
+
+        private final LongAdder errors = new LongAdder();
+
+        private final LongAdder unavailable = new LongAdder();
+
+        private Window(long start) {
+            this.start = start;
+        }
+    }
+}
@@ -0,0 +1,511 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.metrics;
+
+import io.github.lincoco.zhinao.api.ZhinaoApi;
+import io.github.lincoco.zhinao.jfr.ZhinaoChunkBurstEvent;
+import io.github.lincoco.zhinao.jfr.ZhinaoRequestEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.util.Assert;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Micrometer meters of the requests sent by {@code ZhinaoChatModel}: latency, prompt and
+ * completion tokens, finish reasons, errors, tool rounds and in-flight requests. Streams also
+ * record the time to the first chunk, the gaps between chunks and the completion tokens per
+ * second. Retries are counted, and the latencies of recent requests are also kept in a
+ * {@link ZhinaoLatencyHistogram} for live reads without a meter registry.
+ * <p>
+ * Every request of a call or stream is recorded separately, including the follow-up requests
+ * of tool rounds. Tags are limited to the model, the mode ({@code call} or {@code stream}),
+ * the outcome, the finish reason and the exception class, so their cardinality stays low.
+ * </p>
+ *
+ * @author xueyeshang
+ */
+public class ZhinaoMetrics implements MeterBinder {
+
+    public static final List<Duration> DEFAULT_LATENCY_SLOS = List.of(Duration.ofMillis(250), Duration.ofMillis(500),
+            Duration.ofSeconds(1), Duration.ofSeconds(2), Duration.ofSeconds(5), Duration.ofSeconds(10),
+            Duration.ofSeconds(30), Duration.ofSeconds(60));
+
+    public static final List<Double> DEFAULT_TOKEN_SLOS = List.of(64.0, 256.0, 1024.0, 2048.0, 4096.0, 8192.0, 16384.0, 32768.0);
+
+    private static final Duration[] TIME_TO_FIRST_TOKEN_SLOS = {Duration.ofMillis(100), Duration.ofMillis(250), Duration.ofMillis(500),
+            Duration.ofSeconds(1), Duration.ofSeconds(2), Duration.ofSeconds(5), Duration.ofSeconds(10)};
+
+    private static final Duration[] CHUNK_GAP_SLOS = {Duration.ofMillis(10), Duration.ofMillis(25), Duration.ofMillis(50),
+            Duration.ofMillis(100), Duration.ofMillis(250), Duration.ofMillis(500), Duration.ofSeconds(1)};
+
+    private static final String UNKNOWN = "unknown";
+
+    private final Duration[] latencySlos;
+    private final double[] tokenSlos;
+    private final Map<Mode, AtomicInteger> inFlight = new EnumMap<>(Mode.class);
+    private final Map<Mode, ZhinaoLatencyHistogram> recentLatencies = new EnumMap<>(Mode.class);
+    private final LongAdder retries = new LongAdder();
+
+    private volatile Meters meters;
+
+    public ZhinaoMetrics(List<Duration> latencySlos, List<Double> tokenSlos) {
+        Assert.notNull(latencySlos, "latencySlos cannot be null");
+        Assert.notNull(tokenSlos, "tokenSlos cannot be null");
+        this.latencySlos = latencySlos.toArray(Duration[]::new);
+        this.tokenSlos = tokenSlos.stream().mapToDouble(Double::doubleValue).toArray();
+        for (Mode mode : Mode.values()) {
+            this.inFlight.put(mode, new AtomicInteger());
+            this.recentLatencies.put(mode, new ZhinaoLatencyHistogram());
+        }
+    }
+
+    public ZhinaoMetrics() {
+        this(DEFAULT_LATENCY_SLOS, DEFAULT_TOKEN_SLOS);
+    }
+
+    /**
+     * Creates the sample of one request, {@link Sample#start()} has to be called when the
+     * request is sent.
+     * @param model the requested model.
+     * @param mode whether the request is a call or a stream.
+     * @return the sample.
+     */
+    public Sample sample(String model, Mode mode) {
+        return new Sample(this, model != null ? model : UNKNOWN, mode);
+    }
+
+    /**
+     * Records that the tool calls of a response were executed and their results sent back to the model.
+     * @param model the requested model.
+     * @param mode whether the request is a call or a stream.
+     */
+    public void recordToolRound(String model, Mode mode) {
+        Meters meters = this.meters;
+        if (meters != null) {
+            meters.toolRounds.withTags("model", model != null ? model : UNKNOWN, "mode", mode.tagValue).increment();
+        }
+    }
+
+    /**
+     * Records that a failed request is sent again.
+     * @param model the requested model.
+     */
+    public void recordRetry(String model) {
+        this.retries.increment();
+        Meters meters = this.meters;
+        if (meters != null) {
+            meters.retries.withTags("model", model != null ? model : UNKNOWN).increment();
+        }
+    }
+
+    public int inFlight(Mode mode) {
+        return this.inFlight.get(mode).get();
+    }
+
+    /**
+     * @param mode whether the requests are calls or streams.
+     * @return the latencies and failures of the recent requests, independent of the meter registry.
+     */
+    public ZhinaoLatencyHistogram recentLatency(Mode mode) {
+        return this.recentLatencies.get(mode);
+    }
+
+    public long retryCount() {
+        return this.retries.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.inFlight.forEach((mode, count) -> Gauge.builder("zhinao.chat.in.flight", count, AtomicInteger::get)
+                .description("Requests waiting for the model")
+                .tag("mode", mode.tagValue)
+                .register(registry));
+        this.meters = new Meters(registry, this.latencySlos, this.tokenSlos);
+    }
+
+    private void record(Sample sample, long durationNanos, String outcome, ZhinaoApi.Usage usage,
+                        Collection<String> finishReasons, Throwable error) {
+        ModelMeters modelMeters = sample.modelMeters();
+        if (modelMeters == null) {
+            return;
+        }
+        Meters meters = modelMeters.meters;
+        if (durationNanos >= 0) {
+            meters.requests.withTags("model", sample.model, "mode", sample.mode.tagValue, "outcome", outcome)
+                    .record(durationNanos, TimeUnit.NANOSECONDS);
+        }
+        if (usage != null) {
+            if (usage.promptTokens() != null) {
+                modelMeters.promptTokens.record(usage.promptTokens());
+            }
+            if (usage.completionTokens() != null) {
+                modelMeters.completionTokens.record(usage.completionTokens());
+            }
+            double tokensPerSecond = sample.tokensPerSecond(usage.completionTokens());
+            if (!Double.isNaN(tokensPerSecond)) {
+                modelMeters.tokensPerSecond.record(tokensPerSecond);
+            }
+        }
+        if (finishReasons != null) {
+            for (String finishReason : finishReasons) {
+                meters.finishReasons.withTags("model", sample.model, "reason", finishReason.toLowerCase(Locale.ROOT))
+                        .increment();
+            }
+        }
+        if (error != null) {
+            meters.errors.withTags("model", sample.model, "mode", sample.mode.tagValue,
+                    "exception", error.getClass().getSimpleName()).increment();
+        }
+    }
+
+    /**
+     * 服务端错误和没有响应的失败说明接口不可用，4xx 等请求本身的错误不计入
+     */
+    static boolean isUnavailable(Throwable error) {
+        String status = ZhinaoRetryMetrics.status(error);
+        if (!"none".equals(status)) {
+            return status.startsWith("5");
+        }
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TransientAiException || cause instanceof WebClientRequestException
+                    || cause instanceof ResourceAccessException || cause instanceof IOException
+                    || cause instanceof TimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 注册表绑定前返回 null
+     */
+    private ModelMeters modelMeters(String model) {
+        Meters meters = this.meters;
+        return meters != null ? meters.models.computeIfAbsent(model, key -> new ModelMeters(meters, key)) : null;
+    }
+
+    public enum Mode {
+
+        CALL("call"),
+
+        STREAM("stream");
+
+        private final String tagValue;
+
+        Mode(String tagValue) {
+            this.tagValue = tagValue;
+        }
+
+        public String tagValue() {
+            return this.tagValue;
+        }
+    }
+
+    /**
+     * 单次请求的采样，只记录一次结果。流式请求的分块由订阅者串行通知，计时字段无需同步
+     */
+    public static final class Sample {
+
+        private final ZhinaoMetrics metrics;
+        private final String model;
+        private final Mode mode;
+        private final AtomicBoolean stopped = new AtomicBoolean();
+        private final ZhinaoRequestEvent event = new ZhinaoRequestEvent();
+
+        private volatile long startNanos = -1;
+        private long firstChunkNanos = -1;
+        private long lastChunkNanos = -1;
+        private int chunkCount;
+        private long maxChunkGapNanos;
+        private ZhinaoChunkBurstEvent burst;
+        private ModelMeters modelMeters;
+
+        private Sample(ZhinaoMetrics metrics, String model, Mode mode) {
+            this.metrics = metrics;
+            this.model = model;
+            this.mode = mode;
+        }
+
+        /**
+         * Creates a sample that only measures the request and emits flight recorder events, for
+         * models without metrics.
+         * @param model the requested model.
+         * @param mode whether the request is a call or a stream.
+         * @return the sample.
+         */
+        public static Sample unrecorded(String model, Mode mode) {
+            return new Sample(null, model != null ? model : UNKNOWN, mode);
+        }
+
+        public void start() {
+            if (this.startNanos >= 0) {
+                return;
+            }
+            if (this.metrics != null) {
+                this.metrics.inFlight.get(this.mode).incrementAndGet();
+            }
+            this.event.begin();
+            this.startNanos = System.nanoTime();
+        }
+
+        /**
+         * Records a chunk of a stream, the first chunk is the time to first token and the
+         * following ones the gaps between chunks.
+         */
+        public void chunk() {
+            if (this.startNanos < 0) {
+                return;
+            }
+            long now = System.nanoTime();
+            long stall = now - (this.lastChunkNanos >= 0 ? this.lastChunkNanos : this.startNanos);
+            if (this.burst == null || stall > ZhinaoChunkBurstEvent.STALL_THRESHOLD_NANOS) {
+                commitBurst();
+                this.burst = new ZhinaoChunkBurstEvent();
+                this.burst.begin();
+                this.burst.stallBefore = stall;
+            }
+            this.burst.chunks++;
+            this.burst.end();
+            if (this.firstChunkNanos < 0) {
+                this.firstChunkNanos = now;
+                ModelMeters modelMeters = modelMeters();
+                if (modelMeters != null) {
+                    modelMeters.timeToFirstToken.record(now - this.startNanos, TimeUnit.NANOSECONDS);
+                }
+            } else {
+                long gap = now - this.lastChunkNanos;
+                this.maxChunkGapNanos = Math.max(this.maxChunkGapNanos, gap);
+                ModelMeters modelMeters = modelMeters();
+                if (modelMeters != null) {
+                    modelMeters.chunkGap.record(gap, TimeUnit.NANOSECONDS);
+                }
+            }
+            this.lastChunkNanos = now;
+            this.chunkCount++;
+        }
+
+        public int chunkCount() {
+            return this.chunkCount;
+        }
+
+        /**
+         * 每个采样只查找一次所属模型的计量器，分块不再访问注册表
+         */
+        private ModelMeters modelMeters() {
+            if (this.modelMeters == null && this.metrics != null) {
+                this.modelMeters = this.metrics.modelMeters(this.model);
+            }
+            return this.modelMeters;
+        }
+
+        /**
+         * @return the time from the start of the request to its first chunk, null before the first chunk.
+         */
+        public Duration timeToFirstToken() {
+            return this.firstChunkNanos >= 0 ? Duration.ofNanos(this.firstChunkNanos - this.startNanos) : null;
+        }
+
+        /**
+         * @return the mean gap between consecutive chunks, null with fewer than two chunks.
+         */
+        public Duration meanChunkGap() {
+            return this.chunkCount > 1 ? Duration.ofNanos((this.lastChunkNanos - this.firstChunkNanos) / (this.chunkCount - 1)) : null;
+        }
+
+        /**
+         * @return the longest gap between consecutive chunks, null with fewer than two chunks.
+         */
+        public Duration maxChunkGap() {
+            return this.chunkCount > 1 ? Duration.ofNanos(this.maxChunkGapNanos) : null;
+        }
+
+        /**
+         * @param completionTokens the completion tokens reported by the model.
+         * @return the completion tokens per second between the first and the last chunk, NaN if unknown.
+         */
+        public double tokensPerSecond(Integer completionTokens) {
+            if (completionTokens == null || this.chunkCount < 2 || this.lastChunkNanos == this.firstChunkNanos) {
+                return Double.NaN;
+            }
+            return completionTokens * 1e9 / (this.lastChunkNanos - this.firstChunkNanos);
+        }
+
+        /**
+         * Records a successful request.
+         * @param usage the token usage reported by the model, may be null.
+         * @param finishReasons the finish reasons of the generations.
+         */
+        public void success(ZhinaoApi.Usage usage, Collection<String> finishReasons) {
+            stop("success", usage, finishReasons, null);
+        }
+
+        public void error(Throwable error) {
+            stop("error", null, null, error);
+        }
+
+        /**
+         * Records a stream cancelled by its subscriber.
+         */
+        public void cancel() {
+            stop("cancelled", null, null, null);
+        }
+
+        private void stop(String outcome, ZhinaoApi.Usage usage, Collection<String> finishReasons, Throwable error) {
+            if (!this.stopped.compareAndSet(false, true)) {
+                return;
+            }
+            commitBurst();
+            commitEvent(outcome, usage, error);
+            if (this.metrics == null) {
+                return;
+            }
+            long duration = -1;
+            if (this.startNanos >= 0) {
+                duration = System.nanoTime() - this.startNanos;
+                this.metrics.inFlight.get(this.mode).decrementAndGet();
+                this.metrics.recentLatencies.get(this.mode).record(duration, error != null, error != null && isUnavailable(error));
+            }
+            this.metrics.record(this, duration, outcome, usage, finishReasons, error);
+        }
+
+        private void commitBurst() {
+            if (this.burst != null && this.burst.shouldCommit()) {
+                this.burst.model = this.model;
+                this.burst.commit();
+            }
+            this.burst = null;
+        }
+
+        private void commitEvent(String outcome, ZhinaoApi.Usage usage, Throwable error) {
+            if (this.startNanos < 0 || !this.event.shouldCommit()) {
+                return;
+            }
+            this.event.model = this.model;
+            this.event.mode = this.mode.tagValue;
+            this.event.outcome = outcome;
+            this.event.chunks = this.chunkCount;
+            if (usage != null) {
+                this.event.promptTokens = usage.promptTokens() != null ? usage.promptTokens() : 0;
+                this.event.completionTokens = usage.completionTokens() != null ? usage.completionTokens() : 0;
+            }
+            if (error != null) {
+                this.event.exception = error.getClass().getName();
+            }
+            this.event.commit();
+        }
+    }
+
+    /**
+     * 绑定注册表时一次性创建的计量器，按标签取值时不再重复构建
+     */
+    private static final class Meters {
+
+        private final MeterRegistry registry;
+        private final Meter.MeterProvider<Timer> requests;
+        private final Meter.MeterProvider<Counter> finishReasons;
+        private final Meter.MeterProvider<Counter> errors;
+        private final Meter.MeterProvider<Counter> toolRounds;
+        private final Meter.MeterProvider<Counter> retries;
+        private final double[] tokenSlos;
+        private final ConcurrentMap<String, ModelMeters> models = new ConcurrentHashMap<>();
+
+        private Meters(MeterRegistry registry, Duration[] latencySlos, double[] tokenSlos) {
+            this.registry = registry;
+            this.tokenSlos = tokenSlos;
+            this.requests = Timer.builder("zhinao.chat.requests")
+                    .description("Latency of the requests sent to the model")
+                    .serviceLevelObjectives(latencySlos)
+                    .withRegistry(registry);
+            this.finishReasons = Counter.builder("zhinao.chat.finish.reasons")
+                    .description("Finish reasons of the generations")
+                    .withRegistry(registry);
+            this.errors = Counter.builder("zhinao.chat.errors")
+                    .description("Failed requests")
+                    .withRegistry(registry);
+            this.toolRounds = Counter.builder("zhinao.chat.tool.rounds")
+                    .description("Tool rounds sent back to the model")
+                    .withRegistry(registry);
+            this.retries = Counter.builder("zhinao.chat.retries")
+                    .description("Requests sent again after a failure")
+                    .withRegistry(registry);
+        }
+    }
+
+    /**
+     * 只带模型标签的计量器，每个模型注册一次
+     */
+    private static final class ModelMeters {
+
+        private final Meters meters;
+        private final DistributionSummary promptTokens;
+        private final DistributionSummary completionTokens;
+        private final DistributionSummary tokensPerSecond;
+        private final Timer timeToFirstToken;
+        private final Timer chunkGap;
+
+        private ModelMeters(Meters meters, String model) {
+            this.meters = meters;
+            this.promptTokens = tokens(meters, model, "prompt");
+            this.completionTokens = tokens(meters, model, "completion");
+            this.tokensPerSecond = DistributionSummary.builder("zhinao.chat.stream.tokens.per.second")
+                    .description("Completion tokens per second between the first and the last chunk of a stream")
+                    .tag("model", model)
+                    .register(meters.registry);
+            this.timeToFirstToken = Timer.builder("zhinao.chat.stream.time.to.first.token")
+                    .description("Time from sending a stream request to its first chunk")
+                    .tag("model", model)
+                    .serviceLevelObjectives(TIME_TO_FIRST_TOKEN_SLOS)
+                    .register(meters.registry);
+            this.chunkGap = Timer.builder("zhinao.chat.stream.chunk.gap")
+                    .description("Time between consecutive chunks of a stream")
+                    .tag("model", model)
+                    .serviceLevelObjectives(CHUNK_GAP_SLOS)
+                    .register(meters.registry);
+        }
+
+        private static DistributionSummary tokens(Meters meters, String model, String type) {
+            return DistributionSummary.builder("zhinao.chat.tokens")
+                    .description("Tokens per request")
+                    .baseUnit("tokens")
+                    .tag("model", model)
+                    .tag("type", type)
+                    .serviceLevelObjectives(meters.tokenSlos)
+                    .register(meters.registry);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.metrics;
+
+import io.micrometer.observation.Observation;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Time spent in each phase of one call or stream, across all of its tool rounds, measured with
+ * {@link System#nanoTime()}.
+ * <p>
+ * The {@link #DISABLED} timeline does not read the clock nor allocate. The HTTP exchange
+ * covers connection setup, server processing and decoding of the response body, which are not
+ * visible separately from the client. For streams the exchange runs until the last chunk and
+ * overlaps with the response mapping.
+ * </p>
+ *
+ * @author xueyeshang
+ */
+public final class ZhinaoPhaseTimeline {
+
+    /**
+     * Key of the {@link #toMap() phase durations} in the chat response metadata.
+     */
+    public static final String METADATA_KEY = "zhinao-timeline";
+
+    public static final ZhinaoPhaseTimeline DISABLED = new ZhinaoPhaseTimeline(false);
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final boolean enabled;
+    private final long[] totals;
+    private final long[] pending;
+
+    /**
+     * 按完成顺序记录的阶段及耗时，尚未作为观测事件发出的从 emitted 开始
+     */
+    private int[] entryPhases;
+    private long[] entryNanos;
+    private int size;
+    private int emitted;
+
+    private ZhinaoPhaseTimeline(boolean enabled) {
+        this.enabled = enabled;
+        this.totals = enabled ? new long[PHASES.length] : null;
+        this.pending = enabled ? new long[PHASES.length] : null;
+        this.entryPhases = enabled ? new int[16] : null;
+        this.entryNanos = enabled ? new long[16] : null;
+    }
+
+    public static ZhinaoPhaseTimeline start() {
+        return new ZhinaoPhaseTimeline(true);
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * @return the start of a phase to pass to {@link #end(Phase, long)}, 0 if disabled.
+     */
+    public long begin() {
+        return this.enabled ? System.nanoTime() : 0;
+    }
+
+    public void end(Phase phase, long begin) {
+        if (this.enabled) {
+            add(phase, System.nanoTime() - begin);
+        }
+    }
+
+    /**
+     * Starts a phase that ends on another callback, for example when a stream completes.
+     * @param phase the phase.
+     */
+    public void begin(Phase phase) {
+        if (this.enabled) {
+            synchronized (this) {
+                this.pending[phase.ordinal()] = System.nanoTime();
+            }
+        }
+    }
+
+    public void end(Phase phase) {
+        if (this.enabled) {
+            long begin;
+            synchronized (this) {
+                begin = this.pending[phase.ordinal()];
+                this.pending[phase.ordinal()] = 0;
+            }
+            if (begin != 0) {
+                add(phase, System.nanoTime() - begin);
+            }
+        }
+    }
+
+    public void add(Phase phase, long nanos) {
+        if (!this.enabled) {
+            return;
+        }
+        synchronized (this) {
+            this.totals[phase.ordinal()] += nanos;
+            // 连续的同一阶段（例如流式响应逐块映射）合并为一条
+            if (this.size > this.emitted && this.entryPhases[this.size - 1] == phase.ordinal()) {
+                this.entryNanos[this.size - 1] += nanos;
+                return;
+            }
+            if (this.size == this.entryPhases.length) {
+                this.entryPhases = Arrays.copyOf(this.entryPhases, this.size * 2);
+                this.entryNanos = Arrays.copyOf(this.entryNanos, this.size * 2);
+            }
+            this.entryPhases[this.size] = phase.ordinal();
+            this.entryNanos[this.size] = nanos;
+            this.size++;
+        }
+    }
+
+    public Duration total(Phase phase) {
+        if (!this.enabled) {
+            return Duration.ZERO;
+        }
+        synchronized (this) {
+            return Duration.ofNanos(this.totals[phase.ordinal()]);
+        }
+    }
+
+    /**
+     * @return the total duration of each phase that was entered, in phase order.
+     */
+    public Map<String, Duration> toMap() {
+        Map<String, Duration> phases = new LinkedHashMap<>();
+        if (!this.enabled) {
+            return phases;
+        }
+        synchronized (this) {
+            for (int i = 0; i < this.size; i++) {
+                Phase phase = PHASES[this.entryPhases[i]];
+                phases.putIfAbsent(phase.key, Duration.ofNanos(this.totals[phase.ordinal()]));
+            }
+        }
+        return phases;
+    }
+
+    /**
+     * Adds an event to the observation for every phase completed since the last call.
+     * @param observation the observation of the current request, may be null.
+     */
+    public void emitEvents(Observation observation) {
+        if (!this.enabled || observation == null) {
+            return;
+        }
+        synchronized (this) {
+            for (; this.emitted < this.size; this.emitted++) {
+                Phase phase = PHASES[this.entryPhases[this.emitted]];
+                long micros = this.entryNanos[this.emitted] / 1000;
+                observation.event(Observation.Event.of(phase.eventName, phase.key + " " + micros + "us"));
+            }
+        }
+    }
+
+    public enum Phase {
+
+        OPTIONS_MERGE("options_merge"),
+
+        CONTEXT_WINDOW("context_window"),
+
+        CREATE_REQUEST("create_request"),
+
+        TOKEN_BUDGET("token_budget"),
+
+        RATE_LIMIT("rate_limit"),
+
+        EXCHANGE("exchange"),
+
+        RESPONSE_MAPPING("response_mapping"),
+
+        TOOL_EXECUTION("tool_execution"),
+
+        TOOL_RESPONSE_COMPACTION("tool_response_compaction");
+
+        private final String key;
+
+        private final String eventName;
+
+        Phase(String key) {
+            this.key = key;
+            this.eventName = "zhinao.phase." + key;
+        }
+
+        public String key() {
+            return this.key;
+        }
+    }
+}
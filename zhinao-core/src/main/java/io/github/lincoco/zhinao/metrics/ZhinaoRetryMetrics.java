@@ -0,0 +1,219 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.observation.Observation;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.SignalType;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Makes the attempts of calls and streams visible: every failed attempt is counted by model,
+ * mode, exception class and HTTP status, and added as an event to the chat model observation.
+ * When a request needed more than one attempt, the time from its first to its last attempt,
+ * failed attempts and backoff included, is recorded as the retry overhead.
+ * <p>
+ * The model follows each request with the {@link Attempts} of {@link #attempts(String, ZhinaoMetrics.Mode, Observation)},
+ * from inside the retry callback of calls and around the reactive retry of streams. Nothing is
+ * registered on the {@code RetryTemplate}, so a template shared by several models or clients
+ * records each attempt once, only for the model that sent it.
+ * </p>
+ *
+ * @author xueyeshang
+ */
+public class ZhinaoRetryMetrics implements MeterBinder {
+
+    // Spring AI 的错误处理器以 "状态码 - 响应体" 作为异常消息
+    private static final Pattern STATUS_MESSAGE = Pattern.compile("^(\\d{3}) - ");
+
+    private static final String NONE = "none";
+
+    private static final String UNKNOWN = "unknown";
+
+    private final LongAdder failedAttempts = new LongAdder();
+
+    private final LongAdder retriedRequests = new LongAdder();
+
+    private volatile Meters meters;
+
+    /**
+     * Creates the attempt tracker of one call or stream.
+     * @param model the requested model.
+     * @param mode whether the request is a call or a stream.
+     * @param observation the chat model observation of the request, events are added to it, may be null.
+     * @return the tracker.
+     */
+    public Attempts attempts(String model, ZhinaoMetrics.Mode mode, Observation observation) {
+        return new Attempts(this, model != null ? model : UNKNOWN, mode, observation);
+    }
+
+    /**
+     * @return the failed attempts of calls and streams, independent of the meter registry.
+     */
+    public long failedAttemptCount() {
+        return this.failedAttempts.sum();
+    }
+
+    /**
+     * @return the calls and streams that needed more than one attempt.
+     */
+    public long retriedRequestCount() {
+        return this.retriedRequests.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.meters = new Meters(registry);
+    }
+
+    private void recordFailure(String model, ZhinaoMetrics.Mode mode, int attempt, Throwable error, Observation observation) {
+        this.failedAttempts.increment();
+        String exception = error.getClass().getSimpleName();
+        String status = status(error);
+        Meters meters = this.meters;
+        if (meters != null) {
+            meters.failures.withTags("model", model, "mode", mode.tagValue(), "exception", exception, "status", status)
+                    .increment();
+        }
+        if (observation != null && !observation.isNoop()) {
+            observation.event(Observation.Event.of("zhinao.attempt.failed",
+                    "attempt " + attempt + " failed: " + exception + " (" + status + ")"));
+        }
+    }
+
+    private void recordOverhead(String model, ZhinaoMetrics.Mode mode, String outcome, long nanos) {
+        this.retriedRequests.increment();
+        Meters meters = this.meters;
+        if (meters != null) {
+            meters.overhead.withTags("model", model, "mode", mode.tagValue(), "outcome", outcome)
+                    .record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * @param error the exception of a failed attempt.
+     * @return the HTTP status of the response that failed the attempt, {@code none} if there was no response.
+     */
+    static String status(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RestClientResponseException responseException) {
+                return String.valueOf(responseException.getStatusCode().value());
+            }
+            if (cause instanceof WebClientResponseException responseException) {
+                return String.valueOf(responseException.getStatusCode().value());
+            }
+            if (cause.getMessage() != null) {
+                Matcher matcher = STATUS_MESSAGE.matcher(cause.getMessage());
+                if (matcher.find()) {
+                    return matcher.group(1);
+                }
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * 单个请求的尝试记录，调用的每次回调或流的每次订阅即一次尝试
+     */
+    public static final class Attempts {
+
+        /**
+         * Records nothing, for models without retry metrics.
+         */
+        public static final Attempts NONE = new Attempts(null, UNKNOWN, ZhinaoMetrics.Mode.CALL, null);
+
+        private final ZhinaoRetryMetrics metrics;
+
+        private final String model;
+
+        private final ZhinaoMetrics.Mode mode;
+
+        private final Observation observation;
+
+        private final AtomicInteger attempts = new AtomicInteger();
+
+        private volatile long firstAttemptNanos;
+
+        private volatile long lastAttemptNanos;
+
+        private Attempts(ZhinaoRetryMetrics metrics, String model, ZhinaoMetrics.Mode mode, Observation observation) {
+            this.metrics = metrics;
+            this.model = model;
+            this.mode = mode;
+            this.observation = observation;
+        }
+
+        /**
+         * Marks the start of an attempt.
+         */
+        public void started() {
+            long now = System.nanoTime();
+            if (this.attempts.getAndIncrement() == 0) {
+                this.firstAttemptNanos = now;
+            }
+            this.lastAttemptNanos = now;
+        }
+
+        public void failed(Throwable error) {
+            if (this.metrics != null) {
+                this.metrics.recordFailure(this.model, this.mode, this.attempts.get(), error, this.observation);
+            }
+        }
+
+        /**
+         * Records the retry overhead once the request terminated.
+         * @param signal the terminal signal of the request, calls end with {@code ON_COMPLETE} or {@code ON_ERROR}.
+         */
+        public void closed(SignalType signal) {
+            if (this.metrics != null && this.attempts.get() > 1) {
+                String outcome = signal == SignalType.ON_COMPLETE ? "success"
+                        : signal == SignalType.CANCEL ? "cancelled" : "error";
+                this.metrics.recordOverhead(this.model, this.mode, outcome,
+                        this.lastAttemptNanos - this.firstAttemptNanos);
+            }
+        }
+    }
+
+    /**
+     * 绑定注册表时创建一次，按标签取值时不再重复构建
+     */
+    private static final class Meters {
+
+        private final Meter.MeterProvider<Counter> failures;
+
+        private final Meter.MeterProvider<Timer> overhead;
+
+        private Meters(MeterRegistry registry) {
+            this.failures = Counter.builder("zhinao.chat.attempt.failures")
+                    .description("Failed attempts of requests, whether retried or not")
+                    .withRegistry(registry);
+            this.overhead = Timer.builder("zhinao.chat.retry.overhead")
+                    .description("Time from the first to the last attempt of requests that were retried")
+                    .withRegistry(registry);
+        }
+    }
+}
@@ -0,0 +1,497 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.token;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.util.Assert;
+import org.springframework.util.ConcurrentReferenceHashMap;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the conversation history of a prompt within the token budget of its model.
+ * <p>
+ * The leading system messages and the most recent turns that fit the budget are kept, older
+ * turns are dropped. The cut always falls on a user message, so tool calls are never separated
+ * from their responses, and the latest turn is always kept. When a summarizer is configured,
+ * dropped turns are summarized in the background with a (cheaper) model, and the summary is
+ * sent in their place once it is available. The cut of a summary leaves room for the summary
+ * itself ({@code summaryTokens}, or the size of the current summary when larger), so sending a
+ * summary does not push the cut past the turns it covers and start another one.
+ * </p>
+ * <p>
+ * Token counts are cached per message instance and the running total per conversation, so
+ * each turn only estimates the messages that were not seen before.
+ * </p>
+ *
+ * @author xueyeshang
+ */
+public class ZhinaoContextWindowManager implements MeterBinder {
+
+    private static final Logger logger = LoggerFactory.getLogger(ZhinaoContextWindowManager.class);
+
+    public static final int MESSAGE_OVERHEAD_TOKENS = 4;
+
+    public static final int DEFAULT_SUMMARY_TOKENS = 512;
+
+    private static final String DEFAULT_SUMMARY_INSTRUCTION = "Summarize the conversation below so that it can be continued "
+            + "without it. Keep facts, decisions, names, numbers and open questions. Keep it under %d tokens. "
+            + "Reply with the summary only.";
+
+    private static final String SUMMARY_PREFIX = "Summary of the earlier conversation:\n";
+
+    private final TokenCountEstimator estimator;
+
+    private final Map<String, Integer> contextWindows;
+
+    private final int defaultContextWindow;
+
+    private final int reservedCompletionTokens;
+
+    /**
+     * 每条消息（按实例）的 token 数
+     */
+    private final Map<MessageKey, Integer> messageTokens = new ConcurrentReferenceHashMap<>();
+
+    /**
+     * 截至某条消息（按实例）的对话累计 token 数
+     */
+    private final Map<MessageKey, RunningTotal> runningTotals = new ConcurrentReferenceHashMap<>();
+
+    /**
+     * 按对话第一条非系统消息（按实例）保存的历史摘要
+     */
+    private final Map<MessageKey, SummaryState> summaries = new ConcurrentReferenceHashMap<>();
+
+    private final LongAdder droppedMessages = new LongAdder();
+
+    private final LongAdder summarizedMessages = new LongAdder();
+
+    private volatile ChatModel summarizer;
+
+    private volatile ChatOptions summaryOptions;
+
+    private volatile int summaryTokens = DEFAULT_SUMMARY_TOKENS;
+
+    private volatile Scheduler summaryScheduler = Schedulers.boundedElastic();
+
+    public ZhinaoContextWindowManager(TokenCountEstimator estimator, Map<String, Integer> contextWindows,
+                                      int defaultContextWindow, int reservedCompletionTokens) {
+        Assert.notNull(estimator, "estimator cannot be null");
+        Assert.notNull(contextWindows, "contextWindows cannot be null");
+        Assert.isTrue(defaultContextWindow > 0, "defaultContextWindow must be greater than 0");
+        Assert.isTrue(reservedCompletionTokens >= 0, "reservedCompletionTokens must not be negative");
+        this.estimator = estimator;
+        this.contextWindows = Map.copyOf(contextWindows);
+        this.defaultContextWindow = defaultContextWindow;
+        this.reservedCompletionTokens = reservedCompletionTokens;
+    }
+
+    /**
+     * @param prompt the prompt about to be sent.
+     * @return the prompt itself when it fits the budget of its model, otherwise a prompt with
+     * the same options and the trimmed history.
+     */
+    public Prompt apply(Prompt prompt) {
+        List<Message> messages = prompt.getInstructions();
+        int head = 0;
+        while (head < messages.size() && messages.get(head).getMessageType() == MessageType.SYSTEM) {
+            head++;
+        }
+        List<Message> conversation = messages.subList(head, messages.size());
+        if (conversation.isEmpty()) {
+            return prompt;
+        }
+
+        long systemTokens = 0;
+        for (int i = 0; i < head; i++) {
+            systemTokens += tokens(messages.get(i));
+        }
+        long budget = budget(prompt.getOptions()) - systemTokens;
+        long total = runningTotal(conversation);
+        if (total <= budget) {
+            return prompt;
+        }
+
+        Message first = conversation.get(0);
+        SummaryState summaryState = this.summarizer != null
+                ? this.summaries.computeIfAbsent(new MessageKey(first), key -> new SummaryState()) : null;
+        Summary summary = summaryState != null ? summaryState.current(conversation) : null;
+        int cut = cut(conversation, budget - (summary != null ? summary.tokens() : 0));
+        if (summary != null && summary.coveredLength() > cut) {
+            cut = summary.coveredLength();
+        }
+
+        if (summaryState != null) {
+            // 摘要的截断位置为摘要本身预留空间，摘要生效后截断位置不会越过它覆盖的消息
+            int reserved = Math.max(this.summaryTokens, summary != null ? summary.tokens() : 0);
+            int summaryCut = cut(conversation, budget - reserved);
+            if (summaryCut > 0 && (summary == null || summary.coveredLength() < summaryCut)) {
+                summarizeInBackground(summaryState, summary, conversation, summaryCut);
+            }
+        }
+        if (cut == 0) {
+            return prompt;
+        }
+        int dropped = summary != null ? cut - summary.coveredLength() : cut;
+        this.droppedMessages.add(dropped);
+
+        List<Message> trimmed = new ArrayList<>(head + 1 + conversation.size() - cut);
+        trimmed.addAll(messages.subList(0, head));
+        if (summary != null) {
+            trimmed.add(summary.message());
+        }
+        trimmed.addAll(conversation.subList(cut, conversation.size()));
+        return new Prompt(trimmed, prompt.getOptions());
+    }
+
+    /**
+     * 从最近的消息向前累加，找到预算内最早可保留的位置，再对齐到用户消息（轮次边界）
+     */
+    private int cut(List<Message> conversation, long budget) {
+        int cut = conversation.size();
+        long kept = 0;
+        while (cut > 0 && kept + tokens(conversation.get(cut - 1)) <= budget) {
+            kept += tokens(conversation.get(cut - 1));
+            cut--;
+        }
+        return turnBoundary(conversation, cut);
+    }
+
+    /**
+     * Summarizes dropped turns in the background, the summary replaces them in later requests.
+     * @param summarizer the model used to summarize, typically a cheaper one. Null disables summaries.
+     * @param summaryOptions the options of the summary requests, may be null.
+     */
+    public void setSummarizer(ChatModel summarizer, ChatOptions summaryOptions) {
+        this.summarizer = summarizer;
+        this.summaryOptions = summaryOptions;
+        this.summaries.clear();
+    }
+
+    /**
+     * @param summaryTokens the tokens left free for the summary when choosing the turns it covers.
+     */
+    public void setSummaryTokens(int summaryTokens) {
+        Assert.isTrue(summaryTokens > 0, "summaryTokens must be greater than 0");
+        this.summaryTokens = summaryTokens;
+    }
+
+    /**
+     * @param summaryScheduler the scheduler summaries are requested on, bounded elastic by default.
+     */
+    public void setSummaryScheduler(Scheduler summaryScheduler) {
+        Assert.notNull(summaryScheduler, "summaryScheduler cannot be null");
+        this.summaryScheduler = summaryScheduler;
+    }
+
+    /**
+     * @param options the prompt options.
+     * @return the prompt token budget of the model.
+     */
+    public long budget(ChatOptions options) {
+        String model = options != null ? options.getModel() : null;
+        int contextWindow = model != null ? this.contextWindows.getOrDefault(model, this.defaultContextWindow) : this.defaultContextWindow;
+        Integer maxTokens = options != null ? options.getMaxTokens() : null;
+        return contextWindow - (long) (maxTokens != null ? maxTokens : this.reservedCompletionTokens);
+    }
+
+    public long droppedMessageCount() {
+        return this.droppedMessages.sum();
+    }
+
+    public long summarizedMessageCount() {
+        return this.summarizedMessages.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("zhinao.chat.context.dropped", this.droppedMessages, LongAdder::sum)
+                .description("Messages dropped from prompts to fit the context window")
+                .baseUnit("messages")
+                .register(registry);
+        FunctionCounter.builder("zhinao.chat.context.summarized", this.summarizedMessages, LongAdder::sum)
+                .description("Messages replaced by a background summary")
+                .baseUnit("messages")
+                .register(registry);
+    }
+
+    /**
+     * 对话的累计 token 数：从末尾向前找到已缓存的累计值，只为新消息估算
+     */
+    private long runningTotal(List<Message> conversation) {
+        Message first = conversation.get(0);
+        int start = 0;
+        long total = 0;
+        for (int i = conversation.size() - 1; i >= 0; i--) {
+            RunningTotal runningTotal = this.runningTotals.get(new MessageKey(conversation.get(i)));
+            if (runningTotal != null && runningTotal.index() == i && runningTotal.first() == first) {
+                start = i + 1;
+                total = runningTotal.tokens();
+                break;
+            }
+        }
+        for (int i = start; i < conversation.size(); i++) {
+            Message message = conversation.get(i);
+            total += tokens(message);
+            this.runningTotals.put(new MessageKey(message), new RunningTotal(i, total, first));
+        }
+        return total;
+    }
+
+    private int tokens(Message message) {
+        return this.messageTokens.computeIfAbsent(new MessageKey(message), key -> estimate(key.message()));
+    }
+
+    private int estimate(Message message) {
+        int tokens = MESSAGE_OVERHEAD_TOKENS + this.estimator.estimate(message.getText());
+        if (message instanceof AssistantMessage assistantMessage && assistantMessage.hasToolCalls()) {
+            for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+                tokens += this.estimator.estimate(toolCall.name()) + this.estimator.estimate(toolCall.arguments());
+            }
+        } else if (message instanceof ToolResponseMessage toolResponseMessage) {
+            for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+                tokens += MESSAGE_OVERHEAD_TOKENS + this.estimator.estimate(response.responseData());
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * 将截断位置对齐到之后的第一条用户消息，且不晚于最后一条用户消息，保证最近一轮完整保留
+     */
+    private static int turnBoundary(List<Message> conversation, int cut) {
+        int lastUser = -1;
+        for (int i = conversation.size() - 1; i >= 0; i--) {
+            if (conversation.get(i).getMessageType() == MessageType.USER) {
+                lastUser = i;
+                break;
+            }
+        }
+        if (lastUser < 0) {
+            // 没有用户消息时，至少不能以孤立的工具结果开头
+            while (cut < conversation.size() && conversation.get(cut).getMessageType() == MessageType.TOOL) {
+                cut++;
+            }
+            return Math.min(cut, conversation.size() - 1);
+        }
+        while (cut < lastUser && conversation.get(cut).getMessageType() != MessageType.USER) {
+            cut++;
+        }
+        return Math.min(cut, lastUser);
+    }
+
+    private void summarizeInBackground(SummaryState state, Summary previous, List<Message> conversation, int cut) {
+        if (!state.running.compareAndSet(false, true)) {
+            return;
+        }
+        int from = previous != null ? previous.coveredLength() : 0;
+        List<Message> messages = List.copyOf(conversation.subList(from, cut));
+        Message lastCovered = conversation.get(cut - 1);
+        ChatModel model = this.summarizer;
+        int summaryTokens = this.summaryTokens;
+        Mono.fromRunnable(() -> {
+            try {
+                String text = summarize(model, previous, messages, summaryTokens);
+                if (StringUtils.hasText(text)) {
+                    SystemMessage message = new SystemMessage(SUMMARY_PREFIX + text);
+                    state.summary.set(new Summary(message, tokens(message), cut, lastCovered));
+                    this.summarizedMessages.add(messages.size());
+                }
+            } catch (RuntimeException ex) {
+                logger.warn("Failed to summarize {} messages of the conversation history", messages.size(), ex);
+            } finally {
+                state.running.set(false);
+            }
+        }).subscribeOn(this.summaryScheduler).subscribe();
+    }
+
+    private String summarize(ChatModel model, Summary previous, List<Message> messages, int summaryTokens) {
+        StringBuilder transcript = new StringBuilder();
+        if (previous != null) {
+            transcript.append(previous.message().getText()).append("\n\n");
+        }
+        transcript.append("Conversation:\n");
+        for (Message message : messages) {
+            if (message instanceof ToolResponseMessage toolResponseMessage) {
+                for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+                    transcript.append("tool ").append(response.name()).append(": ").append(response.responseData()).append('\n');
+                }
+            } else if (StringUtils.hasText(message.getText())) {
+                transcript.append(message.getMessageType().getValue()).append(": ").append(message.getText()).append('\n');
+            }
+        }
+        ChatResponse response = model.call(new Prompt(List.of(new SystemMessage(DEFAULT_SUMMARY_INSTRUCTION.formatted(summaryTokens)),
+                new UserMessage(transcript.toString())), this.summaryOptions));
+        return response != null && response.getResult() != null ? response.getResult().getOutput().getText() : null;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 按实例（而非内容）比较消息，内容相同的消息可能属于不同对话
+     */
+    private record MessageKey(Message message) {
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof MessageKey key && key.message == this.message;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this.message);
+        }
+    }
+
+    private record RunningTotal(int index, long tokens, Message first) {
+    }
+
+    /**
+     * @param message the summary message sent in place of the covered messages.
+     * @param tokens the tokens of the summary message.
+     * @param coveredLength the number of leading conversation messages covered by the summary.
+     * @param lastCovered the last covered message, to check that the summary matches a conversation.
+     */
+    private record Summary(SystemMessage message, int tokens, int coveredLength, Message lastCovered) {
+    }
+
+    private static final class SummaryState {
+
+        private final AtomicReference<Summary> summary = new AtomicReference<>();
+
+        private final AtomicBoolean running = new AtomicBoolean();
+
+        private Summary current(List<Message> conversation) {
+            Summary current = this.summary.get();
+            if (current == null || current.coveredLength() > conversation.size()
+                    || conversation.get(current.coveredLength() - 1) != current.lastCovered()) {
+                return null;
+            }
+            return current;
+        }
+    }
+
+    public static class Builder {
+
+        private TokenCountEstimator estimator;
+
+        private Map<String, Integer> contextWindows = new HashMap<>();
+
+        private int defaultContextWindow = ZhinaoTokenBudget.DEFAULT_CONTEXT_WINDOW;
+
+        private int reservedCompletionTokens = ZhinaoTokenBudget.DEFAULT_MAX_COMPLETION_TOKENS;
+
+        private ChatModel summarizer;
+
+        private ChatOptions summaryOptions;
+
+        private int summaryTokens = DEFAULT_SUMMARY_TOKENS;
+
+        private Scheduler summaryScheduler;
+
+        public Builder estimator(TokenCountEstimator estimator) {
+            this.estimator = estimator;
+            return this;
+        }
+
+        public Builder contextWindows(Map<String, Integer> contextWindows) {
+            Assert.notNull(contextWindows, "contextWindows cannot be null");
+            this.contextWindows = new HashMap<>(contextWindows);
+            return this;
+        }
+
+        public Builder contextWindow(String model, int contextWindow) {
+            Assert.hasText(model, "model cannot be null or empty");
+            this.contextWindows.put(model, contextWindow);
+            return this;
+        }
+
+        public Builder defaultContextWindow(int defaultContextWindow) {
+            this.defaultContextWindow = defaultContextWindow;
+            return this;
+        }
+
+        /**
+         * @param reservedCompletionTokens tokens kept free for the completion of prompts that do
+         * not set max tokens.
+         * @return this builder.
+         */
+        public Builder reservedCompletionTokens(int reservedCompletionTokens) {
+            this.reservedCompletionTokens = reservedCompletionTokens;
+            return this;
+        }
+
+        public Builder summarizer(ChatModel summarizer, ChatOptions summaryOptions) {
+            this.summarizer = summarizer;
+            this.summaryOptions = summaryOptions;
+            return this;
+        }
+
+        /**
+         * @param summaryTokens tokens left free for the summary when choosing the turns it covers.
+         * @return this builder.
+         */
+        public Builder summaryTokens(int summaryTokens) {
+            this.summaryTokens = summaryTokens;
+            return this;
+        }
+
+        public Builder summaryScheduler(Scheduler summaryScheduler) {
+            this.summaryScheduler = summaryScheduler;
+            return this;
+        }
+
+        public ZhinaoContextWindowManager build() {
+            ZhinaoContextWindowManager manager = new ZhinaoContextWindowManager(
+                    this.estimator != null ? this.estimator : new ZhinaoTokenEstimator(), this.contextWindows,
+                    this.defaultContextWindow, this.reservedCompletionTokens);
+            manager.setSummarizer(this.summarizer, this.summaryOptions);
+            manager.setSummaryTokens(this.summaryTokens);
+            if (this.summaryScheduler != null) {
+                manager.setSummaryScheduler(this.summaryScheduler);
+            }
+            return manager;
+        }
+    }
+}
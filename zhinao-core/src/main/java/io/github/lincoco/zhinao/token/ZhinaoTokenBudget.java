@@ -0,0 +1,217 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.token;
+
+import io.github.lincoco.zhinao.api.ZhinaoApi;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Pre-flight token budgeting of chat completion requests, based on the local
+ * {@link ZhinaoTokenEstimator}.
+ * <p>
+ * Before a request is sent its prompt tokens are estimated. Prompts that leave less than
+ * {@code minCompletionTokens} of the model context window are rejected, {@code maxTokens}
+ * is lowered to what the context window still allows, and the estimated tokens are reserved
+ * on the optional {@link ZhinaoTokenRateLimiter}. Once the response arrives,
+ * {@link #record(Reservation, ZhinaoApi.Usage)} calibrates the estimator and corrects the
+ * reservation with the real usage.
+ * </p>
+ *
+ * @author xueyeshang
+ */
+public class ZhinaoTokenBudget {
+
+    public static final int DEFAULT_CONTEXT_WINDOW = 8192;
+
+    public static final int DEFAULT_MAX_COMPLETION_TOKENS = 2048;
+
+    public static final int DEFAULT_MIN_COMPLETION_TOKENS = 256;
+
+    private final ZhinaoTokenEstimator estimator;
+
+    private final ZhinaoTokenRateLimiter rateLimiter;
+
+    private final Map<String, Integer> contextWindows;
+
+    private final int defaultContextWindow;
+
+    private final int maxCompletionTokens;
+
+    private final int minCompletionTokens;
+
+    public ZhinaoTokenBudget(ZhinaoTokenEstimator estimator, ZhinaoTokenRateLimiter rateLimiter,
+                             Map<String, Integer> contextWindows, int defaultContextWindow,
+                             int maxCompletionTokens, int minCompletionTokens) {
+        Assert.notNull(estimator, "estimator cannot be null");
+        Assert.notNull(contextWindows, "contextWindows cannot be null");
+        Assert.isTrue(defaultContextWindow > 0, "defaultContextWindow must be greater than 0");
+        Assert.isTrue(maxCompletionTokens > 0, "maxCompletionTokens must be greater than 0");
+        Assert.isTrue(minCompletionTokens >= 0, "minCompletionTokens must not be negative");
+        this.estimator = estimator;
+        this.rateLimiter = rateLimiter;
+        this.contextWindows = Map.copyOf(contextWindows);
+        this.defaultContextWindow = defaultContextWindow;
+        this.maxCompletionTokens = maxCompletionTokens;
+        this.minCompletionTokens = minCompletionTokens;
+    }
+
+    /**
+     * 预估请求的 prompt token 数，校验上下文窗口、调整 maxTokens 并预留限流额度
+     *
+     * @param request the request about to be sent.
+     * @return the reservation holding the request to send and how long to wait before sending it.
+     * @throws NonTransientAiException when the prompt does not fit the model context window.
+     */
+    public Reservation reserve(ZhinaoApi.ChatCompletionRequest request) {
+        Assert.notNull(request, "request cannot be null");
+        int promptTokens = this.estimator.estimate(request);
+        int contextWindow = contextWindow(request.model());
+        int available = contextWindow - promptTokens;
+        if (available < Math.max(this.minCompletionTokens, 1)) {
+            throw new NonTransientAiException("Prompt of about " + promptTokens + " tokens does not fit the "
+                    + contextWindow + " token context window of model '" + request.model() + "' with at least "
+                    + this.minCompletionTokens + " completion tokens");
+        }
+
+        Integer requested = request.maxTokens();
+        int maxTokens = Math.min(requested != null ? requested : this.maxCompletionTokens, available);
+        ZhinaoApi.ChatCompletionRequest budgeted = request;
+        if (requested == null ? maxTokens < this.maxCompletionTokens : !Objects.equals(requested, maxTokens)) {
+            budgeted = request.withMaxTokens(maxTokens);
+        }
+
+        Duration delay = this.rateLimiter != null ? this.rateLimiter.reserve(promptTokens) : Duration.ZERO;
+        return new Reservation(budgeted, promptTokens, delay);
+    }
+
+    /**
+     * Calibrates the estimator and corrects the rate limiter reservation with the real usage.
+     * @param reservation the reservation of the request.
+     * @param usage the usage reported for the request, may be null.
+     */
+    public void record(Reservation reservation, ZhinaoApi.Usage usage) {
+        if (reservation == null || usage == null) {
+            return;
+        }
+        if (usage.promptTokens() != null) {
+            this.estimator.calibrate(reservation.request(), usage.promptTokens());
+        }
+        if (this.rateLimiter != null) {
+            Integer totalTokens = usage.totalTokens() != null ? usage.totalTokens() : usage.promptTokens();
+            if (totalTokens != null) {
+                this.rateLimiter.adjust(totalTokens - reservation.promptTokens());
+            }
+        }
+    }
+
+    /**
+     * Returns the rate limiter reservation of a request that is not sent after all.
+     * @param reservation the reservation of the request.
+     */
+    public void release(Reservation reservation) {
+        if (reservation != null && this.rateLimiter != null) {
+            this.rateLimiter.adjust(-reservation.promptTokens());
+        }
+    }
+
+    public int contextWindow(String model) {
+        return model != null ? this.contextWindows.getOrDefault(model, this.defaultContextWindow) : this.defaultContextWindow;
+    }
+
+    public ZhinaoTokenEstimator getEstimator() {
+        return this.estimator;
+    }
+
+    public ZhinaoTokenRateLimiter getRateLimiter() {
+        return this.rateLimiter;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @param request the request to send, with the budgeted {@code maxTokens}.
+     * @param promptTokens the estimated prompt tokens.
+     * @param delay how long to wait for the rate limiter before sending the request.
+     */
+    public record Reservation(ZhinaoApi.ChatCompletionRequest request, int promptTokens, Duration delay) {
+    }
+
+    public static class Builder {
+
+        private ZhinaoTokenEstimator estimator;
+
+        private ZhinaoTokenRateLimiter rateLimiter;
+
+        private Map<String, Integer> contextWindows = new HashMap<>();
+
+        private int defaultContextWindow = DEFAULT_CONTEXT_WINDOW;
+
+        private int maxCompletionTokens = DEFAULT_MAX_COMPLETION_TOKENS;
+
+        private int minCompletionTokens = DEFAULT_MIN_COMPLETION_TOKENS;
+
+        public Builder estimator(ZhinaoTokenEstimator estimator) {
+            this.estimator = estimator;
+            return this;
+        }
+
+        public Builder rateLimiter(ZhinaoTokenRateLimiter rateLimiter) {
+            this.rateLimiter = rateLimiter;
+            return this;
+        }
+
+        public Builder contextWindows(Map<String, Integer> contextWindows) {
+            Assert.notNull(contextWindows, "contextWindows cannot be null");
+            this.contextWindows = new HashMap<>(contextWindows);
+            return this;
+        }
+
+        public Builder contextWindow(String model, int contextWindow) {
+            Assert.hasText(model, "model cannot be null or empty");
+            this.contextWindows.put(model, contextWindow);
+            return this;
+        }
+
+        public Builder defaultContextWindow(int defaultContextWindow) {
+            this.defaultContextWindow = defaultContextWindow;
+            return this;
+        }
+
+        public Builder maxCompletionTokens(int maxCompletionTokens) {
+            this.maxCompletionTokens = maxCompletionTokens;
+            return this;
+        }
+
+        public Builder minCompletionTokens(int minCompletionTokens) {
+            this.minCompletionTokens = minCompletionTokens;
+            return this;
+        }
+
+        public ZhinaoTokenBudget build() {
+            return new ZhinaoTokenBudget(this.estimator != null ? this.estimator : new ZhinaoTokenEstimator(),
+                    this.rateLimiter, this.contextWindows, this.defaultContextWindow, this.maxCompletionTokens,
+                    this.minCompletionTokens);
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.token;
+
+import io.github.lincoco.zhinao.api.ZhinaoApi;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.ai.content.MediaContent;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.util.ConcurrentReferenceHashMap;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fast local token count estimator for the mostly Chinese traffic of the 360gpt models.
+ * <p>
+ * Text is split into character classes (CJK characters, latin letters, digits, punctuation,
+ * whitespace and everything else), the estimate is the weighted sum of the class counts plus
+ * a fixed overhead per message. The weights start from a built-in calibration table and are
+ * refined online from the {@link ZhinaoApi.Usage} of real responses, see
+ * {@link #calibrate(ZhinaoApi.ChatCompletionRequest, int)}.
+ * </p>
+ *
+ * @author xueyeshang
+ */
+public class ZhinaoTokenEstimator implements TokenCountEstimator, MeterBinder {
+
+    static final int CJK = 0;
+    static final int LATIN = 1;
+    static final int DIGIT = 2;
+    static final int PUNCTUATION = 3;
+    static final int WHITESPACE = 4;
+    static final int OTHER = 5;
+    static final int MESSAGE = 6;
+
+    /**
+     * 初始校准表：每个字符类别（及每条消息）对应的 token 数
+     */
+    private static final double[] DEFAULT_WEIGHTS = {0.7, 0.22, 0.35, 0.6, 0.05, 1.0, 3.0};
+
+    private static final double MAX_WEIGHT = 4.0;
+
+    private static final double LEARNING_RATE = 0.2;
+
+    private static final double ERROR_SMOOTHING = 0.1;
+
+    private final boolean calibrationEnabled;
+
+    private final Map<ZhinaoApi.FunctionTool, long[]> toolFeatures = new ConcurrentReferenceHashMap<>();
+
+    private volatile double[] weights = DEFAULT_WEIGHTS.clone();
+
+    private volatile double relativeError = 0.0;
+
+    private long samples;
+
+    public ZhinaoTokenEstimator(boolean calibrationEnabled) {
+        this.calibrationEnabled = calibrationEnabled;
+    }
+
+    public ZhinaoTokenEstimator() {
+        this(true);
+    }
+
+    @Override
+    public int estimate(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        long[] features = new long[DEFAULT_WEIGHTS.length];
+        count(text, features);
+        return predict(features);
+    }
+
+    @Override
+    public int estimate(MediaContent content) {
+        return content == null ? 0 : estimate(content.getText());
+    }
+
+    @Override
+    public int estimate(Iterable<MediaContent> contents) {
+        int tokens = 0;
+        if (contents != null) {
+            for (MediaContent content : contents) {
+                tokens += estimate(content);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * @param request the request to estimate.
+     * @return the estimated prompt tokens of the request, messages and tool definitions included.
+     */
+    public int estimate(ZhinaoApi.ChatCompletionRequest request) {
+        return predict(features(request));
+    }
+
+    /**
+     * 使用响应中真实的 prompt token 数校准各字符类别的权重（归一化 LMS）
+     *
+     * @param request the request that was sent.
+     * @param promptTokens the prompt tokens reported by {@link ZhinaoApi.Usage#promptTokens()}.
+     */
+    public void calibrate(ZhinaoApi.ChatCompletionRequest request, int promptTokens) {
+        if (promptTokens <= 0) {
+            return;
+        }
+        long[] features = features(request);
+        synchronized (this) {
+            double[] current = this.weights;
+            double predicted = dot(current, features);
+            double error = promptTokens - predicted;
+            this.relativeError = this.samples++ == 0 ? Math.abs(error) / promptTokens
+                    : (1 - ERROR_SMOOTHING) * this.relativeError + ERROR_SMOOTHING * Math.abs(error) / promptTokens;
+            if (!this.calibrationEnabled) {
+                return;
+            }
+            double norm = 0;
+            for (long feature : features) {
+                norm += (double) feature * feature;
+            }
+            if (norm == 0) {
+                return;
+            }
+            double[] updated = current.clone();
+            for (int i = 0; i < updated.length; i++) {
+                updated[i] = Math.min(MAX_WEIGHT, Math.max(0, updated[i] + LEARNING_RATE * error * features[i] / norm));
+            }
+            this.weights = updated;
+        }
+    }
+
+    /**
+     * @return the current weights, in the order CJK, latin, digit, punctuation, whitespace,
+     * other, per message.
+     */
+    public double[] weights() {
+        return this.weights.clone();
+    }
+
+    /**
+     * @return the smoothed relative error of the estimates against the observed usage.
+     */
+    public double relativeError() {
+        return this.relativeError;
+    }
+
+    public synchronized void reset() {
+        this.weights = DEFAULT_WEIGHTS.clone();
+        this.relativeError = 0.0;
+        this.samples = 0;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("zhinao.token.estimate.error", this, ZhinaoTokenEstimator::relativeError)
+                .description("Smoothed relative error of local prompt token estimates against the observed usage")
+                .register(registry);
+    }
+
+    private long[] features(ZhinaoApi.ChatCompletionRequest request) {
+        long[] features = new long[DEFAULT_WEIGHTS.length];
+        List<ZhinaoApi.ChatCompletionMessage> messages = request.messages();
+        if (messages != null) {
+            for (ZhinaoApi.ChatCompletionMessage message : messages) {
+                features[MESSAGE]++;
+                count(message.content(), features);
+                if (message.toolCalls() != null) {
+                    for (ZhinaoApi.ChatCompletionMessage.ToolCall toolCall : message.toolCalls()) {
+                        if (toolCall.function() != null) {
+                            count(toolCall.function().name(), features);
+                            count(toolCall.function().arguments(), features);
+                        }
+                    }
+                }
+            }
+        }
+        if (request.tools() != null) {
+            for (ZhinaoApi.FunctionTool tool : request.tools()) {
+                // 工具定义在多轮对话中不变，按工具缓存其字符统计
+                long[] toolFeatures = this.toolFeatures.computeIfAbsent(tool, ZhinaoTokenEstimator::toolFeatures);
+                for (int i = 0; i < features.length; i++) {
+                    features[i] += toolFeatures[i];
+                }
+            }
+        }
+        return features;
+    }
+
+    private static long[] toolFeatures(ZhinaoApi.FunctionTool tool) {
+        long[] features = new long[DEFAULT_WEIGHTS.length];
+        features[MESSAGE]++;
+        if (tool.function() != null) {
+            count(tool.function().name(), features);
+            count(tool.function().description(), features);
+            count(String.valueOf(tool.function().parameters()), features);
+        }
+        return features;
+    }
+
+    private int predict(long[] features) {
+        return (int) Math.ceil(dot(this.weights, features));
+    }
+
+    private static double dot(double[] weights, long[] features) {
+        double sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            sum += weights[i] * features[i];
+        }
+        return sum;
+    }
+
+    static void count(String text, long[] features) {
+        if (text == null) {
+            return;
+        }
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            features[characterClass(codePoint)]++;
+            i += Character.charCount(codePoint);
+        }
+    }
+
+    static int characterClass(int codePoint) {
+        if (codePoint < 0x80) {
+            if ((codePoint >= 'a' && codePoint <= 'z') || (codePoint >= 'A' && codePoint <= 'Z')) {
+                return LATIN;
+            }
+            if (codePoint >= '0' && codePoint <= '9') {
+                return DIGIT;
+            }
+            if (codePoint == ' ' || codePoint == '\n' || codePoint == '\t' || codePoint == '\r') {
+                return WHITESPACE;
+            }
+            return codePoint < 0x20 ? OTHER : PUNCTUATION;
+        }
+        if ((codePoint >= 0x4E00 && codePoint <= 0x9FFF) || (codePoint >= 0x3400 && codePoint <= 0x4DBF)
+                || (codePoint >= 0xF900 && codePoint <= 0xFAFF) || (codePoint >= 0x20000 && codePoint <= 0x2FFFF)
+                || (codePoint >= 0x3040 && codePoint <= 0x30FF) || (codePoint >= 0xAC00 && codePoint <= 0xD7AF)) {
+            return CJK;
+        }
+        // 中文标点与全角字符
+        if ((codePoint >= 0x3000 && codePoint <= 0x303F) || (codePoint >= 0xFF00 && codePoint <= 0xFFEF)
+                || (codePoint >= 0x2000 && codePoint <= 0x206F)) {
+            return Character.isWhitespace(codePoint) || codePoint == 0x3000 ? WHITESPACE : PUNCTUATION;
+        }
+        return Character.isLetter(codePoint) ? LATIN : OTHER;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.token;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free tokens-per-minute limiter, implemented as a generic cell rate algorithm over a
+ * single {@link AtomicLong} holding the theoretical arrival time of the next token.
+ * <p>
+ * Tokens are reserved up front from an estimate and corrected with {@link #adjust(long)}
+ * once the real usage is known. A full minute of tokens may be used in a burst.
+ * </p>
+ *
+ * @author xueyeshang
+ */
+public class ZhinaoTokenRateLimiter implements MeterBinder {
+
+    private static final long WINDOW_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private volatile Rate rate;
+
+    private final AtomicLong theoreticalArrivalTime;
+
+    public ZhinaoTokenRateLimiter(long tokensPerMinute) {
+        this.rate = Rate.of(tokensPerMinute);
+        this.theoreticalArrivalTime = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * 预留 token，返回调用方发送请求前需要等待的时间
+     *
+     * @param tokens the tokens to reserve.
+     * @return how long to wait before the tokens may be used, {@link Duration#ZERO} if they are
+     * available right away.
+     */
+    public Duration reserve(long tokens) {
+        Assert.isTrue(tokens >= 0, "tokens must not be negative");
+        long cost = cost(tokens);
+        while (true) {
+            long now = System.nanoTime();
+            long current = this.theoreticalArrivalTime.get();
+            long next = Math.max(current, now) + cost;
+            if (this.theoreticalArrivalTime.compareAndSet(current, next)) {
+                long wait = next - now - WINDOW_NANOS;
+                return wait > 0 ? Duration.ofNanos(wait) : Duration.ZERO;
+            }
+        }
+    }
+
+    /**
+     * Reserves the tokens only when they are available right away.
+     * @param tokens the tokens to reserve.
+     * @return whether the tokens were reserved.
+     */
+    public boolean tryReserve(long tokens) {
+        Assert.isTrue(tokens >= 0, "tokens must not be negative");
+        long cost = cost(tokens);
+        while (true) {
+            long now = System.nanoTime();
+            long current = this.theoreticalArrivalTime.get();
+            long next = Math.max(current, now) + cost;
+            if (next - now > WINDOW_NANOS) {
+                return false;
+            }
+            if (this.theoreticalArrivalTime.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Corrects an earlier reservation with the real usage.
+     * @param tokens the difference between the used and the reserved tokens, negative to
+     * give back over-reserved tokens.
+     */
+    public void adjust(long tokens) {
+        if (tokens == 0) {
+            return;
+        }
+        long cost = tokens > 0 ? cost(tokens) : -cost(-tokens);
+        this.theoreticalArrivalTime.accumulateAndGet(cost, (current, delta) -> {
+            long now = System.nanoTime();
+            // 退还的 token 不能让额度超过一个完整窗口
+            return delta < 0 ? Math.max(current + delta, Math.min(current, now)) : Math.max(current, now) + delta;
+        });
+    }
+
+    /**
+     * @return the tokens that can be reserved right now without waiting.
+     */
+    public long availableTokens() {
+        long used = this.theoreticalArrivalTime.get() - System.nanoTime();
+        long free = WINDOW_NANOS - Math.max(used, 0);
+        return Math.max(0, (long) (free / this.rate.nanosPerToken()));
+    }
+
+    public long getTokensPerMinute() {
+        return this.rate.tokensPerMinute();
+    }
+
+    /**
+     * Changes the limit at runtime. Tokens already reserved keep the cost of the old limit,
+     * later reservations are charged at the new one.
+     * @param tokensPerMinute the new limit.
+     */
+    public void setTokensPerMinute(long tokensPerMinute) {
+        this.rate = Rate.of(tokensPerMinute);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("zhinao.token.rate.available", this, ZhinaoTokenRateLimiter::availableTokens)
+                .description("Tokens that can be used right now under the tokens-per-minute limit")
+                .baseUnit("tokens")
+                .register(registry);
+    }
+
+    private long cost(long tokens) {
+        return (long) Math.ceil(tokens * this.rate.nanosPerToken());
+    }
+
+    /**
+     * 限额与单个 token 的耗时一起替换，读取方不会看到不一致的组合
+     */
+    private record Rate(long tokensPerMinute, double nanosPerToken) {
+
+        static Rate of(long tokensPerMinute) {
+            Assert.isTrue(tokensPerMinute > 0, "tokensPerMinute must be greater than 0");
+            return new Rate(tokensPerMinute, (double) WINDOW_NANOS / tokensPerMinute);
+        }
+    }
+}
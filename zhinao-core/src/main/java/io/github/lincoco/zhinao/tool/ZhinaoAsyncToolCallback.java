@@ -0,0 +1,94 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.tool;
+
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiFunction;
+
+/**
+ * {@link ToolCallback} whose result is produced asynchronously, e.g. by a non-blocking
+ * {@code WebClient} call. When every tool call of an assistant turn targets such a tool,
+ * {@link ZhinaoToolCallingManager#executeToolCallsAsync} runs them inside the reactive chain
+ * without occupying a thread while they are in flight.
+ * <p>
+ * The blocking {@link #call(String)} methods remain available for callers that do not
+ * support asynchronous tools, they simply wait for the result.
+ * </p>
+ *
+ * @author xueyeshang
+ */
+public interface ZhinaoAsyncToolCallback extends ToolCallback {
+
+    /**
+     * Executes the tool with the given input and context.
+     * @param toolInput the tool input as JSON.
+     * @param toolContext the tool context, may be null.
+     * @return the tool result, completing once the tool has finished.
+     */
+    Mono<String> callAsync(String toolInput, @Nullable ToolContext toolContext);
+
+    @Override
+    default String call(String toolInput) {
+        return call(toolInput, null);
+    }
+
+    @Override
+    default String call(String toolInput, @Nullable ToolContext toolContext) {
+        return callAsync(toolInput, toolContext).block();
+    }
+
+    /**
+     * Creates an asynchronous tool backed by a function returning a {@link CompletionStage}.
+     * @param toolDefinition the tool definition.
+     * @param function the function invoked with the tool input and context.
+     * @return the tool callback.
+     */
+    static ZhinaoAsyncToolCallback of(ToolDefinition toolDefinition,
+                                      BiFunction<String, ToolContext, ? extends CompletionStage<String>> function) {
+        return of(toolDefinition, ToolMetadata.builder().build(), function);
+    }
+
+    static ZhinaoAsyncToolCallback of(ToolDefinition toolDefinition, ToolMetadata toolMetadata,
+                                      BiFunction<String, ToolContext, ? extends CompletionStage<String>> function) {
+        Assert.notNull(toolDefinition, "toolDefinition cannot be null");
+        Assert.notNull(toolMetadata, "toolMetadata cannot be null");
+        Assert.notNull(function, "function cannot be null");
+        return new ZhinaoAsyncToolCallback() {
+            @Override
+            public ToolDefinition getToolDefinition() {
+                return toolDefinition;
+            }
+
+            @Override
+            public ToolMetadata getToolMetadata() {
+                return toolMetadata;
+            }
+
+            @Override
+            public Mono<String> callAsync(String toolInput, @Nullable ToolContext toolContext) {
+                return Mono.fromCompletionStage(() -> function.apply(toolInput, toolContext));
+            }
+        };
+    }
+}
@@ -0,0 +1,226 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.tool;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.util.Assert;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.ConcurrentReferenceHashMap;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * {@link ZhinaoToolSelector} that ranks tools by the BM25 score of their name and description
+ * against the latest user message, and keeps the top-k tools. Chinese text is indexed as
+ * character bigrams, other text as lower-cased words, with camelCase and snake_case names split
+ * into words.
+ * <p>
+ * Tools marked always-on, and tools already called earlier in the conversation, are always
+ * kept. When the message shares no term with any tool, all tools are kept. The index is built
+ * once per set of tool definitions.
+ * </p>
+ *
+ * @author xueyeshang
+ */
+public class ZhinaoBm25ToolSelector implements ZhinaoToolSelector {
+
+    public static final int DEFAULT_TOP_K = 8;
+
+    private static final double K1 = 1.2;
+
+    private static final double B = 0.75;
+
+    private final int topK;
+    private final Set<String> alwaysOnToolNames;
+    private final Map<List<ToolDefinition>, Index> indexCache = new ConcurrentReferenceHashMap<>();
+
+    public ZhinaoBm25ToolSelector(int topK, Set<String> alwaysOnToolNames) {
+        Assert.isTrue(topK > 0, "topK must be greater than 0");
+        Assert.notNull(alwaysOnToolNames, "alwaysOnToolNames cannot be null");
+        this.topK = topK;
+        this.alwaysOnToolNames = Set.copyOf(alwaysOnToolNames);
+    }
+
+    public ZhinaoBm25ToolSelector(int topK) {
+        this(topK, Set.of());
+    }
+
+    @Override
+    public List<ToolDefinition> select(Prompt prompt, List<ToolDefinition> toolDefinitions) {
+        if (toolDefinitions.size() <= this.topK) {
+            return toolDefinitions;
+        }
+        String query = latestUserText(prompt.getInstructions());
+        if (!StringUtils.hasText(query)) {
+            return toolDefinitions;
+        }
+        double[] scores = this.indexCache.computeIfAbsent(List.copyOf(toolDefinitions), Index::new).score(tokenize(query));
+        if (scores == null) {
+            return toolDefinitions;
+        }
+
+        BitSet selected = new BitSet(toolDefinitions.size());
+        Set<String> calledToolNames = calledToolNames(prompt.getInstructions());
+        for (int i = 0; i < toolDefinitions.size(); i++) {
+            String name = toolDefinitions.get(i).name();
+            if (this.alwaysOnToolNames.contains(name) || calledToolNames.contains(name)) {
+                selected.set(i);
+            }
+        }
+        for (int k = 0; k < this.topK; k++) {
+            int best = -1;
+            for (int i = 0; i < scores.length; i++) {
+                if (!selected.get(i) && scores[i] > 0 && (best < 0 || scores[i] > scores[best])) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            selected.set(best);
+        }
+
+        List<ToolDefinition> result = new ArrayList<>(selected.cardinality());
+        selected.stream().forEach(i -> result.add(toolDefinitions.get(i)));
+        return result;
+    }
+
+    private static String latestUserText(List<Message> messages) {
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            if (messages.get(i).getMessageType() == MessageType.USER) {
+                return messages.get(i).getText();
+            }
+        }
+        return null;
+    }
+
+    private static Set<String> calledToolNames(List<Message> messages) {
+        Set<String> names = new HashSet<>();
+        for (Message message : messages) {
+            if (message instanceof AssistantMessage assistantMessage && !CollectionUtils.isEmpty(assistantMessage.getToolCalls())) {
+                assistantMessage.getToolCalls().forEach(toolCall -> names.add(toolCall.name()));
+            }
+        }
+        return names;
+    }
+
+    /**
+     * 分词：中文按相邻两字切分，其余按单词切分并拆开驼峰和下划线命名
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        StringBuilder word = new StringBuilder();
+        int cjkStart = -1;
+        int length = text.length();
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? text.charAt(i) : ' ';
+            boolean cjk = Character.UnicodeScript.of(c) == Character.UnicodeScript.HAN;
+            if (cjk) {
+                if (cjkStart < 0) {
+                    cjkStart = i;
+                }
+            } else if (cjkStart >= 0) {
+                addCjkTokens(text.substring(cjkStart, i), tokens);
+                cjkStart = -1;
+            }
+            boolean wordChar = !cjk && Character.isLetterOrDigit(c);
+            boolean camelBoundary = wordChar && Character.isUpperCase(c) && !word.isEmpty()
+                    && Character.isLowerCase(word.charAt(word.length() - 1));
+            if ((!wordChar || camelBoundary) && !word.isEmpty()) {
+                tokens.add(word.toString().toLowerCase(Locale.ROOT));
+                word.setLength(0);
+            }
+            if (wordChar) {
+                word.append(c);
+            }
+        }
+        return tokens;
+    }
+
+    private static void addCjkTokens(String run, List<String> tokens) {
+        if (run.length() == 1) {
+            tokens.add(run);
+            return;
+        }
+        for (int i = 0; i + 1 < run.length(); i++) {
+            tokens.add(run.substring(i, i + 2));
+        }
+    }
+
+    /**
+     * Inverted BM25 index over the name and description of a fixed list of tools.
+     */
+    private static final class Index {
+
+        private final Map<String, Map<Integer, Integer>> postings = new HashMap<>();
+
+        private final int[] documentLengths;
+
+        private final double averageDocumentLength;
+
+        private Index(List<ToolDefinition> toolDefinitions) {
+            this.documentLengths = new int[toolDefinitions.size()];
+            long totalLength = 0;
+            for (int i = 0; i < toolDefinitions.size(); i++) {
+                ToolDefinition toolDefinition = toolDefinitions.get(i);
+                List<String> tokens = tokenize(toolDefinition.name() + " " + Objects.toString(toolDefinition.description(), ""));
+                for (String token : tokens) {
+                    this.postings.computeIfAbsent(token, t -> new HashMap<>()).merge(i, 1, Integer::sum);
+                }
+                this.documentLengths[i] = tokens.size();
+                totalLength += tokens.size();
+            }
+            this.averageDocumentLength = toolDefinitions.isEmpty() ? 0 : Math.max(1.0, (double) totalLength / toolDefinitions.size());
+        }
+
+        /**
+         * @return the score of every tool, or null if no query term occurs in any tool.
+         */
+        private double[] score(List<String> queryTokens) {
+            double[] scores = new double[this.documentLengths.length];
+            boolean matched = false;
+            for (String token : new HashSet<>(queryTokens)) {
+                Map<Integer, Integer> posting = this.postings.get(token);
+                if (posting == null) {
+                    continue;
+                }
+                matched = true;
+                double idf = Math.log(1 + (this.documentLengths.length - posting.size() + 0.5) / (posting.size() + 0.5));
+                posting.forEach((document, termFrequency) -> {
+                    double norm = K1 * (1 - B + B * this.documentLengths[document] / this.averageDocumentLength);
+                    scores[document] += idf * termFrequency * (K1 + 1) / (termFrequency + norm);
+                });
+            }
+            return matched ? scores : null;
+        }
+    }
+}
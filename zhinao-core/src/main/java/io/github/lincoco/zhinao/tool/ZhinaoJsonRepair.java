@@ -0,0 +1,141 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.tool;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Repairs trivially broken JSON emitted by a model as tool arguments: markdown code fences,
+ * single-quoted strings, trailing commas, and unclosed strings, objects or arrays.
+ *
+ * @author xueyeshang
+ */
+public final class ZhinaoJsonRepair {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private ZhinaoJsonRepair() {
+    }
+
+    /**
+     * 尝试修复 JSON，修复后仍无法解析时返回 null
+     *
+     * @param json 可能损坏的 JSON
+     * @return 修复后的 JSON 节点，无法修复时返回 null
+     */
+    public static JsonNode repair(String json) {
+        if (json == null) {
+            return null;
+        }
+        try {
+            return OBJECT_MAPPER.readTree(fix(stripCodeFence(json.strip())));
+        } catch (JsonProcessingException ex) {
+            return null;
+        }
+    }
+
+    private static String stripCodeFence(String json) {
+        if (!json.startsWith("```")) {
+            return json;
+        }
+        int start = json.indexOf('\n');
+        int end = json.lastIndexOf("```");
+        if (start < 0 || end <= start) {
+            return json;
+        }
+        return json.substring(start + 1, end).strip();
+    }
+
+    private static String fix(String json) {
+        StringBuilder out = new StringBuilder(json.length() + 8);
+        Deque<Character> closers = new ArrayDeque<>();
+        char quote = 0;
+        boolean escaped = false;
+        for (int i = 0; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (quote != 0) {
+                if (escaped) {
+                    escaped = false;
+                    // 单引号字符串中的 \' 在 JSON 中不是合法转义
+                    if (c == '\'' && quote == '\'') {
+                        out.setLength(out.length() - 1);
+                    }
+                    out.append(c);
+                } else if (c == '\\') {
+                    escaped = true;
+                    out.append(c);
+                } else if (c == quote) {
+                    quote = 0;
+                    out.append('"');
+                } else if (c == '"') {
+                    // 单引号字符串中的双引号需要转义
+                    out.append("\\\"");
+                } else {
+                    out.append(c);
+                }
+                continue;
+            }
+            switch (c) {
+                case '"', '\'' -> {
+                    quote = c;
+                    out.append('"');
+                }
+                case '{' -> {
+                    closers.push('}');
+                    out.append(c);
+                }
+                case '[' -> {
+                    closers.push(']');
+                    out.append(c);
+                }
+                case '}', ']' -> {
+                    removeTrailingComma(out);
+                    if (!closers.isEmpty() && closers.peek() == c) {
+                        closers.pop();
+                    }
+                    out.append(c);
+                }
+                default -> out.append(c);
+            }
+        }
+        if (quote != 0) {
+            if (escaped) {
+                out.setLength(out.length() - 1);
+            }
+            out.append('"');
+        }
+        while (!closers.isEmpty()) {
+            removeTrailingComma(out);
+            out.append(closers.pop());
+        }
+        return out.toString();
+    }
+
+    private static void removeTrailingComma(StringBuilder out) {
+        int i = out.length() - 1;
+        while (i >= 0 && Character.isWhitespace(out.charAt(i))) {
+            i--;
+        }
+        if (i >= 0 && out.charAt(i) == ',') {
+            out.setLength(i);
+        }
+    }
+}
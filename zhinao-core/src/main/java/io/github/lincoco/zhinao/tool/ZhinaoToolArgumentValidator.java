@@ -0,0 +1,382 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.tool;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.util.ConcurrentReferenceHashMap;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * Validates tool call arguments against the input schema of the tool before the tool is
+ * executed. Validators are compiled once per {@link ToolDefinition}. Arguments that are not
+ * valid JSON are repaired with {@link ZhinaoJsonRepair} when possible.
+ * <p>
+ * The supported keywords are {@code type}, {@code enum}, {@code const}, {@code required},
+ * {@code properties}, {@code additionalProperties}, {@code items}, {@code minimum},
+ * {@code maximum}, {@code exclusiveMinimum}, {@code exclusiveMaximum}, {@code minLength},
+ * {@code maxLength}, {@code minItems}, {@code maxItems}, {@code allOf}, {@code anyOf},
+ * {@code oneOf} and local {@code $ref}s. Other keywords are ignored.
+ * </p>
+ *
+ * @author xueyeshang
+ */
+public class ZhinaoToolArgumentValidator {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final int MAX_REPORTED_ERRORS = 5;
+
+    private final Map<ToolDefinition, Rule> rules = new ConcurrentReferenceHashMap<>();
+
+    /**
+     * Validates and, if needed, repairs the arguments of a tool call.
+     * @param toolDefinition the definition of the called tool.
+     * @param arguments the tool call arguments as sent by the model.
+     * @return the validation result.
+     */
+    public ValidationResult validate(ToolDefinition toolDefinition, String arguments) {
+        JsonNode value;
+        boolean repaired = false;
+        if (!StringUtils.hasText(arguments)) {
+            // 无参数的工具调用，模型经常返回空字符串
+            value = OBJECT_MAPPER.createObjectNode();
+            repaired = true;
+        } else {
+            try {
+                value = OBJECT_MAPPER.readTree(arguments);
+            } catch (JsonProcessingException ex) {
+                value = ZhinaoJsonRepair.repair(arguments);
+                if (value == null) {
+                    return ValidationResult.invalid(arguments, List.of("arguments are not valid JSON: " + ex.getOriginalMessage()));
+                }
+                repaired = true;
+            }
+        }
+
+        List<String> errors = new ArrayList<>();
+        this.rules.computeIfAbsent(toolDefinition, ZhinaoToolArgumentValidator::compile).validate(value, "$", errors);
+        String validatedArguments = repaired ? value.toString() : arguments;
+        if (!errors.isEmpty()) {
+            return ValidationResult.invalid(validatedArguments, errors.size() > MAX_REPORTED_ERRORS
+                    ? errors.subList(0, MAX_REPORTED_ERRORS) : errors);
+        }
+        return new ValidationResult(validatedArguments, repaired, List.of());
+    }
+
+    private static Rule compile(ToolDefinition toolDefinition) {
+        JsonNode schema;
+        try {
+            schema = OBJECT_MAPPER.readTree(toolDefinition.inputSchema());
+        } catch (JsonProcessingException | IllegalArgumentException ex) {
+            return (value, path, errors) -> {
+            };
+        }
+        return new Compiler(schema).compile(schema);
+    }
+
+    /**
+     * @param arguments the arguments to execute the tool with, repaired if needed.
+     * @param repaired whether the arguments had to be repaired.
+     * @param errors the validation errors, empty if the arguments are valid.
+     */
+    public record ValidationResult(String arguments, boolean repaired, List<String> errors) {
+
+        static ValidationResult invalid(String arguments, List<String> errors) {
+            return new ValidationResult(arguments, false, List.copyOf(errors));
+        }
+
+        public boolean valid() {
+            return this.errors.isEmpty();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Rule {
+
+        void validate(JsonNode value, String path, List<String> errors);
+    }
+
+    private static final class RuleHolder {
+
+        private Rule rule;
+    }
+
+    /**
+     * 将 JSON Schema 编译为校验规则，编译完成后规则不可变，可并发使用
+     */
+    private static final class Compiler {
+
+        private final JsonNode root;
+
+        private final Map<String, RuleHolder> references = new HashMap<>();
+
+        private Compiler(JsonNode root) {
+            this.root = root;
+        }
+
+        private Rule compile(JsonNode schema) {
+            if (schema == null || !schema.isObject()) {
+                return (value, path, errors) -> {
+                };
+            }
+            List<Rule> rules = new ArrayList<>();
+            compileReference(schema, rules);
+            compileType(schema, rules);
+            compileValues(schema, rules);
+            compileObject(schema, rules);
+            compileArray(schema, rules);
+            compileNumber(schema, rules);
+            compileString(schema, rules);
+            compileCombinators(schema, rules);
+            if (rules.size() == 1) {
+                return rules.get(0);
+            }
+            return (value, path, errors) -> rules.forEach(rule -> rule.validate(value, path, errors));
+        }
+
+        private void compileReference(JsonNode schema, List<Rule> rules) {
+            JsonNode ref = schema.get("$ref");
+            if (ref == null || !ref.isTextual() || !ref.asText().startsWith("#")) {
+                return;
+            }
+            String pointer = ref.asText().substring(1);
+            RuleHolder holder = this.references.get(pointer);
+            if (holder == null) {
+                // 先登记再编译，递归引用时复用同一个 holder
+                holder = new RuleHolder();
+                this.references.put(pointer, holder);
+                holder.rule = compile(this.root.at(pointer));
+            }
+            RuleHolder target = holder;
+            rules.add((value, path, errors) -> target.rule.validate(value, path, errors));
+        }
+
+        private void compileType(JsonNode schema, List<Rule> rules) {
+            JsonNode type = schema.get("type");
+            if (type == null) {
+                return;
+            }
+            Set<String> types = new HashSet<>();
+            if (type.isArray()) {
+                type.forEach(t -> types.add(t.asText()));
+            } else {
+                types.add(type.asText());
+            }
+            rules.add((value, path, errors) -> {
+                if (types.stream().noneMatch(t -> hasType(value, t))) {
+                    errors.add(path + " must be of type " + String.join(" or ", types) + " but was " + typeOf(value));
+                }
+            });
+        }
+
+        private void compileValues(JsonNode schema, List<Rule> rules) {
+            JsonNode enumValues = schema.get("enum");
+            if (enumValues != null && enumValues.isArray()) {
+                Set<JsonNode> allowed = new HashSet<>();
+                enumValues.forEach(allowed::add);
+                rules.add((value, path, errors) -> {
+                    if (!allowed.contains(value)) {
+                        errors.add(path + " must be one of " + enumValues);
+                    }
+                });
+            }
+            JsonNode constValue = schema.get("const");
+            if (constValue != null) {
+                rules.add((value, path, errors) -> {
+                    if (!constValue.equals(value)) {
+                        errors.add(path + " must be " + constValue);
+                    }
+                });
+            }
+        }
+
+        private void compileObject(JsonNode schema, List<Rule> rules) {
+            JsonNode required = schema.get("required");
+            if (required != null && required.isArray() && !required.isEmpty()) {
+                List<String> names = new ArrayList<>();
+                required.forEach(name -> names.add(name.asText()));
+                rules.add((value, path, errors) -> {
+                    if (value.isObject()) {
+                        names.stream().filter(name -> !value.has(name))
+                                .forEach(name -> errors.add(path + "." + name + " is required"));
+                    }
+                });
+            }
+            JsonNode properties = schema.get("properties");
+            Map<String, Rule> propertyRules = new LinkedHashMap<>();
+            if (properties != null && properties.isObject()) {
+                properties.fields().forEachRemaining(property -> propertyRules.put(property.getKey(), compile(property.getValue())));
+            }
+            JsonNode additionalProperties = schema.get("additionalProperties");
+            Rule additionalRule = additionalProperties != null && additionalProperties.isObject() ? compile(additionalProperties) : null;
+            boolean additionalAllowed = additionalProperties == null || !additionalProperties.isBoolean() || additionalProperties.asBoolean();
+            if (propertyRules.isEmpty() && additionalRule == null && additionalAllowed) {
+                return;
+            }
+            rules.add((value, path, errors) -> {
+                if (!value.isObject()) {
+                    return;
+                }
+                Iterator<Map.Entry<String, JsonNode>> fields = value.fields();
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    String fieldPath = path + "." + field.getKey();
+                    Rule rule = propertyRules.get(field.getKey());
+                    if (rule != null) {
+                        rule.validate(field.getValue(), fieldPath, errors);
+                    } else if (additionalRule != null) {
+                        additionalRule.validate(field.getValue(), fieldPath, errors);
+                    } else if (!additionalAllowed) {
+                        errors.add(fieldPath + " is not allowed");
+                    }
+                }
+            });
+        }
+
+        private void compileArray(JsonNode schema, List<Rule> rules) {
+            JsonNode items = schema.get("items");
+            if (items != null && items.isObject()) {
+                Rule itemRule = compile(items);
+                rules.add((value, path, errors) -> {
+                    if (value.isArray()) {
+                        for (int i = 0; i < value.size(); i++) {
+                            itemRule.validate(value.get(i), path + "[" + i + "]", errors);
+                        }
+                    }
+                });
+            }
+            addBound(schema, "minItems", rules, JsonNode::isArray, JsonNode::size, false, "must have at least %s items");
+            addBound(schema, "maxItems", rules, JsonNode::isArray, JsonNode::size, true, "must have at most %s items");
+        }
+
+        private void compileNumber(JsonNode schema, List<Rule> rules) {
+            addDecimalBound(schema, "minimum", rules, false, false, "must be >= %s");
+            addDecimalBound(schema, "maximum", rules, true, false, "must be <= %s");
+            addDecimalBound(schema, "exclusiveMinimum", rules, false, true, "must be > %s");
+            addDecimalBound(schema, "exclusiveMaximum", rules, true, true, "must be < %s");
+        }
+
+        private void compileString(JsonNode schema, List<Rule> rules) {
+            addBound(schema, "minLength", rules, JsonNode::isTextual, v -> v.asText().codePointCount(0, v.asText().length()),
+                    false, "must have at least %s characters");
+            addBound(schema, "maxLength", rules, JsonNode::isTextual, v -> v.asText().codePointCount(0, v.asText().length()),
+                    true, "must have at most %s characters");
+        }
+
+        private void compileCombinators(JsonNode schema, List<Rule> rules) {
+            JsonNode allOf = schema.get("allOf");
+            if (allOf != null && allOf.isArray()) {
+                allOf.forEach(subSchema -> rules.add(compile(subSchema)));
+            }
+            for (String keyword : List.of("anyOf", "oneOf")) {
+                JsonNode alternatives = schema.get(keyword);
+                if (alternatives == null || !alternatives.isArray()) {
+                    continue;
+                }
+                List<Rule> alternativeRules = new ArrayList<>();
+                alternatives.forEach(subSchema -> alternativeRules.add(compile(subSchema)));
+                rules.add((value, path, errors) -> {
+                    for (Rule alternative : alternativeRules) {
+                        List<String> alternativeErrors = new ArrayList<>();
+                        alternative.validate(value, path, alternativeErrors);
+                        if (alternativeErrors.isEmpty()) {
+                            return;
+                        }
+                    }
+                    errors.add(path + " does not match any of the allowed schemas");
+                });
+            }
+        }
+
+        private static void addBound(JsonNode schema, String keyword, List<Rule> rules,
+                                     Predicate<JsonNode> applies,
+                                     ToIntFunction<JsonNode> measure, boolean upper, String message) {
+            JsonNode bound = schema.get(keyword);
+            if (bound == null || !bound.canConvertToInt()) {
+                return;
+            }
+            int limit = bound.asInt();
+            rules.add((value, path, errors) -> {
+                if (applies.test(value)) {
+                    int size = measure.applyAsInt(value);
+                    if (upper ? size > limit : size < limit) {
+                        errors.add(path + " " + message.formatted(limit));
+                    }
+                }
+            });
+        }
+
+        private static void addDecimalBound(JsonNode schema, String keyword, List<Rule> rules, boolean upper,
+                                            boolean exclusive, String message) {
+            JsonNode bound = schema.get(keyword);
+            if (bound == null || !bound.isNumber()) {
+                return;
+            }
+            double limit = bound.asDouble();
+            rules.add((value, path, errors) -> {
+                if (value.isNumber()) {
+                    double number = value.asDouble();
+                    boolean violated = upper
+                            ? (exclusive ? number >= limit : number > limit)
+                            : (exclusive ? number <= limit : number < limit);
+                    if (violated) {
+                        errors.add(path + " " + message.formatted(bound.asText()));
+                    }
+                }
+            });
+        }
+
+        private static boolean hasType(JsonNode value, String type) {
+            return switch (type) {
+                case "object" -> value.isObject();
+                case "array" -> value.isArray();
+                case "string" -> value.isTextual();
+                case "boolean" -> value.isBoolean();
+                case "null" -> value.isNull();
+                case "number" -> value.isNumber();
+                case "integer" -> value.isIntegralNumber() || (value.isNumber() && value.asDouble() == Math.rint(value.asDouble()));
+                default -> true;
+            };
+        }
+
+        private static String typeOf(JsonNode value) {
+            return switch (value.getNodeType()) {
+                case OBJECT -> "object";
+                case ARRAY -> "array";
+                case STRING -> "string";
+                case BOOLEAN -> "boolean";
+                case NULL, MISSING -> "null";
+                case NUMBER -> value.isIntegralNumber() ? "integer" : "number";
+                default -> value.getNodeType().name().toLowerCase(Locale.ROOT);
+            };
+        }
+    }
+}
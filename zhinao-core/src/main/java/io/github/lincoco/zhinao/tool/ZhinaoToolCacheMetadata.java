@@ -0,0 +1,55 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.tool;
+
+import org.springframework.ai.tool.metadata.ToolMetadata;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+
+/**
+ * {@link ToolMetadata} through which a tool declares whether its results may be cached by
+ * {@link ZhinaoToolResultCache}, and for how long.
+ *
+ * @author xueyeshang
+ */
+public interface ZhinaoToolCacheMetadata extends ToolMetadata {
+
+    /**
+     * @return how long a result stays cached, {@link Duration#ZERO} if results must not be cached.
+     */
+    Duration cacheTtl();
+
+    static ZhinaoToolCacheMetadata of(Duration cacheTtl) {
+        return of(false, cacheTtl);
+    }
+
+    static ZhinaoToolCacheMetadata of(boolean returnDirect, Duration cacheTtl) {
+        Assert.notNull(cacheTtl, "cacheTtl cannot be null");
+        Assert.isTrue(!cacheTtl.isNegative(), "cacheTtl cannot be negative");
+        return new ZhinaoToolCacheMetadata() {
+            @Override
+            public Duration cacheTtl() {
+                return cacheTtl;
+            }
+
+            @Override
+            public boolean returnDirect() {
+                return returnDirect;
+            }
+        };
+    }
+}
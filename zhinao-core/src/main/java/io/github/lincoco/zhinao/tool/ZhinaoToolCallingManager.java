@@ -0,0 +1,768 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.tool;
+
+import io.github.lincoco.zhinao.jfr.ZhinaoToolExecutionEvent;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.observation.contextpropagation.ObservationThreadLocalAccessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.execution.DefaultToolExecutionExceptionProcessor;
+import org.springframework.ai.tool.execution.ToolExecutionException;
+import org.springframework.ai.tool.execution.ToolExecutionExceptionProcessor;
+import org.springframework.ai.tool.observation.DefaultToolCallingObservationConvention;
+import org.springframework.ai.tool.observation.ToolCallingObservationContext;
+import org.springframework.ai.tool.observation.ToolCallingObservationConvention;
+import org.springframework.ai.tool.observation.ToolCallingObservationDocumentation;
+import org.springframework.ai.tool.resolution.DelegatingToolCallbackResolver;
+import org.springframework.ai.tool.resolution.ToolCallbackResolver;
+import org.springframework.util.Assert;
+import org.springframework.util.CollectionUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * {@link ToolCallingManager} implementation that fans the tool calls of a single assistant
+ * turn out on an {@link ExecutorService}. Results are joined in the order of the tool calls,
+ * every call is bounded by its timeout, and the remaining calls are cancelled as soon as one
+ * of them fails.
+ * <p>
+ * Without an executor the calls are executed one after another on the caller's thread, like
+ * {@code DefaultToolCallingManager}, and are not bounded by their timeouts. With sequential
+ * timeouts enabled, each call is moved to the bounded elastic scheduler so that its timeout
+ * applies; tools that read thread-local state, such as the security context, then no longer
+ * see it. With a {@link ZhinaoToolResultCache}, results of
+ * cacheable tools are served from the cache. With asynchronous execution enabled, tool calls
+ * targeting {@link ZhinaoAsyncToolCallback}s can be executed in a reactive chain with
+ * {@link #executeToolCallsAsync}. With a
+ * {@link ZhinaoToolArgumentValidator}, tool call arguments are repaired or rejected before
+ * the tools run.
+ * </p>
+ *
+ * @author xueyeshang
+ */
+public class ZhinaoToolCallingManager implements ToolCallingManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(ZhinaoToolCallingManager.class);
+
+    private static final ToolCallingObservationConvention DEFAULT_OBSERVATION_CONVENTION = new DefaultToolCallingObservationConvention();
+
+    public static final Duration DEFAULT_TOOL_TIMEOUT = Duration.ofSeconds(60);
+
+    private final ObservationRegistry observationRegistry;
+    private final ToolCallbackResolver toolCallbackResolver;
+    private final ToolExecutionExceptionProcessor toolExecutionExceptionProcessor;
+    private final ExecutorService executorService;
+    private volatile Duration defaultTimeout;
+    private volatile Map<String, Duration> toolTimeouts;
+    private final ZhinaoToolResultCache toolResultCache;
+    private final ZhinaoToolArgumentValidator argumentValidator;
+    private final boolean asyncExecution;
+    private final boolean sequentialTimeouts;
+
+    private ToolCallingObservationConvention observationConvention = DEFAULT_OBSERVATION_CONVENTION;
+
+    public ZhinaoToolCallingManager(ObservationRegistry observationRegistry, ToolCallbackResolver toolCallbackResolver,
+                                    ToolExecutionExceptionProcessor toolExecutionExceptionProcessor,
+                                    ExecutorService executorService, Duration defaultTimeout,
+                                    Map<String, Duration> toolTimeouts, ZhinaoToolResultCache toolResultCache,
+                                    ZhinaoToolArgumentValidator argumentValidator, boolean asyncExecution,
+                                    boolean sequentialTimeouts) {
+        Assert.notNull(observationRegistry, "observationRegistry cannot be null");
+        Assert.notNull(toolCallbackResolver, "toolCallbackResolver cannot be null");
+        Assert.notNull(toolExecutionExceptionProcessor, "toolExecutionExceptionProcessor cannot be null");
+        Assert.notNull(defaultTimeout, "defaultTimeout cannot be null");
+        Assert.notNull(toolTimeouts, "toolTimeouts cannot be null");
+        this.observationRegistry = observationRegistry;
+        this.toolCallbackResolver = toolCallbackResolver;
+        this.toolExecutionExceptionProcessor = toolExecutionExceptionProcessor;
+        this.executorService = executorService;
+        this.defaultTimeout = defaultTimeout;
+        this.toolTimeouts = Map.copyOf(toolTimeouts);
+        this.toolResultCache = toolResultCache;
+        this.argumentValidator = argumentValidator;
+        this.asyncExecution = asyncExecution;
+        this.sequentialTimeouts = sequentialTimeouts;
+    }
+
+    @Override
+    public List<ToolDefinition> resolveToolDefinitions(ToolCallingChatOptions chatOptions) {
+        Assert.notNull(chatOptions, "chatOptions cannot be null");
+        List<ToolCallback> toolCallbacks = new ArrayList<>(chatOptions.getToolCallbacks());
+        for (String toolName : chatOptions.getToolNames()) {
+            // Skip the tool if it is already present in the request toolCallbacks.
+            if (chatOptions.getToolCallbacks().stream().anyMatch(tool -> tool.getToolDefinition().name().equals(toolName))) {
+                continue;
+            }
+            ToolCallback toolCallback = this.toolCallbackResolver.resolve(toolName);
+            if (toolCallback == null) {
+                throw new IllegalStateException("No ToolCallback found for tool name: " + toolName);
+            }
+            toolCallbacks.add(toolCallback);
+        }
+        return toolCallbacks.stream().map(ToolCallback::getToolDefinition).toList();
+    }
+
+    @Override
+    public ToolExecutionResult executeToolCalls(Prompt prompt, ChatResponse chatResponse) {
+        return executeToolCalls(prompt, chatResponse, null);
+    }
+
+    /**
+     * Executes the tool calls of the given response, reusing the calls that were already
+     * started with {@link #startToolCall} while the response was still being streamed.
+     * @param prompt the prompt that produced the response.
+     * @param chatResponse the response containing the tool calls.
+     * @param startedToolCalls the tool calls started early, may be null.
+     * @return the tool execution result.
+     */
+    public ToolExecutionResult executeToolCalls(Prompt prompt, ChatResponse chatResponse, StartedToolCalls startedToolCalls) {
+        Assert.notNull(prompt, "prompt cannot be null");
+        Assert.notNull(chatResponse, "chatResponse cannot be null");
+
+        AssistantMessage requestedMessage = toolCallMessage(chatResponse);
+        List<ToolCallback> toolCallbacks = resolveToolCallbacks(prompt, requestedMessage.getToolCalls());
+        ValidatedToolCalls validatedToolCalls = validateToolCalls(requestedMessage, toolCallbacks);
+        AssistantMessage assistantMessage = validatedToolCalls.assistantMessage();
+        List<AssistantMessage.ToolCall> toolCalls = assistantMessage.getToolCalls();
+
+        ToolContext toolContext = buildToolContext(prompt, assistantMessage);
+        List<String> results;
+        try {
+            results = this.executorService == null
+                    ? executeSequentially(toolCalls, toolCallbacks, toolContext, validatedToolCalls.rejections())
+                    : executeConcurrently(toolCalls, toolCallbacks, toolContext, validatedToolCalls.rejections(), startedToolCalls);
+        } finally {
+            if (startedToolCalls != null) {
+                // Tool calls started early but not part of the final response are no longer needed.
+                startedToolCalls.cancel();
+            }
+        }
+        return buildToolExecutionResult(prompt, validatedToolCalls, toolCallbacks, results);
+    }
+
+    /**
+     * Whether asynchronous execution is enabled and all tool calls of the given response target
+     * {@link ZhinaoAsyncToolCallback}s, so that they can be executed with
+     * {@link #executeToolCallsAsync} without occupying a thread.
+     * @param prompt the prompt that produced the response.
+     * @param chatResponse the response containing the tool calls.
+     * @return true if the tool calls can be executed asynchronously.
+     */
+    public boolean supportsAsyncExecution(Prompt prompt, ChatResponse chatResponse) {
+        if (!this.asyncExecution) {
+            return false;
+        }
+        try {
+            return resolveToolCallbacks(prompt, toolCallMessage(chatResponse).getToolCalls()).stream()
+                    .allMatch(ZhinaoAsyncToolCallback.class::isInstance);
+        } catch (IllegalStateException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Executes the tool calls of the given response inside the reactive chain. Tool calls are
+     * subscribed concurrently and joined in order, each bounded by its timeout. Tool calls that
+     * do not target a {@link ZhinaoAsyncToolCallback} are executed on the bounded elastic
+     * scheduler.
+     * @param prompt the prompt that produced the response.
+     * @param chatResponse the response containing the tool calls.
+     * @return the tool execution result.
+     */
+    public Mono<ToolExecutionResult> executeToolCallsAsync(Prompt prompt, ChatResponse chatResponse) {
+        Assert.notNull(prompt, "prompt cannot be null");
+        Assert.notNull(chatResponse, "chatResponse cannot be null");
+        return Mono.deferContextual(contextView -> {
+            AssistantMessage requestedMessage = toolCallMessage(chatResponse);
+            List<ToolCallback> toolCallbacks = resolveToolCallbacks(prompt, requestedMessage.getToolCalls());
+            ValidatedToolCalls validatedToolCalls = validateToolCalls(requestedMessage, toolCallbacks);
+            List<AssistantMessage.ToolCall> toolCalls = validatedToolCalls.assistantMessage().getToolCalls();
+            ToolContext toolContext = buildToolContext(prompt, validatedToolCalls.assistantMessage());
+            Observation parentObservation = contextView.getOrDefault(ObservationThreadLocalAccessor.KEY,
+                    this.observationRegistry.getCurrentObservation());
+            return Flux.range(0, toolCalls.size())
+                    .flatMapSequential(i -> validatedToolCalls.rejection(i) != null
+                            ? Mono.just(validatedToolCalls.rejection(i))
+                            : invokeToolCallbackAsync(toolCalls.get(i), toolCallbacks.get(i), toolContext, parentObservation))
+                    .collectList()
+                    .map(results -> buildToolExecutionResult(prompt, validatedToolCalls, toolCallbacks, results));
+        });
+    }
+
+    /**
+     * Whether tool calls of the given prompt can be started before the assistant turn is
+     * complete. This requires an executor, and a prompt without tool context, because the
+     * tool call history handed to the tools is only known once the turn is complete.
+     * @param prompt the prompt the tool calls belong to.
+     * @return true if {@link #startToolCall} can be used for the prompt.
+     */
+    public boolean supportsEarlyExecution(Prompt prompt) {
+        return this.executorService != null
+                && !(prompt.getOptions() instanceof ToolCallingChatOptions toolCallingChatOptions
+                && !CollectionUtils.isEmpty(toolCallingChatOptions.getToolContext()));
+    }
+
+    /**
+     * Starts a single tool call whose arguments are already complete while the rest of the
+     * assistant turn is still being generated.
+     * @param prompt the prompt the tool call belongs to.
+     * @param toolCall the tool call with complete arguments.
+     * @param startedToolCalls the holder the started call is registered in.
+     */
+    public void startToolCall(Prompt prompt, AssistantMessage.ToolCall toolCall, StartedToolCalls startedToolCalls) {
+        if (!supportsEarlyExecution(prompt)) {
+            return;
+        }
+        ToolCallback toolCallback;
+        try {
+            toolCallback = resolveToolCallback(toolCall.name(), availableToolCallbacks(prompt));
+        } catch (IllegalStateException ex) {
+            // Reported once the assistant turn is complete.
+            return;
+        }
+        if (toolCallback instanceof ZhinaoAsyncToolCallback) {
+            // Asynchronous tools do not benefit from a head start on a thread.
+            return;
+        }
+        if (this.argumentValidator != null) {
+            ZhinaoToolArgumentValidator.ValidationResult validation = this.argumentValidator.validate(toolCallback.getToolDefinition(), toolCall.arguments());
+            if (!validation.valid()) {
+                return;
+            }
+            toolCall = new AssistantMessage.ToolCall(toolCall.id(), toolCall.type(), toolCall.name(), validation.arguments());
+        }
+        logger.debug("Starting tool call '{}' before the stream completed", toolCall.name());
+        startedToolCalls.register(toolCall, submit(toolCall, toolCallback, new ToolContext(Map.of()), null));
+    }
+
+    private List<String> executeSequentially(List<AssistantMessage.ToolCall> toolCalls, List<ToolCallback> toolCallbacks,
+                                             ToolContext toolContext, List<String> rejections) {
+        Observation parentObservation = this.observationRegistry.getCurrentObservation();
+        List<String> results = new ArrayList<>(toolCalls.size());
+        for (int i = 0; i < toolCalls.size(); i++) {
+            String rejection = rejections.get(i);
+            if (rejection != null) {
+                results.add(rejection);
+            } else if (this.sequentialTimeouts) {
+                results.add(invokeWithTimeout(toolCalls.get(i), toolCallbacks.get(i), toolContext, parentObservation));
+            } else {
+                results.add(invokeToolCallback(toolCalls.get(i), toolCallbacks.get(i), toolContext, parentObservation));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 逐个执行时限制每次调用的时长，超时后中断该工具；调用不在当前线程执行
+     */
+    private String invokeWithTimeout(AssistantMessage.ToolCall toolCall, ToolCallback toolCallback, ToolContext toolContext,
+                                     Observation parentObservation) {
+        Duration timeout = resolveTimeout(toolCallback);
+        return Mono.fromCallable(() -> invokeToolCallback(toolCall, toolCallback, toolContext, parentObservation))
+                .subscribeOn(Schedulers.boundedElastic())
+                .timeout(timeout)
+                .onErrorResume(TimeoutException.class, ex -> Mono.just(timedOut(toolCall, toolCallback, timeout)))
+                .block();
+    }
+
+    private List<String> executeConcurrently(List<AssistantMessage.ToolCall> toolCalls, List<ToolCallback> toolCallbacks,
+                                             ToolContext toolContext, List<String> rejections, StartedToolCalls startedToolCalls) {
+        Observation parentObservation = this.observationRegistry.getCurrentObservation();
+        List<ToolCallHandle> handles = new ArrayList<>(toolCalls.size());
+        try {
+            for (int i = 0; i < toolCalls.size(); i++) {
+                if (rejections.get(i) != null) {
+                    handles.add(ToolCallHandle.completed(toolCalls.get(i), rejections.get(i)));
+                    continue;
+                }
+                ToolCallHandle handle = startedToolCalls != null ? startedToolCalls.claim(toolCalls.get(i)) : null;
+                if (handle == null) {
+                    handle = submit(toolCalls.get(i), toolCallbacks.get(i), toolContext, parentObservation);
+                }
+                handles.add(handle);
+            }
+        } catch (RejectedExecutionException ex) {
+            handles.forEach(ToolCallHandle::cancel);
+            throw ex;
+        }
+
+        CompletableFuture<Void> firstFailure = new CompletableFuture<>();
+        handles.forEach(handle -> handle.outcome().whenComplete((value, ex) -> {
+            if (ex != null) {
+                firstFailure.completeExceptionally(ex);
+            }
+        }));
+        CompletableFuture<?>[] outcomes = handles.stream().map(ToolCallHandle::outcome).toArray(CompletableFuture[]::new);
+        try {
+            CompletableFuture.anyOf(CompletableFuture.allOf(outcomes), firstFailure).join();
+        } catch (CompletionException ex) {
+            // Cancel the sibling tool calls that are still running.
+            handles.forEach(ToolCallHandle::cancel);
+            Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Tool execution failed", cause);
+        }
+        return handles.stream().map(handle -> handle.outcome().join()).toList();
+    }
+
+    private ToolCallHandle submit(AssistantMessage.ToolCall toolCall, ToolCallback toolCallback, ToolContext toolContext,
+                                  Observation parentObservation) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        Future<?> task = this.executorService.submit(() -> {
+            try {
+                result.complete(invokeToolCallback(toolCall, toolCallback, toolContext, parentObservation));
+            } catch (Throwable ex) {
+                result.completeExceptionally(ex);
+            }
+        });
+        Duration timeout = resolveTimeout(toolCallback);
+        CompletableFuture<String> outcome = result.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .handle((value, ex) -> {
+                    if (ex == null) {
+                        return value;
+                    }
+                    Throwable cause = (ex instanceof CompletionException && ex.getCause() != null) ? ex.getCause() : ex;
+                    if (cause instanceof TimeoutException) {
+                        task.cancel(true);
+                        return timedOut(toolCall, toolCallback, timeout);
+                    }
+                    throw (cause instanceof CompletionException completionException) ? completionException : new CompletionException(cause);
+                });
+        return new ToolCallHandle(toolCall, task, outcome);
+    }
+
+    private String invokeToolCallback(AssistantMessage.ToolCall toolCall, ToolCallback toolCallback, ToolContext toolContext,
+                                      Observation parentObservation) {
+        logger.debug("Executing tool call: {}", toolCall.name());
+        ToolCallingObservationContext observationContext = ToolCallingObservationContext.builder()
+                .toolDefinition(toolCallback.getToolDefinition())
+                .toolMetadata(toolCallback.getToolMetadata())
+                .toolCallArguments(toolCall.arguments())
+                .build();
+        Observation observation = ToolCallingObservationDocumentation.TOOL_CALL.observation(this.observationConvention,
+                DEFAULT_OBSERVATION_CONVENTION, () -> observationContext, this.observationRegistry);
+        if (parentObservation != null) {
+            observation.parentObservation(parentObservation);
+        }
+        ZhinaoToolExecutionEvent event = new ZhinaoToolExecutionEvent();
+        event.begin();
+        return observation.observe(() -> {
+            String toolResult;
+            try {
+                // Results depending on a tool context are never shared through the cache.
+                toolResult = (this.toolResultCache != null && CollectionUtils.isEmpty(toolContext.getContext()))
+                        ? this.toolResultCache.call(toolCallback, toolCall.arguments(), () -> toolCallback.call(toolCall.arguments(), toolContext))
+                        : toolCallback.call(toolCall.arguments(), toolContext);
+            } catch (ToolExecutionException ex) {
+                event.failed = true;
+                toolResult = this.toolExecutionExceptionProcessor.process(ex);
+            } catch (RuntimeException ex) {
+                event.failed = true;
+                throw ex;
+            } finally {
+                commit(event, toolCall.name(), false);
+            }
+            observationContext.setToolCallResult(toolResult);
+            return toolResult;
+        });
+    }
+
+    private Mono<String> invokeToolCallbackAsync(AssistantMessage.ToolCall toolCall, ToolCallback toolCallback,
+                                                 ToolContext toolContext, Observation parentObservation) {
+        if (!(toolCallback instanceof ZhinaoAsyncToolCallback asyncToolCallback)) {
+            return Mono.fromCallable(() -> invokeToolCallback(toolCall, toolCallback, toolContext, parentObservation))
+                    .subscribeOn(Schedulers.boundedElastic());
+        }
+        return Mono.defer(() -> {
+            logger.debug("Executing asynchronous tool call: {}", toolCall.name());
+            ToolCallingObservationContext observationContext = ToolCallingObservationContext.builder()
+                    .toolDefinition(toolCallback.getToolDefinition())
+                    .toolMetadata(toolCallback.getToolMetadata())
+                    .toolCallArguments(toolCall.arguments())
+                    .build();
+            Observation observation = ToolCallingObservationDocumentation.TOOL_CALL.observation(this.observationConvention,
+                    DEFAULT_OBSERVATION_CONVENTION, () -> observationContext, this.observationRegistry);
+            observation.parentObservation(parentObservation).start();
+            ZhinaoToolExecutionEvent event = new ZhinaoToolExecutionEvent();
+            event.begin();
+            Duration timeout = resolveTimeout(toolCallback);
+            // Results depending on a tool context are never shared through the cache.
+            Mono<String> toolResult = (this.toolResultCache != null && CollectionUtils.isEmpty(toolContext.getContext()))
+                    ? this.toolResultCache.callAsync(toolCallback, toolCall.arguments(), () -> asyncToolCallback.callAsync(toolCall.arguments(), toolContext))
+                    : asyncToolCallback.callAsync(toolCall.arguments(), toolContext);
+            return toolResult
+                    .defaultIfEmpty("")
+                    .timeout(timeout)
+                    .doOnError(ex -> event.failed = true)
+                    .onErrorResume(ToolExecutionException.class, ex -> Mono.just(this.toolExecutionExceptionProcessor.process(ex)))
+                    .onErrorResume(TimeoutException.class, ex -> Mono.just(timedOut(toolCall, toolCallback, timeout)))
+                    .doOnNext(observationContext::setToolCallResult)
+                    .doOnError(observation::error)
+                    .doFinally(signalType -> {
+                        commit(event, toolCall.name(), true);
+                        observation.stop();
+                    });
+        });
+    }
+
+    private String timedOut(AssistantMessage.ToolCall toolCall, ToolCallback toolCallback, Duration timeout) {
+        logger.warn("Tool call '{}' timed out after {}", toolCall.name(), timeout);
+        return this.toolExecutionExceptionProcessor.process(new ToolExecutionException(toolCallback.getToolDefinition(),
+                new TimeoutException("Tool call '" + toolCall.name() + "' timed out after " + timeout)));
+    }
+
+    private static void commit(ZhinaoToolExecutionEvent event, String toolName, boolean async) {
+        if (event.shouldCommit()) {
+            event.tool = toolName;
+            event.async = async;
+            event.commit();
+        }
+    }
+
+    private ToolCallback resolveToolCallback(String toolName, List<ToolCallback> toolCallbacks) {
+        ToolCallback toolCallback = toolCallbacks.stream()
+                .filter(tool -> toolName.equals(tool.getToolDefinition().name()))
+                .findFirst()
+                .orElseGet(() -> this.toolCallbackResolver.resolve(toolName));
+        if (toolCallback == null) {
+            throw new IllegalStateException("No ToolCallback found for tool name: " + toolName);
+        }
+        return toolCallback;
+    }
+
+    /**
+     * 执行前校验工具调用参数：可修复的参数就地修复，无法修复的参数不执行工具，而是把错误返回给模型
+     */
+    private ValidatedToolCalls validateToolCalls(AssistantMessage assistantMessage, List<ToolCallback> toolCallbacks) {
+        List<AssistantMessage.ToolCall> toolCalls = assistantMessage.getToolCalls();
+        List<String> rejections = new ArrayList<>(Collections.nCopies(toolCalls.size(), null));
+        if (this.argumentValidator == null) {
+            return new ValidatedToolCalls(assistantMessage, rejections);
+        }
+        List<AssistantMessage.ToolCall> validatedToolCalls = new ArrayList<>(toolCalls.size());
+        boolean repaired = false;
+        for (int i = 0; i < toolCalls.size(); i++) {
+            AssistantMessage.ToolCall toolCall = toolCalls.get(i);
+            ToolDefinition toolDefinition = toolCallbacks.get(i).getToolDefinition();
+            ZhinaoToolArgumentValidator.ValidationResult validation = this.argumentValidator.validate(toolDefinition, toolCall.arguments());
+            if (!validation.valid()) {
+                logger.debug("Rejected arguments of tool call '{}': {}", toolCall.name(), validation.errors());
+                rejections.set(i, this.toolExecutionExceptionProcessor.process(new ToolExecutionException(toolDefinition,
+                        new IllegalArgumentException("Invalid arguments for tool '" + toolCall.name() + "': "
+                                + String.join("; ", validation.errors()) + ". Call the tool again with arguments matching its input schema."))));
+            }
+            if (validation.repaired()) {
+                logger.debug("Repaired arguments of tool call '{}'", toolCall.name());
+                toolCall = new AssistantMessage.ToolCall(toolCall.id(), toolCall.type(), toolCall.name(), validation.arguments());
+                repaired = true;
+            }
+            validatedToolCalls.add(toolCall);
+        }
+        if (repaired) {
+            assistantMessage = new AssistantMessage(assistantMessage.getText(), assistantMessage.getMetadata(), validatedToolCalls,
+                    assistantMessage.getMedia());
+        }
+        return new ValidatedToolCalls(assistantMessage, rejections);
+    }
+
+    private static AssistantMessage toolCallMessage(ChatResponse chatResponse) {
+        return chatResponse.getResults().stream()
+                .map(Generation::getOutput)
+                .filter(output -> !CollectionUtils.isEmpty(output.getToolCalls()))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("No tool call requested by the chat model"));
+    }
+
+    private List<ToolCallback> resolveToolCallbacks(Prompt prompt, List<AssistantMessage.ToolCall> toolCalls) {
+        List<ToolCallback> availableToolCallbacks = availableToolCallbacks(prompt);
+        return toolCalls.stream()
+                .map(toolCall -> resolveToolCallback(toolCall.name(), availableToolCallbacks))
+                .toList();
+    }
+
+    private static ToolExecutionResult buildToolExecutionResult(Prompt prompt, ValidatedToolCalls validatedToolCalls,
+                                                                List<ToolCallback> toolCallbacks, List<String> results) {
+        AssistantMessage assistantMessage = validatedToolCalls.assistantMessage();
+        List<AssistantMessage.ToolCall> toolCalls = assistantMessage.getToolCalls();
+        List<ToolResponseMessage.ToolResponse> toolResponses = new ArrayList<>(toolCalls.size());
+        for (int i = 0; i < toolCalls.size(); i++) {
+            AssistantMessage.ToolCall toolCall = toolCalls.get(i);
+            String result = results.get(i);
+            toolResponses.add(new ToolResponseMessage.ToolResponse(toolCall.id(), toolCall.name(), result != null ? result : ""));
+        }
+        // Rejected arguments must go back to the model so that it can correct them.
+        boolean returnDirect = !validatedToolCalls.anyRejected()
+                && toolCallbacks.stream().allMatch(toolCallback -> toolCallback.getToolMetadata().returnDirect());
+
+        List<Message> conversationHistory = new ArrayList<>(prompt.getInstructions());
+        conversationHistory.add(assistantMessage);
+        conversationHistory.add(new ToolResponseMessage(toolResponses, Map.of()));
+        return ToolExecutionResult.builder()
+                .conversationHistory(conversationHistory)
+                .returnDirect(returnDirect)
+                .build();
+    }
+
+    private static List<ToolCallback> availableToolCallbacks(Prompt prompt) {
+        return prompt.getOptions() instanceof ToolCallingChatOptions toolCallingChatOptions
+                ? toolCallingChatOptions.getToolCallbacks() : List.of();
+    }
+
+    public Duration getDefaultTimeout() {
+        return this.defaultTimeout;
+    }
+
+    /**
+     * Changes the timeout of tools without their own timeout at runtime. Tool calls already
+     * running keep the timeout they started with.
+     * @param defaultTimeout the new default timeout.
+     */
+    public void setDefaultTimeout(Duration defaultTimeout) {
+        Assert.notNull(defaultTimeout, "defaultTimeout cannot be null");
+        this.defaultTimeout = defaultTimeout;
+    }
+
+    public Map<String, Duration> getToolTimeouts() {
+        return this.toolTimeouts;
+    }
+
+    /**
+     * Replaces the timeouts by tool name at runtime.
+     * @param toolTimeouts the new timeouts by tool name.
+     */
+    public void setToolTimeouts(Map<String, Duration> toolTimeouts) {
+        Assert.notNull(toolTimeouts, "toolTimeouts cannot be null");
+        this.toolTimeouts = Map.copyOf(toolTimeouts);
+    }
+
+    private Duration resolveTimeout(ToolCallback toolCallback) {
+        return this.toolTimeouts.getOrDefault(toolCallback.getToolDefinition().name(), this.defaultTimeout);
+    }
+
+    private static ToolContext buildToolContext(Prompt prompt, AssistantMessage assistantMessage) {
+        Map<String, Object> toolContextMap = Map.of();
+        if (prompt.getOptions() instanceof ToolCallingChatOptions toolCallingChatOptions
+                && !CollectionUtils.isEmpty(toolCallingChatOptions.getToolContext())) {
+            toolContextMap = new HashMap<>(toolCallingChatOptions.getToolContext());
+            List<Message> history = new ArrayList<>(prompt.copy().getInstructions());
+            history.add(new AssistantMessage(assistantMessage.getText(), assistantMessage.getMetadata(), assistantMessage.getToolCalls()));
+            toolContextMap.put(ToolContext.TOOL_CALL_HISTORY, history);
+        }
+        return new ToolContext(toolContextMap);
+    }
+
+    public void setObservationConvention(ToolCallingObservationConvention observationConvention) {
+        Assert.notNull(observationConvention, "observationConvention cannot be null");
+        this.observationConvention = observationConvention;
+    }
+
+    private record ToolCallHandle(AssistantMessage.ToolCall toolCall, Future<?> task, CompletableFuture<String> outcome) {
+
+        static ToolCallHandle completed(AssistantMessage.ToolCall toolCall, String result) {
+            return new ToolCallHandle(toolCall, CompletableFuture.completedFuture(null), CompletableFuture.completedFuture(result));
+        }
+
+        void cancel() {
+            this.task.cancel(true);
+        }
+    }
+
+    /**
+     * @param assistantMessage the assistant message with repaired tool call arguments.
+     * @param rejections the error returned to the model for each tool call, null if the call is executed.
+     */
+    private record ValidatedToolCalls(AssistantMessage assistantMessage, List<String> rejections) {
+
+        String rejection(int index) {
+            return this.rejections.get(index);
+        }
+
+        boolean anyRejected() {
+            return this.rejections.stream().anyMatch(Objects::nonNull);
+        }
+    }
+
+    /**
+     * Tool calls started while the assistant turn was still being streamed, keyed by tool call id.
+     */
+    public static final class StartedToolCalls {
+
+        private final Map<String, ToolCallHandle> handles = new ConcurrentHashMap<>();
+
+        private void register(AssistantMessage.ToolCall toolCall, ToolCallHandle handle) {
+            ToolCallHandle previous = this.handles.put(toolCall.id(), handle);
+            if (previous != null) {
+                previous.cancel();
+            }
+        }
+
+        private ToolCallHandle claim(AssistantMessage.ToolCall toolCall) {
+            ToolCallHandle handle = this.handles.remove(toolCall.id());
+            if (handle != null && !(Objects.equals(handle.toolCall().name(), toolCall.name())
+                    && Objects.equals(handle.toolCall().arguments(), toolCall.arguments()))) {
+                // The final arguments differ from the ones the call was started with.
+                handle.cancel();
+                return null;
+            }
+            return handle;
+        }
+
+        /**
+         * Cancels all started tool calls that have not been claimed yet.
+         */
+        public void cancel() {
+            this.handles.values().forEach(ToolCallHandle::cancel);
+            this.handles.clear();
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+
+        private ObservationRegistry observationRegistry = ObservationRegistry.NOOP;
+
+        private ToolCallbackResolver toolCallbackResolver = new DelegatingToolCallbackResolver(List.of());
+
+        private ToolExecutionExceptionProcessor toolExecutionExceptionProcessor = DefaultToolExecutionExceptionProcessor.builder().build();
+
+        private ExecutorService executorService;
+
+        private Duration defaultTimeout = DEFAULT_TOOL_TIMEOUT;
+
+        private Map<String, Duration> toolTimeouts = new HashMap<>();
+
+        private ZhinaoToolResultCache toolResultCache;
+
+        private ZhinaoToolArgumentValidator argumentValidator;
+
+        private boolean asyncExecution = false;
+
+        private boolean sequentialTimeouts = false;
+
+        private Builder() {
+        }
+
+        public Builder observationRegistry(ObservationRegistry observationRegistry) {
+            this.observationRegistry = observationRegistry;
+            return this;
+        }
+
+        public Builder toolCallbackResolver(ToolCallbackResolver toolCallbackResolver) {
+            this.toolCallbackResolver = toolCallbackResolver;
+            return this;
+        }
+
+        public Builder toolExecutionExceptionProcessor(ToolExecutionExceptionProcessor toolExecutionExceptionProcessor) {
+            this.toolExecutionExceptionProcessor = toolExecutionExceptionProcessor;
+            return this;
+        }
+
+        public Builder executorService(ExecutorService executorService) {
+            this.executorService = executorService;
+            return this;
+        }
+
+        public Builder defaultTimeout(Duration defaultTimeout) {
+            this.defaultTimeout = defaultTimeout;
+            return this;
+        }
+
+        public Builder toolTimeout(String toolName, Duration timeout) {
+            Assert.hasText(toolName, "toolName cannot be null or empty");
+            Assert.notNull(timeout, "timeout cannot be null");
+            this.toolTimeouts.put(toolName, timeout);
+            return this;
+        }
+
+        public Builder toolTimeouts(Map<String, Duration> toolTimeouts) {
+            Assert.notNull(toolTimeouts, "toolTimeouts cannot be null");
+            this.toolTimeouts = new HashMap<>(toolTimeouts);
+            return this;
+        }
+
+        public Builder toolResultCache(ZhinaoToolResultCache toolResultCache) {
+            this.toolResultCache = toolResultCache;
+            return this;
+        }
+
+        public Builder argumentValidator(ZhinaoToolArgumentValidator argumentValidator) {
+            this.argumentValidator = argumentValidator;
+            return this;
+        }
+
+        /**
+         * @param asyncExecution whether streamed tool calls targeting {@link ZhinaoAsyncToolCallback}s
+         * are executed in the reactive chain.
+         * @return this builder.
+         */
+        public Builder asyncExecution(boolean asyncExecution) {
+            this.asyncExecution = asyncExecution;
+            return this;
+        }
+
+        /**
+         * @param sequentialTimeouts whether tool calls executed without an executor are bounded by
+         * their timeouts. They then run on the bounded elastic scheduler instead of the caller's thread.
+         * @return this builder.
+         */
+        public Builder sequentialTimeouts(boolean sequentialTimeouts) {
+            this.sequentialTimeouts = sequentialTimeouts;
+            return this;
+        }
+
+        public ZhinaoToolCallingManager build() {
+            return new ZhinaoToolCallingManager(this.observationRegistry, this.toolCallbackResolver,
+                    this.toolExecutionExceptionProcessor, this.executorService, this.defaultTimeout, this.toolTimeouts,
+                    this.toolResultCache, this.argumentValidator, this.asyncExecution, this.sequentialTimeouts);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.tool;
+
+import org.springframework.util.Assert;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Factory methods for the {@link ExecutorService}s used by {@link ZhinaoToolCallingManager}.
+ *
+ * @author xueyeshang
+ */
+public final class ZhinaoToolExecutors {
+
+    private static final String THREAD_NAME_PREFIX = "zhinao-tool-";
+
+    private ZhinaoToolExecutors() {
+    }
+
+    /**
+     * 创建固定上限的线程池，超出上限的工具调用进入队列等待
+     *
+     * @param maxConcurrency 同时执行的工具调用上限
+     * @return 线程池
+     */
+    public static ExecutorService boundedPool(int maxConcurrency) {
+        Assert.isTrue(maxConcurrency > 0, "maxConcurrency must be greater than 0");
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), daemonThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 运行时调整 {@link #boundedPool(int)} 线程池的并发上限，执行中的任务不受影响
+     *
+     * @param executorService 执行器
+     * @param maxConcurrency 新的工具调用并发上限
+     * @return 是否为可调整的线程池
+     */
+    public static boolean resize(ExecutorService executorService, int maxConcurrency) {
+        Assert.isTrue(maxConcurrency > 0, "maxConcurrency must be greater than 0");
+        if (!(executorService instanceof ThreadPoolExecutor executor)) {
+            return false;
+        }
+        // 核心线程数不能超过最大线程数，调整顺序取决于扩容还是缩容
+        if (maxConcurrency > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(maxConcurrency);
+            executor.setCorePoolSize(maxConcurrency);
+        } else {
+            executor.setCorePoolSize(maxConcurrency);
+            executor.setMaximumPoolSize(maxConcurrency);
+        }
+        return true;
+    }
+
+    /**
+     * 创建每个任务一个虚拟线程的执行器，运行时低于 Java 21 时回退到 {@link #boundedPool(int)}
+     *
+     * @param fallbackConcurrency 回退线程池的并发上限
+     * @return 执行器
+     */
+    public static ExecutorService virtualThreads(int fallbackConcurrency) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            return boundedPool(fallbackConcurrency);
+        }
+    }
+
+    private static ThreadFactory daemonThreadFactory() {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, THREAD_NAME_PREFIX + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
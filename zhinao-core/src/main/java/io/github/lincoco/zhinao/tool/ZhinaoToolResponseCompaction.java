@@ -0,0 +1,115 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.tool;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.util.Assert;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Applies a {@link ZhinaoToolResponseCompactor} to the tool responses of a round before they
+ * are sent back to the model, and meters the bytes saved per round.
+ *
+ * @author xueyeshang
+ */
+public class ZhinaoToolResponseCompaction implements MeterBinder {
+
+    private final ZhinaoToolResponseCompactor compactor;
+    private final LongAdder bytesSaved = new LongAdder();
+    private final LongAdder rounds = new LongAdder();
+
+    private volatile DistributionSummary savedPerRound;
+
+    public ZhinaoToolResponseCompaction(ZhinaoToolResponseCompactor compactor) {
+        Assert.notNull(compactor, "compactor cannot be null");
+        this.compactor = compactor;
+    }
+
+    /**
+     * Compacts the tool responses of the latest round of the given conversation history.
+     * @param conversationHistory the conversation history ending with a {@link ToolResponseMessage}.
+     * @return the conversation history with the compacted tool responses.
+     */
+    public List<Message> compact(List<Message> conversationHistory) {
+        if (conversationHistory.isEmpty()
+                || !(conversationHistory.get(conversationHistory.size() - 1) instanceof ToolResponseMessage toolResponseMessage)) {
+            return conversationHistory;
+        }
+        long saved = 0;
+        boolean changed = false;
+        List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>(toolResponseMessage.getResponses().size());
+        for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+            String compacted = this.compactor.compact(response);
+            if (compacted == null || Objects.equals(compacted, response.responseData())) {
+                responses.add(response);
+                continue;
+            }
+            saved += utf8Length(response.responseData()) - utf8Length(compacted);
+            responses.add(new ToolResponseMessage.ToolResponse(response.id(), response.name(), compacted));
+            changed = true;
+        }
+        record(saved);
+        if (!changed) {
+            return conversationHistory;
+        }
+        List<Message> compactedHistory = new ArrayList<>(conversationHistory.subList(0, conversationHistory.size() - 1));
+        compactedHistory.add(new ToolResponseMessage(responses, toolResponseMessage.getMetadata()));
+        return compactedHistory;
+    }
+
+    public long bytesSaved() {
+        return this.bytesSaved.sum();
+    }
+
+    public long rounds() {
+        return this.rounds.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("zhinao.tool.response.compaction.saved.total", this.bytesSaved, LongAdder::sum)
+                .description("Bytes removed from tool responses before they were sent to the model")
+                .baseUnit("bytes")
+                .register(registry);
+        this.savedPerRound = DistributionSummary.builder("zhinao.tool.response.compaction.saved")
+                .description("Bytes removed from the tool responses of a single round")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    private void record(long saved) {
+        this.rounds.increment();
+        this.bytesSaved.add(saved);
+        DistributionSummary summary = this.savedPerRound;
+        if (summary != null) {
+            summary.record(saved);
+        }
+    }
+
+    private static long utf8Length(String value) {
+        return value == null ? 0 : value.getBytes(StandardCharsets.UTF_8).length;
+    }
+}
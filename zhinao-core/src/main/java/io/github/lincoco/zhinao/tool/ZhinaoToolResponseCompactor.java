@@ -0,0 +1,160 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.tool;
+
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Compacts a tool response before it is sent back to the model, so that large tool results do
+ * not inflate every following request of the conversation.
+ *
+ * @author xueyeshang
+ */
+@FunctionalInterface
+public interface ZhinaoToolResponseCompactor {
+
+    /**
+     * @param toolResponse the tool response.
+     * @return the compacted response data, or the original response data if it is kept as is.
+     */
+    String compact(ToolResponseMessage.ToolResponse toolResponse);
+
+    /**
+     * Applies the given compactor to the result of this compactor.
+     * @param next the compactor applied next.
+     * @return the composed compactor.
+     */
+    default ZhinaoToolResponseCompactor andThen(ZhinaoToolResponseCompactor next) {
+        Assert.notNull(next, "next cannot be null");
+        return toolResponse -> next.compact(new ToolResponseMessage.ToolResponse(toolResponse.id(), toolResponse.name(),
+                compact(toolResponse)));
+    }
+
+    /**
+     * 截断超过最大长度的工具结果，并注明截断的字符数
+     *
+     * @param maxLength 工具结果的最大长度
+     * @return 截断策略
+     */
+    static ZhinaoToolResponseCompactor truncate(int maxLength) {
+        Assert.isTrue(maxLength > 0, "maxLength must be greater than 0");
+        return toolResponse -> {
+            String data = toolResponse.responseData();
+            if (data == null || data.length() <= maxLength) {
+                return data;
+            }
+            int end = Character.isHighSurrogate(data.charAt(maxLength - 1)) ? maxLength - 1 : maxLength;
+            return data.substring(0, end) + "\n...[truncated " + (data.length() - end) + " characters]";
+        };
+    }
+
+    /**
+     * 只保留 JSON 工具结果中指定 JSON Pointer 的字段，未配置的工具和非 JSON 结果保持不变
+     *
+     * @param pointersByToolName 每个工具需要保留的 JSON Pointer，例如 {@code /data/items}
+     * @return 字段投影策略
+     */
+    static ZhinaoToolResponseCompactor project(Map<String, List<String>> pointersByToolName) {
+        Assert.notNull(pointersByToolName, "pointersByToolName cannot be null");
+        ObjectMapper objectMapper = new ObjectMapper();
+        Map<String, List<JsonPointer>> compiledPointers = pointersByToolName.entrySet().stream()
+                .collect(Collectors.toUnmodifiableMap(Map.Entry::getKey,
+                        entry -> entry.getValue().stream().map(JsonPointer::compile).toList()));
+        return toolResponse -> {
+            List<JsonPointer> pointers = compiledPointers.get(toolResponse.name());
+            String data = toolResponse.responseData();
+            if (pointers == null || pointers.isEmpty() || !StringUtils.hasText(data)) {
+                return data;
+            }
+            JsonNode source;
+            try {
+                source = objectMapper.readTree(data);
+            } catch (JsonProcessingException ex) {
+                return data;
+            }
+            ObjectNode projection = objectMapper.createObjectNode();
+            boolean matched = false;
+            for (JsonPointer pointer : pointers) {
+                JsonNode value = source.at(pointer);
+                if (value.isMissingNode()) {
+                    continue;
+                }
+                ObjectNode parent = projection;
+                JsonPointer segment = pointer;
+                while (!segment.tail().matches()) {
+                    parent = parent.has(segment.getMatchingProperty()) && parent.get(segment.getMatchingProperty()).isObject()
+                            ? (ObjectNode) parent.get(segment.getMatchingProperty())
+                            : parent.putObject(segment.getMatchingProperty());
+                    segment = segment.tail();
+                }
+                if (segment.matches()) {
+                    // 指向根节点时无需投影
+                    return data;
+                }
+                parent.set(segment.getMatchingProperty(), value);
+                matched = true;
+            }
+            return matched ? projection.toString() : data;
+        };
+    }
+
+    /**
+     * 使用（通常更便宜的）模型总结超过给定长度的工具结果，总结失败时保留原始结果
+     *
+     * @param chatModel 用于总结的模型
+     * @param minLength 需要总结的工具结果的最小长度
+     * @return 总结策略
+     */
+    static ZhinaoToolResponseCompactor summarize(ChatModel chatModel, int minLength) {
+        Assert.notNull(chatModel, "chatModel cannot be null");
+        Logger logger = LoggerFactory.getLogger(ZhinaoToolResponseCompactor.class);
+        return toolResponse -> {
+            String data = toolResponse.responseData();
+            if (data == null || data.length() < minLength) {
+                return data;
+            }
+            try {
+                ChatResponse response = chatModel.call(new Prompt(List.of(
+                        new SystemMessage("Summarize the result of the tool '" + toolResponse.name() + "'. Keep every fact, "
+                                + "identifier, number and date that may be needed to answer the user. Reply with the summary only."),
+                        new UserMessage(data))));
+                String summary = response.getResult() != null ? response.getResult().getOutput().getText() : null;
+                return StringUtils.hasText(summary) && summary.length() < data.length() ? summary : data;
+            } catch (RuntimeException ex) {
+                logger.warn("Failed to summarize the result of tool '{}', keeping it as is", toolResponse.name(), ex);
+                return data;
+            }
+        };
+    }
+}
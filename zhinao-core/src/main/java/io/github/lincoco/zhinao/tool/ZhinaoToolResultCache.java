@@ -0,0 +1,343 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.tool;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.github.lincoco.zhinao.jfr.ZhinaoCacheEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Opt-in cache of tool results keyed by tool name and canonical argument JSON, so that
+ * repeated calls with the same arguments, within one conversation or across conversations,
+ * do not run the tool again.
+ * <p>
+ * A tool is cacheable when its {@link ZhinaoToolCacheMetadata} declares a positive TTL, or
+ * when a TTL is configured for its name. All other tools are always executed.
+ * </p>
+ * <p>
+ * Entries are kept in access order. When the cache is full the least recently used entry is
+ * evicted, expired entries are dropped on lookup and a few of the least recently used ones
+ * are swept on every insertion, so no insertion scans the whole cache.
+ * </p>
+ *
+ * @author xueyeshang
+ */
+public class ZhinaoToolResultCache implements MeterBinder {
+
+    public static final int DEFAULT_MAX_SIZE = 10_000;
+
+    // 每次写入最多检查的最久未使用条目数
+    private static final int SWEEP_BATCH = 8;
+
+    private static final ObjectMapper CANONICAL_MAPPER = new ObjectMapper()
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+    private volatile int maxSize;
+    private final Map<String, Duration> toolTtls;
+    private final LinkedHashMap<CacheKey, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, ToolStats> toolStats = new ConcurrentHashMap<>();
+    private final LongAdder evictions = new LongAdder();
+
+    private volatile Meter.MeterProvider<Counter> requestCounters;
+
+    public ZhinaoToolResultCache(int maxSize, Map<String, Duration> toolTtls) {
+        Assert.isTrue(maxSize > 0, "maxSize must be greater than 0");
+        Assert.notNull(toolTtls, "toolTtls cannot be null");
+        this.maxSize = maxSize;
+        this.toolTtls = Map.copyOf(toolTtls);
+    }
+
+    public ZhinaoToolResultCache() {
+        this(DEFAULT_MAX_SIZE, Map.of());
+    }
+
+    /**
+     * Returns the cached result of the tool call, or invokes the tool and caches its result.
+     * @param toolCallback the tool to call.
+     * @param arguments the tool call arguments as sent by the model.
+     * @param invocation the actual tool invocation.
+     * @return the tool result.
+     */
+    public String call(ToolCallback toolCallback, String arguments, Supplier<String> invocation) {
+        Duration ttl = ttl(toolCallback);
+        if (ttl.isZero()) {
+            return invocation.get();
+        }
+        CacheKey key = new CacheKey(toolCallback.getToolDefinition().name(), canonicalize(arguments));
+        String cached = lookup(key);
+        if (cached != null) {
+            return cached;
+        }
+        String result = invocation.get();
+        store(key, result, ttl);
+        return result;
+    }
+
+    /**
+     * Asynchronous variant of {@link #call}, the invocation is only subscribed on a cache miss.
+     * @param toolCallback the tool to call.
+     * @param arguments the tool call arguments as sent by the model.
+     * @param invocation the actual tool invocation.
+     * @return the tool result.
+     */
+    public Mono<String> callAsync(ToolCallback toolCallback, String arguments, Supplier<Mono<String>> invocation) {
+        Duration ttl = ttl(toolCallback);
+        if (ttl.isZero()) {
+            return Mono.defer(invocation);
+        }
+        return Mono.defer(() -> {
+            CacheKey key = new CacheKey(toolCallback.getToolDefinition().name(), canonicalize(arguments));
+            String cached = lookup(key);
+            if (cached != null) {
+                return Mono.just(cached);
+            }
+            return invocation.get().doOnNext(result -> store(key, result, ttl));
+        });
+    }
+
+    /**
+     * @param toolCallback the tool to check.
+     * @return the TTL of the tool results, {@link Duration#ZERO} if the tool is not cacheable.
+     */
+    public Duration ttl(ToolCallback toolCallback) {
+        if (toolCallback.getToolMetadata() instanceof ZhinaoToolCacheMetadata cacheMetadata) {
+            return cacheMetadata.cacheTtl();
+        }
+        return this.toolTtls.getOrDefault(toolCallback.getToolDefinition().name(), Duration.ZERO);
+    }
+
+    public void clear() {
+        synchronized (this.entries) {
+            this.entries.clear();
+        }
+    }
+
+    public int getMaxSize() {
+        return this.maxSize;
+    }
+
+    /**
+     * Changes the maximum number of entries at runtime, surplus entries are evicted by the
+     * next insertion.
+     * @param maxSize the new maximum number of entries.
+     */
+    public void setMaxSize(int maxSize) {
+        Assert.isTrue(maxSize > 0, "maxSize must be greater than 0");
+        this.maxSize = maxSize;
+    }
+
+    public int size() {
+        synchronized (this.entries) {
+            return this.entries.size();
+        }
+    }
+
+    public long evictionCount() {
+        return this.evictions.sum();
+    }
+
+    public long hitCount() {
+        return this.toolStats.values().stream().mapToLong(stats -> stats.hits.sum()).sum();
+    }
+
+    public long missCount() {
+        return this.toolStats.values().stream().mapToLong(stats -> stats.misses.sum()).sum();
+    }
+
+    public double hitRatio() {
+        long hits = hitCount();
+        long total = hits + missCount();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    /**
+     * @return the hit ratio of every tool that has been looked up, keyed by tool name.
+     */
+    public Map<String, Double> hitRatios() {
+        Map<String, Double> hitRatios = new HashMap<>();
+        this.toolStats.forEach((toolName, stats) -> hitRatios.put(toolName, stats.hitRatio()));
+        return hitRatios;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("zhinao.tool.cache.size", this, ZhinaoToolResultCache::size)
+                .description("Number of cached tool results")
+                .register(registry);
+        Gauge.builder("zhinao.tool.cache.hit.ratio", this, ZhinaoToolResultCache::hitRatio)
+                .description("Ratio of tool calls answered from the cache")
+                .register(registry);
+        FunctionCounter.builder("zhinao.tool.cache.evictions", this.evictions, LongAdder::sum)
+                .description("Number of tool results evicted because the cache was full")
+                .register(registry);
+        this.requestCounters = Counter.builder("zhinao.tool.cache.requests")
+                .description("Tool cache lookups")
+                .withRegistry(registry);
+    }
+
+    private String lookup(CacheKey key) {
+        long now = System.nanoTime();
+        CacheEntry entry;
+        synchronized (this.entries) {
+            entry = this.entries.get(key);
+            if (entry != null && entry.isExpired(now)) {
+                this.entries.remove(key);
+                entry = null;
+            }
+        }
+        ToolStats stats = stats(key.toolName());
+        if (entry != null) {
+            stats.hit(this.requestCounters);
+            ZhinaoCacheEvent.record(ZhinaoCacheEvent.TOOL_RESULT, key.toolName(), 1, 0);
+            return entry.result();
+        }
+        stats.miss(this.requestCounters);
+        ZhinaoCacheEvent.record(ZhinaoCacheEvent.TOOL_RESULT, key.toolName(), 0, 1);
+        return null;
+    }
+
+    private void store(CacheKey key, String result, Duration ttl) {
+        if (result == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        synchronized (this.entries) {
+            this.entries.put(key, new CacheEntry(result, now + ttl.toNanos()));
+            sweep(now);
+        }
+    }
+
+    /**
+     * 清理最久未使用端的过期条目，超出上限时再按最久未使用淘汰，过期条目不计为淘汰
+     */
+    private void sweep(long now) {
+        Iterator<CacheEntry> eldest = this.entries.values().iterator();
+        for (int checked = 0; checked < SWEEP_BATCH && eldest.hasNext(); checked++) {
+            if (eldest.next().isExpired(now)) {
+                eldest.remove();
+            }
+        }
+        int maxSize = this.maxSize;
+        if (this.entries.size() <= maxSize) {
+            return;
+        }
+        eldest = this.entries.values().iterator();
+        while (this.entries.size() > maxSize && eldest.hasNext()) {
+            if (!eldest.next().isExpired(now)) {
+                this.evictions.increment();
+            }
+            eldest.remove();
+        }
+    }
+
+    private ToolStats stats(String toolName) {
+        ToolStats stats = this.toolStats.get(toolName);
+        return stats != null ? stats : this.toolStats.computeIfAbsent(toolName, ToolStats::new);
+    }
+
+    /**
+     * 将参数 JSON 规范化（对象的键按字典序排列，去除空白），参数不是合法 JSON 时使用原始字符串
+     */
+    static String canonicalize(String arguments) {
+        if (arguments == null) {
+            return "";
+        }
+        try {
+            return CANONICAL_MAPPER.writeValueAsString(CANONICAL_MAPPER.readValue(arguments, Object.class));
+        } catch (JsonProcessingException ex) {
+            return arguments.trim();
+        }
+    }
+
+    private record CacheKey(String toolName, String arguments) {
+    }
+
+    private record CacheEntry(String result, long expiresAt) {
+
+        boolean isExpired(long now) {
+            return this.expiresAt - now <= 0;
+        }
+    }
+
+    /**
+     * 每个工具的命中统计，计量器在首次使用时解析后复用
+     */
+    private static final class ToolStats {
+
+        private final String toolName;
+
+        private final LongAdder hits = new LongAdder();
+
+        private final LongAdder misses = new LongAdder();
+
+        private Counter hitCounter;
+
+        private Counter missCounter;
+
+        private ToolStats(String toolName) {
+            this.toolName = toolName;
+        }
+
+        private void hit(Meter.MeterProvider<Counter> requestCounters) {
+            this.hits.increment();
+            if (requestCounters != null) {
+                Counter counter = this.hitCounter;
+                if (counter == null) {
+                    counter = requestCounters.withTags("tool", this.toolName, "result", "hit");
+                    this.hitCounter = counter;
+                }
+                counter.increment();
+            }
+        }
+
+        private void miss(Meter.MeterProvider<Counter> requestCounters) {
+            this.misses.increment();
+            if (requestCounters != null) {
+                Counter counter = this.missCounter;
+                if (counter == null) {
+                    counter = requestCounters.withTags("tool", this.toolName, "result", "miss");
+                    this.missCounter = counter;
+                }
+                counter.increment();
+            }
+        }
+
+        private double hitRatio() {
+            long hitCount = this.hits.sum();
+            long total = hitCount + this.misses.sum();
+            return total == 0 ? 0.0 : (double) hitCount / total;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.tool;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.ai.model.ModelOptionsUtils;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.util.Assert;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Minifies the JSON schema of tool parameters before it is sent to the model. Keywords that
+ * do not help the model pick arguments ({@code $schema}, {@code $comment},
+ * {@code additionalProperties: false}, empty {@code required} and {@code description}) are
+ * stripped, single-element {@code type} arrays are collapsed, and property descriptions can be
+ * capped to a maximum length.
+ * <p>
+ * Minification is done once per tool, the savings are recorded every time the tool is sent.
+ * </p>
+ *
+ * @author xueyeshang
+ */
+public class ZhinaoToolSchemaMinifier implements MeterBinder {
+
+    private static final Set<String> REDUNDANT_KEYWORDS = Set.of("$schema", "$comment");
+
+    /**
+     * 值为 name -> schema 映射的关键字，其中的键是属性名而不是关键字
+     */
+    private static final Set<String> SCHEMA_MAP_KEYWORDS = Set.of("properties", "patternProperties", "$defs", "definitions");
+
+    private static final Set<String> SCHEMA_KEYWORDS = Set.of("items", "additionalProperties", "not", "if", "then", "else");
+
+    private static final Set<String> SCHEMA_LIST_KEYWORDS = Set.of("allOf", "anyOf", "oneOf", "prefixItems");
+
+    private final int maxDescriptionLength;
+    private final TokenCountEstimator tokenCountEstimator;
+    private final LongAdder bytesSaved = new LongAdder();
+    private final LongAdder tokensSaved = new LongAdder();
+
+    /**
+     * @param maxDescriptionLength maximum length of property descriptions, 0 to keep them intact.
+     * @param tokenCountEstimator the estimator used to report the saved tokens.
+     */
+    public ZhinaoToolSchemaMinifier(int maxDescriptionLength, TokenCountEstimator tokenCountEstimator) {
+        Assert.isTrue(maxDescriptionLength >= 0, "maxDescriptionLength cannot be negative");
+        Assert.notNull(tokenCountEstimator, "tokenCountEstimator cannot be null");
+        this.maxDescriptionLength = maxDescriptionLength;
+        this.tokenCountEstimator = tokenCountEstimator;
+    }
+
+    public ZhinaoToolSchemaMinifier(int maxDescriptionLength) {
+        this(maxDescriptionLength, new JTokkitTokenCountEstimator());
+    }
+
+    public ZhinaoToolSchemaMinifier() {
+        this(0);
+    }
+
+    /**
+     * Minifies the given parameters schema.
+     * @param schema the parameters schema.
+     * @return the minified schema and the bytes and tokens it saves.
+     */
+    public MinifiedSchema minify(Map<String, Object> schema) {
+        Assert.notNull(schema, "schema cannot be null");
+        Map<String, Object> minified = minifySchema(schema);
+        String original = ModelOptionsUtils.toJsonString(schema);
+        String result = ModelOptionsUtils.toJsonString(minified);
+        int bytes = original.getBytes(StandardCharsets.UTF_8).length - result.getBytes(StandardCharsets.UTF_8).length;
+        int tokens = this.tokenCountEstimator.estimate(original) - this.tokenCountEstimator.estimate(result);
+        return new MinifiedSchema(minified, Math.max(bytes, 0), Math.max(tokens, 0));
+    }
+
+    /**
+     * Records that a minified schema was sent with a request.
+     * @param minifiedSchema the schema that was sent.
+     */
+    public void recordSent(MinifiedSchema minifiedSchema) {
+        this.bytesSaved.add(minifiedSchema.bytesSaved());
+        this.tokensSaved.add(minifiedSchema.tokensSaved());
+    }
+
+    public long bytesSaved() {
+        return this.bytesSaved.sum();
+    }
+
+    public long tokensSaved() {
+        return this.tokensSaved.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("zhinao.tool.schema.saved.bytes", this.bytesSaved, LongAdder::sum)
+                .description("Bytes removed from tool schemas sent to the model")
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder("zhinao.tool.schema.saved.tokens", this.tokensSaved, LongAdder::sum)
+                .description("Estimated prompt tokens removed from tool schemas sent to the model")
+                .baseUnit("tokens")
+                .register(registry);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> minifySchema(Map<String, Object> schema) {
+        Map<String, Object> minified = new LinkedHashMap<>(schema.size());
+        schema.forEach((keyword, value) -> {
+            if (REDUNDANT_KEYWORDS.contains(keyword)) {
+                return;
+            }
+            if ("additionalProperties".equals(keyword) && Boolean.FALSE.equals(value)) {
+                return;
+            }
+            if ("required".equals(keyword) && value instanceof List<?> required && required.isEmpty()) {
+                return;
+            }
+            if ("type".equals(keyword) && value instanceof List<?> types && types.size() == 1) {
+                minified.put(keyword, types.get(0));
+                return;
+            }
+            if ("description".equals(keyword) && value instanceof String description) {
+                if (!description.isBlank()) {
+                    minified.put(keyword, capDescription(description.strip()));
+                }
+                return;
+            }
+            if (SCHEMA_MAP_KEYWORDS.contains(keyword) && value instanceof Map<?, ?> schemas) {
+                Map<String, Object> minifiedSchemas = new LinkedHashMap<>(schemas.size());
+                ((Map<String, Object>) schemas).forEach((name, subSchema) -> minifiedSchemas.put(name, minifyValue(subSchema)));
+                minified.put(keyword, minifiedSchemas);
+                return;
+            }
+            if (SCHEMA_KEYWORDS.contains(keyword) || SCHEMA_LIST_KEYWORDS.contains(keyword)) {
+                minified.put(keyword, minifyValue(value));
+                return;
+            }
+            // enum、const、default 等关键字的值是数据，保持原样
+            minified.put(keyword, value);
+        });
+        return minified;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object minifyValue(Object value) {
+        if (value instanceof Map<?, ?> subSchema) {
+            return minifySchema((Map<String, Object>) subSchema);
+        }
+        if (value instanceof List<?> subSchemas) {
+            List<Object> minified = new ArrayList<>(subSchemas.size());
+            subSchemas.forEach(subSchema -> minified.add(minifyValue(subSchema)));
+            return minified;
+        }
+        return value;
+    }
+
+    private String capDescription(String description) {
+        if (this.maxDescriptionLength == 0 || description.length() <= this.maxDescriptionLength) {
+            return description;
+        }
+        int end = this.maxDescriptionLength;
+        if (Character.isHighSurrogate(description.charAt(end - 1))) {
+            end--;
+        }
+        return description.substring(0, end) + "…";
+    }
+
+    /**
+     * @param parameters the minified parameters schema.
+     * @param bytesSaved the number of UTF-8 bytes removed.
+     * @param tokensSaved the estimated number of tokens removed.
+     */
+    public record MinifiedSchema(Map<String, Object> parameters, int bytesSaved, int tokensSaved) {
+    }
+}
@@ -0,0 +1,38 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.tool;
+
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tool.definition.ToolDefinition;
+
+import java.util.List;
+
+/**
+ * Selects the tool definitions sent with a request, so that prompts do not carry the
+ * definitions of tools irrelevant to the conversation.
+ *
+ * @author xueyeshang
+ */
+@FunctionalInterface
+public interface ZhinaoToolSelector {
+
+    /**
+     * @param prompt the prompt the request is created for.
+     * @param toolDefinitions all tool definitions available for the prompt.
+     * @return the tool definitions to send, in their original order.
+     */
+    List<ToolDefinition> select(Prompt prompt, List<ToolDefinition> toolDefinitions);
+}
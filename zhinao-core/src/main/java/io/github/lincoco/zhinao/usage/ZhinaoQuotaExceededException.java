@@ -0,0 +1,52 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.usage;
+
+import org.springframework.ai.retry.NonTransientAiException;
+
+/**
+ * Thrown before a request is sent when its user or tenant has used up the token quota of the
+ * current period. Retrying does not help until the next period starts.
+ *
+ * @author xueyeshang
+ */
+public class ZhinaoQuotaExceededException extends NonTransientAiException {
+
+    private final String key;
+
+    private final long used;
+
+    private final long quota;
+
+    public ZhinaoQuotaExceededException(String key, long used, long quota) {
+        super("Token quota of '" + key + "' exceeded: " + used + " of " + quota + " tokens used in the current period");
+        this.key = key;
+        this.used = used;
+        this.quota = quota;
+    }
+
+    public String getKey() {
+        return this.key;
+    }
+
+    public long getUsed() {
+        return this.used;
+    }
+
+    public long getQuota() {
+        return this.quota;
+    }
+}
@@ -0,0 +1,507 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.usage;
+
+import io.github.lincoco.zhinao.api.ZhinaoApi;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import java.io.Closeable;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Per-user or per-tenant token accounting and quota enforcement.
+ * <p>
+ * Requests are attributed to an account key, by default the {@code user} option sent
+ * upstream. Before a request is sent, {@link #reserve(ZhinaoApi.ChatCompletionRequest, int)}
+ * rejects it with a {@link ZhinaoQuotaExceededException} when the account has used up its quota
+ * of the current period, and otherwise reserves the estimated prompt tokens so concurrent
+ * requests see each other. {@link #record(Reservation, ZhinaoApi.Usage)} corrects the
+ * reservation with the real usage. Every tool round is a request of its own, so a whole tool
+ * loop is accounted to the same key.
+ * </p>
+ * <p>
+ * All counters are striped {@link LongAdder}s in a {@link ConcurrentHashMap}, so neither the
+ * request path nor the periodic {@link ZhinaoUsageExporter} takes a lock. Quotas are soft: a
+ * burst of concurrent requests may overshoot by the tokens they had in flight.
+ * </p>
+ * <p>
+ * Account keys come from the caller, so the number of accounts is bounded by
+ * {@code maxAccounts}: once it is exceeded, accounts without requests in the current period
+ * are evicted together with their totals, at most once per period. Only more distinct keys
+ * within a single period than {@code maxAccounts} grow the accounts beyond it.
+ * </p>
+ *
+ * @author xueyeshang
+ */
+public class ZhinaoUsageAccountant implements MeterBinder, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ZhinaoUsageAccountant.class);
+
+    public static final String ANONYMOUS = "anonymous";
+
+    public static final Duration DEFAULT_QUOTA_PERIOD = Duration.ofDays(1);
+
+    public static final Duration DEFAULT_EXPORT_INTERVAL = Duration.ofMinutes(1);
+
+    public static final int DEFAULT_MAX_ACCOUNTS = 10_000;
+
+    private final ConcurrentHashMap<String, Account> accounts = new ConcurrentHashMap<>();
+
+    private final LongAdder rejections = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * 最近一次清理空闲账户的周期，每个周期最多清理一次
+     */
+    private final AtomicLong evictionPeriod = new AtomicLong(-1);
+
+    private final int maxAccounts;
+
+    private final Function<ZhinaoApi.ChatCompletionRequest, String> keyResolver;
+
+    private volatile Map<String, Long> quotas;
+
+    private volatile long defaultQuota;
+
+    private final long quotaPeriodMillis;
+
+    private final Clock clock;
+
+    private final ZhinaoUsageExporter exporter;
+
+    private final ScheduledExecutorService scheduler;
+
+    private ZhinaoUsageAccountant(Builder builder) {
+        this.keyResolver = builder.keyResolver;
+        this.quotas = Map.copyOf(builder.quotas);
+        this.defaultQuota = builder.defaultQuota;
+        this.quotaPeriodMillis = builder.quotaPeriod.toMillis();
+        this.maxAccounts = builder.maxAccounts;
+        this.clock = builder.clock;
+        this.exporter = builder.exporter;
+        if (this.exporter == null || builder.exportInterval.isZero()) {
+            this.scheduler = null;
+        } else {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "zhinao-usage-export");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = builder.exportInterval.toMillis();
+            this.scheduler.scheduleWithFixedDelay(this::exportQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 校验账户在当前周期的配额，并预留预估的 prompt token
+     *
+     * @param request the request about to be sent.
+     * @param estimatedPromptTokens the estimated prompt tokens of the request, 0 if unknown.
+     * @return the reservation to pass to {@link #record(Reservation, ZhinaoApi.Usage)}.
+     * @throws ZhinaoQuotaExceededException when the account has no quota left.
+     */
+    public Reservation reserve(ZhinaoApi.ChatCompletionRequest request, int estimatedPromptTokens) {
+        Assert.notNull(request, "request cannot be null");
+        String key = key(request);
+        long period = currentPeriod();
+        Account account = this.accounts.get(key);
+        if (account == null) {
+            account = this.accounts.computeIfAbsent(key, k -> new Account(period));
+            if (this.accounts.size() > this.maxAccounts) {
+                evictIdle(period);
+            }
+        }
+        long quota = quota(key);
+        if (quota > 0) {
+            long used = account.periodTokens(period);
+            if (used + estimatedPromptTokens > quota) {
+                account.rejected.increment();
+                this.rejections.increment();
+                throw new ZhinaoQuotaExceededException(key, used, quota);
+            }
+        }
+        account.addPeriodTokens(period, estimatedPromptTokens);
+        return new Reservation(key, account, period, estimatedPromptTokens);
+    }
+
+    /**
+     * Adds the real usage to the account and corrects the reservation. Without usage, for
+     * example when the request failed, the reservation is released.
+     * @param reservation the reservation of the request, may be null.
+     * @param usage the usage reported for the request, may be null.
+     */
+    public void record(Reservation reservation, ZhinaoApi.Usage usage) {
+        if (reservation == null) {
+            return;
+        }
+        Account account = reservation.account();
+        if (usage == null) {
+            account.addPeriodTokens(reservation.period(), -reservation.reservedTokens());
+            return;
+        }
+        int promptTokens = usage.promptTokens() != null ? usage.promptTokens() : 0;
+        int completionTokens = usage.completionTokens() != null ? usage.completionTokens() : 0;
+        int totalTokens = usage.totalTokens() != null ? usage.totalTokens() : promptTokens + completionTokens;
+        account.requests.increment();
+        account.promptTokens.add(promptTokens);
+        account.completionTokens.add(completionTokens);
+        account.addPeriodTokens(reservation.period(), totalTokens - reservation.reservedTokens());
+    }
+
+    /**
+     * @param key the account key.
+     * @return the totals of the account, null if it never sent a request.
+     */
+    public Snapshot snapshot(String key) {
+        Account account = this.accounts.get(key);
+        return account != null ? account.snapshot(key, currentPeriod(), quota(key)) : null;
+    }
+
+    /**
+     * @return the totals of every account.
+     */
+    public List<Snapshot> snapshots() {
+        long period = currentPeriod();
+        List<Snapshot> snapshots = new ArrayList<>(this.accounts.size());
+        this.accounts.forEach((key, account) -> snapshots.add(account.snapshot(key, period, quota(key))));
+        return snapshots;
+    }
+
+    /**
+     * @return the number of accounts that sent a request, without taking their snapshots.
+     */
+    public int accountCount() {
+        return this.accounts.size();
+    }
+
+    public long quota(String key) {
+        return this.quotas.getOrDefault(key, this.defaultQuota);
+    }
+
+    public long getDefaultQuota() {
+        return this.defaultQuota;
+    }
+
+    /**
+     * Changes the quota of accounts without their own quota at runtime.
+     * @param defaultQuota the tokens per period, 0 for unlimited.
+     */
+    public void setDefaultQuota(long defaultQuota) {
+        Assert.isTrue(defaultQuota >= 0, "defaultQuota must not be negative");
+        this.defaultQuota = defaultQuota;
+    }
+
+    public Map<String, Long> getQuotas() {
+        return this.quotas;
+    }
+
+    /**
+     * Replaces the quotas by account key at runtime.
+     * @param quotas the tokens per period by account key, 0 for unlimited.
+     */
+    public void setQuotas(Map<String, Long> quotas) {
+        Assert.notNull(quotas, "quotas cannot be null");
+        Assert.isTrue(quotas.values().stream().allMatch(quota -> quota != null && quota >= 0), "quotas must not be negative");
+        this.quotas = Map.copyOf(quotas);
+    }
+
+    public long getRejections() {
+        return this.rejections.sum();
+    }
+
+    public long getEvictions() {
+        return this.evictions.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("zhinao.usage.accounts", this.accounts, Map::size)
+                .description("Users or tenants with accounted token usage")
+                .register(registry);
+        FunctionCounter.builder("zhinao.usage.quota.rejections", this.rejections, LongAdder::sum)
+                .description("Requests rejected because their token quota was used up")
+                .register(registry);
+        FunctionCounter.builder("zhinao.usage.accounts.evicted", this.evictions, LongAdder::sum)
+                .description("Idle accounts evicted to bound the number of accounts")
+                .register(registry);
+    }
+
+    /**
+     * Stops the periodic export after exporting the final totals.
+     */
+    @Override
+    public void close() {
+        if (this.scheduler != null) {
+            this.scheduler.shutdownNow();
+            exportQuietly();
+        }
+    }
+
+    private void exportQuietly() {
+        try {
+            this.exporter.export(snapshots());
+        } catch (RuntimeException ex) {
+            logger.warn("Failed to export Zhinao token usage", ex);
+        }
+    }
+
+    /**
+     * 账户数超过上限时清理本周期没有请求的账户，同一周期内只扫描一次
+     */
+    private void evictIdle(long period) {
+        long last = this.evictionPeriod.get();
+        if (last >= period || !this.evictionPeriod.compareAndSet(last, period)) {
+            return;
+        }
+        int before = this.accounts.size();
+        this.accounts.values().removeIf(account -> account.period() < period);
+        int evicted = before - this.accounts.size();
+        if (evicted > 0) {
+            this.evictions.add(evicted);
+            logger.debug("Evicted {} idle Zhinao usage accounts", evicted);
+        }
+    }
+
+    private String key(ZhinaoApi.ChatCompletionRequest request) {
+        String key = this.keyResolver.apply(request);
+        return StringUtils.hasText(key) ? key : ANONYMOUS;
+    }
+
+    private long currentPeriod() {
+        return this.clock.millis() / this.quotaPeriodMillis;
+    }
+
+    /**
+     * Resolves the account of a request to the tenant, the part of the {@code user} option
+     * before the first delimiter, for example {@code acme} for {@code acme:alice}.
+     * @param delimiter the delimiter between tenant and user.
+     * @return the key resolver.
+     */
+    public static Function<ZhinaoApi.ChatCompletionRequest, String> tenantKey(String delimiter) {
+        Assert.hasLength(delimiter, "delimiter cannot be null or empty");
+        return request -> {
+            String user = request.user();
+            if (user == null) {
+                return null;
+            }
+            int index = user.indexOf(delimiter);
+            return index >= 0 ? user.substring(0, index) : user;
+        };
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @param key the account key of the request.
+     * @param account the account.
+     * @param period the quota period the tokens were reserved in.
+     * @param reservedTokens the reserved prompt tokens.
+     */
+    public record Reservation(String key, Account account, long period, int reservedTokens) {
+    }
+
+    /**
+     * @param key the account key.
+     * @param requests the requests that reported usage.
+     * @param promptTokens the prompt tokens of all requests.
+     * @param completionTokens the completion tokens of all requests.
+     * @param rejected the requests rejected by the quota.
+     * @param periodTokens the tokens used or reserved in the current quota period.
+     * @param quota the quota per period, 0 if unlimited.
+     */
+    public record Snapshot(String key, long requests, long promptTokens, long completionTokens, long rejected,
+                           long periodTokens, long quota) {
+
+        public long totalTokens() {
+            return this.promptTokens + this.completionTokens;
+        }
+    }
+
+    /**
+     * 单个用户或租户的累计用量，周期切换时由首个观察到的线程换上新周期的计数器
+     */
+    public static final class Account {
+
+        private final LongAdder requests = new LongAdder();
+
+        private final LongAdder promptTokens = new LongAdder();
+
+        private final LongAdder completionTokens = new LongAdder();
+
+        private final LongAdder rejected = new LongAdder();
+
+        private final AtomicReference<PeriodUsage> periodUsage;
+
+        private Account(long period) {
+            this.periodUsage = new AtomicReference<>(new PeriodUsage(period, new LongAdder()));
+        }
+
+        private long period() {
+            return this.periodUsage.get().period();
+        }
+
+        private long periodTokens(long currentPeriod) {
+            return roll(currentPeriod).tokens().sum();
+        }
+
+        private void addPeriodTokens(long reservedPeriod, long tokens) {
+            // 预留之后周期已切换的修正不计入新周期；与切换并发的写入落在旧周期的计数器上，不会丢到新周期
+            PeriodUsage usage = roll(reservedPeriod);
+            if (usage.period() == reservedPeriod) {
+                usage.tokens().add(tokens);
+            }
+        }
+
+        private PeriodUsage roll(long currentPeriod) {
+            PeriodUsage usage = this.periodUsage.get();
+            while (usage.period() < currentPeriod) {
+                PeriodUsage next = new PeriodUsage(currentPeriod, new LongAdder());
+                if (this.periodUsage.compareAndSet(usage, next)) {
+                    return next;
+                }
+                usage = this.periodUsage.get();
+            }
+            return usage;
+        }
+
+        private Snapshot snapshot(String key, long currentPeriod, long quota) {
+            return new Snapshot(key, this.requests.sum(), this.promptTokens.sum(), this.completionTokens.sum(),
+                    this.rejected.sum(), periodTokens(currentPeriod), quota);
+        }
+    }
+
+    private record PeriodUsage(long period, LongAdder tokens) {
+    }
+
+    public static class Builder {
+
+        private Function<ZhinaoApi.ChatCompletionRequest, String> keyResolver = ZhinaoApi.ChatCompletionRequest::user;
+
+        private Map<String, Long> quotas = new HashMap<>();
+
+        private long defaultQuota = 0;
+
+        private Duration quotaPeriod = DEFAULT_QUOTA_PERIOD;
+
+        private Clock clock = Clock.systemUTC();
+
+        private ZhinaoUsageExporter exporter;
+
+        private Duration exportInterval = DEFAULT_EXPORT_INTERVAL;
+
+        private int maxAccounts = DEFAULT_MAX_ACCOUNTS;
+
+        /**
+         * @param keyResolver resolves the account key of a request, by default its {@code user}.
+         * @return this builder.
+         */
+        public Builder keyResolver(Function<ZhinaoApi.ChatCompletionRequest, String> keyResolver) {
+            Assert.notNull(keyResolver, "keyResolver cannot be null");
+            this.keyResolver = keyResolver;
+            return this;
+        }
+
+        public Builder quotas(Map<String, Long> quotas) {
+            Assert.notNull(quotas, "quotas cannot be null");
+            this.quotas = new HashMap<>(quotas);
+            return this;
+        }
+
+        public Builder quota(String key, long quota) {
+            Assert.hasText(key, "key cannot be null or empty");
+            this.quotas.put(key, quota);
+            return this;
+        }
+
+        /**
+         * @param defaultQuota the tokens per period of accounts without their own quota, 0 for unlimited.
+         * @return this builder.
+         */
+        public Builder defaultQuota(long defaultQuota) {
+            this.defaultQuota = defaultQuota;
+            return this;
+        }
+
+        public Builder quotaPeriod(Duration quotaPeriod) {
+            this.quotaPeriod = quotaPeriod;
+            return this;
+        }
+
+        public Builder clock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public Builder exporter(ZhinaoUsageExporter exporter) {
+            this.exporter = exporter;
+            return this;
+        }
+
+        /**
+         * @param exportInterval how often the exporter receives the totals, ZERO to disable.
+         * @return this builder.
+         */
+        public Builder exportInterval(Duration exportInterval) {
+            this.exportInterval = exportInterval;
+            return this;
+        }
+
+        /**
+         * @param maxAccounts the number of accounts above which idle accounts are evicted.
+         * @return this builder.
+         */
+        public Builder maxAccounts(int maxAccounts) {
+            this.maxAccounts = maxAccounts;
+            return this;
+        }
+
+        public ZhinaoUsageAccountant build() {
+            Assert.isTrue(this.defaultQuota >= 0, "defaultQuota must not be negative");
+            Assert.isTrue(this.quotas.values().stream().allMatch(quota -> quota != null && quota >= 0),
+                    "quotas must not be negative");
+            Assert.notNull(this.quotaPeriod, "quotaPeriod cannot be null");
+            Assert.isTrue(this.quotaPeriod.toMillis() > 0, "quotaPeriod must be positive");
+            Assert.notNull(this.clock, "clock cannot be null");
+            Assert.notNull(this.exportInterval, "exportInterval cannot be null");
+            Assert.isTrue(!this.exportInterval.isNegative(), "exportInterval must not be negative");
+            Assert.isTrue(this.maxAccounts > 0, "maxAccounts must be greater than 0");
+            return new ZhinaoUsageAccountant(this);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.usage;
+
+import java.util.List;
+
+/**
+ * Receives the usage totals of every account, periodically from the background thread of the
+ * {@link ZhinaoUsageAccountant}, for example to write them to a billing store.
+ *
+ * @author xueyeshang
+ */
+@FunctionalInterface
+public interface ZhinaoUsageExporter {
+
+    /**
+     * @param snapshots the totals of every account, taken without locking.
+     */
+    void export(List<ZhinaoUsageAccountant.Snapshot> snapshots);
+}
@@ -17,7 +17,16 @@ package io.github.lincoco.zhinao;
 
 import io.github.lincoco.zhinao.api.ZhinaoApi;
 import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.ModelOptionsUtils;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -50,4 +59,82 @@ public class ZhinaoChatCompletionRequestTest {
         assertThat(request.model()).isEqualTo("PROMPT_MODEL");
         assertThat(request.temperature()).isEqualTo(99.9D);
     }
+
+    @Test
+    public void createRequestReusesConvertedToolDefinitions() {
+
+        ToolDefinition toolDefinition = ToolDefinition.builder()
+                .name("getWeather")
+                .description("Get the weather of a city")
+                .inputSchema("{\"type\":\"object\",\"properties\":{\"city\":{\"type\":\"string\"}}}")
+                .build();
+        ToolCallback toolCallback = new ToolCallback() {
+            @Override
+            public ToolDefinition getToolDefinition() {
+                return toolDefinition;
+            }
+
+            @Override
+            public String call(String toolInput) {
+                return "sunny";
+            }
+        };
+        var client = ZhinaoChatModel.builder()
+                .zhinaoApi(ZhinaoApi.builder().apiKey("TEST").build())
+                .defaultOptions(ZhinaoChatOptions.builder().model("DEFAULT_MODEL").toolCallbacks(toolCallback).build())
+                .build();
+
+        var first = client.createRequest(client.buildRequestPrompt(new Prompt("Test message content")), false);
+        var second = client.createRequest(client.buildRequestPrompt(new Prompt("Another message")), true);
+
+        assertThat(first.model()).isEqualTo("DEFAULT_MODEL");
+        assertThat(first.tools()).hasSize(1);
+        assertThat(first.tools().get(0).function().name()).isEqualTo("getWeather");
+        assertThat(first.tools().get(0).function().parameters()).containsEntry("type", "object");
+        assertThat(second.tools().get(0)).isSameAs(first.tools().get(0));
+        assertThat(second.stream()).isTrue();
+    }
+
+    @Test
+    public void createRequestMatchesMergedOptions() {
+
+        var client = ZhinaoChatModel.builder()
+                .zhinaoApi(ZhinaoApi.builder().apiKey("TEST").build())
+                .build();
+        ZhinaoChatOptions options = ZhinaoChatOptions.builder()
+                .model("PROMPT_MODEL")
+                .temperature(0.3)
+                .maxTokens(256)
+                .topP(0.9)
+                .topK(40)
+                .repetitionPenalty(1.1)
+                .numBeams(2)
+                .toolChoice("auto")
+                .user("user-1")
+                .build();
+        List<Message> messages = List.of(new SystemMessage("system"), new UserMessage("question"),
+                new AssistantMessage("answer"), new UserMessage("follow-up"));
+
+        var request = client.createRequest(new Prompt(messages, options), true);
+
+        var merged = ModelOptionsUtils.merge(options, new ZhinaoApi.ChatCompletionRequest(request.messages(), true),
+                ZhinaoApi.ChatCompletionRequest.class);
+        assertThat(request).isEqualTo(merged);
+        assertThat(request.messages()).extracting(ZhinaoApi.ChatCompletionMessage::content)
+                .containsExactly("system", "question", "answer", "follow-up");
+    }
+
+    @Test
+    public void createRequestFallsBackToDefaultModel() {
+
+        var client = ZhinaoChatModel.builder()
+                .zhinaoApi(ZhinaoApi.builder().apiKey("TEST").build())
+                .build();
+
+        var request = client.createRequest(new Prompt("Test message content", ZhinaoChatOptions.builder().build()), false);
+
+        assertThat(request.model()).isEqualTo(ZhinaoApi.DEFAULT_CHAT_MODEL);
+        assertThat(request.temperature()).isNull();
+        assertThat(request.tools()).isNull();
+    }
 }
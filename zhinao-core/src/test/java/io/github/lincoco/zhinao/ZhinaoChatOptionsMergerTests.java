@@ -0,0 +1,92 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.model.ModelOptionsUtils;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ZhinaoChatOptionsMergerTests {
+
+    private final ZhinaoChatOptionsMerger merger = new ZhinaoChatOptionsMerger();
+
+    private final ZhinaoChatOptions defaultOptions = ZhinaoChatOptions.builder()
+            .model("DEFAULT_MODEL")
+            .temperature(0.7)
+            .numBeams(2)
+            .user("default-user")
+            .toolNames("defaultTool")
+            .toolContext(Map.of("tenant", "default"))
+            .build();
+
+    @Test
+    public void mergesLikeModelOptionsUtils() {
+        ZhinaoChatOptions runtimeOptions = ZhinaoChatOptions.builder()
+                .model("RUNTIME_MODEL")
+                .maxTokens(100)
+                .toolChoice("auto")
+                .toolNames("runtimeTool")
+                .toolContext(Map.of("user", "alice"))
+                .internalToolExecutionEnabled(false)
+                .build();
+
+        ZhinaoChatOptions merged = this.merger.merge(runtimeOptions, this.defaultOptions);
+
+        ZhinaoChatOptions expected = ModelOptionsUtils.merge(runtimeOptions, this.defaultOptions, ZhinaoChatOptions.class);
+        assertThat(ModelOptionsUtils.toJsonString(merged)).isEqualTo(ModelOptionsUtils.toJsonString(expected));
+        assertThat(merged.getToolNames()).containsExactlyInAnyOrder("runtimeTool");
+        assertThat(merged.getToolContext()).containsEntry("tenant", "default").containsEntry("user", "alice");
+        assertThat(merged.getInternalToolExecutionEnabled()).isFalse();
+    }
+
+    @Test
+    public void convertsGenericOptions() {
+        ChatOptions chatOptions = ToolCallingChatOptions.builder()
+                .model("GENERIC_MODEL")
+                .frequencyPenalty(1.1)
+                .toolNames(Set.of("genericTool"))
+                .build();
+
+        ZhinaoChatOptions merged = this.merger.merge(chatOptions, this.defaultOptions);
+
+        assertThat(merged.getModel()).isEqualTo("GENERIC_MODEL");
+        assertThat(merged.getRepetitionPenalty()).isEqualTo(1.1);
+        assertThat(merged.getTemperature()).isEqualTo(0.7);
+        assertThat(merged.getNumBeams()).isEqualTo(2);
+        assertThat(merged.getToolNames()).containsExactly("genericTool");
+
+        assertThat(this.merger.merge(null, this.defaultOptions).getToolNames()).containsExactly("defaultTool");
+    }
+
+    @Test
+    public void reflectsChangesOfReusedOptions() {
+        ZhinaoChatOptions runtimeOptions = ZhinaoChatOptions.builder().temperature(0.1).build();
+
+        assertThat(this.merger.merge(runtimeOptions, this.defaultOptions).getTemperature()).isEqualTo(0.1);
+
+        runtimeOptions.setTemperature(0.2);
+        assertThat(this.merger.merge(runtimeOptions, this.defaultOptions).getTemperature()).isEqualTo(0.2);
+
+        this.defaultOptions.setModel("CHANGED_MODEL");
+        assertThat(this.merger.merge(runtimeOptions, this.defaultOptions).getModel()).isEqualTo("CHANGED_MODEL");
+    }
+}
@@ -0,0 +1,134 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ZhinaoMessageEncodingCacheTests {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ZhinaoMessageEncodingCache cache = new ZhinaoMessageEncodingCache(this.objectMapper);
+
+    @Test
+    public void encodesLikeTheObjectMapper() throws Exception {
+        ZhinaoApi.FunctionTool tool = new ZhinaoApi.FunctionTool(new ZhinaoApi.FunctionTool.Function("weather",
+                "getWeather", Map.of("type", "object")));
+        ZhinaoApi.ChatCompletionRequest request = new ZhinaoApi.ChatCompletionRequest("360gpt-pro", List.of(
+                new ZhinaoApi.ChatCompletionMessage("你好，\"世界\"", ZhinaoApi.ChatCompletionMessage.Role.USER),
+                new ZhinaoApi.ChatCompletionMessage(ZhinaoApi.ChatCompletionMessage.Role.TOOL, "{\"weather\":\"晴\"}",
+                        "getWeather", "call_1", null)),
+                true, 0.7, 512, null, null, null, null, List.of(tool), "auto", "user-1");
+
+        byte[] body = this.cache.encode(request);
+
+        assertThat(this.objectMapper.readTree(body)).isEqualTo(this.objectMapper.readTree(this.objectMapper.writeValueAsBytes(request)));
+    }
+
+    @Test
+    public void onlyNewMessagesAreSerialized() throws Exception {
+        ZhinaoApi.ChatCompletionMessage first = new ZhinaoApi.ChatCompletionMessage("first", ZhinaoApi.ChatCompletionMessage.Role.USER);
+        ZhinaoApi.ChatCompletionMessage answer = new ZhinaoApi.ChatCompletionMessage("answer", ZhinaoApi.ChatCompletionMessage.Role.ASSISTANT);
+        ZhinaoApi.ChatCompletionMessage second = new ZhinaoApi.ChatCompletionMessage("second", ZhinaoApi.ChatCompletionMessage.Role.USER);
+
+        this.cache.encode(new ZhinaoApi.ChatCompletionRequest(List.of(first), false));
+        byte[] body = this.cache.encode(new ZhinaoApi.ChatCompletionRequest(List.of(first, answer, second), false));
+
+        assertThat(this.cache.missCount()).isEqualTo(3);
+        assertThat(this.cache.hitCount()).isEqualTo(1);
+        assertThat(this.cache.size()).isEqualTo(3);
+        assertThat(this.objectMapper.readTree(body).get("messages")).extracting(node -> node.get("content").asText())
+                .containsExactly("first", "answer", "second");
+    }
+
+    @Test
+    public void messagesAreKeyedByIdentity() {
+        this.cache.encode(new ZhinaoApi.ChatCompletionRequest(List.of(
+                new ZhinaoApi.ChatCompletionMessage("first", ZhinaoApi.ChatCompletionMessage.Role.USER)), false));
+        this.cache.encode(new ZhinaoApi.ChatCompletionRequest(List.of(
+                new ZhinaoApi.ChatCompletionMessage("first", ZhinaoApi.ChatCompletionMessage.Role.USER)), false));
+
+        assertThat(this.cache.hitCount()).isZero();
+        assertThat(this.cache.missCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void convertsEachMessageOnce() {
+        UserMessage message = new UserMessage("question");
+        AtomicInteger conversions = new AtomicInteger();
+        Function<Message, List<ZhinaoApi.ChatCompletionMessage>> converter = source -> {
+            conversions.incrementAndGet();
+            return List.of(new ZhinaoApi.ChatCompletionMessage(source.getText(), ZhinaoApi.ChatCompletionMessage.Role.USER));
+        };
+
+        List<ZhinaoApi.ChatCompletionMessage> converted = this.cache.convert(message, converter);
+
+        assertThat(this.cache.convert(message, converter)).isSameAs(converted);
+        assertThat(this.cache.convert(new UserMessage("question"), converter)).isNotSameAs(converted);
+        assertThat(conversions).hasValue(2);
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedMessage() {
+        ZhinaoMessageEncodingCache cache = new ZhinaoMessageEncodingCache(this.objectMapper, 2);
+        ZhinaoApi.ChatCompletionMessage first = new ZhinaoApi.ChatCompletionMessage("first", ZhinaoApi.ChatCompletionMessage.Role.USER);
+        ZhinaoApi.ChatCompletionMessage second = new ZhinaoApi.ChatCompletionMessage("second", ZhinaoApi.ChatCompletionMessage.Role.USER);
+        ZhinaoApi.ChatCompletionMessage third = new ZhinaoApi.ChatCompletionMessage("third", ZhinaoApi.ChatCompletionMessage.Role.USER);
+
+        cache.encode(new ZhinaoApi.ChatCompletionRequest(List.of(first, second), false));
+        cache.encode(new ZhinaoApi.ChatCompletionRequest(List.of(first, third), false));
+        cache.encode(new ZhinaoApi.ChatCompletionRequest(List.of(first, second), false));
+
+        // second 最久未使用，在写入 third 时被淘汰
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.hitCount()).isEqualTo(2);
+        assertThat(cache.missCount()).isEqualTo(4);
+    }
+
+    @Test
+    public void segmentedCacheStaysWithinMaxSize() {
+        ZhinaoMessageEncodingCache cache = new ZhinaoMessageEncodingCache(this.objectMapper, 4096);
+        List<ZhinaoApi.ChatCompletionMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 6000; i++) {
+            messages.add(new ZhinaoApi.ChatCompletionMessage("message " + i, ZhinaoApi.ChatCompletionMessage.Role.USER));
+        }
+
+        cache.encode(new ZhinaoApi.ChatCompletionRequest(messages, false));
+
+        // 分段后每段各自淘汰，总数不超过上限
+        assertThat(cache.size()).isLessThanOrEqualTo(4096).isGreaterThan(3500);
+        assertThat(cache.missCount()).isEqualTo(6000);
+    }
+
+    @Test
+    public void encodesRequestWithMessagesOnly() throws Exception {
+        ZhinaoApi.ChatCompletionRequest request = new ZhinaoApi.ChatCompletionRequest(null, List.of(), null,
+                null, null, null, null, null, null, null, null, null);
+
+        assertThat(new String(this.cache.encode(request))).isEqualTo("{\"messages\":[]}");
+    }
+}
@@ -0,0 +1,44 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.api;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ZhinaoStreamFunctionCallingHelperTests {
+
+    private final ZhinaoStreamFunctionCallingHelper helper = new ZhinaoStreamFunctionCallingHelper();
+
+    @Test
+    public void completeToolCallArguments() {
+        assertThat(this.helper.isToolCallArgumentsComplete("{}")).isTrue();
+        assertThat(this.helper.isToolCallArgumentsComplete("{\"location\": \"北京\", \"unit\": \"C\"} ")).isTrue();
+        assertThat(this.helper.isToolCallArgumentsComplete("{\"a\": {\"b\": [1, 2]}}")).isTrue();
+        assertThat(this.helper.isToolCallArgumentsComplete("{\"text\": \"brace } and quote \\\" inside\"}")).isTrue();
+    }
+
+    @Test
+    public void incompleteToolCallArguments() {
+        assertThat(this.helper.isToolCallArgumentsComplete(null)).isFalse();
+        assertThat(this.helper.isToolCallArgumentsComplete("")).isFalse();
+        assertThat(this.helper.isToolCallArgumentsComplete("{\"location\": \"北")).isFalse();
+        assertThat(this.helper.isToolCallArgumentsComplete("{\"a\": {\"b\": 1}")).isFalse();
+        assertThat(this.helper.isToolCallArgumentsComplete("{\"text\": \"}")).isFalse();
+        assertThat(this.helper.isToolCallArgumentsComplete("{} {}")).isFalse();
+        assertThat(this.helper.isToolCallArgumentsComplete("\"value\"}")).isFalse();
+    }
+}
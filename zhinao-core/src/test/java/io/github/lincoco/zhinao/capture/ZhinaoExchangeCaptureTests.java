@@ -0,0 +1,118 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.capture;
+
+import io.github.lincoco.zhinao.ZhinaoChatModel;
+import io.github.lincoco.zhinao.ZhinaoChatOptions;
+import io.github.lincoco.zhinao.api.ZhinaoApi;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.retry.RetryUtils;
+import org.springframework.http.ResponseEntity;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+public class ZhinaoExchangeCaptureTests {
+
+    private @Mock ZhinaoApi zhinaoApi;
+
+    @Test
+    public void capturesFailedCallsRedactedAndSkipsUnsampledOnes() {
+        var choice = new ZhinaoApi.Choice(new ZhinaoApi.ChatCompletionMessage("Response", ZhinaoApi.ChatCompletionMessage.Role.ASSISTANT),
+                ZhinaoApi.Choice.ChatCompletionFinishReason.STOP, 0);
+        given(this.zhinaoApi.chatCompletionEntity(isA(ZhinaoApi.ChatCompletionRequest.class)))
+                .willReturn(ResponseEntity.of(Optional.of(new ZhinaoApi.ChatCompletion(List.of(choice), 1L, "id", "360gpt-pro",
+                        "chat.completion", new ZhinaoApi.Usage(12, 3, 15)))))
+                .willThrow(new NonTransientAiException("bad request"));
+        ZhinaoExchangeCapture capture = ZhinaoExchangeCapture.builder()
+                .sampleRate(0)
+                .slowThreshold(Duration.ofHours(1))
+                .redaction(ZhinaoCaptureRedaction.builder().field("user").pattern("1[3-9]\\d{9}").build())
+                .build();
+        ZhinaoChatModel chatModel = chatModel(capture);
+        ZhinaoChatOptions options = ZhinaoChatOptions.builder().user("alice").build();
+
+        chatModel.call(new Prompt("text", options));
+        assertThatThrownBy(() -> chatModel.call(new Prompt("我的手机号是13812345678", options)))
+                .isInstanceOf(NonTransientAiException.class);
+
+        assertThat(capture.captures()).singleElement().satisfies(captured -> {
+            assertThat(captured.reason()).isEqualTo(ZhinaoExchangeCapture.Reason.FAILED);
+            assertThat(captured.stream()).isFalse();
+            assertThat(captured.error()).contains("bad request");
+            assertThat(captured.response()).isNull();
+            assertThat(captured.request().get("user").asText()).isEqualTo(ZhinaoCaptureRedaction.DEFAULT_MASK);
+            assertThat(captured.request().get("messages").get(0).get("content").asText())
+                    .isEqualTo("我的手机号是" + ZhinaoCaptureRedaction.DEFAULT_MASK);
+        });
+    }
+
+    @Test
+    public void keepsTheChunksOfSampledStreamsAndOverwritesTheOldestCapture() {
+        given(this.zhinaoApi.chatCompletionStream(isA(ZhinaoApi.ChatCompletionRequest.class)))
+                .willAnswer(invocation -> Flux.just(chunk("Hello", null, null),
+                        chunk(" world", ZhinaoApi.Choice.ChatCompletionFinishReason.STOP, new ZhinaoApi.Usage(5, 2, 7))));
+        ZhinaoExchangeCapture capture = ZhinaoExchangeCapture.builder()
+                .capacity(2)
+                .sampleRate(1)
+                .build();
+        ZhinaoChatModel chatModel = chatModel(capture);
+
+        for (int i = 0; i < 3; i++) {
+            chatModel.stream(new Prompt("text " + i)).collectList().block(Duration.ofSeconds(5));
+        }
+
+        List<ZhinaoExchangeCapture.Capture> captures = capture.captures();
+        assertThat(captures).extracting(ZhinaoExchangeCapture.Capture::sequence).containsExactly(2L, 1L);
+        assertThat(captures.get(0).reason()).isEqualTo(ZhinaoExchangeCapture.Reason.SAMPLED);
+        assertThat(captures.get(0).stream()).isTrue();
+        assertThat(captures.get(0).request().get("messages").get(0).get("content").asText()).isEqualTo("text 2");
+        assertThat(captures.get(0).response()).hasSize(2);
+        assertThat(captures.get(0).response().get(1).get("usage").get("total_tokens").asInt()).isEqualTo(7);
+
+        capture.clear();
+        assertThat(capture.captures()).isEmpty();
+    }
+
+    private ZhinaoChatModel chatModel(ZhinaoExchangeCapture capture) {
+        return ZhinaoChatModel.builder()
+                .zhinaoApi(this.zhinaoApi)
+                .defaultOptions(ZhinaoChatOptions.builder().model("360gpt-pro").build())
+                .retryTemplate(RetryUtils.SHORT_RETRY_TEMPLATE)
+                .exchangeCapture(capture)
+                .build();
+    }
+
+    private static ZhinaoApi.ChatCompletionChunk chunk(String content, ZhinaoApi.Choice.ChatCompletionFinishReason finishReason,
+                                                       ZhinaoApi.Usage usage) {
+        var choice = new ZhinaoApi.ChunkChoice(new ZhinaoApi.ChatCompletionMessage(content, ZhinaoApi.ChatCompletionMessage.Role.ASSISTANT),
+                finishReason, 0);
+        return new ZhinaoApi.ChatCompletionChunk(List.of(choice), 1L, "id", "360gpt-pro", "chat.completion.chunk", usage);
+    }
+}
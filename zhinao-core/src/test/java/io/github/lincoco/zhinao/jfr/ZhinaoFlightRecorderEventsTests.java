@@ -0,0 +1,116 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.jfr;
+
+import io.github.lincoco.zhinao.ZhinaoChatModel;
+import io.github.lincoco.zhinao.ZhinaoChatOptions;
+import io.github.lincoco.zhinao.api.ZhinaoApi;
+import io.github.lincoco.zhinao.api.ZhinaoMessageEncodingCache;
+import jdk.jfr.Event;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.retry.RetryUtils;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+public class ZhinaoFlightRecorderEventsTests {
+
+    private @Mock ZhinaoApi zhinaoApi;
+
+    @Test
+    public void recordsRequestAndRetryEventsOfCalls(@TempDir Path tempDir) throws Exception {
+        var choice = new ZhinaoApi.Choice(new ZhinaoApi.ChatCompletionMessage("Response", ZhinaoApi.ChatCompletionMessage.Role.ASSISTANT),
+                ZhinaoApi.Choice.ChatCompletionFinishReason.STOP, 0);
+        given(this.zhinaoApi.chatCompletionEntity(isA(ZhinaoApi.ChatCompletionRequest.class)))
+                .willThrow(new TransientAiException("busy"))
+                .willReturn(ResponseEntity.of(Optional.of(new ZhinaoApi.ChatCompletion(List.of(choice), 1L, "id", "360gpt-pro",
+                        "chat.completion", new ZhinaoApi.Usage(12, 3, 15)))));
+        ZhinaoChatModel chatModel = ZhinaoChatModel.builder()
+                .zhinaoApi(this.zhinaoApi)
+                .defaultOptions(ZhinaoChatOptions.builder().model("360gpt-pro").build())
+                .retryTemplate(RetryUtils.SHORT_RETRY_TEMPLATE)
+                .build();
+
+        List<RecordedEvent> events = record(tempDir, () -> chatModel.call(new Prompt("text")));
+
+        RecordedEvent request = single(events, "io.github.lincoco.zhinao.Request");
+        assertThat(request.getString("model")).isEqualTo("360gpt-pro");
+        assertThat(request.getString("mode")).isEqualTo("call");
+        assertThat(request.getString("outcome")).isEqualTo("success");
+        assertThat(request.getInt("promptTokens")).isEqualTo(12);
+        assertThat(request.getInt("completionTokens")).isEqualTo(3);
+        RecordedEvent retry = single(events, "io.github.lincoco.zhinao.Retry");
+        assertThat(retry.getInt("attempt")).isEqualTo(1);
+        assertThat(retry.getString("exception")).isEqualTo(TransientAiException.class.getName());
+    }
+
+    @Test
+    public void recordsHitsAndMissesOfTheMessageEncodingCache(@TempDir Path tempDir) throws Exception {
+        ZhinaoMessageEncodingCache cache = new ZhinaoMessageEncodingCache();
+        var first = new ZhinaoApi.ChatCompletionMessage("question", ZhinaoApi.ChatCompletionMessage.Role.USER);
+        var second = new ZhinaoApi.ChatCompletionMessage("answer", ZhinaoApi.ChatCompletionMessage.Role.ASSISTANT);
+
+        List<RecordedEvent> events = record(tempDir, () -> {
+            cache.encode(new ZhinaoApi.ChatCompletionRequest(List.of(first), "360gpt-pro", 0.7, false));
+            cache.encode(new ZhinaoApi.ChatCompletionRequest(List.of(first, second), "360gpt-pro", 0.7, false));
+        });
+
+        List<RecordedEvent> cacheEvents = events.stream()
+                .filter(event -> event.getEventType().getName().equals("io.github.lincoco.zhinao.Cache"))
+                .toList();
+        assertThat(cacheEvents).extracting(event -> event.getString("cache")).containsOnly(ZhinaoCacheEvent.MESSAGE_ENCODING);
+        assertThat(cacheEvents).extracting(event -> event.getLong("hits")).containsExactly(0L, 1L);
+        assertThat(cacheEvents).extracting(event -> event.getLong("misses")).containsExactly(1L, 1L);
+    }
+
+    private static List<RecordedEvent> record(Path tempDir, Runnable action) throws Exception {
+        Path dump = tempDir.resolve("zhinao.jfr");
+        try (Recording recording = new Recording()) {
+            for (Class<? extends Event> eventClass : List.of(ZhinaoRequestEvent.class, ZhinaoChunkBurstEvent.class,
+                    ZhinaoRetryEvent.class, ZhinaoToolExecutionEvent.class, ZhinaoCacheEvent.class)) {
+                recording.enable(eventClass).withThreshold(Duration.ZERO);
+            }
+            recording.start();
+            action.run();
+            recording.stop();
+            recording.dump(dump);
+        }
+        return RecordingFile.readAllEvents(dump);
+    }
+
+    private static RecordedEvent single(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> matching = events.stream().filter(event -> event.getEventType().getName().equals(name)).toList();
+        assertThat(matching).hasSize(1);
+        return matching.get(0);
+    }
+}
@@ -0,0 +1,171 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.memory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.memory.MessageWindowChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ZhinaoMappedChatMemoryRepositoryTests {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void storesAndReadsBackAllMessageTypes() {
+        List<Message> messages = List.of(
+                new SystemMessage("你是一个天气助手"),
+                UserMessage.builder().text("北京天气怎么样？").metadata(Map.of("userId", "u1")).build(),
+                new AssistantMessage("", Map.of(), List.of(new AssistantMessage.ToolCall("call-1", "function", "weather", "{\"city\":\"北京\"}"))),
+                new ToolResponseMessage(List.of(new ToolResponseMessage.ToolResponse("call-1", "weather", "晴，25 度"))),
+                new AssistantMessage("北京今天晴，25 度。"));
+
+        try (ZhinaoMappedChatMemoryRepository repository = repository(1024 * 1024, 0)) {
+            repository.saveAll("c1", messages);
+        }
+        try (ZhinaoMappedChatMemoryRepository repository = repository(1024 * 1024, 0)) {
+            List<Message> stored = repository.findByConversationId("c1");
+
+            assertThat(repository.findConversationIds()).containsExactly("c1");
+            assertThat(stored).hasSize(5);
+            assertThat(stored.get(0)).isEqualTo(messages.get(0));
+            assertThat(stored.get(1).getMetadata()).containsEntry("userId", "u1");
+            assertThat(((AssistantMessage) stored.get(2)).getToolCalls()).isEqualTo(((AssistantMessage) messages.get(2)).getToolCalls());
+            assertThat(((ToolResponseMessage) stored.get(3)).getResponses()).isEqualTo(((ToolResponseMessage) messages.get(3)).getResponses());
+            assertThat(stored.get(4).getText()).isEqualTo("北京今天晴，25 度。");
+        }
+    }
+
+    @Test
+    public void slidingWindowOnlyAppendsNewMessages() {
+        try (ZhinaoMappedChatMemoryRepository repository = repository(1024 * 1024, 0)) {
+            MessageWindowChatMemory chatMemory = MessageWindowChatMemory.builder()
+                    .chatMemoryRepository(repository)
+                    .maxMessages(4)
+                    .build();
+            for (int i = 0; i < 10; i++) {
+                chatMemory.add("c1", List.of(new UserMessage("question " + i), new AssistantMessage("answer " + i)));
+            }
+            long liveBytes = repository.liveBytes();
+
+            assertThat(chatMemory.get("c1")).extracting(Message::getText)
+                    .containsExactly("question 8", "answer 8", "question 9", "answer 9");
+            // 每轮只追加两条消息并裁剪最旧的两条，而不是重写整个窗口
+            assertThat(repository.segmentBytes()).isLessThan(liveBytes * 6);
+        }
+        try (ZhinaoMappedChatMemoryRepository repository = repository(1024 * 1024, 0)) {
+            assertThat(repository.findByConversationId("c1")).extracting(Message::getText)
+                    .containsExactly("question 8", "answer 8", "question 9", "answer 9");
+        }
+    }
+
+    @Test
+    public void deletedConversationStaysDeletedAfterReopen() {
+        try (ZhinaoMappedChatMemoryRepository repository = repository(1024 * 1024, 0)) {
+            repository.saveAll("c1", List.of(new UserMessage("one")));
+            repository.saveAll("c2", List.of(new UserMessage("two")));
+            repository.deleteByConversationId("c1");
+
+            assertThat(repository.findByConversationId("c1")).isEmpty();
+        }
+        try (ZhinaoMappedChatMemoryRepository repository = repository(1024 * 1024, 0)) {
+            assertThat(repository.findConversationIds()).containsExactly("c2");
+            assertThat(repository.findByConversationId("c1")).isEmpty();
+        }
+    }
+
+    @Test
+    public void compactionRemovesObsoleteSegments() {
+        try (ZhinaoMappedChatMemoryRepository repository = repository(512, 0)) {
+            for (int i = 0; i < 20; i++) {
+                repository.saveAll("c1", List.of(new UserMessage("question " + i)));
+                repository.saveAll("c2", List.of(new UserMessage("kept " + i / 10)));
+            }
+            int segments = repository.segmentCount();
+
+            while (repository.compact()) {
+                assertThat(repository.findByConversationId("c1")).extracting(Message::getText).containsExactly("question 19");
+            }
+
+            assertThat(segments).isGreaterThan(2);
+            assertThat(repository.segmentCount()).isLessThan(segments);
+        }
+        try (ZhinaoMappedChatMemoryRepository repository = repository(512, 0)) {
+            assertThat(repository.findByConversationId("c1")).extracting(Message::getText).containsExactly("question 19");
+            assertThat(repository.findByConversationId("c2")).extracting(Message::getText).containsExactly("kept 1");
+        }
+    }
+
+    @Test
+    public void compactionPicksTheLeastLiveSegment() {
+        int segments;
+        try (ZhinaoMappedChatMemoryRepository repository = repository(512, 0)) {
+            repository.saveAll("c1", List.of(new UserMessage("deleted")));
+            repository.saveAll("c2", List.of(new UserMessage("kept ".repeat(84))));
+            repository.deleteByConversationId("c1");
+            for (int i = 0; i < 20; i++) {
+                repository.saveAll("c3", List.of(new UserMessage("question " + i)));
+            }
+            segments = repository.segmentCount();
+
+            // 最旧的段仍几乎全部有效，压缩后面的段时保留 c1 的删除记录
+            assertThat(repository.compact()).isTrue();
+            assertThat(repository.segmentCount()).isLessThanOrEqualTo(segments);
+            assertThat(repository.findByConversationId("c1")).isEmpty();
+        }
+        try (ZhinaoMappedChatMemoryRepository repository = repository(512, 0)) {
+            assertThat(repository.findConversationIds()).containsExactlyInAnyOrder("c2", "c3");
+            assertThat(repository.findByConversationId("c1")).isEmpty();
+            assertThat(repository.findByConversationId("c2")).extracting(Message::getText).containsExactly("kept ".repeat(84));
+            assertThat(repository.findByConversationId("c3")).extracting(Message::getText).containsExactly("question 19");
+        }
+    }
+
+    @Test
+    public void evictedConversationsAreReadFromSegments() {
+        try (ZhinaoMappedChatMemoryRepository repository = ZhinaoMappedChatMemoryRepository.builder()
+                .directory(this.directory)
+                .maxResidentConversations(1)
+                .compactionInterval(Duration.ZERO)
+                .build()) {
+            repository.saveAll("c1", List.of(new UserMessage("one")));
+            repository.saveAll("c2", List.of(new UserMessage("two")));
+
+            assertThat(repository.residentCount()).isEqualTo(1);
+            assertThat(repository.findByConversationId("c1")).extracting(Message::getText).containsExactly("one");
+        }
+    }
+
+    private ZhinaoMappedChatMemoryRepository repository(int segmentSize, long compactionIntervalMillis) {
+        return ZhinaoMappedChatMemoryRepository.builder()
+                .directory(this.directory)
+                .segmentSize(segmentSize)
+                .compactionInterval(Duration.ofMillis(compactionIntervalMillis))
+                .build();
+    }
+}
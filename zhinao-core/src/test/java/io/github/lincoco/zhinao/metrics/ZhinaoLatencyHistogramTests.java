@@ -0,0 +1,52 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ZhinaoLatencyHistogramTests {
+
+    @Test
+    public void percentilesAreWithinTheBucketResolution() {
+        ZhinaoLatencyHistogram histogram = new ZhinaoLatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(Duration.ofMillis(i * 10L).toNanos(), i > 95);
+        }
+
+        assertThat(histogram.count()).isEqualTo(100);
+        assertThat(histogram.errorRatio()).isEqualTo(0.05);
+        assertThat(histogram.percentile(0.5)).isBetween(Duration.ofMillis(500), Duration.ofMillis(600));
+        assertThat(histogram.percentile(0.99)).isBetween(Duration.ofMillis(990), Duration.ofMillis(1190));
+        assertThat(histogram.percentile(0)).isLessThanOrEqualTo(Duration.ofMillis(12));
+    }
+
+    @Test
+    public void forgetsRequestsOlderThanTwoWindows() throws InterruptedException {
+        ZhinaoLatencyHistogram histogram = new ZhinaoLatencyHistogram(Duration.ofMillis(50));
+        histogram.record(Duration.ofSeconds(1).toNanos(), true);
+        assertThat(histogram.count()).isEqualTo(1);
+
+        Thread.sleep(120);
+
+        assertThat(histogram.count()).isZero();
+        assertThat(histogram.errorRatio()).isZero();
+        assertThat(histogram.percentile(0.99)).isZero();
+    }
+}
@@ -0,0 +1,162 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.metrics;
+
+import io.github.lincoco.zhinao.ZhinaoChatModel;
+import io.github.lincoco.zhinao.ZhinaoChatOptions;
+import io.github.lincoco.zhinao.api.ZhinaoApi;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.tck.TestObservationRegistry;
+import io.micrometer.observation.tck.TestObservationRegistryAssert;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.chat.observation.DefaultChatModelObservationConvention;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.retry.RetryUtils;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.ResourceAccessException;
+import reactor.core.publisher.Flux;
+
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+public class ZhinaoMetricsTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final ZhinaoMetrics metrics = new ZhinaoMetrics();
+
+    private @Mock ZhinaoApi zhinaoApi;
+
+    private ZhinaoChatModel chatModel;
+
+    @BeforeEach
+    public void beforeEach() {
+        this.metrics.bindTo(this.registry);
+        this.chatModel = ZhinaoChatModel.builder()
+                .zhinaoApi(this.zhinaoApi)
+                .defaultOptions(ZhinaoChatOptions.builder().model("360gpt-pro").build())
+                .retryTemplate(RetryUtils.SHORT_RETRY_TEMPLATE)
+                .metrics(this.metrics)
+                .build();
+    }
+
+    @Test
+    public void recordsLatencyTokensAndFinishReasonOfCalls() {
+        var choice = new ZhinaoApi.Choice(new ZhinaoApi.ChatCompletionMessage("Response", ZhinaoApi.ChatCompletionMessage.Role.ASSISTANT),
+                ZhinaoApi.Choice.ChatCompletionFinishReason.STOP, 0);
+        given(this.zhinaoApi.chatCompletionEntity(isA(ZhinaoApi.ChatCompletionRequest.class)))
+                .willReturn(ResponseEntity.of(Optional.of(new ZhinaoApi.ChatCompletion(List.of(choice), 1L, "id", "360gpt-pro",
+                        "chat.completion", new ZhinaoApi.Usage(12, 3, 15)))));
+
+        this.chatModel.call(new Prompt("text"));
+
+        assertThat(this.registry.get("zhinao.chat.requests").tags("model", "360gpt-pro", "mode", "call", "outcome", "success")
+                .timer().count()).isEqualTo(1);
+        assertThat(this.registry.get("zhinao.chat.tokens").tags("type", "prompt").summary().totalAmount()).isEqualTo(12);
+        assertThat(this.registry.get("zhinao.chat.tokens").tags("type", "completion").summary().totalAmount()).isEqualTo(3);
+        assertThat(this.registry.get("zhinao.chat.finish.reasons").tag("reason", "stop").counter().count()).isEqualTo(1);
+        assertThat(this.metrics.inFlight(ZhinaoMetrics.Mode.CALL)).isZero();
+    }
+
+    @Test
+    public void recordsFailedCalls() {
+        given(this.zhinaoApi.chatCompletionEntity(isA(ZhinaoApi.ChatCompletionRequest.class)))
+                .willThrow(new IllegalStateException("Non Transient Error"));
+
+        assertThatThrownBy(() -> this.chatModel.call(new Prompt("text"))).isInstanceOf(IllegalStateException.class);
+
+        assertThat(this.registry.get("zhinao.chat.errors").tag("exception", "IllegalStateException").counter().count()).isEqualTo(1);
+        assertThat(this.registry.get("zhinao.chat.requests").tag("outcome", "error").timer().count()).isEqualTo(1);
+        assertThat(this.metrics.inFlight(ZhinaoMetrics.Mode.CALL)).isZero();
+    }
+
+    @Test
+    public void countsOnlyServerAndConnectionFailuresAsUnavailable() {
+        given(this.zhinaoApi.chatCompletionEntity(isA(ZhinaoApi.ChatCompletionRequest.class)))
+                .willThrow(new IllegalStateException("400 - {\"error\":\"invalid model\"}"))
+                .willThrow(new IllegalStateException("503 - {\"error\":\"overloaded\"}"))
+                .willThrow(new ResourceAccessException("I/O error", new ConnectException("Connection refused")));
+
+        for (int i = 0; i < 3; i++) {
+            assertThatThrownBy(() -> this.chatModel.call(new Prompt("text"))).isInstanceOf(RuntimeException.class);
+        }
+
+        ZhinaoLatencyHistogram latency = this.metrics.recentLatency(ZhinaoMetrics.Mode.CALL);
+        assertThat(latency.errorCount()).isEqualTo(3);
+        // 4xx 是请求本身的问题，不算接口不可用
+        assertThat(latency.unavailableCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void recordsStreams() {
+        given(this.zhinaoApi.chatCompletionStream(isA(ZhinaoApi.ChatCompletionRequest.class))).willReturn(Flux.just(
+                chunk("Hello", null, null),
+                chunk(" world", ZhinaoApi.Choice.ChatCompletionFinishReason.STOP, new ZhinaoApi.Usage(5, 2, 7))));
+
+        this.chatModel.stream(new Prompt("text")).collectList().block(Duration.ofSeconds(5));
+
+        assertThat(this.registry.get("zhinao.chat.requests").tags("mode", "stream", "outcome", "success").timer().count()).isEqualTo(1);
+        assertThat(this.registry.get("zhinao.chat.tokens").tags("type", "completion").summary().totalAmount()).isEqualTo(2);
+        assertThat(this.registry.get("zhinao.chat.finish.reasons").tag("reason", "stop").counter().count()).isEqualTo(1);
+        assertThat(this.registry.get("zhinao.chat.in.flight").tag("mode", "stream").gauge().value()).isZero();
+        assertThat(this.registry.get("zhinao.chat.stream.time.to.first.token").timer().count()).isEqualTo(1);
+        assertThat(this.registry.get("zhinao.chat.stream.chunk.gap").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void addsStreamTimingToTheObservation() {
+        TestObservationRegistry observationRegistry = TestObservationRegistry.create();
+        ZhinaoChatModel observedChatModel = ZhinaoChatModel.builder()
+                .zhinaoApi(this.zhinaoApi)
+                .defaultOptions(ZhinaoChatOptions.builder().model("360gpt-pro").build())
+                .observationRegistry(observationRegistry)
+                .build();
+        given(this.zhinaoApi.chatCompletionStream(isA(ZhinaoApi.ChatCompletionRequest.class))).willReturn(Flux.just(
+                chunk("Hello", null, null),
+                chunk(" world", null, null),
+                chunk("!", ZhinaoApi.Choice.ChatCompletionFinishReason.STOP, new ZhinaoApi.Usage(5, 3, 8)))
+                .delayElements(Duration.ofMillis(20)));
+
+        observedChatModel.stream(new Prompt("text")).collectList().block(Duration.ofSeconds(5));
+
+        TestObservationRegistryAssert.assertThat(observationRegistry)
+                .hasObservationWithNameEqualTo(DefaultChatModelObservationConvention.DEFAULT_NAME)
+                .that()
+                .hasHighCardinalityKeyValueWithKey("zhinao.stream.time_to_first_token")
+                .hasHighCardinalityKeyValue("zhinao.stream.chunks", "3")
+                .hasHighCardinalityKeyValueWithKey("zhinao.stream.chunk_gap.max")
+                .hasHighCardinalityKeyValueWithKey("zhinao.stream.tokens_per_second");
+    }
+
+    private static ZhinaoApi.ChatCompletionChunk chunk(String content, ZhinaoApi.Choice.ChatCompletionFinishReason finishReason,
+                                                       ZhinaoApi.Usage usage) {
+        var choice = new ZhinaoApi.ChunkChoice(new ZhinaoApi.ChatCompletionMessage(content, ZhinaoApi.ChatCompletionMessage.Role.ASSISTANT),
+                finishReason, 0);
+        return new ZhinaoApi.ChatCompletionChunk(List.of(choice), 1L, "id", "360gpt-pro", "chat.completion.chunk", usage);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.metrics;
+
+import io.github.lincoco.zhinao.ZhinaoChatModel;
+import io.github.lincoco.zhinao.ZhinaoChatOptions;
+import io.github.lincoco.zhinao.api.ZhinaoApi;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationHandler;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+public class ZhinaoPhaseTimelineTests {
+
+    private @Mock ZhinaoApi zhinaoApi;
+
+    @Test
+    public void disabledTimelineRecordsNothing() {
+        ZhinaoPhaseTimeline timeline = ZhinaoPhaseTimeline.DISABLED;
+
+        long begin = timeline.begin();
+        timeline.end(ZhinaoPhaseTimeline.Phase.EXCHANGE, begin);
+
+        assertThat(begin).isZero();
+        assertThat(timeline.total(ZhinaoPhaseTimeline.Phase.EXCHANGE)).isZero();
+        assertThat(timeline.toMap()).isEmpty();
+    }
+
+    @Test
+    public void mergesConsecutiveEntriesOfTheSamePhase() {
+        ZhinaoPhaseTimeline timeline = ZhinaoPhaseTimeline.start();
+
+        timeline.add(ZhinaoPhaseTimeline.Phase.CREATE_REQUEST, 100);
+        timeline.add(ZhinaoPhaseTimeline.Phase.RESPONSE_MAPPING, 10);
+        timeline.add(ZhinaoPhaseTimeline.Phase.RESPONSE_MAPPING, 20);
+        timeline.add(ZhinaoPhaseTimeline.Phase.CREATE_REQUEST, 50);
+
+        assertThat(timeline.toMap()).containsExactly(
+                Map.entry("create_request", Duration.ofNanos(150)),
+                Map.entry("response_mapping", Duration.ofNanos(30)));
+    }
+
+    @Test
+    public void addsPhasesToObservationAndResponseMetadata() {
+        List<String> events = new CopyOnWriteArrayList<>();
+        ObservationRegistry observationRegistry = ObservationRegistry.create();
+        observationRegistry.observationConfig().observationHandler(new ObservationHandler<>() {
+            @Override
+            public void onEvent(Observation.Event event, Observation.Context context) {
+                events.add(event.getName());
+            }
+
+            @Override
+            public boolean supportsContext(Observation.Context context) {
+                return true;
+            }
+        });
+        ZhinaoChatModel chatModel = ZhinaoChatModel.builder()
+                .zhinaoApi(this.zhinaoApi)
+                .defaultOptions(ZhinaoChatOptions.builder().model("360gpt-pro").build())
+                .observationRegistry(observationRegistry)
+                .phaseTimeline(true, true)
+                .build();
+        var choice = new ZhinaoApi.Choice(new ZhinaoApi.ChatCompletionMessage("Response", ZhinaoApi.ChatCompletionMessage.Role.ASSISTANT),
+                ZhinaoApi.Choice.ChatCompletionFinishReason.STOP, 0);
+        given(this.zhinaoApi.chatCompletionEntity(isA(ZhinaoApi.ChatCompletionRequest.class)))
+                .willReturn(ResponseEntity.of(Optional.of(new ZhinaoApi.ChatCompletion(List.of(choice), 1L, "id", "360gpt-pro",
+                        "chat.completion", new ZhinaoApi.Usage(12, 3, 15)))));
+
+        ChatResponse response = chatModel.call(new Prompt("text"));
+
+        Map<String, Duration> phases = response.getMetadata().get(ZhinaoPhaseTimeline.METADATA_KEY);
+        assertThat(phases).containsOnlyKeys("options_merge", "create_request", "exchange", "response_mapping");
+        assertThat(events).containsExactly("zhinao.phase.options_merge", "zhinao.phase.create_request",
+                "zhinao.phase.exchange", "zhinao.phase.response_mapping");
+    }
+}
@@ -0,0 +1,180 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.metrics;
+
+import io.github.lincoco.zhinao.ZhinaoChatModel;
+import io.github.lincoco.zhinao.ZhinaoChatOptions;
+import io.github.lincoco.zhinao.api.ZhinaoApi;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationHandler;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.util.retry.Retry;
+import reactor.util.retry.RetryBackoffSpec;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+public class ZhinaoRetryMetricsTests {
+
+    private @Mock ZhinaoApi zhinaoApi;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final List<String> events = new CopyOnWriteArrayList<>();
+
+    @Test
+    public void recordsFailedAttemptsAndOverheadOfCalls() {
+        ZhinaoChatModel chatModel = chatModel(null);
+        var choice = new ZhinaoApi.Choice(new ZhinaoApi.ChatCompletionMessage("Response", ZhinaoApi.ChatCompletionMessage.Role.ASSISTANT),
+                ZhinaoApi.Choice.ChatCompletionFinishReason.STOP, 0);
+        given(this.zhinaoApi.chatCompletionEntity(isA(ZhinaoApi.ChatCompletionRequest.class)))
+                .willThrow(new TransientAiException("503 - Service Unavailable"))
+                .willThrow(new TransientAiException("Connection reset"))
+                .willReturn(ResponseEntity.of(Optional.of(new ZhinaoApi.ChatCompletion(List.of(choice), 1L, "id", "360gpt-pro",
+                        "chat.completion", new ZhinaoApi.Usage(12, 3, 15)))));
+
+        chatModel.call(new Prompt("text"));
+
+        assertThat(failures("call", "503")).isEqualTo(1);
+        assertThat(failures("call", "none")).isEqualTo(1);
+        assertThat(this.meterRegistry.get("zhinao.chat.retry.overhead").tag("mode", "call").tag("outcome", "success")
+                .timer().count()).isEqualTo(1);
+        assertThat(this.events).containsExactly("zhinao.attempt.failed", "zhinao.attempt.failed");
+    }
+
+    @Test
+    public void retriesStreamsOnlyBeforeTheFirstChunk() {
+        ZhinaoChatModel chatModel = chatModel(Retry.backoff(2, Duration.ofMillis(1)));
+        AtomicInteger subscriptions = new AtomicInteger();
+        given(this.zhinaoApi.chatCompletionStream(isA(ZhinaoApi.ChatCompletionRequest.class)))
+                .willReturn(Flux.defer(() -> subscriptions.incrementAndGet() == 1
+                        ? Flux.error(WebClientResponseException.create(HttpStatus.SERVICE_UNAVAILABLE.value(), "Service Unavailable", null, null, null))
+                        : Flux.just(chunk("Hello", null), chunk(" world", ZhinaoApi.Choice.ChatCompletionFinishReason.STOP))))
+                .willReturn(Flux.defer(() -> {
+                    subscriptions.incrementAndGet();
+                    return Flux.concat(Flux.just(chunk("Hello", null)), Flux.error(new TransientAiException("Connection reset")));
+                }));
+
+        String text = Objects.requireNonNull(chatModel.stream(new Prompt("text")).collectList().block()).stream()
+                .map(ChatResponse::getResult)
+                .filter(Objects::nonNull)
+                .map(generation -> generation.getOutput().getText())
+                .reduce("", String::concat);
+
+        assertThat(text).isEqualTo("Hello world");
+        assertThat(subscriptions).hasValue(2);
+        assertThat(failures("stream", "503")).isEqualTo(1);
+        assertThat(this.meterRegistry.get("zhinao.chat.retry.overhead").tag("mode", "stream").tag("outcome", "success")
+                .timer().count()).isEqualTo(1);
+
+        // 已输出分块的流不再重试
+        assertThatThrownBy(() -> chatModel.stream(new Prompt("text")).collectList().block())
+                .isInstanceOf(TransientAiException.class);
+        assertThat(subscriptions).hasValue(3);
+        assertThat(failures("stream", "none")).isEqualTo(1);
+    }
+
+    @Test
+    public void modelsSharingARetryTemplateRecordEachFailureOnce() {
+        RetryTemplate retryTemplate = retryTemplate();
+        ZhinaoRetryMetrics retryMetrics = new ZhinaoRetryMetrics();
+        retryMetrics.bindTo(this.meterRegistry);
+        ZhinaoChatModel first = chatModel(retryTemplate, ObservationRegistry.NOOP, retryMetrics, null);
+        ZhinaoChatModel second = chatModel(retryTemplate, ObservationRegistry.NOOP, retryMetrics, null);
+        given(this.zhinaoApi.chatCompletionEntity(isA(ZhinaoApi.ChatCompletionRequest.class)))
+                .willThrow(new IllegalArgumentException("400 - Bad Request"));
+
+        assertThatThrownBy(() -> first.call(new Prompt("text"))).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> second.call(new Prompt("text"))).isInstanceOf(IllegalArgumentException.class);
+        assertThat(retryMetrics.failedAttemptCount()).isEqualTo(2);
+
+        // 移除后不再记录
+        second.setRetryMetrics(null);
+        assertThatThrownBy(() -> second.call(new Prompt("text"))).isInstanceOf(IllegalArgumentException.class);
+        assertThat(retryMetrics.failedAttemptCount()).isEqualTo(2);
+        assertThat(failures("call", "400")).isEqualTo(2);
+    }
+
+    private ZhinaoChatModel chatModel(RetryBackoffSpec streamRetry) {
+        ObservationRegistry observationRegistry = ObservationRegistry.create();
+        observationRegistry.observationConfig().observationHandler(new ObservationHandler<>() {
+            @Override
+            public void onEvent(Observation.Event event, Observation.Context context) {
+                if (event.getName().startsWith("zhinao.attempt")) {
+                    ZhinaoRetryMetricsTests.this.events.add(event.getName());
+                }
+            }
+
+            @Override
+            public boolean supportsContext(Observation.Context context) {
+                return true;
+            }
+        });
+        ZhinaoRetryMetrics retryMetrics = new ZhinaoRetryMetrics();
+        retryMetrics.bindTo(this.meterRegistry);
+        return chatModel(retryTemplate(), observationRegistry, retryMetrics, streamRetry);
+    }
+
+    private ZhinaoChatModel chatModel(RetryTemplate retryTemplate, ObservationRegistry observationRegistry,
+                                      ZhinaoRetryMetrics retryMetrics, RetryBackoffSpec streamRetry) {
+        return ZhinaoChatModel.builder()
+                .zhinaoApi(this.zhinaoApi)
+                .defaultOptions(ZhinaoChatOptions.builder().model("360gpt-pro").build())
+                .retryTemplate(retryTemplate)
+                .observationRegistry(observationRegistry)
+                .retryMetrics(retryMetrics)
+                .streamRetry(streamRetry)
+                .build();
+    }
+
+    private static RetryTemplate retryTemplate() {
+        return RetryTemplate.builder().maxAttempts(3).fixedBackoff(1).retryOn(TransientAiException.class).build();
+    }
+
+    private double failures(String mode, String status) {
+        return this.meterRegistry.get("zhinao.chat.attempt.failures").tag("mode", mode).tag("status", status)
+                .counter().count();
+    }
+
+    private static ZhinaoApi.ChatCompletionChunk chunk(String content, ZhinaoApi.Choice.ChatCompletionFinishReason finishReason) {
+        var choice = new ZhinaoApi.ChunkChoice(new ZhinaoApi.ChatCompletionMessage(content, ZhinaoApi.ChatCompletionMessage.Role.ASSISTANT),
+                finishReason, 0);
+        return new ZhinaoApi.ChatCompletionChunk(List.of(choice), 1L, "id", "360gpt-pro", "chat.completion.chunk", null);
+    }
+}
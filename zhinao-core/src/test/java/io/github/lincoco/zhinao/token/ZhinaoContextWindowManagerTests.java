@@ -0,0 +1,176 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.token;
+
+import io.github.lincoco.zhinao.ZhinaoChatOptions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.content.MediaContent;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ZhinaoContextWindowManagerTests {
+
+    private final CharacterEstimator estimator = new CharacterEstimator();
+
+    @Test
+    public void keepsPromptsThatFit() {
+        ZhinaoContextWindowManager manager = manager(1000);
+        Prompt prompt = prompt(new SystemMessage("system"), new UserMessage("question"));
+
+        assertThat(manager.apply(prompt)).isSameAs(prompt);
+    }
+
+    @Test
+    public void dropsOlderTurnsAndKeepsSystemAndRecentTurns() {
+        // 每条消息 4 个开销 + 10 个字符
+        ZhinaoContextWindowManager manager = manager(60);
+        SystemMessage system = new SystemMessage("0123456789");
+        List<Message> messages = List.of(system,
+                new UserMessage("question 1"), new AssistantMessage("", Map.of(), List.of(toolCall())),
+                toolResponse(), new AssistantMessage("answer 1.."),
+                new UserMessage("question 2"), new AssistantMessage("answer 2.."),
+                new UserMessage("question 3"));
+
+        Prompt trimmed = manager.apply(prompt(messages.toArray(Message[]::new)));
+
+        assertThat(trimmed.getInstructions()).containsExactly(system, messages.get(5), messages.get(6), messages.get(7));
+        assertThat(trimmed.getOptions()).isNotNull();
+        assertThat(manager.droppedMessageCount()).isEqualTo(4);
+    }
+
+    @Test
+    public void alwaysKeepsTheLatestTurn() {
+        ZhinaoContextWindowManager manager = manager(20);
+        List<Message> messages = List.of(new UserMessage("question 1"), new AssistantMessage("answer 1.."),
+                new UserMessage("question 2"), new AssistantMessage("", Map.of(), List.of(toolCall())), toolResponse());
+
+        Prompt trimmed = manager.apply(prompt(messages.toArray(Message[]::new)));
+
+        assertThat(trimmed.getInstructions()).containsExactlyElementsOf(messages.subList(2, 5));
+    }
+
+    @Test
+    public void onlyNewMessagesAreEstimated() {
+        ZhinaoContextWindowManager manager = manager(10_000);
+        List<Message> history = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            history.add(new UserMessage("question " + i));
+            history.add(new AssistantMessage("answer " + i));
+        }
+        manager.apply(new Prompt(history));
+        int estimated = this.estimator.calls.get();
+
+        history.add(new UserMessage("one more question"));
+        manager.apply(new Prompt(history));
+
+        assertThat(estimated).isEqualTo(100);
+        assertThat(this.estimator.calls).hasValue(101);
+    }
+
+    @Test
+    public void replacesDroppedTurnsWithBackgroundSummary() {
+        AtomicInteger summaries = new AtomicInteger();
+        ChatModel summarizer = prompt -> {
+            summaries.incrementAndGet();
+            return new ChatResponse(List.of(new Generation(new AssistantMessage("short"))));
+        };
+        ZhinaoContextWindowManager manager = ZhinaoContextWindowManager.builder()
+                .estimator(this.estimator)
+                .defaultContextWindow(60)
+                .reservedCompletionTokens(0)
+                .summarizer(summarizer, null)
+                .summaryTokens(50)
+                .summaryScheduler(Schedulers.immediate())
+                .build();
+        List<Message> messages = new ArrayList<>(List.of(new UserMessage("question 1"), new AssistantMessage("answer 1.."),
+                new UserMessage("question 2"), new AssistantMessage("answer 2.."), new UserMessage("question 3")));
+
+        manager.apply(new Prompt(messages));
+        Prompt trimmed = manager.apply(new Prompt(messages));
+        manager.apply(new Prompt(messages));
+
+        // 摘要本身的 token 已预留，生效后不会再触发新的摘要
+        assertThat(summaries).hasValue(1);
+        assertThat(manager.summarizedMessageCount()).isEqualTo(4);
+        assertThat(trimmed.getInstructions()).hasSize(2);
+        assertThat(trimmed.getInstructions().get(0)).isInstanceOf(SystemMessage.class);
+        assertThat(trimmed.getInstructions().get(0).getText()).endsWith("short");
+        assertThat(trimmed.getInstructions().get(1)).isSameAs(messages.get(4));
+    }
+
+    private ZhinaoContextWindowManager manager(int contextWindow) {
+        return ZhinaoContextWindowManager.builder()
+                .estimator(this.estimator)
+                .defaultContextWindow(contextWindow)
+                .reservedCompletionTokens(0)
+                .build();
+    }
+
+    private static Prompt prompt(Message... messages) {
+        return new Prompt(List.of(messages), ZhinaoChatOptions.builder().build());
+    }
+
+    private static AssistantMessage.ToolCall toolCall() {
+        return new AssistantMessage.ToolCall("1", "function", "tool", "{}");
+    }
+
+    private static ToolResponseMessage toolResponse() {
+        return new ToolResponseMessage(List.of(new ToolResponseMessage.ToolResponse("1", "tool", "result")));
+    }
+
+    private static final class CharacterEstimator implements TokenCountEstimator {
+
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public int estimate(String text) {
+            if (text != null && !text.isEmpty()) {
+                this.calls.incrementAndGet();
+            }
+            return text == null ? 0 : text.length();
+        }
+
+        @Override
+        public int estimate(MediaContent content) {
+            return estimate(content.getText());
+        }
+
+        @Override
+        public int estimate(Iterable<MediaContent> contents) {
+            int tokens = 0;
+            for (MediaContent content : contents) {
+                tokens += estimate(content);
+            }
+            return tokens;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.token;
+
+import io.github.lincoco.zhinao.api.ZhinaoApi;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.retry.NonTransientAiException;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ZhinaoTokenBudgetTests {
+
+    @Test
+    public void rejectsPromptsThatDoNotFitTheContextWindow() {
+        ZhinaoTokenBudget budget = ZhinaoTokenBudget.builder()
+                .contextWindow("small-model", 100)
+                .minCompletionTokens(20)
+                .build();
+
+        assertThatThrownBy(() -> budget.reserve(request("small-model", "很长的问题".repeat(30), null)))
+                .isInstanceOf(NonTransientAiException.class)
+                .hasMessageContaining("context window of model 'small-model'");
+    }
+
+    @Test
+    public void lowersMaxTokensToTheRemainingContextWindow() {
+        ZhinaoTokenBudget budget = ZhinaoTokenBudget.builder()
+                .contextWindow("small-model", 100)
+                .minCompletionTokens(10)
+                .build();
+
+        ZhinaoTokenBudget.Reservation reservation = budget.reserve(request("small-model", "你好", 2048));
+        ZhinaoTokenBudget.Reservation unchanged = budget.reserve(request(ZhinaoApi.DEFAULT_CHAT_MODEL, "你好", null));
+
+        assertThat(reservation.request().maxTokens()).isEqualTo(100 - reservation.promptTokens());
+        assertThat(unchanged.request().maxTokens()).isNull();
+        assertThat(unchanged.delay()).isZero();
+    }
+
+    @Test
+    public void rateLimiterDelaysReservationsBeyondTheMinuteBudget() {
+        ZhinaoTokenRateLimiter rateLimiter = new ZhinaoTokenRateLimiter(60_000);
+
+        assertThat(rateLimiter.reserve(60_000)).isZero();
+        assertThat(rateLimiter.tryReserve(1_000)).isFalse();
+        Duration delay = rateLimiter.reserve(1_000);
+        assertThat(delay).isBetween(Duration.ofMillis(900), Duration.ofMillis(1_000));
+
+        // 真实用量少于预留时退还额度
+        rateLimiter.adjust(-31_000);
+        assertThat(rateLimiter.availableTokens()).isBetween(29_000L, 31_000L);
+        assertThat(rateLimiter.tryReserve(1_000)).isTrue();
+    }
+
+    @Test
+    public void rateLimiterLimitCanBeRaisedAtRuntime() {
+        ZhinaoTokenRateLimiter rateLimiter = new ZhinaoTokenRateLimiter(60_000);
+        rateLimiter.reserve(30_000);
+
+        rateLimiter.setTokensPerMinute(120_000);
+
+        // 已预留的半分钟额度在新限额下可容纳两倍的 token
+        assertThat(rateLimiter.getTokensPerMinute()).isEqualTo(120_000);
+        assertThat(rateLimiter.availableTokens()).isBetween(59_000L, 60_000L);
+        assertThat(rateLimiter.tryReserve(70_000)).isFalse();
+        assertThat(rateLimiter.tryReserve(50_000)).isTrue();
+    }
+
+    @Test
+    public void recordCorrectsTheReservationWithTheRealUsage() {
+        ZhinaoTokenRateLimiter rateLimiter = new ZhinaoTokenRateLimiter(10_000);
+        ZhinaoTokenBudget budget = ZhinaoTokenBudget.builder().rateLimiter(rateLimiter).build();
+
+        ZhinaoTokenBudget.Reservation reservation = budget.reserve(request(ZhinaoApi.DEFAULT_CHAT_MODEL, "你好", null));
+        budget.record(reservation, new ZhinaoApi.Usage(reservation.promptTokens(), 5_000, reservation.promptTokens() + 5_000));
+
+        assertThat(rateLimiter.availableTokens()).isBetween(4_900L, 5_000L);
+        assertThat(budget.getEstimator().relativeError()).isLessThan(0.5);
+    }
+
+    private static ZhinaoApi.ChatCompletionRequest request(String model, String content, Integer maxTokens) {
+        return new ZhinaoApi.ChatCompletionRequest(model, List.of(
+                new ZhinaoApi.ChatCompletionMessage(content, ZhinaoApi.ChatCompletionMessage.Role.USER)),
+                false, null, maxTokens, null, null, null, null, null, null, null);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.token;
+
+import io.github.lincoco.zhinao.api.ZhinaoApi;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ZhinaoTokenEstimatorTests {
+
+    @Test
+    public void classifiesCharacters() {
+        long[] features = new long[7];
+
+        ZhinaoTokenEstimator.count("你好，world 42!", features);
+
+        assertThat(features[ZhinaoTokenEstimator.CJK]).isEqualTo(2);
+        assertThat(features[ZhinaoTokenEstimator.PUNCTUATION]).isEqualTo(2);
+        assertThat(features[ZhinaoTokenEstimator.LATIN]).isEqualTo(5);
+        assertThat(features[ZhinaoTokenEstimator.WHITESPACE]).isEqualTo(1);
+        assertThat(features[ZhinaoTokenEstimator.DIGIT]).isEqualTo(2);
+    }
+
+    @Test
+    public void estimatesChineseAboveEnglishPerCharacter() {
+        ZhinaoTokenEstimator estimator = new ZhinaoTokenEstimator();
+
+        assertThat(estimator.estimate((String) null)).isZero();
+        assertThat(estimator.estimate("明天北京的天气怎么样")).isGreaterThan(estimator.estimate("tomorrow's"));
+        assertThat(estimator.estimate(request("你好"))).isGreaterThan(estimator.estimate("你好"));
+    }
+
+    @Test
+    public void calibratesFromObservedUsage() {
+        ZhinaoTokenEstimator estimator = new ZhinaoTokenEstimator();
+        String text = "请帮我总结一下这篇关于大语言模型推理性能优化的文章，重点关注缓存与批处理。";
+        ZhinaoApi.ChatCompletionRequest request = request(text);
+        // 假设真实分词器对中文的压缩率高于初始校准表
+        int actual = 3 + (int) Math.round(text.codePointCount(0, text.length()) * 0.5);
+
+        for (int i = 0; i < 50; i++) {
+            estimator.calibrate(request, actual);
+        }
+
+        assertThat(estimator.estimate(request)).isBetween(actual - 2, actual + 2);
+        assertThat(estimator.relativeError()).isLessThan(0.1);
+        assertThat(estimator.weights()[ZhinaoTokenEstimator.CJK]).isLessThan(0.7);
+    }
+
+    private static ZhinaoApi.ChatCompletionRequest request(String content) {
+        return new ZhinaoApi.ChatCompletionRequest(List.of(
+                new ZhinaoApi.ChatCompletionMessage(content, ZhinaoApi.ChatCompletionMessage.Role.USER)), false);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.tool;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tool.definition.ToolDefinition;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ZhinaoBm25ToolSelectorTests {
+
+    private final List<ToolDefinition> toolDefinitions = List.of(
+            tool("getWeather", "查询指定城市的天气预报"),
+            tool("getStockPrice", "Get the latest stock price of a company"),
+            tool("sendEmail", "Send an email to a recipient"),
+            tool("translateText", "将文本翻译成指定语言"),
+            tool("currentTime", "Get the current time"));
+
+    @Test
+    public void selectsMostRelevantTools() {
+        ZhinaoBm25ToolSelector selector = new ZhinaoBm25ToolSelector(1);
+
+        assertThat(names(selector.select(new Prompt("北京明天的天气怎么样？"), this.toolDefinitions)))
+                .containsExactly("getWeather");
+        assertThat(names(selector.select(new Prompt("What is the stock price of ACME?"), this.toolDefinitions)))
+                .containsExactly("getStockPrice");
+    }
+
+    @Test
+    public void keepsAlwaysOnAndCalledToolsInOriginalOrder() {
+        ZhinaoBm25ToolSelector selector = new ZhinaoBm25ToolSelector(1, Set.of("currentTime"));
+        Prompt prompt = new Prompt(List.of(
+                new UserMessage("帮我发一封邮件"),
+                new AssistantMessage("", Map.of(), List.of(new AssistantMessage.ToolCall("1", "function", "translateText", "{}"))),
+                new UserMessage("Send an email to Bob")));
+
+        assertThat(names(selector.select(prompt, this.toolDefinitions)))
+                .containsExactly("sendEmail", "translateText", "currentTime");
+    }
+
+    @Test
+    public void keepsAllToolsWhenNothingMatches() {
+        ZhinaoBm25ToolSelector selector = new ZhinaoBm25ToolSelector(2);
+
+        assertThat(selector.select(new Prompt("你好"), this.toolDefinitions)).isEqualTo(this.toolDefinitions);
+    }
+
+    @Test
+    public void tokenizesIdentifiersAndChineseText() {
+        assertThat(ZhinaoBm25ToolSelector.tokenize("getStockPrice 查询天气 snake_case"))
+                .containsExactly("get", "stock", "price", "查询", "询天", "天气", "snake", "case");
+    }
+
+    private static List<String> names(List<ToolDefinition> toolDefinitions) {
+        return toolDefinitions.stream().map(ToolDefinition::name).toList();
+    }
+
+    private static ToolDefinition tool(String name, String description) {
+        return ToolDefinition.builder()
+                .name(name)
+                .description(description)
+                .inputSchema("{\"type\":\"object\",\"properties\":{}}")
+                .build();
+    }
+}
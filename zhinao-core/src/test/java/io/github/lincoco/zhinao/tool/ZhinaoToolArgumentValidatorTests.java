@@ -0,0 +1,100 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.tool;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.tool.definition.ToolDefinition;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ZhinaoToolArgumentValidatorTests {
+
+    private static final ToolDefinition WEATHER = ToolDefinition.builder()
+            .name("getWeather")
+            .description("Get the weather")
+            .inputSchema("""
+                    {
+                      "type": "object",
+                      "properties": {
+                        "city": { "type": "string", "minLength": 1 },
+                        "unit": { "type": "string", "enum": ["C", "F"] },
+                        "days": { "type": "integer", "minimum": 1, "maximum": 7 },
+                        "location": { "$ref": "#/$defs/location" }
+                      },
+                      "required": ["city"],
+                      "additionalProperties": false,
+                      "$defs": {
+                        "location": {
+                          "type": "object",
+                          "properties": { "lat": { "type": "number" }, "lng": { "type": "number" } },
+                          "required": ["lat", "lng"]
+                        }
+                      }
+                    }
+                    """)
+            .build();
+
+    private final ZhinaoToolArgumentValidator validator = new ZhinaoToolArgumentValidator();
+
+    @Test
+    public void acceptsValidArgumentsUnchanged() {
+        String arguments = "{\"city\": \"北京\", \"unit\": \"C\", \"days\": 3, \"location\": {\"lat\": 39.9, \"lng\": 116.4}}";
+
+        ZhinaoToolArgumentValidator.ValidationResult result = this.validator.validate(WEATHER, arguments);
+
+        assertThat(result.valid()).isTrue();
+        assertThat(result.repaired()).isFalse();
+        assertThat(result.arguments()).isSameAs(arguments);
+    }
+
+    @Test
+    public void repairsTriviallyBrokenJson() {
+        assertRepaired("{\"city\": \"北京\", \"days\": 3,}", "{\"city\":\"北京\",\"days\":3}");
+        assertRepaired("{'city': 'Xi\\'an'}", "{\"city\":\"Xi'an\"}");
+        assertRepaired("{\"city\": \"北京\", \"location\": {\"lat\": 39.9, \"lng\": 116.4", "{\"city\":\"北京\",\"location\":{\"lat\":39.9,\"lng\":116.4}}");
+        assertRepaired("```json\n{\"city\": \"上海\"}\n```", "{\"city\":\"上海\"}");
+        assertRepaired("{\"city\": \"上海", "{\"city\":\"上海\"}");
+    }
+
+    @Test
+    public void reportsSchemaViolations() {
+        ZhinaoToolArgumentValidator.ValidationResult result = this.validator.validate(WEATHER,
+                "{\"unit\": \"K\", \"days\": 10, \"location\": {\"lat\": \"north\"}, \"country\": \"CN\"}");
+
+        assertThat(result.valid()).isFalse();
+        assertThat(result.errors()).containsExactlyInAnyOrder(
+                "$.city is required",
+                "$.unit must be one of [\"C\",\"F\"]",
+                "$.days must be <= 7",
+                "$.location.lng is required",
+                "$.location.lat must be of type number but was string");
+    }
+
+    @Test
+    public void rejectsUnrepairableJson() {
+        ZhinaoToolArgumentValidator.ValidationResult result = this.validator.validate(WEATHER, "{\"city\": }");
+
+        assertThat(result.valid()).isFalse();
+        assertThat(result.errors()).singleElement().asString().startsWith("arguments are not valid JSON");
+    }
+
+    private void assertRepaired(String arguments, String expected) {
+        ZhinaoToolArgumentValidator.ValidationResult result = this.validator.validate(WEATHER, arguments);
+        assertThat(result.valid()).as(arguments).isTrue();
+        assertThat(result.repaired()).isTrue();
+        assertThat(result.arguments()).isEqualTo(expected);
+    }
+}
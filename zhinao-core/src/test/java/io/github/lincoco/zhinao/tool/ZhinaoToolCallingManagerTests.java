@@ -0,0 +1,309 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.tool;
+
+import io.github.lincoco.zhinao.ZhinaoChatOptions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ZhinaoToolCallingManagerTests {
+
+    private final ExecutorService executorService = ZhinaoToolExecutors.boundedPool(4);
+
+    @AfterEach
+    public void afterEach() {
+        this.executorService.shutdownNow();
+    }
+
+    @Test
+    public void executesToolCallsConcurrentlyAndKeepsOrder() {
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        Function<String, String> awaitSibling = args -> {
+            bothStarted.countDown();
+            try {
+                // Only completes when the sibling call runs at the same time.
+                return bothStarted.await(5, TimeUnit.SECONDS) ? "done " + args : "sequential";
+            } catch (InterruptedException ex) {
+                throw new IllegalStateException(ex);
+            }
+        };
+        ZhinaoToolCallingManager manager = ZhinaoToolCallingManager.builder()
+                .executorService(this.executorService)
+                .build();
+
+        ToolExecutionResult result = manager.executeToolCalls(prompt(tool("first", awaitSibling), tool("second", awaitSibling)),
+                response(toolCall("1", "first", "a"), toolCall("2", "second", "b")));
+
+        ToolResponseMessage toolResponseMessage = (ToolResponseMessage) result.conversationHistory().get(2);
+        assertThat(toolResponseMessage.getResponses()).extracting(ToolResponseMessage.ToolResponse::responseData)
+                .containsExactly("done a", "done b");
+        assertThat(toolResponseMessage.getResponses()).extracting(ToolResponseMessage.ToolResponse::id)
+                .containsExactly("1", "2");
+    }
+
+    @Test
+    public void timedOutToolCallIsReportedToTheModel() {
+        ZhinaoToolCallingManager manager = ZhinaoToolCallingManager.builder()
+                .executorService(this.executorService)
+                .toolTimeout("slow", Duration.ofMillis(50))
+                .build();
+
+        ToolExecutionResult result = manager.executeToolCalls(prompt(tool("slow", args -> sleep(2000)), tool("fast", args -> "fast")),
+                response(toolCall("1", "slow", "{}"), toolCall("2", "fast", "{}")));
+
+        ToolResponseMessage toolResponseMessage = (ToolResponseMessage) result.conversationHistory().get(2);
+        assertThat(toolResponseMessage.getResponses().get(0).responseData()).contains("timed out");
+        assertThat(toolResponseMessage.getResponses().get(1).responseData()).isEqualTo("fast");
+    }
+
+    @Test
+    public void timedOutToolCallIsReportedWithoutExecutor() {
+        ZhinaoToolCallingManager manager = ZhinaoToolCallingManager.builder()
+                .toolTimeout("slow", Duration.ofMillis(50))
+                .sequentialTimeouts(true)
+                .build();
+
+        ToolExecutionResult result = manager.executeToolCalls(prompt(tool("slow", args -> sleep(2000)), tool("fast", args -> "fast")),
+                response(toolCall("1", "slow", "{}"), toolCall("2", "fast", "{}")));
+
+        ToolResponseMessage toolResponseMessage = (ToolResponseMessage) result.conversationHistory().get(2);
+        assertThat(toolResponseMessage.getResponses().get(0).responseData()).contains("timed out");
+        assertThat(toolResponseMessage.getResponses().get(1).responseData()).isEqualTo("fast");
+    }
+
+    @Test
+    public void sequentialToolCallsRunOnTheCallerThread() {
+        ZhinaoToolCallingManager manager = ZhinaoToolCallingManager.builder().build();
+        Thread caller = Thread.currentThread();
+
+        ToolExecutionResult result = manager.executeToolCalls(prompt(tool("thread", args -> String.valueOf(Thread.currentThread() == caller))),
+                response(toolCall("1", "thread", "{}")));
+
+        ToolResponseMessage toolResponseMessage = (ToolResponseMessage) result.conversationHistory().get(2);
+        assertThat(toolResponseMessage.getResponses().get(0).responseData()).isEqualTo("true");
+    }
+
+    @Test
+    public void failedToolCallCancelsSiblings() throws InterruptedException {
+        AtomicBoolean interrupted = new AtomicBoolean();
+        CountDownLatch siblingStarted = new CountDownLatch(1);
+        CountDownLatch siblingFinished = new CountDownLatch(1);
+        Function<String, String> slow = args -> {
+            siblingStarted.countDown();
+            try {
+                Thread.sleep(5000);
+                return "slow";
+            } catch (InterruptedException ex) {
+                interrupted.set(true);
+                return "interrupted";
+            } finally {
+                siblingFinished.countDown();
+            }
+        };
+        ZhinaoToolCallingManager manager = ZhinaoToolCallingManager.builder()
+                .executorService(this.executorService)
+                .build();
+
+        assertThatThrownBy(() -> manager.executeToolCalls(prompt(tool("slow", slow), tool("broken", args -> {
+            // Only fail once the sibling is running, otherwise it is cancelled before it starts.
+            awaitQuietly(siblingStarted);
+            throw new IllegalArgumentException("broken tool");
+        })), response(toolCall("1", "slow", "{}"), toolCall("2", "broken", "{}"))))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("broken tool");
+
+        assertThat(siblingFinished.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(interrupted).isTrue();
+    }
+
+    @Test
+    public void startedToolCallIsReusedWhenArgumentsMatch() {
+        AtomicInteger invocations = new AtomicInteger();
+        ToolCallback counting = tool("counting", args -> "call " + invocations.incrementAndGet());
+        ZhinaoToolCallingManager manager = ZhinaoToolCallingManager.builder()
+                .executorService(this.executorService)
+                .build();
+        Prompt prompt = prompt(counting);
+        ZhinaoToolCallingManager.StartedToolCalls startedToolCalls = new ZhinaoToolCallingManager.StartedToolCalls();
+
+        manager.startToolCall(prompt, toolCall("1", "counting", "{\"a\":1}"), startedToolCalls);
+        ToolExecutionResult result = manager.executeToolCalls(prompt,
+                response(toolCall("1", "counting", "{\"a\":1}"), toolCall("2", "counting", "{\"a\":2}")), startedToolCalls);
+
+        ToolResponseMessage toolResponseMessage = (ToolResponseMessage) result.conversationHistory().get(2);
+        assertThat(toolResponseMessage.getResponses()).hasSize(2);
+        assertThat(invocations).hasValue(2);
+    }
+
+    @Test
+    public void executesAsyncToolCallsWithoutBlocking() {
+        ToolCallback delayed = asyncTool("delayed", args -> Mono.delay(Duration.ofMillis(100)).thenReturn("delayed " + args));
+        ToolCallback immediate = asyncTool("immediate", args -> Mono.just("immediate " + args));
+        ZhinaoToolCallingManager manager = ZhinaoToolCallingManager.builder().asyncExecution(true).build();
+        Prompt prompt = prompt(delayed, immediate);
+        ChatResponse response = response(toolCall("1", "delayed", "a"), toolCall("2", "immediate", "b"));
+
+        assertThat(manager.supportsAsyncExecution(prompt, response)).isTrue();
+        assertThat(ZhinaoToolCallingManager.builder().build().supportsAsyncExecution(prompt, response)).isFalse();
+        assertThat(manager.supportsAsyncExecution(prompt(tool("blocking", args -> args)), response(toolCall("1", "blocking", "a"))))
+                .isFalse();
+
+        ToolExecutionResult result = manager.executeToolCallsAsync(prompt, response).block(Duration.ofSeconds(5));
+
+        ToolResponseMessage toolResponseMessage = (ToolResponseMessage) result.conversationHistory().get(2);
+        assertThat(toolResponseMessage.getResponses()).extracting(ToolResponseMessage.ToolResponse::responseData)
+                .containsExactly("delayed a", "immediate b");
+    }
+
+    @Test
+    public void timedOutAsyncToolCallIsReportedToTheModel() {
+        ZhinaoToolCallingManager manager = ZhinaoToolCallingManager.builder()
+                .toolTimeout("never", Duration.ofMillis(50))
+                .build();
+
+        ToolExecutionResult result = manager.executeToolCallsAsync(prompt(asyncTool("never", args -> Mono.never())),
+                response(toolCall("1", "never", "{}"))).block(Duration.ofSeconds(5));
+
+        ToolResponseMessage toolResponseMessage = (ToolResponseMessage) result.conversationHistory().get(2);
+        assertThat(toolResponseMessage.getResponses().get(0).responseData()).contains("timed out");
+    }
+
+    @Test
+    public void repairsOrRejectsToolArgumentsBeforeExecution() {
+        AtomicInteger invocations = new AtomicInteger();
+        ToolDefinition toolDefinition = ToolDefinition.builder()
+                .name("echo")
+                .description("echo tool")
+                .inputSchema("{\"type\":\"object\",\"properties\":{\"text\":{\"type\":\"string\"}},\"required\":[\"text\"]}")
+                .build();
+        ToolCallback echo = new ToolCallback() {
+            @Override
+            public ToolDefinition getToolDefinition() {
+                return toolDefinition;
+            }
+
+            @Override
+            public String call(String toolInput) {
+                invocations.incrementAndGet();
+                return toolInput;
+            }
+        };
+        ZhinaoToolCallingManager manager = ZhinaoToolCallingManager.builder()
+                .argumentValidator(new ZhinaoToolArgumentValidator())
+                .build();
+
+        ToolExecutionResult result = manager.executeToolCalls(prompt(echo),
+                response(toolCall("1", "echo", "{'text': 'hi',}"), toolCall("2", "echo", "{\"txt\": \"hi\"}")));
+
+        AssistantMessage assistantMessage = (AssistantMessage) result.conversationHistory().get(1);
+        assertThat(assistantMessage.getToolCalls().get(0).arguments()).isEqualTo("{\"text\":\"hi\"}");
+        ToolResponseMessage toolResponseMessage = (ToolResponseMessage) result.conversationHistory().get(2);
+        assertThat(toolResponseMessage.getResponses().get(0).responseData()).isEqualTo("{\"text\":\"hi\"}");
+        assertThat(toolResponseMessage.getResponses().get(1).responseData()).contains("Invalid arguments for tool 'echo'", "$.text is required");
+        assertThat(invocations).hasValue(1);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return "slept";
+    }
+
+    private static Prompt prompt(ToolCallback... toolCallbacks) {
+        return new Prompt(List.of(new UserMessage("question")), ZhinaoChatOptions.builder().toolCallbacks(toolCallbacks).build());
+    }
+
+    private static ChatResponse response(AssistantMessage.ToolCall... toolCalls) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage("", Map.of(), List.of(toolCalls)))));
+    }
+
+    private static AssistantMessage.ToolCall toolCall(String id, String name, String arguments) {
+        return new AssistantMessage.ToolCall(id, "function", name, arguments);
+    }
+
+    private static ToolCallback asyncTool(String name, Function<String, Mono<String>> function) {
+        ToolDefinition toolDefinition = ToolDefinition.builder()
+                .name(name)
+                .description(name + " tool")
+                .inputSchema("{\"type\":\"object\",\"properties\":{}}")
+                .build();
+        return new ZhinaoAsyncToolCallback() {
+            @Override
+            public ToolDefinition getToolDefinition() {
+                return toolDefinition;
+            }
+
+            @Override
+            public Mono<String> callAsync(String toolInput, ToolContext toolContext) {
+                return function.apply(toolInput);
+            }
+        };
+    }
+
+    private static ToolCallback tool(String name, Function<String, String> function) {
+        ToolDefinition toolDefinition = ToolDefinition.builder()
+                .name(name)
+                .description(name + " tool")
+                .inputSchema("{\"type\":\"object\",\"properties\":{}}")
+                .build();
+        return new ToolCallback() {
+            @Override
+            public ToolDefinition getToolDefinition() {
+                return toolDefinition;
+            }
+
+            @Override
+            public String call(String toolInput) {
+                return function.apply(toolInput);
+            }
+        };
+    }
+}
@@ -0,0 +1,83 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.tool;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ZhinaoToolResponseCompactionTests {
+
+    private static final String ORDER = "{\"data\":{\"id\":42,\"status\":\"shipped\",\"items\":[{\"sku\":\"A\"}],\"audit\":\"...\"},\"trace\":\"x\"}";
+
+    @Test
+    public void projectsConfiguredFields() {
+        ZhinaoToolResponseCompactor compactor = ZhinaoToolResponseCompactor.project(
+                Map.of("getOrder", List.of("/data/id", "/data/status", "/data/items/0/sku", "/missing")));
+
+        assertThat(compactor.compact(response("getOrder", ORDER)))
+                .isEqualTo("{\"data\":{\"id\":42,\"status\":\"shipped\",\"items\":{\"0\":{\"sku\":\"A\"}}}}");
+        assertThat(compactor.compact(response("other", ORDER))).isEqualTo(ORDER);
+        assertThat(compactor.compact(response("getOrder", "not json"))).isEqualTo("not json");
+    }
+
+    @Test
+    public void truncatesLongResponses() {
+        ZhinaoToolResponseCompactor compactor = ZhinaoToolResponseCompactor.truncate(5);
+
+        assertThat(compactor.compact(response("tool", "0123456789"))).isEqualTo("01234\n...[truncated 5 characters]");
+        assertThat(compactor.compact(response("tool", "01234"))).isEqualTo("01234");
+    }
+
+    @Test
+    public void summarizesLongResponsesWithAnotherModel() {
+        ChatModel summarizer = prompt -> new ChatResponse(List.of(new Generation(new AssistantMessage("order 42 shipped"))));
+        ZhinaoToolResponseCompactor compactor = ZhinaoToolResponseCompactor.summarize(summarizer, 20);
+
+        assertThat(compactor.compact(response("getOrder", ORDER))).isEqualTo("order 42 shipped");
+        assertThat(compactor.compact(response("getOrder", "short"))).isEqualTo("short");
+    }
+
+    @Test
+    public void compactsLatestRoundAndMetersSavedBytes() {
+        ZhinaoToolResponseCompaction compaction = new ZhinaoToolResponseCompaction(ZhinaoToolResponseCompactor.truncate(10));
+        List<Message> history = List.of(new UserMessage("question"),
+                new ToolResponseMessage(List.of(response("first", "a".repeat(100)), response("second", "short"))));
+
+        List<Message> compacted = compaction.compact(history);
+
+        ToolResponseMessage toolResponseMessage = (ToolResponseMessage) compacted.get(1);
+        assertThat(toolResponseMessage.getResponses().get(0).responseData()).startsWith("aaaaaaaaaa\n...[truncated");
+        assertThat(toolResponseMessage.getResponses().get(1).responseData()).isEqualTo("short");
+        assertThat(compaction.bytesSaved()).isEqualTo(100 - toolResponseMessage.getResponses().get(0).responseData().length());
+        assertThat(compaction.rounds()).isEqualTo(1);
+        assertThat(compaction.compact(List.of(new UserMessage("question")))).hasSize(1);
+    }
+
+    private static ToolResponseMessage.ToolResponse response(String name, String data) {
+        return new ToolResponseMessage.ToolResponse("1", name, data);
+    }
+}
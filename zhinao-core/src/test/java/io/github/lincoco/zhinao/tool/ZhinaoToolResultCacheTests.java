@@ -0,0 +1,122 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.tool;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ZhinaoToolResultCacheTests {
+
+    private final AtomicInteger invocations = new AtomicInteger();
+
+    @Test
+    public void cachesByCanonicalArguments() {
+        ZhinaoToolResultCache cache = new ZhinaoToolResultCache();
+        ToolCallback weather = tool("weather", ZhinaoToolCacheMetadata.of(Duration.ofMinutes(5)));
+
+        String first = cache.call(weather, "{\"location\": \"北京\", \"unit\": \"C\"}", this::invoke);
+        String second = cache.call(weather, "{\"unit\":\"C\",\"location\":\"北京\"}", this::invoke);
+        String other = cache.call(weather, "{\"unit\":\"C\",\"location\":\"上海\"}", this::invoke);
+
+        assertThat(second).isEqualTo(first);
+        assertThat(other).isNotEqualTo(first);
+        assertThat(this.invocations).hasValue(2);
+        assertThat(cache.hitCount()).isEqualTo(1);
+        assertThat(cache.missCount()).isEqualTo(2);
+        assertThat(cache.hitRatios()).containsEntry("weather", 1.0 / 3);
+    }
+
+    @Test
+    public void toolsWithoutTtlAreNotCached() {
+        ZhinaoToolResultCache cache = new ZhinaoToolResultCache(10, Map.of("configured", Duration.ofMinutes(1)));
+
+        cache.call(tool("plain", ToolMetadata.builder().build()), "{}", this::invoke);
+        cache.call(tool("plain", ToolMetadata.builder().build()), "{}", this::invoke);
+        cache.call(tool("disabled", ZhinaoToolCacheMetadata.of(Duration.ZERO)), "{}", this::invoke);
+        cache.call(tool("disabled", ZhinaoToolCacheMetadata.of(Duration.ZERO)), "{}", this::invoke);
+        cache.call(tool("configured", ToolMetadata.builder().build()), "{}", this::invoke);
+        cache.call(tool("configured", ToolMetadata.builder().build()), "{}", this::invoke);
+
+        assertThat(this.invocations).hasValue(5);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void expiredResultsAreRefreshed() throws InterruptedException {
+        ZhinaoToolResultCache cache = new ZhinaoToolResultCache();
+        ToolCallback weather = tool("weather", ZhinaoToolCacheMetadata.of(Duration.ofMillis(20)));
+
+        cache.call(weather, "{}", this::invoke);
+        Thread.sleep(50);
+        cache.call(weather, "{}", this::invoke);
+
+        assertThat(this.invocations).hasValue(2);
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedResult() {
+        ZhinaoToolResultCache cache = new ZhinaoToolResultCache(2, Map.of());
+        ToolCallback weather = tool("weather", ZhinaoToolCacheMetadata.of(Duration.ofMinutes(5)));
+
+        cache.call(weather, "{\"location\":\"北京\"}", this::invoke);
+        cache.call(weather, "{\"location\":\"上海\"}", this::invoke);
+        cache.call(weather, "{\"location\":\"北京\"}", this::invoke);
+        cache.call(weather, "{\"location\":\"广州\"}", this::invoke);
+
+        // 上海最久未使用，被广州替换
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.evictionCount()).isEqualTo(1);
+        cache.call(weather, "{\"location\":\"北京\"}", this::invoke);
+        cache.call(weather, "{\"location\":\"上海\"}", this::invoke);
+        assertThat(this.invocations).hasValue(4);
+    }
+
+    private String invoke() {
+        return "result " + this.invocations.incrementAndGet();
+    }
+
+    private static ToolCallback tool(String name, ToolMetadata toolMetadata) {
+        ToolDefinition toolDefinition = ToolDefinition.builder()
+                .name(name)
+                .description(name + " tool")
+                .inputSchema("{\"type\":\"object\",\"properties\":{}}")
+                .build();
+        return new ToolCallback() {
+            @Override
+            public ToolDefinition getToolDefinition() {
+                return toolDefinition;
+            }
+
+            @Override
+            public ToolMetadata getToolMetadata() {
+                return toolMetadata;
+            }
+
+            @Override
+            public String call(String toolInput) {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -0,0 +1,80 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.tool;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.model.ModelOptionsUtils;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ZhinaoToolSchemaMinifierTests {
+
+    private static final String SCHEMA = """
+            {
+              "$schema" : "https://json-schema.org/draft/2020-12/schema",
+              "additionalProperties" : false,
+              "type" : "object",
+              "properties" : {
+                "title" : {
+                  "type" : [ "string" ],
+                  "description" : "The title of the document that should be created, including its extension"
+                },
+                "tags" : {
+                  "type" : "array",
+                  "items" : { "type" : "string", "description" : "", "enum" : [ "$schema", "draft" ] }
+                },
+                "options" : {
+                  "type" : "object",
+                  "additionalProperties" : { "type" : "string", "$comment" : "free form" },
+                  "required" : [ ]
+                }
+              },
+              "required" : [ "title" ]
+            }
+            """;
+
+    @Test
+    public void stripsRedundantKeywords() {
+        ZhinaoToolSchemaMinifier minifier = new ZhinaoToolSchemaMinifier();
+
+        ZhinaoToolSchemaMinifier.MinifiedSchema minifiedSchema = minifier.minify(ModelOptionsUtils.jsonToMap(SCHEMA));
+
+        assertThat(ModelOptionsUtils.toJsonString(minifiedSchema.parameters())).isEqualTo("""
+                {"type":"object","properties":{"title":{"type":"string","description":"The title of the document \
+                that should be created, including its extension"},"tags":{"type":"array","items":{"type":"string",\
+                "enum":["$schema","draft"]}},"options":{"type":"object","additionalProperties":{"type":"string"}}},\
+                "required":["title"]}""");
+        assertThat(minifiedSchema.bytesSaved()).isPositive();
+        assertThat(minifiedSchema.tokensSaved()).isPositive();
+    }
+
+    @Test
+    public void capsDescriptionsAndRecordsSavings() {
+        ZhinaoToolSchemaMinifier minifier = new ZhinaoToolSchemaMinifier(9);
+
+        ZhinaoToolSchemaMinifier.MinifiedSchema minifiedSchema = minifier.minify(ModelOptionsUtils.jsonToMap(SCHEMA));
+        minifier.recordSent(minifiedSchema);
+        minifier.recordSent(minifiedSchema);
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> title = (Map<String, Object>) ((Map<String, Object>) minifiedSchema.parameters().get("properties")).get("title");
+        assertThat(title).containsEntry("description", "The title…");
+        assertThat(minifier.bytesSaved()).isEqualTo(2L * minifiedSchema.bytesSaved());
+        assertThat(minifier.tokensSaved()).isEqualTo(2L * minifiedSchema.tokensSaved());
+    }
+}
@@ -0,0 +1,179 @@
+/*
+Copyright 2025 lin-coco
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.lincoco.zhinao.usage;
+
+import io.github.lincoco.zhinao.ZhinaoChatModel;
+import io.github.lincoco.zhinao.ZhinaoChatOptions;
+import io.github.lincoco.zhinao.api.ZhinaoApi;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.retry.RetryUtils;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+public class ZhinaoUsageAccountantTests {
+
+    private @Mock ZhinaoApi zhinaoApi;
+
+    @Test
+    public void accountsUsagePerTenantAndRejectsCallsBeyondTheQuota() {
+        var choice = new ZhinaoApi.Choice(new ZhinaoApi.ChatCompletionMessage("Response", ZhinaoApi.ChatCompletionMessage.Role.ASSISTANT),
+                ZhinaoApi.Choice.ChatCompletionFinishReason.STOP, 0);
+        given(this.zhinaoApi.chatCompletionEntity(isA(ZhinaoApi.ChatCompletionRequest.class)))
+                .willReturn(ResponseEntity.of(Optional.of(new ZhinaoApi.ChatCompletion(List.of(choice), 1L, "id", "360gpt-pro",
+                        "chat.completion", new ZhinaoApi.Usage(12, 3, 15)))));
+        ZhinaoUsageAccountant accountant = ZhinaoUsageAccountant.builder()
+                .keyResolver(ZhinaoUsageAccountant.tenantKey(":"))
+                .quota("acme", 20)
+                .build();
+        ZhinaoChatModel chatModel = ZhinaoChatModel.builder()
+                .zhinaoApi(this.zhinaoApi)
+                .defaultOptions(ZhinaoChatOptions.builder().model("360gpt-pro").build())
+                .retryTemplate(RetryUtils.SHORT_RETRY_TEMPLATE)
+                .usageAccountant(accountant)
+                .build();
+
+        chatModel.call(new Prompt("text", ZhinaoChatOptions.builder().user("acme:alice").build()));
+        chatModel.call(new Prompt("text", ZhinaoChatOptions.builder().user("acme:bob").build()));
+        chatModel.call(new Prompt("text"));
+
+        assertThatThrownBy(() -> chatModel.call(new Prompt("text", ZhinaoChatOptions.builder().user("acme:carol").build())))
+                .isInstanceOf(ZhinaoQuotaExceededException.class)
+                .hasMessageContaining("'acme'");
+        verify(this.zhinaoApi, times(3)).chatCompletionEntity(isA(ZhinaoApi.ChatCompletionRequest.class));
+        ZhinaoUsageAccountant.Snapshot acme = accountant.snapshot("acme");
+        assertThat(acme.requests()).isEqualTo(2);
+        assertThat(acme.promptTokens()).isEqualTo(24);
+        assertThat(acme.totalTokens()).isEqualTo(30);
+        assertThat(acme.rejected()).isEqualTo(1);
+        assertThat(accountant.snapshot(ZhinaoUsageAccountant.ANONYMOUS).requests()).isEqualTo(1);
+        assertThat(accountant.getRejections()).isEqualTo(1);
+    }
+
+    @Test
+    public void quotaIsRestoredInTheNextPeriodAndReleasedForFailedRequests() {
+        MutableClock clock = new MutableClock();
+        ZhinaoUsageAccountant accountant = ZhinaoUsageAccountant.builder()
+                .defaultQuota(100)
+                .quotaPeriod(Duration.ofHours(1))
+                .clock(clock)
+                .build();
+        ZhinaoApi.ChatCompletionRequest request = request("alice");
+
+        ZhinaoUsageAccountant.Reservation failed = accountant.reserve(request, 90);
+        assertThatThrownBy(() -> accountant.reserve(request, 20)).isInstanceOf(ZhinaoQuotaExceededException.class);
+        accountant.record(failed, null);
+        accountant.record(accountant.reserve(request, 20), new ZhinaoApi.Usage(25, 75, 100));
+
+        assertThatThrownBy(() -> accountant.reserve(request, 1)).isInstanceOf(ZhinaoQuotaExceededException.class);
+        clock.advance(Duration.ofHours(1));
+        ZhinaoUsageAccountant.Reservation nextPeriod = accountant.reserve(request, 1);
+        assertThat(nextPeriod.period()).isGreaterThan(failed.period());
+        ZhinaoUsageAccountant.Snapshot snapshot = accountant.snapshot("alice");
+        assertThat(snapshot.totalTokens()).isEqualTo(100);
+        assertThat(snapshot.periodTokens()).isEqualTo(1);
+        assertThat(snapshot.rejected()).isEqualTo(2);
+    }
+
+    @Test
+    public void evictsIdleAccountsBeyondTheMaximum() {
+        MutableClock clock = new MutableClock();
+        ZhinaoUsageAccountant accountant = ZhinaoUsageAccountant.builder()
+                .quotaPeriod(Duration.ofHours(1))
+                .clock(clock)
+                .maxAccounts(2)
+                .build();
+        accountant.record(accountant.reserve(request("alice"), 0), new ZhinaoApi.Usage(10, 5, 15));
+        accountant.record(accountant.reserve(request("bob"), 0), new ZhinaoApi.Usage(10, 5, 15));
+
+        clock.advance(Duration.ofHours(1));
+        accountant.record(accountant.reserve(request("bob"), 0), new ZhinaoApi.Usage(10, 5, 15));
+        accountant.record(accountant.reserve(request("carol"), 0), new ZhinaoApi.Usage(10, 5, 15));
+
+        // alice 在本周期没有请求，账户数超出上限时被清理
+        assertThat(accountant.accountCount()).isEqualTo(2);
+        assertThat(accountant.snapshot("alice")).isNull();
+        assertThat(accountant.snapshot("bob").totalTokens()).isEqualTo(30);
+        assertThat(accountant.getEvictions()).isEqualTo(1);
+    }
+
+    @Test
+    public void exportsTheFinalTotalsOnClose() {
+        AtomicReference<List<ZhinaoUsageAccountant.Snapshot>> exported = new AtomicReference<>();
+        ZhinaoUsageAccountant accountant = ZhinaoUsageAccountant.builder()
+                .exporter(exported::set)
+                .exportInterval(Duration.ofHours(1))
+                .build();
+        accountant.record(accountant.reserve(request("alice"), 0), new ZhinaoApi.Usage(10, 5, 15));
+
+        accountant.close();
+
+        assertThat(exported.get()).singleElement().satisfies(snapshot -> {
+            assertThat(snapshot.key()).isEqualTo("alice");
+            assertThat(snapshot.totalTokens()).isEqualTo(15);
+            assertThat(snapshot.quota()).isZero();
+        });
+    }
+
+    private static ZhinaoApi.ChatCompletionRequest request(String user) {
+        return new ZhinaoApi.ChatCompletionRequest("360gpt-pro",
+                List.of(new ZhinaoApi.ChatCompletionMessage("question", ZhinaoApi.ChatCompletionMessage.Role.USER)),
+                false, 0.7, null, null, null, null, null, null, null, user);
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private Instant instant = Instant.parse("2025-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            this.instant = this.instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return this.instant;
+        }
+    }
+}